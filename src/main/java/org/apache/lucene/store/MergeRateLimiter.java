@@ -0,0 +1,80 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lucene.store;
+
+import org.elasticsearch.common.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A rate limiter for the IO of a single merge. It is set on the merge thread while the merge runs, and the outputs
+ * the merge creates through a {@link RateLimitedFSDirectory} are rate limited by it. The time spent paused is
+ * added to the provided counter.
+ */
+public class MergeRateLimiter extends RateLimiter {
+
+    private static final ThreadLocal<MergeRateLimiter> current = new ThreadLocal<MergeRateLimiter>();
+
+    /**
+     * The rate limiter of the merge running on the current thread, if any.
+     */
+    @Nullable
+    public static MergeRateLimiter current() {
+        return current.get();
+    }
+
+    /**
+     * Sets the rate limiter of the merge running on the current thread, <tt>null</tt> to clear it.
+     */
+    public static void current(@Nullable MergeRateLimiter rateLimiter) {
+        if (rateLimiter == null) {
+            current.remove();
+        } else {
+            current.set(rateLimiter);
+        }
+    }
+
+    private final SimpleRateLimiter rateLimiter;
+
+    private final AtomicLong pausedNanos;
+
+    public MergeRateLimiter(double mbPerSec, AtomicLong pausedNanos) {
+        this.rateLimiter = new SimpleRateLimiter(mbPerSec);
+        this.pausedNanos = pausedNanos;
+    }
+
+    @Override
+    public void setMbPerSec(double mbPerSec) {
+        rateLimiter.setMbPerSec(mbPerSec);
+    }
+
+    @Override
+    public double getMbPerSec() {
+        return rateLimiter.getMbPerSec();
+    }
+
+    @Override
+    public long pause(long bytes) {
+        long paused = rateLimiter.pause(bytes);
+        if (paused > 0) {
+            pausedNanos.addAndGet(paused);
+        }
+        return paused;
+    }
+}
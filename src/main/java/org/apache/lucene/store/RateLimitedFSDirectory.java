@@ -30,6 +30,13 @@ public final class RateLimitedFSDirectory extends Directory {
 
     private final StoreRateLimiting.Listener rateListener;
 
+    // merge rate limiters track their own paused time
+    private static final StoreRateLimiting.Listener NO_OP_LISTENER = new StoreRateLimiting.Listener() {
+        @Override
+        public void onPause(long nanos) {
+        }
+    };
+
     public RateLimitedFSDirectory(FSDirectory wrapped, StoreRateLimiting.Provider rateLimitingProvider,
                                   StoreRateLimiting.Listener rateListener) {
         this.delegate = wrapped;
@@ -68,7 +75,14 @@ public final class RateLimitedFSDirectory extends Directory {
     @Override
     public IndexOutput createOutput(String name, IOContext context) throws IOException {
         ensureOpen();
-        final IndexOutput output = delegate.createOutput(name, context);
+        IndexOutput output = delegate.createOutput(name, context);
+        if (context.context == Context.MERGE) {
+            // the merge scheduler might throttle this specific merge, on top of the store rate limiting
+            MergeRateLimiter mergeRateLimiter = MergeRateLimiter.current();
+            if (mergeRateLimiter != null) {
+                output = new RateLimitedIndexOutput(mergeRateLimiter, NO_OP_LISTENER, output);
+            }
+        }
 
         StoreRateLimiting rateLimiting = rateLimitingProvider.rateLimiting();
         StoreRateLimiting.Type type = rateLimiting.getType();
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.bulk;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionResponse;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.index.IndexResponse;
@@ -26,6 +27,7 @@ import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.rest.RestStatus;
 
 import java.io.IOException;
 
@@ -45,12 +47,18 @@ public class BulkItemResponse implements Streamable {
         private final String type;
         private final String id;
         private final String message;
+        private final RestStatus status;
 
         public Failure(String index, String type, String id, String message) {
+            this(index, type, id, message, RestStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        public Failure(String index, String type, String id, String message, RestStatus status) {
             this.index = index;
             this.type = type;
             this.id = id;
             this.message = message;
+            this.status = status;
         }
 
         /**
@@ -80,6 +88,14 @@ public class BulkItemResponse implements Streamable {
         public String getMessage() {
             return this.message;
         }
+
+        /**
+         * The rest status of the failure, for example {@link RestStatus#SERVICE_UNAVAILABLE} when the cluster
+         * rejected the execution of the action.
+         */
+        public RestStatus getStatus() {
+            return this.status;
+        }
     }
 
     private int id;
@@ -245,7 +261,15 @@ public class BulkItemResponse implements Streamable {
         }
 
         if (in.readBoolean()) {
-            failure = new Failure(in.readString(), in.readString(), in.readString(), in.readString());
+            String index = in.readString();
+            String type = in.readString();
+            String id = in.readString();
+            String message = in.readString();
+            RestStatus status = RestStatus.INTERNAL_SERVER_ERROR;
+            if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+                status = RestStatus.readFrom(in);
+            }
+            failure = new Failure(index, type, id, message, status);
         }
     }
 
@@ -273,6 +297,9 @@ public class BulkItemResponse implements Streamable {
             out.writeString(failure.getType());
             out.writeString(failure.getId());
             out.writeString(failure.getMessage());
+            if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+                RestStatus.writeTo(out, failure.getStatus());
+            }
         }
     }
 }
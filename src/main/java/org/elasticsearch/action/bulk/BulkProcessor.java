@@ -32,6 +32,7 @@ import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.rest.RestStatus;
 
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -42,6 +43,10 @@ import java.util.concurrent.atomic.AtomicLong;
  * requests allowed to be executed in parallel.
  * <p/>
  * In order to create a new bulk processor, use the {@link Builder}.
+ * <p/>
+ * When {@link Builder#setAdaptive(boolean)} is enabled, the number of actions per bulk and the number of concurrent
+ * requests are tuned based on the observed bulk latency and rejections, and items rejected by the cluster (because
+ * its bulk thread pool queue is full) are retried with an exponential backoff before being reported to the listener.
  */
 public class BulkProcessor {
 
@@ -80,6 +85,13 @@ public class BulkProcessor {
         private ByteSizeValue bulkSize = new ByteSizeValue(5, ByteSizeUnit.MB);
         private TimeValue flushInterval = null;
 
+        private boolean adaptive = false;
+        private int minBulkActions = 100;
+        private int maxBulkActions = 10000;
+        private TimeValue targetLatency = TimeValue.timeValueSeconds(1);
+        private TimeValue initialBackoff = TimeValue.timeValueMillis(100);
+        private int maxRetries = 5;
+
         /**
          * Creates a builder of bulk processor with the client to use and the listener that will be used
          * to be notified on the completion of bulk requests.
@@ -136,11 +148,198 @@ public class BulkProcessor {
             return this;
         }
 
+        /**
+         * Enables adaptive mode, where the number of bulk actions is tuned between {@link #setMinBulkActions(int)}
+         * and {@link #setMaxBulkActions(int)} (starting at {@link #setBulkActions(int)}), and the number of concurrent
+         * requests is tuned between <tt>1</tt> and {@link #setConcurrentRequests(int)}, based on the latency of
+         * each bulk compared to {@link #setTargetLatency(org.elasticsearch.common.unit.TimeValue)} and on rejections.
+         * If flushing based on the number of actions is disabled (set to <tt>-1</tt>), only the number of concurrent
+         * requests is tuned. Rejected items are retried with exponential backoff. Defaults to <tt>false</tt>.
+         */
+        public Builder setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+            return this;
+        }
+
+        /**
+         * The minimum number of actions per bulk in adaptive mode. Defaults to <tt>100</tt>.
+         */
+        public Builder setMinBulkActions(int minBulkActions) {
+            this.minBulkActions = minBulkActions;
+            return this;
+        }
+
+        /**
+         * The maximum number of actions per bulk in adaptive mode. Defaults to <tt>10000</tt>.
+         */
+        public Builder setMaxBulkActions(int maxBulkActions) {
+            this.maxBulkActions = maxBulkActions;
+            return this;
+        }
+
+        /**
+         * The bulk latency adaptive mode aims for. Bulks that complete faster grow the batch size and the
+         * concurrency, slower ones shrink the batch size. Defaults to <tt>1s</tt>.
+         */
+        public Builder setTargetLatency(TimeValue targetLatency) {
+            this.targetLatency = targetLatency;
+            return this;
+        }
+
+        /**
+         * Sets the delay before the first retry of rejected items in adaptive mode, doubled on each following retry.
+         * Defaults to <tt>100ms</tt>.
+         */
+        public Builder setInitialBackoff(TimeValue initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of times rejected items are retried in adaptive mode before being reported as
+         * failed. Defaults to <tt>5</tt>.
+         */
+        public Builder setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
         /**
          * Builds a new bulk processor.
          */
         public BulkProcessor build() {
-            return new BulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval);
+            AdaptiveSettings adaptiveSettings = null;
+            if (adaptive) {
+                adaptiveSettings = new AdaptiveSettings(minBulkActions, maxBulkActions, targetLatency, initialBackoff, maxRetries);
+            }
+            return new BulkProcessor(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval, adaptiveSettings);
+        }
+    }
+
+    static class AdaptiveSettings {
+
+        final int minBulkActions;
+        final int maxBulkActions;
+        final TimeValue targetLatency;
+        final TimeValue initialBackoff;
+        final int maxRetries;
+
+        AdaptiveSettings(int minBulkActions, int maxBulkActions, TimeValue targetLatency, TimeValue initialBackoff, int maxRetries) {
+            this.minBulkActions = minBulkActions;
+            this.maxBulkActions = maxBulkActions;
+            this.targetLatency = targetLatency;
+            this.initialBackoff = initialBackoff;
+            this.maxRetries = maxRetries;
+        }
+    }
+
+    /**
+     * Throughput statistics of a bulk processor, see {@link BulkProcessor#stats()}.
+     */
+    public static class Stats {
+
+        private final long bulks;
+        private final long actions;
+        private final long failedActions;
+        private final long rejectedActions;
+        private final long retries;
+        private final long tookInMillis;
+        private final long elapsedInMillis;
+        private final int currentBulkActions;
+        private final int currentConcurrentRequests;
+
+        Stats(long bulks, long actions, long failedActions, long rejectedActions, long retries, long tookInMillis, long elapsedInMillis,
+              int currentBulkActions, int currentConcurrentRequests) {
+            this.bulks = bulks;
+            this.actions = actions;
+            this.failedActions = failedActions;
+            this.rejectedActions = rejectedActions;
+            this.retries = retries;
+            this.tookInMillis = tookInMillis;
+            this.elapsedInMillis = elapsedInMillis;
+            this.currentBulkActions = currentBulkActions;
+            this.currentConcurrentRequests = currentConcurrentRequests;
+        }
+
+        /**
+         * The number of bulk requests completed (not counting retries).
+         */
+        public long getBulks() {
+            return bulks;
+        }
+
+        /**
+         * The number of actions completed, successfully or not.
+         */
+        public long getActions() {
+            return actions;
+        }
+
+        /**
+         * The number of actions that were reported as failed to the listener.
+         */
+        public long getFailedActions() {
+            return failedActions;
+        }
+
+        /**
+         * The number of times an action was rejected by the cluster, including rejections that were later retried.
+         */
+        public long getRejectedActions() {
+            return rejectedActions;
+        }
+
+        /**
+         * The number of retry bulk requests executed for rejected actions.
+         */
+        public long getRetries() {
+            return retries;
+        }
+
+        /**
+         * The total time spent executing bulk requests (including retries).
+         */
+        public TimeValue getTook() {
+            return new TimeValue(tookInMillis);
+        }
+
+        /**
+         * The number of actions completed per second since the processor was created.
+         */
+        public double getActionsPerSecond() {
+            if (elapsedInMillis <= 0) {
+                return 0;
+            }
+            return actions * 1000d / elapsedInMillis;
+        }
+
+        /**
+         * The current number of actions that trigger a bulk execution.
+         */
+        public int getCurrentBulkActions() {
+            return currentBulkActions;
+        }
+
+        /**
+         * The current number of concurrent requests allowed.
+         */
+        public int getCurrentConcurrentRequests() {
+            return currentConcurrentRequests;
+        }
+    }
+
+    /**
+     * A semaphore that allows to change the number of permits once created.
+     */
+    static class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        public void reducePermits(int reduction) {
+            super.reducePermits(reduction);
         }
     }
 
@@ -154,45 +353,95 @@ public class BulkProcessor {
     private final String name;
 
     private final int concurrentRequests;
-    private final int bulkActions;
+    private volatile int bulkActions;
     private final int bulkSize;
     private final TimeValue flushInterval;
 
-    private final Semaphore semaphore;
+    @Nullable
+    private final AdaptiveSettings adaptiveSettings;
+    private final Object adaptMutex = new Object();
+    // guarded by adaptMutex
+    private int currentConcurrentRequests;
+
+    private final ResizableSemaphore semaphore;
     private final ScheduledThreadPoolExecutor scheduler;
     private final ScheduledFuture scheduledFuture;
 
     private final AtomicLong executionIdGen = new AtomicLong();
 
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicLong bulksCounter = new AtomicLong();
+    private final AtomicLong actionsCounter = new AtomicLong();
+    private final AtomicLong failedActionsCounter = new AtomicLong();
+    private final AtomicLong rejectedActionsCounter = new AtomicLong();
+    private final AtomicLong retriesCounter = new AtomicLong();
+    private final AtomicLong tookInMillisCounter = new AtomicLong();
+
+    private final Object inFlightMutex = new Object();
+    // guarded by inFlightMutex, the bulks executed asynchronously, including their retries, not completed yet
+    private int inFlightBulks;
+
     private BulkRequest bulkRequest;
 
     private volatile boolean closed = false;
 
     BulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions, ByteSizeValue bulkSize, @Nullable TimeValue flushInterval) {
+        this(client, listener, name, concurrentRequests, bulkActions, bulkSize, flushInterval, null);
+    }
+
+    BulkProcessor(Client client, Listener listener, @Nullable String name, int concurrentRequests, int bulkActions, ByteSizeValue bulkSize, @Nullable TimeValue flushInterval,
+                  @Nullable AdaptiveSettings adaptiveSettings) {
         this.client = client;
         this.listener = listener;
         this.name = name;
         this.concurrentRequests = concurrentRequests;
-        this.bulkActions = bulkActions;
+        this.adaptiveSettings = adaptiveSettings;
+        if (adaptiveSettings != null) {
+            // flushing on the number of actions might be disabled, keep it that way
+            this.bulkActions = bulkActions == -1 ? -1 : Math.max(adaptiveSettings.minBulkActions, Math.min(adaptiveSettings.maxBulkActions, bulkActions));
+            // start with a single concurrent request, and grow up to the configured concurrent requests
+            this.currentConcurrentRequests = Math.min(1, concurrentRequests);
+        } else {
+            this.bulkActions = bulkActions;
+            this.currentConcurrentRequests = concurrentRequests;
+        }
         this.bulkSize = bulkSize.bytesAsInt();
 
-        this.semaphore = new Semaphore(concurrentRequests);
+        this.semaphore = new ResizableSemaphore(currentConcurrentRequests);
         this.bulkRequest = new BulkRequest();
 
         this.flushInterval = flushInterval;
-        if (flushInterval != null) {
+        if (flushInterval != null || adaptiveSettings != null) {
             this.scheduler = (ScheduledThreadPoolExecutor) Executors.newScheduledThreadPool(1, EsExecutors.daemonThreadFactory(((InternalClient) client).settings(), (name != null ? "[" + name + "]" : "") + "bulk_processor"));
-            this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+            // pending retries of rejected items still need to execute once closed
+            this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(adaptiveSettings != null);
             this.scheduler.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
-            this.scheduledFuture = this.scheduler.scheduleWithFixedDelay(new Flush(), flushInterval.millis(), flushInterval.millis(), TimeUnit.MILLISECONDS);
         } else {
             this.scheduler = null;
+        }
+        if (flushInterval != null) {
+            this.scheduledFuture = this.scheduler.scheduleWithFixedDelay(new Flush(), flushInterval.millis(), flushInterval.millis(), TimeUnit.MILLISECONDS);
+        } else {
             this.scheduledFuture = null;
         }
     }
 
+    /**
+     * Returns the throughput statistics of this processor.
+     */
+    public Stats stats() {
+        int concurrency;
+        synchronized (adaptMutex) {
+            concurrency = currentConcurrentRequests;
+        }
+        return new Stats(bulksCounter.get(), actionsCounter.get(), failedActionsCounter.get(), rejectedActionsCounter.get(), retriesCounter.get(),
+                tookInMillisCounter.get(), System.currentTimeMillis() - startTime, bulkActions, concurrency);
+    }
+
     /**
      * Closes the processor. If flushing by time is enabled, then its shutdown. Any remaining bulk actions are flushed.
+     * In adaptive mode, waits for the bulks in flight to complete, so their rejected items are retried (and the
+     * listener notified) before returning.
      */
     public synchronized void close() {
         if (closed) {
@@ -201,11 +450,30 @@ public class BulkProcessor {
         closed = true;
         if (this.scheduledFuture != null) {
             this.scheduledFuture.cancel(false);
-            this.scheduler.shutdown();
         }
         if (bulkRequest.numberOfActions() > 0) {
             execute();
         }
+        if (adaptiveSettings != null) {
+            // the scheduler is still needed to schedule the retries
+            awaitInFlightBulks();
+        }
+        if (this.scheduler != null) {
+            this.scheduler.shutdown();
+        }
+    }
+
+    private void awaitInFlightBulks() {
+        synchronized (inFlightMutex) {
+            while (inFlightBulks > 0) {
+                try {
+                    inFlightMutex.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
     }
 
     /**
@@ -271,7 +539,14 @@ public class BulkProcessor {
             // execute in a blocking fashion...
             try {
                 listener.beforeBulk(executionId, bulkRequest);
-                listener.afterBulk(executionId, bulkRequest, client.bulk(bulkRequest).actionGet());
+                BulkResponse response = client.bulk(bulkRequest).actionGet();
+                boolean adapted = false;
+                if (adaptiveSettings != null && hasRejections(response)) {
+                    response = retryBlocking(bulkRequest, response);
+                    adapted = true;
+                }
+                onBulkResponse(bulkRequest, response, adapted);
+                listener.afterBulk(executionId, bulkRequest, response);
             } catch (Exception e) {
                 listener.afterBulk(executionId, bulkRequest, e);
             }
@@ -282,14 +557,22 @@ public class BulkProcessor {
                 listener.afterBulk(executionId, bulkRequest, e);
                 return;
             }
+            synchronized (inFlightMutex) {
+                inFlightBulks++;
+            }
             listener.beforeBulk(executionId, bulkRequest);
             client.bulk(bulkRequest, new ActionListener<BulkResponse>() {
                 @Override
                 public void onResponse(BulkResponse response) {
+                    if (adaptiveSettings != null && hasRejections(response)) {
+                        new RetryHandler(executionId, bulkRequest).onResponse(response);
+                        return;
+                    }
                     try {
+                        onBulkResponse(bulkRequest, response, false);
                         listener.afterBulk(executionId, bulkRequest, response);
                     } finally {
-                        semaphore.release();
+                        onBulkDone();
                     }
                 }
 
@@ -298,13 +581,226 @@ public class BulkProcessor {
                     try {
                         listener.afterBulk(executionId, bulkRequest, e);
                     } finally {
-                        semaphore.release();
+                        onBulkDone();
                     }
                 }
             });
         }
     }
 
+    /**
+     * Retries the rejected items of a bulk asynchronously, with exponential backoff, and notifies the listener
+     * with the merged response once all the items are either done or out of retries.
+     */
+    class RetryHandler implements ActionListener<BulkResponse> {
+
+        private final long executionId;
+        private final BulkRequest bulkRequest;
+        private final BulkItemResponse[] responses;
+        private final long startTime = System.currentTimeMillis();
+
+        private int attempt = 0;
+        // maps the items of the current retry request to the original item ids
+        private int[] retriedItems;
+
+        RetryHandler(long executionId, BulkRequest bulkRequest) {
+            this.executionId = executionId;
+            this.bulkRequest = bulkRequest;
+            this.responses = new BulkItemResponse[bulkRequest.numberOfActions()];
+        }
+
+        @Override
+        public void onResponse(BulkResponse response) {
+            tookInMillisCounter.addAndGet(response.getTookInMillis());
+            // the first response and every retry response tune the processor, rejections let the cluster breathe
+            adapt(response.getTookInMillis(), hasRejections(response));
+            mergeResponse(responses, retriedItems, response);
+            retriedItems = rejectedItems(responses);
+            rejectedActionsCounter.addAndGet(retriedItems.length);
+            if (retriedItems.length == 0 || attempt >= adaptiveSettings.maxRetries) {
+                finish();
+                return;
+            }
+            final BulkRequest retryRequest = new BulkRequest();
+            for (int itemId : retriedItems) {
+                retryRequest.add(bulkRequest.requests().get(itemId));
+            }
+            long delay = adaptiveSettings.initialBackoff.millis() << attempt;
+            attempt++;
+            try {
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        retriesCounter.incrementAndGet();
+                        client.bulk(retryRequest, RetryHandler.this);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                finish();
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            // the retry failed as a whole, report the original rejections
+            finish();
+        }
+
+        private void finish() {
+            try {
+                BulkResponse response = new BulkResponse(responses, System.currentTimeMillis() - startTime);
+                countResponse(response);
+                listener.afterBulk(executionId, bulkRequest, response);
+            } finally {
+                onBulkDone();
+            }
+        }
+    }
+
+    private BulkResponse retryBlocking(BulkRequest bulkRequest, BulkResponse response) throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        BulkItemResponse[] responses = new BulkItemResponse[bulkRequest.numberOfActions()];
+        int[] retriedItems = null;
+        for (int attempt = 0; ; attempt++) {
+            adapt(response.getTookInMillis(), hasRejections(response));
+            mergeResponse(responses, retriedItems, response);
+            retriedItems = rejectedItems(responses);
+            rejectedActionsCounter.addAndGet(retriedItems.length);
+            if (retriedItems.length == 0 || attempt >= adaptiveSettings.maxRetries) {
+                break;
+            }
+            BulkRequest retryRequest = new BulkRequest();
+            for (int itemId : retriedItems) {
+                retryRequest.add(bulkRequest.requests().get(itemId));
+            }
+            Thread.sleep(adaptiveSettings.initialBackoff.millis() << attempt);
+            retriesCounter.incrementAndGet();
+            try {
+                response = client.bulk(retryRequest).actionGet();
+            } catch (Exception e) {
+                break;
+            }
+        }
+        return new BulkResponse(responses, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Merges the response of a (possibly retry) bulk into the responses of the original bulk.
+     *
+     * @param retriedItems the original item ids of the retry request items, or <tt>null</tt> for the first execution
+     */
+    static void mergeResponse(BulkItemResponse[] responses, @Nullable int[] retriedItems, BulkResponse response) {
+        BulkItemResponse[] items = response.getItems();
+        for (int i = 0; i < items.length; i++) {
+            BulkItemResponse item = items[i];
+            int itemId = retriedItems == null ? item.getItemId() : retriedItems[item.getItemId()];
+            if (item.isFailed()) {
+                responses[itemId] = new BulkItemResponse(itemId, item.getOpType(), item.getFailure());
+            } else {
+                responses[itemId] = new BulkItemResponse(itemId, item.getOpType(), item.<ActionResponse>getResponse());
+            }
+        }
+    }
+
+    static int[] rejectedItems(BulkItemResponse[] responses) {
+        int count = 0;
+        for (BulkItemResponse response : responses) {
+            if (isRejected(response)) {
+                count++;
+            }
+        }
+        int[] rejected = new int[count];
+        int index = 0;
+        for (int i = 0; i < responses.length; i++) {
+            if (isRejected(responses[i])) {
+                rejected[index++] = i;
+            }
+        }
+        return rejected;
+    }
+
+    static boolean hasRejections(BulkResponse response) {
+        for (BulkItemResponse item : response) {
+            if (isRejected(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Is the item failed because the cluster could not execute it for now (for example, its bulk thread pool queue
+     * was full), and so it can be safely retried.
+     */
+    static boolean isRejected(BulkItemResponse item) {
+        return item != null && item.isFailed() && item.getFailure().getStatus() == RestStatus.SERVICE_UNAVAILABLE;
+    }
+
+    /**
+     * Called once a bulk executed asynchronously is done, including its retries.
+     */
+    private void onBulkDone() {
+        semaphore.release();
+        synchronized (inFlightMutex) {
+            inFlightBulks--;
+            inFlightMutex.notifyAll();
+        }
+    }
+
+    private void onBulkResponse(BulkRequest bulkRequest, BulkResponse response, boolean adapted) {
+        if (adaptiveSettings != null && !adapted) {
+            adapt(response.getTookInMillis(), hasRejections(response));
+        }
+        tookInMillisCounter.addAndGet(response.getTookInMillis());
+        countResponse(response);
+    }
+
+    private void countResponse(BulkResponse response) {
+        bulksCounter.incrementAndGet();
+        actionsCounter.addAndGet(response.getItems().length);
+        for (BulkItemResponse item : response) {
+            if (item.isFailed()) {
+                failedActionsCounter.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Tunes the number of bulk actions and concurrent requests: rejections halve the bulk size and drop one
+     * concurrent request, bulks slower than the target latency shrink the bulk size, and faster ones grow both.
+     * The number of bulk actions is left alone if flushing based on it is disabled.
+     */
+    void adapt(long tookInMillis, boolean rejected) {
+        // not synchronized on this, as the lock is held while waiting for a permit to execute a bulk
+        synchronized (adaptMutex) {
+            int minBulkActions = adaptiveSettings.minBulkActions;
+            int maxBulkActions = adaptiveSettings.maxBulkActions;
+            long targetLatency = adaptiveSettings.targetLatency.millis();
+            boolean tuneBulkActions = bulkActions != -1;
+            if (rejected) {
+                if (tuneBulkActions) {
+                    bulkActions = Math.max(minBulkActions, bulkActions / 2);
+                }
+                if (currentConcurrentRequests > 1) {
+                    currentConcurrentRequests--;
+                    semaphore.reducePermits(1);
+                }
+            } else if (tookInMillis > targetLatency) {
+                if (tuneBulkActions) {
+                    bulkActions = Math.max(minBulkActions, (bulkActions * 3) / 4);
+                }
+            } else if (tookInMillis < targetLatency / 2) {
+                if (tuneBulkActions) {
+                    bulkActions = Math.min(maxBulkActions, bulkActions + Math.max(1, bulkActions / 10));
+                }
+                if (currentConcurrentRequests < concurrentRequests) {
+                    currentConcurrentRequests++;
+                    semaphore.release();
+                }
+            }
+        }
+    }
+
     private boolean isOverTheLimit() {
         if (bulkActions != -1 && bulkRequest.numberOfActions() > bulkActions) {
             return true;
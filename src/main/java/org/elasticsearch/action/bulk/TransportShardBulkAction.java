@@ -184,7 +184,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                         logger.debug("[{}][{}] failed to execute bulk item (index) {}", e, shardRequest.request.index(), shardRequest.shardId, indexRequest);
                     }
                     responses[i] = new BulkItemResponse(item.id(), indexRequest.opType().lowercase(),
-                            new BulkItemResponse.Failure(indexRequest.index(), indexRequest.type(), indexRequest.id(), ExceptionsHelper.detailedMessage(e)));
+                            new BulkItemResponse.Failure(indexRequest.index(), indexRequest.type(), indexRequest.id(), ExceptionsHelper.detailedMessage(e), ExceptionsHelper.status(e)));
                     // nullify the request so it won't execute on the replicas
                     request.items()[i] = null;
                 }
@@ -209,7 +209,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                         logger.debug("[{}][{}] failed to execute bulk item (delete) {}", e, shardRequest.request.index(), shardRequest.shardId, deleteRequest);
                     }
                     responses[i] = new BulkItemResponse(item.id(), "delete",
-                            new BulkItemResponse.Failure(deleteRequest.index(), deleteRequest.type(), deleteRequest.id(), ExceptionsHelper.detailedMessage(e)));
+                            new BulkItemResponse.Failure(deleteRequest.index(), deleteRequest.type(), deleteRequest.id(), ExceptionsHelper.detailedMessage(e), ExceptionsHelper.status(e)));
                     // nullify the request so it won't execute on the replicas
                     request.items()[i] = null;
                 }
@@ -283,7 +283,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                                 throw (ElasticSearchException) t;
                             }
                             if (updateResult.result == null) {
-                                responses[i] = new BulkItemResponse(item.id(), "update", new BulkItemResponse.Failure(updateRequest.index(), updateRequest.type(), updateRequest.id(), ExceptionsHelper.detailedMessage(t)));
+                                responses[i] = new BulkItemResponse(item.id(), "update", new BulkItemResponse.Failure(updateRequest.index(), updateRequest.type(), updateRequest.id(), ExceptionsHelper.detailedMessage(t), ExceptionsHelper.status(t)));
                             } else {
                                 switch (updateResult.result.operation()) {
                                     case UPSERT:
@@ -295,7 +295,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                                             logger.debug("[{}][{}] failed to execute bulk item (index) {}", t, shardRequest.request.index(), shardRequest.shardId, indexRequest);
                                         }
                                         responses[i] = new BulkItemResponse(item.id(), indexRequest.opType().lowercase(),
-                                                new BulkItemResponse.Failure(indexRequest.index(), indexRequest.type(), indexRequest.id(), ExceptionsHelper.detailedMessage(t)));
+                                                new BulkItemResponse.Failure(indexRequest.index(), indexRequest.type(), indexRequest.id(), ExceptionsHelper.detailedMessage(t), ExceptionsHelper.status(t)));
                                         break;
                                     case DELETE:
                                         DeleteRequest deleteRequest = updateResult.request();
@@ -305,7 +305,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                                             logger.debug("[{}][{}] failed to execute bulk item (delete) {}", t, shardRequest.request.index(), shardRequest.shardId, deleteRequest);
                                         }
                                         responses[i] = new BulkItemResponse(item.id(), "delete",
-                                                new BulkItemResponse.Failure(deleteRequest.index(), deleteRequest.type(), deleteRequest.id(), ExceptionsHelper.detailedMessage(t)));
+                                                new BulkItemResponse.Failure(deleteRequest.index(), deleteRequest.type(), deleteRequest.id(), ExceptionsHelper.detailedMessage(t), ExceptionsHelper.status(t)));
                                         break;
                                 }
                             }
@@ -376,21 +376,25 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                 .routing(indexRequest.routing()).parent(indexRequest.parent()).timestamp(indexRequest.timestamp()).ttl(indexRequest.ttl());
 
         long version;
+        long seqNo;
         Engine.IndexingOperation op;
         if (indexRequest.opType() == IndexRequest.OpType.INDEX) {
             Engine.Index index = indexShard.prepareIndex(sourceToParse).version(indexRequest.version()).versionType(indexRequest.versionType()).origin(Engine.Operation.Origin.PRIMARY);
             indexShard.index(index);
             version = index.version();
+            seqNo = index.seqNo();
             op = index;
         } else {
             Engine.Create create = indexShard.prepareCreate(sourceToParse).version(indexRequest.version()).versionType(indexRequest.versionType()).origin(Engine.Operation.Origin.PRIMARY);
             indexShard.create(create);
             version = create.version();
+            seqNo = create.seqNo();
             op = create;
         }
         long preVersion = indexRequest.version();
-        // update the version on request so it will happen on the replicas
+        // update the version and seq no on request so it will happen on the replicas
         indexRequest.version(version);
+        indexRequest.seqNo(seqNo);
 
         // update mapping on master if needed, we won't update changes to the same type, since once its changed, it won't have mappers added
         Tuple<String, String> mappingsToUpdate = null;
@@ -410,8 +414,9 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
     private WriteResult shardDeleteOperation(DeleteRequest deleteRequest, IndexShard indexShard) {
         Engine.Delete delete = indexShard.prepareDelete(deleteRequest.type(), deleteRequest.id(), deleteRequest.version()).versionType(deleteRequest.versionType()).origin(Engine.Operation.Origin.PRIMARY);
         indexShard.delete(delete);
-        // update the request with the version so it will go to the replicas
+        // update the request with the version and seq no so it will go to the replicas
         deleteRequest.version(delete.version());
+        deleteRequest.seqNo(delete.seqNo());
         DeleteResponse deleteResponse = new DeleteResponse(deleteRequest.index(), deleteRequest.type(), deleteRequest.id(), delete.version(), delete.notFound());
         return new WriteResult(deleteResponse, deleteRequest.version(), null, null);
     }
@@ -556,10 +561,10 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
                             .routing(indexRequest.routing()).parent(indexRequest.parent()).timestamp(indexRequest.timestamp()).ttl(indexRequest.ttl());
 
                     if (indexRequest.opType() == IndexRequest.OpType.INDEX) {
-                        Engine.Index index = indexShard.prepareIndex(sourceToParse).version(indexRequest.version()).origin(Engine.Operation.Origin.REPLICA);
+                        Engine.Index index = indexShard.prepareIndex(sourceToParse).version(indexRequest.version()).seqNo(indexRequest.seqNo()).origin(Engine.Operation.Origin.REPLICA);
                         indexShard.index(index);
                     } else {
-                        Engine.Create create = indexShard.prepareCreate(sourceToParse).version(indexRequest.version()).origin(Engine.Operation.Origin.REPLICA);
+                        Engine.Create create = indexShard.prepareCreate(sourceToParse).version(indexRequest.version()).seqNo(indexRequest.seqNo()).origin(Engine.Operation.Origin.REPLICA);
                         indexShard.create(create);
                     }
                 } catch (Exception e) {
@@ -568,7 +573,7 @@ public class TransportShardBulkAction extends TransportShardReplicationOperation
             } else if (item.request() instanceof DeleteRequest) {
                 DeleteRequest deleteRequest = (DeleteRequest) item.request();
                 try {
-                    Engine.Delete delete = indexShard.prepareDelete(deleteRequest.type(), deleteRequest.id(), deleteRequest.version()).origin(Engine.Operation.Origin.REPLICA);
+                    Engine.Delete delete = indexShard.prepareDelete(deleteRequest.type(), deleteRequest.id(), deleteRequest.version()).seqNo(deleteRequest.seqNo()).origin(Engine.Operation.Origin.REPLICA);
                     indexShard.delete(delete);
                 } catch (Exception e) {
                     // ignore, we are on backup
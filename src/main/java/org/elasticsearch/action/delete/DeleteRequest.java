@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.delete;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.action.support.replication.ShardReplicationOperationRequest;
 import org.elasticsearch.common.Nullable;
@@ -51,6 +52,7 @@ public class DeleteRequest extends ShardReplicationOperationRequest<DeleteReques
     private boolean refresh;
     private long version;
     private VersionType versionType = VersionType.INTERNAL;
+    private long seqNo = -1;
 
     /**
      * Constructs a new delete request against the specified index. The {@link #type(String)} and {@link #id(String)}
@@ -81,6 +83,7 @@ public class DeleteRequest extends ShardReplicationOperationRequest<DeleteReques
         this.refresh = request.refresh();
         this.version = request.version();
         this.versionType = request.versionType();
+        this.seqNo = request.seqNo();
     }
 
     public DeleteRequest() {
@@ -198,6 +201,19 @@ public class DeleteRequest extends ShardReplicationOperationRequest<DeleteReques
         return this.versionType;
     }
 
+    /**
+     * Sets the sequence number assigned to the operation by the primary shard, used when applying it on
+     * the replicas. Internal, set by the primary once the operation has been executed on it.
+     */
+    public DeleteRequest seqNo(long seqNo) {
+        this.seqNo = seqNo;
+        return this;
+    }
+
+    public long seqNo() {
+        return this.seqNo;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
@@ -207,6 +223,9 @@ public class DeleteRequest extends ShardReplicationOperationRequest<DeleteReques
         refresh = in.readBoolean();
         version = in.readLong();
         versionType = VersionType.fromValue(in.readByte());
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            seqNo = in.readLong();
+        }
     }
 
     @Override
@@ -218,6 +237,9 @@ public class DeleteRequest extends ShardReplicationOperationRequest<DeleteReques
         out.writeBoolean(refresh);
         out.writeLong(version);
         out.writeByte(versionType.getValue());
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            out.writeLong(seqNo);
+        }
     }
 
     @Override
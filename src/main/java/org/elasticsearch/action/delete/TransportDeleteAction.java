@@ -183,6 +183,7 @@ public class TransportDeleteAction extends TransportShardReplicationOperationAct
         indexShard.delete(delete);
         // update the request with teh version so it will go to the replicas
         request.version(delete.version());
+        request.seqNo(delete.seqNo());
 
         if (request.refresh()) {
             try {
@@ -201,6 +202,7 @@ public class TransportDeleteAction extends TransportShardReplicationOperationAct
         DeleteRequest request = shardRequest.request;
         IndexShard indexShard = indicesService.indexServiceSafe(shardRequest.request.index()).shardSafe(shardRequest.shardId);
         Engine.Delete delete = indexShard.prepareDelete(request.type(), request.id(), request.version())
+                .seqNo(request.seqNo())
                 .origin(Engine.Operation.Origin.REPLICA);
 
         indexShard.delete(delete);
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.action.delete.index;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.action.support.replication.ShardReplicationOperationRequest;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -38,6 +39,7 @@ public class ShardDeleteRequest extends ShardReplicationOperationRequest<ShardDe
     private String id;
     private boolean refresh = false;
     private long version;
+    private long seqNo = -1;
 
     ShardDeleteRequest(IndexDeleteRequest request, int shardId) {
         super(request);
@@ -91,6 +93,14 @@ public class ShardDeleteRequest extends ShardReplicationOperationRequest<ShardDe
         return this.version;
     }
 
+    public void seqNo(long seqNo) {
+        this.seqNo = seqNo;
+    }
+
+    public long seqNo() {
+        return this.seqNo;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
@@ -99,6 +109,9 @@ public class ShardDeleteRequest extends ShardReplicationOperationRequest<ShardDe
         id = in.readString();
         refresh = in.readBoolean();
         version = in.readLong();
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            seqNo = in.readLong();
+        }
     }
 
     @Override
@@ -109,5 +122,8 @@ public class ShardDeleteRequest extends ShardReplicationOperationRequest<ShardDe
         out.writeString(id);
         out.writeBoolean(refresh);
         out.writeLong(version);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            out.writeLong(seqNo);
+        }
     }
 }
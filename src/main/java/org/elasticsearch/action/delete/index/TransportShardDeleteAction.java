@@ -97,6 +97,7 @@ public class TransportShardDeleteAction extends TransportShardReplicationOperati
         indexShard.delete(delete);
         // update the version to happen on the replicas
         request.version(delete.version());
+        request.seqNo(delete.seqNo());
 
         if (request.refresh()) {
             try {
@@ -116,6 +117,7 @@ public class TransportShardDeleteAction extends TransportShardReplicationOperati
         ShardDeleteRequest request = shardRequest.request;
         IndexShard indexShard = indicesService.indexServiceSafe(shardRequest.request.index()).shardSafe(shardRequest.shardId);
         Engine.Delete delete = indexShard.prepareDelete(request.type(), request.id(), request.version())
+                .seqNo(request.seqNo())
                 .origin(Engine.Operation.Origin.REPLICA);
         indexShard.delete(delete);
 
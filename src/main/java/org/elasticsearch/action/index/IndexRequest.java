@@ -24,6 +24,7 @@ import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.ElasticSearchGenerationException;
 import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.ElasticSearchParseException;
+import org.elasticsearch.Version;
 import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.action.RoutingMissingException;
 import org.elasticsearch.action.support.replication.ShardReplicationOperationRequest;
@@ -132,6 +133,7 @@ public class IndexRequest extends ShardReplicationOperationRequest<IndexRequest>
     private boolean refresh = false;
     private long version = 0;
     private VersionType versionType = VersionType.INTERNAL;
+    private long seqNo = -1;
     private String percolate;
 
     private XContentType contentType = Requests.INDEX_CONTENT_TYPE;
@@ -533,6 +535,19 @@ public class IndexRequest extends ShardReplicationOperationRequest<IndexRequest>
         return this.versionType;
     }
 
+    /**
+     * Sets the sequence number assigned to the operation by the primary shard, used when applying it on
+     * the replicas. Internal, set by the primary once the operation has been executed on it.
+     */
+    public IndexRequest seqNo(long seqNo) {
+        this.seqNo = seqNo;
+        return this;
+    }
+
+    public long seqNo() {
+        return this.seqNo;
+    }
+
     /**
      * Causes the index request document to be percolated. The parameter is the percolate query
      * to use to reduce the percolated queries that are going to run against this doc. Can be
@@ -621,6 +636,9 @@ public class IndexRequest extends ShardReplicationOperationRequest<IndexRequest>
         version = in.readLong();
         percolate = in.readOptionalString();
         versionType = VersionType.fromValue(in.readByte());
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            seqNo = in.readLong();
+        }
     }
 
     @Override
@@ -638,6 +656,9 @@ public class IndexRequest extends ShardReplicationOperationRequest<IndexRequest>
         out.writeLong(version);
         out.writeOptionalString(percolate);
         out.writeByte(versionType.getValue());
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            out.writeLong(seqNo);
+        }
     }
 
     @Override
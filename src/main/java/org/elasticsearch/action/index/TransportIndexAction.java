@@ -198,6 +198,7 @@ public class TransportIndexAction extends TransportShardReplicationOperationActi
         SourceToParse sourceToParse = SourceToParse.source(request.source()).type(request.type()).id(request.id())
                 .routing(request.routing()).parent(request.parent()).timestamp(request.timestamp()).ttl(request.ttl());
         long version;
+        long seqNo;
         Engine.IndexingOperation op;
         if (request.opType() == IndexRequest.OpType.INDEX) {
             Engine.Index index = indexShard.prepareIndex(sourceToParse)
@@ -206,6 +207,7 @@ public class TransportIndexAction extends TransportShardReplicationOperationActi
                     .origin(Engine.Operation.Origin.PRIMARY);
             indexShard.index(index);
             version = index.version();
+            seqNo = index.seqNo();
             op = index;
         } else {
             Engine.Create create = indexShard.prepareCreate(sourceToParse)
@@ -214,6 +216,7 @@ public class TransportIndexAction extends TransportShardReplicationOperationActi
                     .origin(Engine.Operation.Origin.PRIMARY);
             indexShard.create(create);
             version = create.version();
+            seqNo = create.seqNo();
             op = create;
         }
         if (request.refresh()) {
@@ -226,8 +229,9 @@ public class TransportIndexAction extends TransportShardReplicationOperationActi
         if (op.parsedDoc().mappingsModified()) {
             updateMappingOnMaster(request);
         }
-        // update the version on the request, so it will be used for the replicas
+        // update the version and seq no on the request, so it will be used for the replicas
         request.version(version);
+        request.seqNo(seqNo);
 
         IndexResponse response = new IndexResponse(request.index(), request.type(), request.id(), version);
         return new PrimaryResponse<IndexResponse, IndexRequest>(shardRequest.request, response, op);
@@ -257,11 +261,13 @@ public class TransportIndexAction extends TransportShardReplicationOperationActi
         if (request.opType() == IndexRequest.OpType.INDEX) {
             Engine.Index index = indexShard.prepareIndex(sourceToParse)
                     .version(request.version())
+                    .seqNo(request.seqNo())
                     .origin(Engine.Operation.Origin.REPLICA);
             indexShard.index(index);
         } else {
             Engine.Create create = indexShard.prepareCreate(sourceToParse)
                     .version(request.version())
+                    .seqNo(request.seqNo())
                     .origin(Engine.Operation.Origin.REPLICA);
             indexShard.create(create);
         }
@@ -308,6 +308,15 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
 
+    /**
+     * Restricts the scroll to the slice <tt>id</tt> out of <tt>max</tt> disjoint slices of each shard, so that
+     * the slices can be scrolled over in parallel by independent consumers.
+     */
+    public SearchRequestBuilder setSlice(int id, int max) {
+        sourceBuilder().slice(id, max);
+        return this;
+    }
+
     /**
      * From index to start the search from. Defaults to <tt>0</tt>.
      */
@@ -443,6 +452,15 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
 
+    /**
+     * Starts the page right after the hit with the provided sort values (typically, the sort values of the last
+     * hit of the previous page), instead of using <tt>from</tt>. The sort must include <tt>_uid</tt>.
+     */
+    public SearchRequestBuilder setSearchAfter(Object... values) {
+        sourceBuilder().searchAfter(values);
+        return this;
+    }
+
     /**
      * Adds a sort against the given field name and the sort ordering.
      *
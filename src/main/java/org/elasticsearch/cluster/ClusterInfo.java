@@ -0,0 +1,196 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cluster;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.cluster.routing.ShardRouting;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A snapshot of per node disk usages, and per shard store sizes and load (search and indexing rates), gathered
+ * periodically by the {@link ClusterInfoService} on the master, and used when making allocation decisions.
+ */
+public class ClusterInfo {
+
+    public static final ClusterInfo EMPTY = new ClusterInfo(ImmutableMap.<String, DiskUsage>of(), ImmutableMap.<String, Long>of());
+
+    private final ImmutableMap<String, DiskUsage> nodeDiskUsages;
+    private final ImmutableMap<String, Long> shardSizes;
+    private final ImmutableMap<String, Double> shardSearchRates;
+    private final ImmutableMap<String, Double> shardIndexingRates;
+
+    // per shard (all copies) fallbacks, for copies that are not allocated yet or have no stats yet
+    private final Map<String, Long> maxShardSizes;
+    private final Map<String, Double> avgShardSearchRates;
+    private final Map<String, Double> avgShardIndexingRates;
+
+    public ClusterInfo(ImmutableMap<String, DiskUsage> nodeDiskUsages, ImmutableMap<String, Long> shardSizes) {
+        this(nodeDiskUsages, shardSizes, ImmutableMap.<String, Double>of(), ImmutableMap.<String, Double>of());
+    }
+
+    public ClusterInfo(ImmutableMap<String, DiskUsage> nodeDiskUsages, ImmutableMap<String, Long> shardSizes,
+                       ImmutableMap<String, Double> shardSearchRates, ImmutableMap<String, Double> shardIndexingRates) {
+        this.nodeDiskUsages = nodeDiskUsages;
+        this.shardSizes = shardSizes;
+        this.shardSearchRates = shardSearchRates;
+        this.shardIndexingRates = shardIndexingRates;
+        this.maxShardSizes = maxPerShard(shardSizes);
+        this.avgShardSearchRates = avgPerShard(shardSearchRates);
+        this.avgShardIndexingRates = avgPerShard(shardIndexingRates);
+    }
+
+    /**
+     * The disk usage per node id.
+     */
+    public ImmutableMap<String, DiskUsage> getNodeDiskUsages() {
+        return this.nodeDiskUsages;
+    }
+
+    /**
+     * The store size per shard copy, keyed by {@link #shardIdentifierFromRouting(ShardRouting)}.
+     */
+    public ImmutableMap<String, Long> getShardSizes() {
+        return this.shardSizes;
+    }
+
+    /**
+     * The search (query) rate per second per shard copy, keyed by {@link #shardIdentifierFromRouting(ShardRouting)}.
+     */
+    public ImmutableMap<String, Double> getShardSearchRates() {
+        return this.shardSearchRates;
+    }
+
+    /**
+     * The indexing rate (operations per second) per shard copy, keyed by {@link #shardIdentifierFromRouting(ShardRouting)}.
+     */
+    public ImmutableMap<String, Double> getShardIndexingRates() {
+        return this.shardIndexingRates;
+    }
+
+    /**
+     * The disk usage of the provided node, or <tt>null</tt> if not known.
+     */
+    public DiskUsage getNodeDiskUsage(String nodeId) {
+        return nodeDiskUsages.get(nodeId);
+    }
+
+    /**
+     * The store size of the provided shard copy. A relocation target falls back to the size of its source, and
+     * other copies without stats (for example a replica that is not allocated yet) to the largest copy of the
+     * same shard. Returns <tt>-1</tt> if not known.
+     */
+    public long getShardSize(ShardRouting shardRouting) {
+        Long size = lookup(shardSizes, shardRouting);
+        if (size == null) {
+            size = maxShardSizes.get(shardIdentifier(shardRouting.index(), shardRouting.id()));
+        }
+        return size == null ? -1 : size;
+    }
+
+    /**
+     * The search rate of the provided shard copy, falling back to the relocation source, or the average over
+     * the copies of the same shard, or <tt>-1</tt> if not known.
+     */
+    public double getShardSearchRate(ShardRouting shardRouting) {
+        return rate(shardSearchRates, avgShardSearchRates, shardRouting);
+    }
+
+    /**
+     * The indexing rate of the provided shard copy, falling back to the relocation source, or the average over
+     * the copies of the same shard, or <tt>-1</tt> if not known.
+     */
+    public double getShardIndexingRate(ShardRouting shardRouting) {
+        return rate(shardIndexingRates, avgShardIndexingRates, shardRouting);
+    }
+
+    private static double rate(ImmutableMap<String, Double> rates, Map<String, Double> avgRates, ShardRouting shardRouting) {
+        Double rate = lookup(rates, shardRouting);
+        if (rate == null) {
+            rate = avgRates.get(shardIdentifier(shardRouting.index(), shardRouting.id()));
+        }
+        return rate == null ? -1 : rate;
+    }
+
+    private static <T> T lookup(ImmutableMap<String, T> values, ShardRouting shardRouting) {
+        if (shardRouting.currentNodeId() == null) {
+            return null;
+        }
+        T value = values.get(shardIdentifierFromRouting(shardRouting));
+        if (value == null && shardRouting.initializing() && shardRouting.relocatingNodeId() != null) {
+            // the target of a relocation carries the same data and load as its source
+            value = values.get(shardIdentifier(shardRouting.index(), shardRouting.id(), shardRouting.relocatingNodeId()));
+        }
+        return value;
+    }
+
+    private static Map<String, Long> maxPerShard(ImmutableMap<String, Long> values) {
+        Map<String, Long> max = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : values.entrySet()) {
+            String shard = shardOf(entry.getKey());
+            Long current = max.get(shard);
+            if (current == null || current < entry.getValue()) {
+                max.put(shard, entry.getValue());
+            }
+        }
+        return max;
+    }
+
+    private static Map<String, Double> avgPerShard(ImmutableMap<String, Double> values) {
+        Map<String, double[]> sums = new HashMap<String, double[]>();
+        for (Map.Entry<String, Double> entry : values.entrySet()) {
+            String shard = shardOf(entry.getKey());
+            double[] sum = sums.get(shard);
+            if (sum == null) {
+                sum = new double[2];
+                sums.put(shard, sum);
+            }
+            sum[0] += entry.getValue();
+            sum[1]++;
+        }
+        Map<String, Double> avg = new HashMap<String, Double>();
+        for (Map.Entry<String, double[]> entry : sums.entrySet()) {
+            avg.put(entry.getKey(), entry.getValue()[0] / entry.getValue()[1]);
+        }
+        return avg;
+    }
+
+    private static String shardOf(String shardIdentifier) {
+        // strips the trailing [node] part
+        return shardIdentifier.substring(0, shardIdentifier.lastIndexOf('['));
+    }
+
+    /**
+     * The key of a shard copy, <tt>[index][shard][node]</tt>. Primaries and replicas of the same shard carry their
+     * own (and possibly very different) load, so each allocated copy is tracked on its own.
+     */
+    public static String shardIdentifierFromRouting(ShardRouting shardRouting) {
+        return shardIdentifier(shardRouting.index(), shardRouting.id(), shardRouting.currentNodeId());
+    }
+
+    public static String shardIdentifier(String index, int shardId, String nodeId) {
+        return shardIdentifier(index, shardId) + "[" + nodeId + "]";
+    }
+
+    static String shardIdentifier(String index, int shardId) {
+        return "[" + index + "][" + shardId + "]";
+    }
+}
@@ -68,6 +68,8 @@ public class ClusterModule extends AbstractModule implements SpawnModules {
         bind(MetaDataUpdateSettingsService.class).asEagerSingleton();
         bind(MetaDataIndexTemplateService.class).asEagerSingleton();
 
+        bind(InternalClusterInfoService.class).asEagerSingleton();
+        bind(ClusterInfoService.class).to(InternalClusterInfoService.class);
         bind(RoutingService.class).asEagerSingleton();
 
         bind(ShardStateAction.class).asEagerSingleton();
@@ -0,0 +1,84 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cluster;
+
+/**
+ * Disk usage of a single node, as reported by its file system stats (summed over all its data paths).
+ */
+public class DiskUsage {
+
+    private final String nodeId;
+    private final long totalBytes;
+    private final long freeBytes;
+
+    public DiskUsage(String nodeId, long totalBytes, long freeBytes) {
+        this.nodeId = nodeId;
+        this.totalBytes = totalBytes;
+        this.freeBytes = freeBytes;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getFreeBytes() {
+        return freeBytes;
+    }
+
+    public long getUsedBytes() {
+        return totalBytes - freeBytes;
+    }
+
+    /**
+     * The used disk, as a ratio between <tt>0.0</tt> and <tt>1.0</tt>.
+     */
+    public double getUsedDiskRatio() {
+        if (totalBytes <= 0) {
+            return 0.0;
+        }
+        return 1.0 - ((double) freeBytes / totalBytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        DiskUsage that = (DiskUsage) o;
+        return totalBytes == that.totalBytes && freeBytes == that.freeBytes && nodeId.equals(that.nodeId);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = nodeId.hashCode();
+        result = 31 * result + (int) (totalBytes ^ (totalBytes >>> 32));
+        result = 31 * result + (int) (freeBytes ^ (freeBytes >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + nodeId + "] free: " + freeBytes + "b, total: " + totalBytes + "b, used: " + ((int) (getUsedDiskRatio() * 100)) + "%";
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cluster;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsRequest;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.action.admin.cluster.node.stats.TransportNodesStatsAction;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsRequest;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.elasticsearch.action.admin.indices.stats.ShardStats;
+import org.elasticsearch.action.admin.indices.stats.TransportIndicesStatsAction;
+import org.elasticsearch.cluster.routing.allocation.allocator.BalancedShardsAllocator;
+import org.elasticsearch.cluster.routing.allocation.decider.DiskThresholdDecider;
+import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.monitor.fs.FsStats;
+import org.elasticsearch.node.settings.NodeSettingsService;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A {@link ClusterInfoService} that, while the local node is the elected master, periodically gathers the file
+ * system stats of all nodes and the store size of all shards (using the nodes stats and indices stats actions).
+ * The search and indexing rates of each shard are computed from the difference of its query and index counts
+ * between two consecutive updates.
+ * <p/>
+ * Only the info used by an enabled consumer is gathered: disk usages and shard sizes when the
+ * {@link DiskThresholdDecider} is enabled, shard sizes when balancing on disk, and shard rates when balancing on
+ * load. Nothing is gathered when none of them is enabled. Listeners are only notified when a node crosses one of
+ * the disk watermarks.
+ * <p/>
+ * The interval can be changed in real-time using <tt>cluster.info.update.interval</tt> (defaults to <tt>30s</tt>).
+ */
+public class InternalClusterInfoService extends AbstractLifecycleComponent<ClusterInfoService> implements ClusterInfoService, LocalNodeMasterListener {
+
+    public static final String INTERNAL_CLUSTER_INFO_UPDATE_INTERVAL = "cluster.info.update.interval";
+
+    class ApplySettings implements NodeSettingsService.Listener {
+        @Override
+        public void onRefreshSettings(Settings settings) {
+            TimeValue updateFrequency = settings.getAsTime(INTERNAL_CLUSTER_INFO_UPDATE_INTERVAL, InternalClusterInfoService.this.updateFrequency);
+            if (!updateFrequency.equals(InternalClusterInfoService.this.updateFrequency)) {
+                logger.info("updating [{}] from [{}] to [{}]", INTERNAL_CLUSTER_INFO_UPDATE_INTERVAL, InternalClusterInfoService.this.updateFrequency, updateFrequency);
+                InternalClusterInfoService.this.updateFrequency = updateFrequency;
+            }
+            applyConsumerSettings(settings);
+        }
+    }
+
+    private final TransportNodesStatsAction transportNodesStatsAction;
+    private final TransportIndicesStatsAction transportIndicesStatsAction;
+    private final ClusterService clusterService;
+    private final ThreadPool threadPool;
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    private volatile TimeValue updateFrequency;
+    private volatile ClusterInfo clusterInfo = ClusterInfo.EMPTY;
+
+    // the settings of the consumers of the info, deciding what needs to be gathered
+    private volatile boolean thresholdEnabled;
+    private volatile double lowWatermark;
+    private volatile double highWatermark;
+    private volatile boolean diskBalance;
+    private volatile boolean loadBalance;
+
+    // all guarded by this, the generation changes each time the local node is elected or stops being the master,
+    // so only the update jobs of the current term schedule further updates
+    private boolean isMaster = false;
+    private long generation;
+    private ScheduledFuture scheduledUpdate;
+
+    // only accessed by the (single, sequential) update job
+    private Map<String, long[]> previousShardCounts = new HashMap<String, long[]>();
+    private long previousShardCountsTime;
+
+    @Inject
+    public InternalClusterInfoService(Settings settings, NodeSettingsService nodeSettingsService, ClusterService clusterService, ThreadPool threadPool,
+                                      TransportNodesStatsAction transportNodesStatsAction, TransportIndicesStatsAction transportIndicesStatsAction) {
+        super(settings);
+        this.transportNodesStatsAction = transportNodesStatsAction;
+        this.transportIndicesStatsAction = transportIndicesStatsAction;
+        this.clusterService = clusterService;
+        this.threadPool = threadPool;
+        this.updateFrequency = settings.getAsTime(INTERNAL_CLUSTER_INFO_UPDATE_INTERVAL, TimeValue.timeValueSeconds(30));
+        this.thresholdEnabled = false;
+        this.lowWatermark = DiskThresholdDecider.parseWatermark("0.7");
+        this.highWatermark = DiskThresholdDecider.parseWatermark("0.85");
+        applyConsumerSettings(settings);
+        nodeSettingsService.addListener(new ApplySettings());
+    }
+
+    private void applyConsumerSettings(Settings settings) {
+        thresholdEnabled = settings.getAsBoolean(DiskThresholdDecider.CLUSTER_ROUTING_ALLOCATION_DISK_THRESHOLD_ENABLED, thresholdEnabled);
+        String low = settings.get(DiskThresholdDecider.CLUSTER_ROUTING_ALLOCATION_LOW_DISK_WATERMARK);
+        if (low != null) {
+            lowWatermark = DiskThresholdDecider.parseWatermark(low);
+        }
+        String high = settings.get(DiskThresholdDecider.CLUSTER_ROUTING_ALLOCATION_HIGH_DISK_WATERMARK);
+        if (high != null) {
+            highWatermark = DiskThresholdDecider.parseWatermark(high);
+        }
+        diskBalance = settings.getAsFloat(BalancedShardsAllocator.SETTING_DISK_BALANCE_FACTOR, diskBalance ? 1.0f : 0.0f) > 0.0f;
+        loadBalance = settings.getAsFloat(BalancedShardsAllocator.SETTING_LOAD_BALANCE_FACTOR, loadBalance ? 1.0f : 0.0f) > 0.0f;
+    }
+
+    @Override
+    protected void doStart() throws ElasticSearchException {
+        clusterService.add(this);
+    }
+
+    @Override
+    protected void doStop() throws ElasticSearchException {
+        clusterService.remove(this);
+        offMaster();
+    }
+
+    @Override
+    protected void doClose() throws ElasticSearchException {
+    }
+
+    @Override
+    public ClusterInfo getClusterInfo() {
+        return clusterInfo;
+    }
+
+    @Override
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public synchronized void onMaster() {
+        if (isMaster) {
+            // already updating
+            return;
+        }
+        isMaster = true;
+        generation++;
+        if (logger.isTraceEnabled()) {
+            logger.trace("elected as master, scheduling cluster info update tasks");
+        }
+        threadPool.generic().execute(new ClusterInfoUpdateJob(generation));
+    }
+
+    @Override
+    public synchronized void offMaster() {
+        isMaster = false;
+        generation++;
+        if (scheduledUpdate != null) {
+            scheduledUpdate.cancel(false);
+            scheduledUpdate = null;
+        }
+        // the info is only used by the master, don't hold on to it
+        clusterInfo = ClusterInfo.EMPTY;
+    }
+
+    @Override
+    public String executorName() {
+        return ThreadPool.Names.SAME;
+    }
+
+    private synchronized boolean isCurrent(long jobGeneration) {
+        return isMaster && jobGeneration == generation;
+    }
+
+    private synchronized void scheduleNextUpdate(long jobGeneration) {
+        if (!isMaster || jobGeneration != generation) {
+            return;
+        }
+        scheduledUpdate = threadPool.schedule(updateFrequency, ThreadPool.Names.GENERIC, new ClusterInfoUpdateJob(jobGeneration));
+    }
+
+    /**
+     * Sets the new info, keeping the current instance when nothing changed, so the allocation decision cache (which
+     * compares the info by identity) stays valid. Returns the info now in use.
+     */
+    private ClusterInfo setClusterInfo(ClusterInfo newInfo) {
+        ClusterInfo previousInfo = clusterInfo;
+        if (sameInfo(previousInfo, newInfo)) {
+            return previousInfo;
+        }
+        if (sameInfo(ClusterInfo.EMPTY, newInfo)) {
+            newInfo = ClusterInfo.EMPTY;
+        }
+        clusterInfo = newInfo;
+        return newInfo;
+    }
+
+    /**
+     * Returns <tt>true</tt> if both infos hold the same disk usages, shard sizes and shard rates.
+     */
+    public static boolean sameInfo(ClusterInfo info, ClusterInfo otherInfo) {
+        return info == otherInfo || (info.getNodeDiskUsages().equals(otherInfo.getNodeDiskUsages())
+                && info.getShardSizes().equals(otherInfo.getShardSizes())
+                && info.getShardSearchRates().equals(otherInfo.getShardSearchRates())
+                && info.getShardIndexingRates().equals(otherInfo.getShardIndexingRates()));
+    }
+
+    private void onNewInfo(ClusterInfo newInfo) {
+        ClusterInfo previousInfo = clusterInfo;
+        if (setClusterInfo(newInfo) == previousInfo) {
+            return;
+        }
+        if (!thresholdEnabled || !watermarkCrossed(previousInfo, newInfo, lowWatermark, highWatermark)) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.onNewInfo(newInfo);
+            } catch (Throwable t) {
+                logger.warn("failed to notify listener [{}] of new cluster info", t, listener);
+            }
+        }
+    }
+
+    /**
+     * Returns <tt>true</tt> if the disk usage of a node went over, or back under, one of the watermarks between the
+     * two infos.
+     */
+    public static boolean watermarkCrossed(ClusterInfo previousInfo, ClusterInfo newInfo, double lowWatermark, double highWatermark) {
+        for (DiskUsage usage : newInfo.getNodeDiskUsages().values()) {
+            DiskUsage previousUsage = previousInfo.getNodeDiskUsage(usage.getNodeId());
+            double previousRatio = previousUsage == null ? 0.0 : previousUsage.getUsedDiskRatio();
+            if (watermarkLevel(previousRatio, lowWatermark, highWatermark) != watermarkLevel(usage.getUsedDiskRatio(), lowWatermark, highWatermark)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int watermarkLevel(double usedDiskRatio, double lowWatermark, double highWatermark) {
+        if (usedDiskRatio > highWatermark) {
+            return 2;
+        }
+        return usedDiskRatio >= lowWatermark ? 1 : 0;
+    }
+
+    /**
+     * Gathers the node disk usages, then the shard sizes, and schedules the next update once done.
+     */
+    class ClusterInfoUpdateJob implements Runnable {
+
+        private final long generation;
+
+        ClusterInfoUpdateJob(long generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            if (!isCurrent(generation)) {
+                return;
+            }
+            if (!thresholdEnabled) {
+                // nothing needs the disk usages
+                updateShardStats(ImmutableMap.<String, DiskUsage>of());
+                return;
+            }
+            NodesStatsRequest nodesStatsRequest = new NodesStatsRequest().clear().fs(true);
+            transportNodesStatsAction.execute(nodesStatsRequest, new ActionListener<NodesStatsResponse>() {
+                @Override
+                public void onResponse(NodesStatsResponse nodesStatsResponse) {
+                    ImmutableMap.Builder<String, DiskUsage> nodeDiskUsages = ImmutableMap.builder();
+                    for (NodeStats nodeStats : nodesStatsResponse.getNodes()) {
+                        if (nodeStats.getFs() == null) {
+                            continue;
+                        }
+                        long total = 0;
+                        long available = 0;
+                        for (FsStats.Info info : nodeStats.getFs()) {
+                            if (info.getTotal().bytes() < 0 || info.getAvailable().bytes() < 0) {
+                                continue;
+                            }
+                            total += info.getTotal().bytes();
+                            available += info.getAvailable().bytes();
+                        }
+                        if (total > 0) {
+                            String nodeId = nodeStats.getNode().id();
+                            nodeDiskUsages.put(nodeId, new DiskUsage(nodeId, total, available));
+                        }
+                    }
+                    updateShardStats(nodeDiskUsages.build());
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    logger.warn("failed to retrieve node stats for the cluster info", e);
+                    scheduleNextUpdate(generation);
+                }
+            });
+        }
+
+        private void updateShardStats(final ImmutableMap<String, DiskUsage> nodeDiskUsages) {
+            final boolean sizes = thresholdEnabled || diskBalance;
+            final boolean rates = loadBalance;
+            if (!sizes && !rates) {
+                previousShardCounts = new HashMap<String, long[]>();
+                if (isCurrent(generation)) {
+                    setClusterInfo(new ClusterInfo(nodeDiskUsages, ImmutableMap.<String, Long>of()));
+                }
+                scheduleNextUpdate(generation);
+                return;
+            }
+            IndicesStatsRequest indicesStatsRequest = new IndicesStatsRequest().clear().store(sizes).search(rates).indexing(rates);
+            transportIndicesStatsAction.execute(indicesStatsRequest, new ActionListener<IndicesStatsResponse>() {
+                @Override
+                public void onResponse(IndicesStatsResponse indicesStatsResponse) {
+                    long now = System.currentTimeMillis();
+                    double elapsedSeconds = (now - previousShardCountsTime) / 1000.0;
+                    Map<String, Long> shardSizes = new HashMap<String, Long>();
+                    Map<String, Double> shardSearchRates = new HashMap<String, Double>();
+                    Map<String, Double> shardIndexingRates = new HashMap<String, Double>();
+                    Map<String, long[]> shardCounts = new HashMap<String, long[]>();
+                    for (ShardStats shardStats : indicesStatsResponse.getShards()) {
+                        String shardIdentifier = ClusterInfo.shardIdentifierFromRouting(shardStats.getShardRouting());
+                        if (shardStats.getStats().getStore() != null) {
+                            shardSizes.put(shardIdentifier, shardStats.getStats().getStore().sizeInBytes());
+                        }
+                        if (shardStats.getStats().getSearch() == null || shardStats.getStats().getIndexing() == null) {
+                            continue;
+                        }
+                        // the counts are per shard copy (the identifier includes the node), and start over when the copy moves
+                        long[] counts = new long[]{shardStats.getStats().getSearch().getTotal().getQueryCount(),
+                                shardStats.getStats().getIndexing().getTotal().getIndexCount()};
+                        shardCounts.put(shardIdentifier, counts);
+                        long[] previousCounts = previousShardCounts.get(shardIdentifier);
+                        if (previousCounts == null || elapsedSeconds <= 0 || counts[0] < previousCounts[0] || counts[1] < previousCounts[1]) {
+                            continue;
+                        }
+                        shardSearchRates.put(shardIdentifier, (counts[0] - previousCounts[0]) / elapsedSeconds);
+                        shardIndexingRates.put(shardIdentifier, (counts[1] - previousCounts[1]) / elapsedSeconds);
+                    }
+                    previousShardCounts = shardCounts;
+                    previousShardCountsTime = now;
+                    if (isCurrent(generation)) {
+                        onNewInfo(new ClusterInfo(nodeDiskUsages, ImmutableMap.copyOf(shardSizes), ImmutableMap.copyOf(shardSearchRates), ImmutableMap.copyOf(shardIndexingRates)));
+                    }
+                    scheduleNextUpdate(generation);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    logger.warn("failed to retrieve indices stats for the cluster info", e);
+                    if (isCurrent(generation)) {
+                        onNewInfo(new ClusterInfo(nodeDiskUsages, clusterInfo.getShardSizes(), clusterInfo.getShardSearchRates(), clusterInfo.getShardIndexingRates()));
+                    }
+                    scheduleNextUpdate(generation);
+                }
+            });
+        }
+    }
+}
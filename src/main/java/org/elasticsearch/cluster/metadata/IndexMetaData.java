@@ -169,6 +169,8 @@ public class IndexMetaData {
 
     private final ImmutableMap<String, Custom> customs;
 
+    private transient final int numberOfShards;
+    private transient final int numberOfReplicas;
     private transient final int totalNumberOfShards;
 
     private final DiscoveryNodeFilters requireFilters;
@@ -184,7 +186,9 @@ public class IndexMetaData {
         this.settings = settings;
         this.mappings = mappings;
         this.customs = customs;
-        this.totalNumberOfShards = numberOfShards() * (numberOfReplicas() + 1);
+        this.numberOfShards = settings.getAsInt(SETTING_NUMBER_OF_SHARDS, -1);
+        this.numberOfReplicas = settings.getAsInt(SETTING_NUMBER_OF_REPLICAS, -1);
+        this.totalNumberOfShards = numberOfShards * (numberOfReplicas + 1);
 
         this.aliases = aliases;
 
@@ -233,7 +237,7 @@ public class IndexMetaData {
     }
 
     public int numberOfShards() {
-        return settings.getAsInt(SETTING_NUMBER_OF_SHARDS, -1);
+        return numberOfShards;
     }
 
     public int getNumberOfShards() {
@@ -241,7 +245,7 @@ public class IndexMetaData {
     }
 
     public int numberOfReplicas() {
-        return settings.getAsInt(SETTING_NUMBER_OF_REPLICAS, -1);
+        return numberOfReplicas;
     }
 
     public int getNumberOfReplicas() {
@@ -65,13 +65,20 @@ public class RoutingService extends AbstractLifecycleComponent<RoutingService> i
     private volatile Future scheduledRoutingTableFuture;
 
     @Inject
-    public RoutingService(Settings settings, ThreadPool threadPool, ClusterService clusterService, AllocationService allocationService) {
+    public RoutingService(Settings settings, ThreadPool threadPool, ClusterService clusterService, AllocationService allocationService, ClusterInfoService clusterInfoService) {
         super(settings);
         this.threadPool = threadPool;
         this.clusterService = clusterService;
         this.allocationService = allocationService;
         this.schedule = componentSettings.getAsTime("schedule", timeValueSeconds(10));
         clusterService.addFirst(this);
+        // a node crossed a disk watermark, let the scheduled updater reroute with the new info
+        clusterInfoService.addListener(new ClusterInfoService.Listener() {
+            @Override
+            public void onNewInfo(ClusterInfo info) {
+                routingTableDirty = true;
+            }
+        });
     }
 
     @Override
@@ -0,0 +1,217 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.cluster.routing.allocation;
+
+import org.elasticsearch.cluster.ClusterInfo;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.ImmutableShardRouting;
+import org.elasticsearch.cluster.routing.MutableShardRouting;
+import org.elasticsearch.cluster.routing.RoutingNode;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.allocation.decider.Decision;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the decisions of the allocation deciders across reroutes. The deciders base their decisions on the meta data,
+ * the nodes and the cluster info (all immutable per cluster state, so compared by identity), on the shards allocated
+ * on the node and on the copies of the shard. Whether a shard can be rebalanced depends on the whole routing. A
+ * decision taken in the previous reroute is reused as long as none of its inputs changed.
+ * <p/>
+ * The cache holds the routing as of its creation, so it only serves (and records) decisions until the reroute changes
+ * the routing, see {@link #routingChanged()}.
+ */
+public class AllocationDecisionCache {
+
+    /**
+     * Takes all the decisions through the deciders, used when decisions are not cached.
+     */
+    public static final AllocationDecisionCache NO_CACHE = new AllocationDecisionCache();
+
+    private final MetaData metaData;
+    private final DiscoveryNodes nodes;
+    private final ClusterInfo clusterInfo;
+    private final Map<String, Set<ShardRouting>> shardsPerNode = new HashMap<String, Set<ShardRouting>>();
+    private final Map<ShardId, Set<ShardRouting>> copiesPerShard = new HashMap<ShardId, Set<ShardRouting>>();
+
+    private final Map<ShardRouting, Decision> canRemain = new HashMap<ShardRouting, Decision>();
+    private final Map<ShardRouting, Map<String, Decision>> canAllocate = new HashMap<ShardRouting, Map<String, Decision>>();
+    private final Map<ShardRouting, Decision> canRebalance = new HashMap<ShardRouting, Decision>();
+
+    // the cache of the previous reroute, only set if it was taken on the same meta data, nodes and cluster info
+    private AllocationDecisionCache previous;
+    private final Map<String, Boolean> sameNodeShards = new HashMap<String, Boolean>();
+    private final Map<ShardId, Boolean> sameCopies = new HashMap<ShardId, Boolean>();
+    private Boolean sameRouting;
+
+    private boolean live;
+
+    private AllocationDecisionCache() {
+        this.metaData = null;
+        this.nodes = null;
+        this.clusterInfo = null;
+        this.live = false;
+    }
+
+    /**
+     * Creates a cache on the current routing of the allocation, reusing the decisions of the provided cache (of the
+     * previous reroute, can be <tt>null</tt>) when possible.
+     */
+    public AllocationDecisionCache(RoutingAllocation allocation, AllocationDecisionCache previous) {
+        this.metaData = allocation.metaData();
+        this.nodes = allocation.nodes();
+        this.clusterInfo = allocation.clusterInfo();
+        for (RoutingNode routingNode : allocation.routingNodes()) {
+            Set<ShardRouting> nodeShards = new HashSet<ShardRouting>();
+            for (MutableShardRouting shard : routingNode) {
+                ShardRouting copy = new ImmutableShardRouting(shard);
+                nodeShards.add(copy);
+                addCopy(copy);
+            }
+            shardsPerNode.put(routingNode.nodeId(), nodeShards);
+        }
+        for (MutableShardRouting shard : allocation.routingNodes().unassigned()) {
+            addCopy(new ImmutableShardRouting(shard));
+        }
+        if (previous != null && previous.metaData == metaData && previous.nodes == nodes && previous.clusterInfo == clusterInfo) {
+            this.previous = previous;
+        }
+        this.live = true;
+    }
+
+    private void addCopy(ShardRouting copy) {
+        Set<ShardRouting> copies = copiesPerShard.get(copy.shardId());
+        if (copies == null) {
+            copies = new HashSet<ShardRouting>();
+            copiesPerShard.put(copy.shardId(), copies);
+        }
+        copies.add(copy);
+    }
+
+    /**
+     * Marks the routing as changed since the cache was created, decisions are taken through the deciders from now on.
+     */
+    public void routingChanged() {
+        live = false;
+    }
+
+    /**
+     * Drops the reference to the cache of the previous reroute, once done rerouting.
+     */
+    public void release() {
+        live = false;
+        previous = null;
+        sameNodeShards.clear();
+        sameCopies.clear();
+    }
+
+    public Decision canRemain(ShardRouting shardRouting, RoutingNode node, RoutingAllocation allocation) {
+        if (!cacheable(shardRouting, node.nodeId(), allocation)) {
+            return allocation.deciders().canRemain(shardRouting, node, allocation);
+        }
+        ShardRouting key = new ImmutableShardRouting(shardRouting);
+        Decision decision = null;
+        if (previous != null && sameNodeShards(node.nodeId()) && sameCopies(shardRouting.shardId())) {
+            decision = previous.canRemain.get(key);
+        }
+        if (decision == null) {
+            decision = allocation.deciders().canRemain(shardRouting, node, allocation);
+        }
+        canRemain.put(key, decision);
+        return decision;
+    }
+
+    public Decision canAllocate(ShardRouting shardRouting, RoutingNode node, RoutingAllocation allocation) {
+        if (!cacheable(shardRouting, node.nodeId(), allocation)) {
+            return allocation.deciders().canAllocate(shardRouting, node, allocation);
+        }
+        ShardRouting key = new ImmutableShardRouting(shardRouting);
+        Decision decision = null;
+        if (previous != null && sameNodeShards(node.nodeId()) && sameCopies(shardRouting.shardId())) {
+            Map<String, Decision> nodeDecisions = previous.canAllocate.get(key);
+            if (nodeDecisions != null) {
+                decision = nodeDecisions.get(node.nodeId());
+            }
+        }
+        if (decision == null) {
+            decision = allocation.deciders().canAllocate(shardRouting, node, allocation);
+        }
+        Map<String, Decision> nodeDecisions = canAllocate.get(key);
+        if (nodeDecisions == null) {
+            nodeDecisions = new HashMap<String, Decision>();
+            canAllocate.put(key, nodeDecisions);
+        }
+        nodeDecisions.put(node.nodeId(), decision);
+        return decision;
+    }
+
+    public Decision canRebalance(ShardRouting shardRouting, RoutingAllocation allocation) {
+        if (!live || allocation.ignoreDisable()) {
+            return allocation.deciders().canRebalance(shardRouting, allocation);
+        }
+        ShardRouting key = new ImmutableShardRouting(shardRouting);
+        Decision decision = null;
+        if (previous != null && sameRouting()) {
+            decision = previous.canRebalance.get(key);
+        }
+        if (decision == null) {
+            decision = allocation.deciders().canRebalance(shardRouting, allocation);
+        }
+        canRebalance.put(key, decision);
+        return decision;
+    }
+
+    private boolean cacheable(ShardRouting shardRouting, String nodeId, RoutingAllocation allocation) {
+        return live && !allocation.ignoreDisable() && !allocation.shouldIgnoreShardForNode(shardRouting.shardId(), nodeId);
+    }
+
+    private boolean sameNodeShards(String nodeId) {
+        Boolean same = sameNodeShards.get(nodeId);
+        if (same == null) {
+            Set<ShardRouting> previousShards = previous.shardsPerNode.get(nodeId);
+            same = previousShards != null && previousShards.equals(shardsPerNode.get(nodeId));
+            sameNodeShards.put(nodeId, same);
+        }
+        return same;
+    }
+
+    private boolean sameCopies(ShardId shardId) {
+        Boolean same = sameCopies.get(shardId);
+        if (same == null) {
+            Set<ShardRouting> previousCopies = previous.copiesPerShard.get(shardId);
+            same = previousCopies != null && previousCopies.equals(copiesPerShard.get(shardId));
+            sameCopies.put(shardId, same);
+        }
+        return same;
+    }
+
+    private boolean sameRouting() {
+        if (sameRouting == null) {
+            sameRouting = previous.shardsPerNode.equals(shardsPerNode) && previous.copiesPerShard.equals(copiesPerShard);
+        }
+        return sameRouting;
+    }
+}
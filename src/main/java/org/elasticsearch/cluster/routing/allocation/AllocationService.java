@@ -22,7 +22,9 @@ package org.elasticsearch.cluster.routing.allocation;
 import com.google.common.collect.Lists;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.ElasticSearchIllegalStateException;
+import org.elasticsearch.cluster.ClusterInfoService;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.EmptyClusterInfoService;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.routing.*;
 import org.elasticsearch.cluster.routing.allocation.allocator.ShardsAllocators;
@@ -55,6 +57,15 @@ public class AllocationService extends AbstractComponent {
 
     private final ShardsAllocators shardsAllocators;
 
+    private final ClusterInfoService clusterInfoService;
+
+    public static final String CLUSTER_ROUTING_ALLOCATION_CACHE_DECISIONS = "cluster.routing.allocation.cache_decisions";
+
+    private final boolean cacheDecisions;
+
+    // the decisions taken in the last reroute, reused by the next one when their inputs didn't change
+    private volatile AllocationDecisionCache lastDecisionCache;
+
     public AllocationService() {
         this(ImmutableSettings.Builder.EMPTY_SETTINGS);
     }
@@ -62,15 +73,18 @@ public class AllocationService extends AbstractComponent {
     public AllocationService(Settings settings) {
         this(settings,
                 new AllocationDeciders(settings, new NodeSettingsService(ImmutableSettings.Builder.EMPTY_SETTINGS)),
-                new ShardsAllocators(settings)
+                new ShardsAllocators(settings),
+                EmptyClusterInfoService.INSTANCE
         );
     }
 
     @Inject
-    public AllocationService(Settings settings, AllocationDeciders allocationDeciders, ShardsAllocators shardsAllocators) {
+    public AllocationService(Settings settings, AllocationDeciders allocationDeciders, ShardsAllocators shardsAllocators, ClusterInfoService clusterInfoService) {
         super(settings);
         this.allocationDeciders = allocationDeciders;
         this.shardsAllocators = shardsAllocators;
+        this.clusterInfoService = clusterInfoService;
+        this.cacheDecisions = settings.getAsBoolean(CLUSTER_ROUTING_ALLOCATION_CACHE_DECISIONS, true);
     }
 
     /**
@@ -86,7 +100,7 @@ public class AllocationService extends AbstractComponent {
         RoutingNodes routingNodes = clusterState.routingNodes();
         // shuffle the unassigned nodes, just so we won't have things like poison failed shards
         Collections.shuffle(routingNodes.unassigned());
-        StartedRerouteAllocation allocation = new StartedRerouteAllocation(allocationDeciders, routingNodes, clusterState.nodes(), startedShards);
+        StartedRerouteAllocation allocation = new StartedRerouteAllocation(allocationDeciders, routingNodes, clusterState.nodes(), clusterInfoService.getClusterInfo(), startedShards);
         boolean changed = applyStartedShards(routingNodes, startedShards);
         if (!changed) {
             return new RoutingAllocation.Result(false, clusterState.routingTable(), allocation.explanation());
@@ -107,7 +121,7 @@ public class AllocationService extends AbstractComponent {
         RoutingNodes routingNodes = clusterState.routingNodes();
         // shuffle the unassigned nodes, just so we won't have things like poison failed shards
         Collections.shuffle(routingNodes.unassigned());
-        FailedRerouteAllocation allocation = new FailedRerouteAllocation(allocationDeciders, routingNodes, clusterState.nodes(), failedShard);
+        FailedRerouteAllocation allocation = new FailedRerouteAllocation(allocationDeciders, routingNodes, clusterState.nodes(), clusterInfoService.getClusterInfo(), failedShard);
         boolean changed = applyFailedShard(allocation, failedShard, true);
         if (!changed) {
             return new RoutingAllocation.Result(false, clusterState.routingTable(), allocation.explanation());
@@ -122,7 +136,7 @@ public class AllocationService extends AbstractComponent {
         // we don't shuffle the unassigned shards here, to try and get as close as possible to
         // a consistent result of the effect the commands have on the routing
         // this allows systems to dry run the commands, see the resulting cluster state, and act on it
-        RoutingAllocation allocation = new RoutingAllocation(allocationDeciders, routingNodes, clusterState.nodes());
+        RoutingAllocation allocation = new RoutingAllocation(allocationDeciders, routingNodes, clusterState.nodes(), clusterInfoService.getClusterInfo());
         // we ignore disable allocation, because commands are explicit
         allocation.ignoreDisable(true);
         commands.execute(allocation);
@@ -143,7 +157,7 @@ public class AllocationService extends AbstractComponent {
         RoutingNodes routingNodes = clusterState.routingNodes();
         // shuffle the unassigned nodes, just so we won't have things like poison failed shards
         Collections.shuffle(routingNodes.unassigned());
-        RoutingAllocation allocation = new RoutingAllocation(allocationDeciders, routingNodes, clusterState.nodes());
+        RoutingAllocation allocation = new RoutingAllocation(allocationDeciders, routingNodes, clusterState.nodes(), clusterInfoService.getClusterInfo());
         if (!reroute(allocation)) {
             return new RoutingAllocation.Result(false, clusterState.routingTable(), allocation.explanation());
         }
@@ -159,7 +173,7 @@ public class AllocationService extends AbstractComponent {
         RoutingNodes routingNodes = clusterState.routingNodes();
         // shuffle the unassigned nodes, just so we won't have things like poison failed shards
         Collections.shuffle(routingNodes.unassigned());
-        RoutingAllocation allocation = new RoutingAllocation(allocationDeciders, routingNodes, clusterState.nodes());
+        RoutingAllocation allocation = new RoutingAllocation(allocationDeciders, routingNodes, clusterState.nodes(), clusterInfoService.getClusterInfo());
         Iterable<DiscoveryNode> dataNodes = allocation.nodes().dataNodes().values();
         boolean changed = false;
         // first, clear from the shards any node id they used to belong to that is now dead
@@ -192,19 +206,38 @@ public class AllocationService extends AbstractComponent {
         // will be moved to primary state and not wait for primaries to be allocated and recovered (*from gateway*)
         changed |= electPrimariesAndUnassignDanglingReplicas(allocation);
 
+        AllocationDecisionCache decisionCache = AllocationDecisionCache.NO_CACHE;
+        if (cacheDecisions) {
+            decisionCache = new AllocationDecisionCache(allocation, lastDecisionCache);
+            allocation.decisionCache(decisionCache);
+        }
+
         // now allocate all the unassigned to available nodes
         if (allocation.routingNodes().hasUnassigned()) {
-            changed |= shardsAllocators.allocateUnassigned(allocation);
+            if (shardsAllocators.allocateUnassigned(allocation)) {
+                decisionCache.routingChanged();
+                changed = true;
+            }
             // elect primaries again, in case this is needed with unassigned allocation
-            changed |= electPrimariesAndUnassignDanglingReplicas(allocation);
+            if (electPrimariesAndUnassignDanglingReplicas(allocation)) {
+                decisionCache.routingChanged();
+                changed = true;
+            }
         }
 
         // move shards that no longer can be allocated
-        changed |= moveShards(allocation);
+        if (moveShards(allocation)) {
+            decisionCache.routingChanged();
+            changed = true;
+        }
 
         // rebalance
         changed |= shardsAllocators.rebalance(allocation);
 
+        decisionCache.release();
+        if (cacheDecisions) {
+            lastDecisionCache = decisionCache;
+        }
         return changed;
     }
 
@@ -233,13 +266,14 @@ public class AllocationService extends AbstractComponent {
                 continue;
             }
             RoutingNode routingNode = allocation.routingNodes().node(shardRouting.currentNodeId());
-            Decision decision = allocation.deciders().canRemain(shardRouting, routingNode, allocation);
+            Decision decision = allocation.decisionCache().canRemain(shardRouting, routingNode, allocation);
             if (decision.type() == Decision.Type.NO) {
                 logger.debug("[{}][{}] allocated on [{}], but can no longer be allocated on it, moving...", shardRouting.index(), shardRouting.id(), routingNode.node());
                 boolean moved = shardsAllocators.move(shardRouting, routingNode, allocation);
                 if (!moved) {
                     logger.debug("[{}][{}] can't move", shardRouting.index(), shardRouting.id());
                 } else {
+                    allocation.decisionCache().routingChanged();
                     changed = true;
                 }
             }
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.cluster.routing.allocation;
 
+import org.elasticsearch.cluster.ClusterInfo;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.routing.RoutingNodes;
@@ -90,23 +91,29 @@ public class RoutingAllocation {
 
     private final DiscoveryNodes nodes;
 
+    private final ClusterInfo clusterInfo;
+
     private final AllocationExplanation explanation = new AllocationExplanation();
 
     private Map<ShardId, String> ignoredShardToNodes = null;
 
     private boolean ignoreDisable = false;
 
+    private AllocationDecisionCache decisionCache = AllocationDecisionCache.NO_CACHE;
+
     /**
      * Creates a new {@link RoutingAllocation}
      * 
      * @param deciders {@link AllocationDeciders} to used to make decisions for routing allocations
      * @param routingNodes Routing nodes in the current cluster 
      * @param nodes TODO: Documentation
+     * @param clusterInfo Disk usages and shard sizes gathered from the nodes, used by size aware allocation
      */
-    public RoutingAllocation(AllocationDeciders deciders, RoutingNodes routingNodes, DiscoveryNodes nodes) {
+    public RoutingAllocation(AllocationDeciders deciders, RoutingNodes routingNodes, DiscoveryNodes nodes, ClusterInfo clusterInfo) {
         this.deciders = deciders;
         this.routingNodes = routingNodes;
         this.nodes = nodes;
+        this.clusterInfo = clusterInfo;
     }
 
     /**
@@ -117,6 +124,18 @@ public class RoutingAllocation {
         return this.deciders;
     }
 
+    /**
+     * Get the cache the allocators take their decisions through, the decisions are not cached unless set
+     * @return cache of the allocation decisions
+     */
+    public AllocationDecisionCache decisionCache() {
+        return this.decisionCache;
+    }
+
+    public void decisionCache(AllocationDecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
     /**
      * Get routing table of current nodes
      * @return current routing table
@@ -149,6 +168,14 @@ public class RoutingAllocation {
         return nodes;
     }
 
+    /**
+     * Get the disk usages and shard sizes last gathered from the nodes
+     * @return cluster info, never <code>null</code>
+     */
+    public ClusterInfo clusterInfo() {
+        return clusterInfo;
+    }
+
     /**
      * Get explanations of current routing
      * @return explanation of routing
@@ -23,12 +23,14 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import org.apache.lucene.util.SorterTemplate;
 import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.cluster.ClusterInfo;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.routing.*;
+import org.elasticsearch.cluster.routing.allocation.AllocationDecisionCache;
 import org.elasticsearch.cluster.routing.allocation.FailedRerouteAllocation;
 import org.elasticsearch.cluster.routing.allocation.RoutingAllocation;
 import org.elasticsearch.cluster.routing.allocation.StartedRerouteAllocation;
-import org.elasticsearch.cluster.routing.allocation.decider.AllocationDeciders;
 import org.elasticsearch.cluster.routing.allocation.decider.Decision;
 import org.elasticsearch.cluster.routing.allocation.decider.Decision.Type;
 import org.elasticsearch.common.component.AbstractComponent;
@@ -44,7 +46,7 @@ import static org.elasticsearch.cluster.routing.ShardRoutingState.RELOCATING;
 
 /**
  * The {@link BalancedShardsAllocator} re-balances the nodes allocations
- * within an cluster based on a {@link WeightFunction}. The clusters balance is defined by four parameters which can be set
+ * within an cluster based on a {@link WeightFunction}. The clusters balance is defined by six parameters which can be set
  * in the cluster update API that allows changes in real-time:
  * <p/>
  * <ul><li><code>cluster.routing.allocation.balance.shard</code> - The <b>shard balance</b> defines the weight factor
@@ -53,6 +55,12 @@ import static org.elasticsearch.cluster.routing.ShardRoutingState.RELOCATING;
  * of {@link org.elasticsearch.cluster.routing.ShardRouting}s per index allocated on a specific node</li>
  * <li><code>cluster.routing.allocation.balance.primary</code> - the <b>primary balance</b> defines a weight factor for
  * the number of primaries of a specific index allocated on a node</li>
+ * <li><code>cluster.routing.allocation.balance.disk</code> - the <b>disk balance</b> defines a weight factor for
+ * the store size of the shards allocated on a node, as gathered by the {@link org.elasticsearch.cluster.ClusterInfoService}.
+ * Defaults to <tt>0.0</tt>, balancing on shard counts only</li>
+ * <li><code>cluster.routing.allocation.balance.load</code> - the <b>load balance</b> defines a weight factor for
+ * the search and indexing rates of the shards allocated on a node, as gathered by the
+ * {@link org.elasticsearch.cluster.ClusterInfoService}. Defaults to <tt>0.0</tt></li>
  * <li><code>cluster.routing.allocation.balance.threshold</code> - A <b>threshold</b> to set the minimal optimization
  * value of operations that should be performed</li>
  * </ul>
@@ -66,10 +74,14 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
     public static final String SETTING_INDEX_BALANCE_FACTOR = "cluster.routing.allocation.balance.index";
     public static final String SETTING_SHARD_BALANCE_FACTOR = "cluster.routing.allocation.balance.shard";
     public static final String SETTING_PRIMARY_BALANCE_FACTOR = "cluster.routing.allocation.balance.primary";
+    public static final String SETTING_DISK_BALANCE_FACTOR = "cluster.routing.allocation.balance.disk";
+    public static final String SETTING_LOAD_BALANCE_FACTOR = "cluster.routing.allocation.balance.load";
     
     private static final float DEFAULT_INDEX_BALANCE_FACTOR = 0.5f;
     private static final float DEFAULT_SHARD_BALANCE_FACTOR  = 0.45f;
     private static final float DEFAULT_PRIMARY_BALANCE_FACTOR = 0.05f;
+    private static final float DEFAULT_DISK_BALANCE_FACTOR = 0.0f;
+    private static final float DEFAULT_LOAD_BALANCE_FACTOR = 0.0f;
 
     class ApplySettings implements NodeSettingsService.Listener {
         @Override
@@ -77,16 +89,18 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
             final float indexBalance = settings.getAsFloat(SETTING_INDEX_BALANCE_FACTOR, weightFunction.indexBalance);
             final float shardBalance = settings.getAsFloat(SETTING_SHARD_BALANCE_FACTOR, weightFunction.shardBalance);
             final float primaryBalance = settings.getAsFloat(SETTING_PRIMARY_BALANCE_FACTOR, weightFunction.primaryBalance);
+            final float diskBalance = settings.getAsFloat(SETTING_DISK_BALANCE_FACTOR, weightFunction.diskBalance);
+            final float loadBalance = settings.getAsFloat(SETTING_LOAD_BALANCE_FACTOR, weightFunction.loadBalance);
             float threshold = settings.getAsFloat(SETTING_THRESHOLD, BalancedShardsAllocator.this.threshold);
             if (threshold <= 0.0f) {
                 throw new ElasticSearchIllegalArgumentException("threshold must be greater than 0.0f but was: " + threshold);
             }
             BalancedShardsAllocator.this.threshold = threshold;
-            BalancedShardsAllocator.this.weightFunction = new WeightFunction(indexBalance, shardBalance, primaryBalance);
+            BalancedShardsAllocator.this.weightFunction = new WeightFunction(indexBalance, shardBalance, primaryBalance, diskBalance, loadBalance);
         }
     }
 
-    private volatile WeightFunction weightFunction = new WeightFunction(DEFAULT_INDEX_BALANCE_FACTOR, DEFAULT_SHARD_BALANCE_FACTOR, DEFAULT_PRIMARY_BALANCE_FACTOR);
+    private volatile WeightFunction weightFunction = new WeightFunction(DEFAULT_INDEX_BALANCE_FACTOR, DEFAULT_SHARD_BALANCE_FACTOR, DEFAULT_PRIMARY_BALANCE_FACTOR, DEFAULT_DISK_BALANCE_FACTOR, DEFAULT_LOAD_BALANCE_FACTOR);
 
     private volatile float threshold = 1.0f;
     
@@ -154,14 +168,30 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         return weightFunction.shardBalance;
     }
 
+    /**
+     * Returns the disk (shard size) related weight factor.
+     */
+    public float getDiskBalance() {
+        return weightFunction.diskBalance;
+    }
+
+    /**
+     * Returns the load (search and indexing rates) related weight factor.
+     */
+    public float getLoadBalance() {
+        return weightFunction.loadBalance;
+    }
+
 
     /**
      * This class is the primary weight function used to create balanced over nodes and shards in the cluster.
-     * Currently this function has 3 properties:
+     * Currently this function has 5 properties:
      * <ul>
      * <li><code>index balance</code> - balance property over shards per index</li>
      * <li><code>shard balance</code> - balance property over shards per cluster</li>
      * <li><code>primary balance</code> - balance property over primaries per cluster</li>
+     * <li><code>disk balance</code> - balance property over the store size of the shards per cluster</li>
+     * <li><code>load balance</code> - balance property over the search and indexing rates of the shards per cluster</li>
      * </ul>
      * <p>
      * Each of these properties are expressed as factor such that the properties factor defines the relative importance of the property for the
@@ -179,30 +209,56 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
      * <li>
      * <code>weight<sub>primary</sub>(node, index) = primaryBalance * (node.numPrimaries() - avgPrimariesPerNode)</code>
      * </li>
+     * <li>
+     * <code>weight<sub>disk</sub>(node, index) = diskBalance * (node.sizeInBytes() - avgSizeInBytesPerNode) / avgShardSizeInBytes</code>
+     * </li>
+     * <li>
+     * <code>weight<sub>load</sub>(node, index) = loadBalance * (node.load() - avgLoadPerNode)</code>
+     * </li>
      * </ul>
-     * <code>weight(node, index) = weight<sub>index</sub>(node, index) + weight<sub>node</sub>(node, index) + weight<sub>primary</sub>(node, index)</code>
+     * The disk weight is expressed in "average shards" so it is comparable to the other properties. Shards of unknown size
+     * count as an average shard. Similarly, the load of a shard is the mean of its search rate relative to the average
+     * shard search rate and its indexing rate relative to the average shard indexing rate, so an average shard has a load
+     * of <tt>1.0</tt> and both query heavy and write heavy shards get spread.
+     * <code>weight(node, index) = weight<sub>index</sub>(node, index) + weight<sub>node</sub>(node, index) + weight<sub>primary</sub>(node, index) + weight<sub>disk</sub>(node, index) + weight<sub>load</sub>(node, index)</code>
      */
     public static class WeightFunction {
 
         private final float indexBalance;
         private final float shardBalance;
         private final float primaryBalance;
+        private final float diskBalance;
+        private final float loadBalance;
         private final EnumMap<Operation, float[]> thetaMap = new EnumMap<BalancedShardsAllocator.Operation, float[]>(Operation.class);
 
         public WeightFunction(float indexBalance, float shardBalance, float primaryBalance) {
-            float sum = indexBalance + shardBalance + primaryBalance;
+            this(indexBalance, shardBalance, primaryBalance, 0.0f);
+        }
+
+        public WeightFunction(float indexBalance, float shardBalance, float primaryBalance, float diskBalance) {
+            this(indexBalance, shardBalance, primaryBalance, diskBalance, 0.0f);
+        }
+
+        public WeightFunction(float indexBalance, float shardBalance, float primaryBalance, float diskBalance, float loadBalance) {
+            if (diskBalance < 0.0f) {
+                throw new ElasticSearchIllegalArgumentException("Disk balance factor must be >= 0 but was: " + diskBalance);
+            }
+            if (loadBalance < 0.0f) {
+                throw new ElasticSearchIllegalArgumentException("Load balance factor must be >= 0 but was: " + loadBalance);
+            }
+            float sum = indexBalance + shardBalance + primaryBalance + diskBalance + loadBalance;
             if (sum <= 0.0f) {
                 throw new ElasticSearchIllegalArgumentException("Balance factors must sum to a value > 0 but was: " + sum);
             }
-            final float[] defaultTheta = new float[] {  shardBalance / sum, indexBalance / sum, primaryBalance / sum };
+            final float[] defaultTheta = new float[] {  shardBalance / sum, indexBalance / sum, primaryBalance / sum, diskBalance / sum, loadBalance / sum };
             for(Operation operation : Operation.values()) {
                 switch(operation) {
                 case THRESHOLD_CHECK:
-                    sum = indexBalance + shardBalance;
+                    sum = indexBalance + shardBalance + diskBalance + loadBalance;
                     if (sum <= 0.0f) {
                         thetaMap.put(operation,  defaultTheta);
                     }
-                    thetaMap.put(operation,  new float[] { shardBalance / sum,  indexBalance / sum, 0});
+                    thetaMap.put(operation,  new float[] { shardBalance / sum,  indexBalance / sum, 0, diskBalance / sum, loadBalance / sum });
                     break;
                 case BALANCE:
                 case ALLOCATE:
@@ -216,6 +272,8 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
             this.indexBalance = indexBalance;
             this.shardBalance = shardBalance;
             this.primaryBalance = primaryBalance;
+            this.diskBalance = diskBalance;
+            this.loadBalance = loadBalance;
         }
 
         public float weight(Operation operation, Balancer balancer, ModelNode node, String index) {
@@ -224,7 +282,16 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
             final float weightPrimary = (node.numPrimaries() - balancer.avgPrimariesPerNode());
             final float[] theta = thetaMap.get(operation);
             assert theta != null;
-            return theta[0] * weightShard + theta[1] * weightIndex + theta[2] * weightPrimary;    
+            float weight = theta[0] * weightShard + theta[1] * weightIndex + theta[2] * weightPrimary;
+            if (theta[3] != 0.0f && balancer.avgShardSizeInBytes() > 0) {
+                final float weightDisk = (node.sizeInBytes(balancer) - balancer.avgSizeInBytesPerNode()) / balancer.avgShardSizeInBytes();
+                weight += theta[3] * weightDisk;
+            }
+            if (theta[4] != 0.0f && balancer.hasLoad()) {
+                final float weightLoad = node.load(balancer) - balancer.avgLoadPerNode();
+                weight += theta[4] * weightLoad;
+            }
+            return weight;
         }
 
     }
@@ -262,11 +329,19 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         private final ESLogger logger;
         private final Map<String, ModelNode> nodes = new HashMap<String, ModelNode>();
         private final HashSet<String> indices = new HashSet<String>();
+        // per index averages, looked up for every node / shard weight computation
+        private final Map<String, float[]> indexAverages = new HashMap<String, float[]>();
         private final RoutingAllocation allocation;
         private final WeightFunction weight;
 
         private final float threshold;
         private final MetaData metaData;
+        private final ClusterInfo clusterInfo;
+        private final float avgShardSizeInBytes;
+        private final float avgSizeInBytesPerNode;
+        private final float avgShardSearchRate;
+        private final float avgShardIndexingRate;
+        private final float avgLoadPerNode;
         
         private final Predicate<MutableShardRouting> assignedFilter = new Predicate<MutableShardRouting>() {
             @Override
@@ -285,6 +360,116 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                 nodes.put(node.nodeId(), new ModelNode(node.nodeId()));
             }
             metaData = allocation.routingNodes().metaData();
+            clusterInfo = allocation.clusterInfo();
+            if (clusterInfo.getShardSizes().isEmpty() || nodes.isEmpty()) {
+                avgShardSizeInBytes = 0;
+                avgSizeInBytesPerNode = 0;
+            } else {
+                long knownSize = 0;
+                int knownShards = 0;
+                int totalShards = 0;
+                for (IndexRoutingTable index : allocation.routingTable().indicesRouting().values()) {
+                    for (IndexShardRoutingTable shard : index) {
+                        for (ShardRouting shardRouting : shard) {
+                            totalShards++;
+                            long size = clusterInfo.getShardSize(shardRouting);
+                            if (size >= 0) {
+                                knownSize += size;
+                                knownShards++;
+                            }
+                        }
+                    }
+                }
+                avgShardSizeInBytes = knownShards == 0 ? 0 : ((float) knownSize) / knownShards;
+                avgSizeInBytesPerNode = (avgShardSizeInBytes * totalShards) / nodes.size();
+            }
+            if ((clusterInfo.getShardSearchRates().isEmpty() && clusterInfo.getShardIndexingRates().isEmpty()) || nodes.isEmpty()) {
+                avgShardSearchRate = 0;
+                avgShardIndexingRate = 0;
+                avgLoadPerNode = 0;
+            } else {
+                double searchRate = 0;
+                double indexingRate = 0;
+                int knownShards = 0;
+                int totalShards = 0;
+                for (IndexRoutingTable index : allocation.routingTable().indicesRouting().values()) {
+                    for (IndexShardRoutingTable shard : index) {
+                        for (ShardRouting shardRouting : shard) {
+                            totalShards++;
+                            double shardSearchRate = clusterInfo.getShardSearchRate(shardRouting);
+                            double shardIndexingRate = clusterInfo.getShardIndexingRate(shardRouting);
+                            if (shardSearchRate >= 0 && shardIndexingRate >= 0) {
+                                searchRate += shardSearchRate;
+                                indexingRate += shardIndexingRate;
+                                knownShards++;
+                            }
+                        }
+                    }
+                }
+                avgShardSearchRate = knownShards == 0 ? 0 : (float) (searchRate / knownShards);
+                avgShardIndexingRate = knownShards == 0 ? 0 : (float) (indexingRate / knownShards);
+                // each shard weighs 1.0 on average (see #shardLoad)
+                avgLoadPerNode = hasLoad() ? ((float) totalShards) / nodes.size() : 0;
+            }
+        }
+
+        /**
+         * Returns <code>true</code> if search or indexing rates are known for the shards
+         */
+        public boolean hasLoad() {
+            return avgShardSearchRate > 0 || avgShardIndexingRate > 0;
+        }
+
+        /**
+         * Returns the average load of the shards allocated per node
+         */
+        public float avgLoadPerNode() {
+            return avgLoadPerNode;
+        }
+
+        /**
+         * Returns the load of the given shard: the mean of its search and indexing rates, each relative to the
+         * average shard rate, so an average (or unknown) shard has a load of <tt>1.0</tt>
+         */
+        public float shardLoad(ShardRouting shard) {
+            double shardSearchRate = clusterInfo.getShardSearchRate(shard);
+            double shardIndexingRate = clusterInfo.getShardIndexingRate(shard);
+            if (shardSearchRate < 0 || shardIndexingRate < 0) {
+                return 1.0f;
+            }
+            float load = 0;
+            int kinds = 0;
+            if (avgShardSearchRate > 0) {
+                load += shardSearchRate / avgShardSearchRate;
+                kinds++;
+            }
+            if (avgShardIndexingRate > 0) {
+                load += shardIndexingRate / avgShardIndexingRate;
+                kinds++;
+            }
+            return kinds == 0 ? 1.0f : load / kinds;
+        }
+
+        /**
+         * Returns the average store size of a shard, or <tt>0</tt> if no shard sizes are known
+         */
+        public float avgShardSizeInBytes() {
+            return avgShardSizeInBytes;
+        }
+
+        /**
+         * Returns the average store size of the shards allocated per node
+         */
+        public float avgSizeInBytesPerNode() {
+            return avgSizeInBytesPerNode;
+        }
+
+        /**
+         * Returns the store size of the given shard, the average shard size if not known
+         */
+        public float shardSizeInBytes(ShardRouting shard) {
+            long size = clusterInfo.getShardSize(shard);
+            return size < 0 ? avgShardSizeInBytes : size;
         }
 
         /**
@@ -298,7 +483,7 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
          * Returns the average of shards per node for the given index
          */
         public float avgShardsPerNode(String index) {
-            return ((float) metaData.index(index).totalNumberOfShards()) / nodes.size();
+            return indexAverages(index)[0];
         }
 
         /**
@@ -319,7 +504,17 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
          * Returns the average of primaries per node for the given index
          */
         public float avgPrimariesPerNode(String index) {
-            return ((float) metaData.index(index).numberOfShards()) / nodes.size();
+            return indexAverages(index)[1];
+        }
+
+        private float[] indexAverages(String index) {
+            float[] averages = indexAverages.get(index);
+            if (averages == null) {
+                IndexMetaData indexMetaData = metaData.index(index);
+                averages = new float[]{((float) indexMetaData.totalNumberOfShards()) / nodes.size(), ((float) indexMetaData.numberOfShards()) / nodes.size()};
+                indexAverages.put(index, averages);
+            }
+            return averages;
         }
 
         /**
@@ -334,16 +529,15 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         }
 
         private boolean initialize(RoutingNodes routing) {
-            Collection<MutableShardRouting> shards = new ArrayList<MutableShardRouting>();
             if (logger.isTraceEnabled()) {
                 logger.trace("Start distributing Shards");
             }
-
-            for (IndexRoutingTable index : allocation.routingTable().indicesRouting().values()) {
-                indices.add(index.index());
-                for (IndexShardRoutingTable shard : index.getShards().values()) {
-                    shards.addAll(routing.shardsRoutingFor(index.index(), shard.shardId().id()));
-                }
+            indices.addAll(allocation.routingTable().indicesRouting().keySet());
+            /* only assigned shards make up the model, so walk the nodes once instead of looking up every shard copy
+             * across all the nodes, which is quadratic in the number of shards */
+            Collection<MutableShardRouting> shards = new ArrayList<MutableShardRouting>();
+            for (RoutingNode node : routing) {
+                shards.addAll(node.shards());
             }
             buildModelFromAssigned(Iterables.filter(shards, assignedFilter));
             return allocateUnassigned(allocation.routingNodes().unassigned(), allocation.routingNodes().ignoredUnassigned());
@@ -525,8 +719,9 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                     continue;
                 }
                 RoutingNode target = allocation.routingNodes().node(currentNode.getNodeId());
-                Decision decision = allocation.deciders().canAllocate(shard, target, allocation);
+                Decision decision = allocation.decisionCache().canAllocate(shard, target, allocation);
                 if (decision.type() == Type.YES) { // TODO maybe we can respect throtteling here too?
+                    allocation.decisionCache().routingChanged();
                     sourceNode.removeShard(shard);
                     final MutableShardRouting initializingShard = new MutableShardRouting(shard.index(), shard.id(), currentNode.getNodeId(),
                             shard.currentNodeId(), shard.primary(), INITIALIZING, shard.version() + 1);
@@ -587,7 +782,7 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
              * use the sorter to save some iterations. 
              */
             final RoutingNodes routingNodes = allocation.routingNodes();
-            final AllocationDeciders deciders = allocation.deciders();
+            final AllocationDecisionCache decisions = allocation.decisionCache();
             final Set<MutableShardRouting> currentRound = new TreeSet<MutableShardRouting>(new Comparator<MutableShardRouting>() {
                 @Override
                 public int compare(MutableShardRouting o1,
@@ -641,7 +836,7 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
 	                         * don't check deciders
 	                         */
                             if (currentWeight <= minWeight) {
-                                Decision currentDecision = deciders.canAllocate(shard, routingNodes.node(node.getNodeId()), allocation);
+                                Decision currentDecision = decisions.canAllocate(shard, routingNodes.node(node.getNodeId()), allocation);
                                 NOUPDATE:
                                 if (currentDecision.type() == Type.YES || currentDecision.type() == Type.THROTTLE) {
                                     if (currentWeight == minWeight) {
@@ -688,6 +883,7 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                                 logger.trace("Assigned shard [{}] to [{}]", shard, minNode.getNodeId());
                             }
                             routingNodes.node(minNode.getNodeId()).add(shard);
+                            decisions.routingChanged();
                             changed = true;
                             continue; // don't add to ignoreUnassigned
                         }
@@ -722,14 +918,14 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                 final RoutingNode node = allocation.routingNodes().node(minNode.getNodeId());
                 MutableShardRouting candidate = null;
                 Decision decision = null;
-                final AllocationDeciders deciders = allocation.deciders();
+                final AllocationDecisionCache decisions = allocation.decisionCache();
                 /* make a copy since we modify this list in the loop */
                 final ArrayList<MutableShardRouting> shards = new ArrayList<MutableShardRouting>(index.getAllShards());
                 for (MutableShardRouting shard : shards) {
                     if (shard.started()) {
                         // skip initializing, unassigned and relocating shards we can't relocate them anyway
-                        Decision allocationDecision = deciders.canAllocate(shard, node, allocation);
-                        Decision rebalanceDecission = deciders.canRebalance(shard, allocation);
+                        Decision allocationDecision = decisions.canAllocate(shard, node, allocation);
+                        Decision rebalanceDecission = decisions.canRebalance(shard, allocation);
 
                         if (((allocationDecision.type() == Type.YES) || (allocationDecision.type() == Type.THROTTLE))
                                 && ((rebalanceDecission.type() == Type.YES) || (rebalanceDecission.type() == Type.THROTTLE))) {
@@ -760,6 +956,7 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
                                     minNode.getNodeId());
                         }
                         /* now allocate on the cluster - if we are started we need to relocate the shard */
+                        decisions.routingChanged();
                         if (candidate.started()) {
                             RoutingNode lowRoutingNode = allocation.routingNodes().node(minNode.getNodeId());
                             lowRoutingNode.add(new MutableShardRouting(candidate.index(), candidate.id(), lowRoutingNode.nodeId(), candidate
@@ -790,6 +987,8 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
         /* cached stats - invalidated on add/remove and lazily calculated */
         private int numShards = -1;
         private int numPrimaries = -1;
+        private float sizeInBytes = -1;
+        private float load = -1;
 
         public ModelNode(String id) {
             this.id = id;
@@ -819,6 +1018,32 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
             return index == null ? 0 : index.numShards();
         }
 
+        public float sizeInBytes(Balancer balancer) {
+            if (sizeInBytes == -1) {
+                float sum = 0;
+                for (ModelIndex index : indices.values()) {
+                    for (MutableShardRouting shard : index.getAllShards()) {
+                        sum += balancer.shardSizeInBytes(shard);
+                    }
+                }
+                sizeInBytes = sum;
+            }
+            return sizeInBytes;
+        }
+
+        public float load(Balancer balancer) {
+            if (load == -1) {
+                float sum = 0;
+                for (ModelIndex index : indices.values()) {
+                    for (MutableShardRouting shard : index.getAllShards()) {
+                        sum += balancer.shardLoad(shard);
+                    }
+                }
+                load = sum;
+            }
+            return load;
+        }
+
         public int numPrimaries(String idx) {
             ModelIndex index = indices.get(idx);
             return index == null ? 0 : index.numPrimaries();
@@ -853,6 +1078,7 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
 
         public void addShard(MutableShardRouting shard, Decision decision) {
             numPrimaries = numShards = -1;
+            sizeInBytes = load = -1;
             ModelIndex index = indices.get(shard.index());
             if (index == null) {
                 index = new ModelIndex(shard.index());
@@ -863,6 +1089,7 @@ public class BalancedShardsAllocator extends AbstractComponent implements Shards
 
         public Decision removeShard(MutableShardRouting shard) {
             numPrimaries = numShards = -1;
+            sizeInBytes = load = -1;
             ModelIndex index = indices.get(shard.index());
             Decision removed = null;
             if (index != null) {
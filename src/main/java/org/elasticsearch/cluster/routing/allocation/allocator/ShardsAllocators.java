@@ -70,7 +70,10 @@ public class ShardsAllocators extends AbstractComponent implements ShardsAllocat
     @Override
     public boolean allocateUnassigned(RoutingAllocation allocation) {
         boolean changed = false;
-        changed |= gatewayAllocator.allocateUnassigned(allocation);
+        if (gatewayAllocator.allocateUnassigned(allocation)) {
+            allocation.decisionCache().routingChanged();
+            changed = true;
+        }
         changed |= allocator.allocateUnassigned(allocation);
         return changed;
     }
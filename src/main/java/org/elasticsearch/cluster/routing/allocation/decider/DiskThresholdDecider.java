@@ -0,0 +1,192 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.cluster.routing.allocation.decider;
+
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.cluster.ClusterInfo;
+import org.elasticsearch.cluster.DiskUsage;
+import org.elasticsearch.cluster.routing.MutableShardRouting;
+import org.elasticsearch.cluster.routing.RoutingNode;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.cluster.routing.allocation.RoutingAllocation;
+import org.elasticsearch.cluster.settings.Validator;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.settings.NodeSettingsService;
+
+import java.util.List;
+
+/**
+ * The {@link DiskThresholdDecider} checks the disk usage of the nodes, as gathered periodically by the
+ * {@link org.elasticsearch.cluster.ClusterInfoService}, against two watermarks:
+ * <ul>
+ * <li><tt>cluster.routing.allocation.disk.watermark.low</tt> - no shard is allocated on a node using more than this
+ * ratio of its disk (defaults to <tt>0.7</tt>, also accepts a percentage such as <tt>70%</tt>). A shard is also not
+ * allocated if its size would take the node over the high watermark.</li>
+ * <li><tt>cluster.routing.allocation.disk.watermark.high</tt> - shards are moved away from a node using more than this
+ * ratio of its disk (defaults to <tt>0.85</tt>), until the shards relocating away bring it back under.</li>
+ * </ul>
+ * The decider is disabled by default, and can be enabled using <tt>cluster.routing.allocation.disk.threshold_enabled</tt>.
+ * All settings can be changed in real-time via the cluster update API. Nodes with unknown disk usage are not restricted.
+ */
+public class DiskThresholdDecider extends AllocationDecider {
+
+    public static final String CLUSTER_ROUTING_ALLOCATION_DISK_THRESHOLD_ENABLED = "cluster.routing.allocation.disk.threshold_enabled";
+    public static final String CLUSTER_ROUTING_ALLOCATION_LOW_DISK_WATERMARK = "cluster.routing.allocation.disk.watermark.low";
+    public static final String CLUSTER_ROUTING_ALLOCATION_HIGH_DISK_WATERMARK = "cluster.routing.allocation.disk.watermark.high";
+
+    /**
+     * Validates a disk watermark, a ratio or a percentage (see {@link #parseWatermark(String)}).
+     */
+    public static final Validator WATERMARK_VALIDATOR = new Validator() {
+        @Override
+        public String validate(String setting, String value) {
+            try {
+                parseWatermark(value);
+            } catch (ElasticSearchIllegalArgumentException e) {
+                return e.getMessage();
+            }
+            return null;
+        }
+    };
+
+    class ApplySettings implements NodeSettingsService.Listener {
+        @Override
+        public void onRefreshSettings(Settings settings) {
+            boolean enabled = settings.getAsBoolean(CLUSTER_ROUTING_ALLOCATION_DISK_THRESHOLD_ENABLED, DiskThresholdDecider.this.enabled);
+            if (enabled != DiskThresholdDecider.this.enabled) {
+                logger.info("updating [{}] from [{}] to [{}]", CLUSTER_ROUTING_ALLOCATION_DISK_THRESHOLD_ENABLED, DiskThresholdDecider.this.enabled, enabled);
+                DiskThresholdDecider.this.enabled = enabled;
+            }
+            String lowWatermark = settings.get(CLUSTER_ROUTING_ALLOCATION_LOW_DISK_WATERMARK);
+            if (lowWatermark != null) {
+                double low = parseWatermark(lowWatermark);
+                if (low != DiskThresholdDecider.this.lowWatermark) {
+                    logger.info("updating [{}] from [{}] to [{}]", CLUSTER_ROUTING_ALLOCATION_LOW_DISK_WATERMARK, DiskThresholdDecider.this.lowWatermark, low);
+                    DiskThresholdDecider.this.lowWatermark = low;
+                }
+            }
+            String highWatermark = settings.get(CLUSTER_ROUTING_ALLOCATION_HIGH_DISK_WATERMARK);
+            if (highWatermark != null) {
+                double high = parseWatermark(highWatermark);
+                if (high != DiskThresholdDecider.this.highWatermark) {
+                    logger.info("updating [{}] from [{}] to [{}]", CLUSTER_ROUTING_ALLOCATION_HIGH_DISK_WATERMARK, DiskThresholdDecider.this.highWatermark, high);
+                    DiskThresholdDecider.this.highWatermark = high;
+                }
+            }
+        }
+    }
+
+    private volatile boolean enabled;
+    private volatile double lowWatermark;
+    private volatile double highWatermark;
+
+    @Inject
+    public DiskThresholdDecider(Settings settings, NodeSettingsService nodeSettingsService) {
+        super(settings);
+        this.enabled = settings.getAsBoolean(CLUSTER_ROUTING_ALLOCATION_DISK_THRESHOLD_ENABLED, false);
+        this.lowWatermark = parseWatermark(settings.get(CLUSTER_ROUTING_ALLOCATION_LOW_DISK_WATERMARK, "0.7"));
+        this.highWatermark = parseWatermark(settings.get(CLUSTER_ROUTING_ALLOCATION_HIGH_DISK_WATERMARK, "0.85"));
+        logger.debug("using [threshold_enabled] with [{}], [watermark.low] with [{}], [watermark.high] with [{}]", enabled, lowWatermark, highWatermark);
+        nodeSettingsService.addListener(new ApplySettings());
+    }
+
+    @Override
+    public Decision canAllocate(ShardRouting shardRouting, RoutingNode node, RoutingAllocation allocation) {
+        if (!enabled) {
+            return Decision.YES;
+        }
+        ClusterInfo clusterInfo = allocation.clusterInfo();
+        DiskUsage usage = clusterInfo.getNodeDiskUsage(node.nodeId());
+        if (usage == null || usage.getTotalBytes() <= 0) {
+            return Decision.YES;
+        }
+        // shards being recovered onto the node are not (fully) part of its disk usage yet
+        long usedBytes = usage.getUsedBytes() + sizeOfShards(clusterInfo, node, ShardRoutingState.INITIALIZING);
+        if (usedBytes >= lowWatermark * usage.getTotalBytes()) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("node [{}] is over the low disk watermark [{}], preventing allocation of [{}]", usage, lowWatermark, shardRouting);
+            }
+            return Decision.NO;
+        }
+        long shardSize = clusterInfo.getShardSize(shardRouting);
+        if (shardSize > 0 && usedBytes + shardSize >= highWatermark * usage.getTotalBytes()) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("allocating [{}] of size [{}] would take node [{}] over the high disk watermark [{}]", shardRouting, shardSize, usage, highWatermark);
+            }
+            return Decision.NO;
+        }
+        return Decision.YES;
+    }
+
+    @Override
+    public Decision canRemain(ShardRouting shardRouting, RoutingNode node, RoutingAllocation allocation) {
+        if (!enabled) {
+            return Decision.YES;
+        }
+        ClusterInfo clusterInfo = allocation.clusterInfo();
+        DiskUsage usage = clusterInfo.getNodeDiskUsage(node.nodeId());
+        if (usage == null || usage.getTotalBytes() <= 0) {
+            return Decision.YES;
+        }
+        // shards already relocating away will free their space, only move as many shards as needed
+        long usedBytes = usage.getUsedBytes() - sizeOfShards(clusterInfo, node, ShardRoutingState.RELOCATING);
+        if (usedBytes > highWatermark * usage.getTotalBytes()) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("node [{}] is over the high disk watermark [{}], moving away [{}]", usage, highWatermark, shardRouting);
+            }
+            return Decision.NO;
+        }
+        return Decision.YES;
+    }
+
+    private long sizeOfShards(ClusterInfo clusterInfo, RoutingNode node, ShardRoutingState state) {
+        long size = 0;
+        List<MutableShardRouting> shards = node.shards();
+        for (int i = 0; i < shards.size(); i++) {
+            MutableShardRouting shard = shards.get(i);
+            if (shard.state() == state) {
+                size += Math.max(0, clusterInfo.getShardSize(shard));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Parses a watermark, either as a ratio (<tt>0.85</tt>) or as a percentage (<tt>85%</tt>).
+     */
+    public static double parseWatermark(String watermark) {
+        try {
+            double value;
+            if (watermark.endsWith("%")) {
+                value = Double.parseDouble(watermark.substring(0, watermark.length() - 1).trim()) / 100.0;
+            } else {
+                value = Double.parseDouble(watermark.trim());
+            }
+            if (value < 0.0 || value > 1.0) {
+                throw new ElasticSearchIllegalArgumentException("disk watermark [" + watermark + "] must be between 0 and 1 (or 0% and 100%)");
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new ElasticSearchIllegalArgumentException("failed to parse disk watermark [" + watermark + "]", e);
+        }
+    }
+}
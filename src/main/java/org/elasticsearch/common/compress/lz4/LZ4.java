@@ -0,0 +1,263 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.common.compress.lz4;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A pure java implementation of the LZ4 block format (fast compression, using a single hash table lookup per
+ * position, and a safe decompressor, checking all bounds so corrupted input can't read or write out of range).
+ */
+public final class LZ4 {
+
+    static final int MIN_MATCH = 4;
+    static final int HASH_LOG = 12;
+    static final int HASH_TABLE_SIZE = 1 << HASH_LOG;
+    static final int MAX_DISTANCE = (1 << 16) - 1;
+    static final int SKIP_STRENGTH = 6;
+
+    // the last 5 bytes are always literals, and the last match must start at least 12 bytes before the end
+    static final int LAST_LITERALS = 5;
+    static final int MF_LIMIT = 12;
+    static final int MIN_LENGTH = MF_LIMIT + 1;
+
+    static final int ML_BITS = 4;
+    static final int ML_MASK = (1 << ML_BITS) - 1;
+    static final int RUN_MASK = (1 << (8 - ML_BITS)) - 1;
+
+    private LZ4() {
+    }
+
+    /**
+     * The maximum size the provided length can be compressed into.
+     */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Creates a hash table to be used (and reused) with {@link #compress(byte[], int, int, byte[], int, int[])}.
+     */
+    public static int[] newHashTable() {
+        return new int[HASH_TABLE_SIZE];
+    }
+
+    private static int readInt(byte[] buf, int i) {
+        return (buf[i] & 0xFF) | ((buf[i + 1] & 0xFF) << 8) | ((buf[i + 2] & 0xFF) << 16) | ((buf[i + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int i) {
+        return (i * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeLength(int length, byte[] dest, int dOff) {
+        while (length >= 0xFF) {
+            dest[dOff++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        dest[dOff++] = (byte) length;
+        return dOff;
+    }
+
+    private static int writeLiterals(byte[] src, int anchor, int literalLength, byte[] dest, int tokenOff, int dOff) {
+        if (literalLength >= RUN_MASK) {
+            dest[tokenOff] = (byte) (RUN_MASK << ML_BITS);
+            dOff = writeLength(literalLength - RUN_MASK, dest, dOff);
+        } else {
+            dest[tokenOff] = (byte) (literalLength << ML_BITS);
+        }
+        System.arraycopy(src, anchor, dest, dOff, literalLength);
+        return dOff + literalLength;
+    }
+
+    /**
+     * Compresses the source bytes into dest, which must have at least {@link #maxCompressedLength(int)} bytes
+     * available, returning the compressed length.
+     */
+    public static int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int[] hashTable) {
+        final int srcEnd = srcOff + srcLen;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        final int mfLimit = srcEnd - MF_LIMIT;
+
+        int sOff = srcOff;
+        int dOff = destOff;
+        int anchor = sOff;
+
+        if (srcLen >= MIN_LENGTH) {
+            Arrays.fill(hashTable, -1);
+            sOff++;
+
+            main:
+            while (true) {
+                // find a match, skipping faster over incompressible data
+                int ref;
+                int forwardOff = sOff;
+                int step = 1;
+                int searchMatchNb = 1 << SKIP_STRENGTH;
+                do {
+                    sOff = forwardOff;
+                    forwardOff += step;
+                    step = searchMatchNb++ >>> SKIP_STRENGTH;
+                    if (forwardOff > mfLimit) {
+                        break main;
+                    }
+                    int h = hash(readInt(src, sOff));
+                    ref = hashTable[h];
+                    hashTable[h] = sOff;
+                } while (ref == -1 || sOff - ref > MAX_DISTANCE || readInt(src, ref) != readInt(src, sOff));
+
+                // catch up with the bytes preceding the match
+                while (sOff > anchor && ref > srcOff && src[sOff - 1] == src[ref - 1]) {
+                    sOff--;
+                    ref--;
+                }
+
+                int tokenOff = dOff++;
+                dOff = writeLiterals(src, anchor, sOff - anchor, dest, tokenOff, dOff);
+
+                while (true) {
+                    int offset = sOff - ref;
+                    dest[dOff++] = (byte) offset;
+                    dest[dOff++] = (byte) (offset >>> 8);
+
+                    sOff += MIN_MATCH;
+                    ref += MIN_MATCH;
+                    int matchLength = 0;
+                    while (sOff < matchLimit && src[sOff] == src[ref]) {
+                        sOff++;
+                        ref++;
+                        matchLength++;
+                    }
+                    if (matchLength >= ML_MASK) {
+                        dest[tokenOff] |= ML_MASK;
+                        dOff = writeLength(matchLength - ML_MASK, dest, dOff);
+                    } else {
+                        dest[tokenOff] |= matchLength;
+                    }
+
+                    anchor = sOff;
+                    if (sOff > mfLimit) {
+                        break main;
+                    }
+
+                    hashTable[hash(readInt(src, sOff - 2))] = sOff - 2;
+
+                    // check for an immediate match, with no literals in between
+                    int h = hash(readInt(src, sOff));
+                    ref = hashTable[h];
+                    hashTable[h] = sOff;
+                    if (ref == -1 || sOff - ref > MAX_DISTANCE || readInt(src, ref) != readInt(src, sOff)) {
+                        break;
+                    }
+                    tokenOff = dOff++;
+                    dest[tokenOff] = 0;
+                }
+                sOff++;
+            }
+        }
+
+        // last literals
+        int tokenOff = dOff++;
+        dOff = writeLiterals(src, anchor, srcEnd - anchor, dest, tokenOff, dOff);
+        return dOff - destOff;
+    }
+
+    /**
+     * Decompresses exactly <tt>srcLen</tt> compressed bytes into exactly <tt>destLen</tt> bytes, failing if the
+     * compressed data is corrupted.
+     */
+    public static void decompress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff, int destLen) throws IOException {
+        final int srcEnd = srcOff + srcLen;
+        final int destEnd = destOff + destLen;
+
+        int sOff = srcOff;
+        int dOff = destOff;
+        while (true) {
+            if (sOff >= srcEnd) {
+                throw new IOException("corrupted lz4 data, unexpected end of input");
+            }
+            int token = src[sOff++] & 0xFF;
+
+            int literalLength = token >>> ML_BITS;
+            if (literalLength == RUN_MASK) {
+                int len;
+                do {
+                    if (sOff >= srcEnd) {
+                        throw new IOException("corrupted lz4 data, unexpected end of input");
+                    }
+                    len = src[sOff++] & 0xFF;
+                    literalLength += len;
+                } while (len == 0xFF && literalLength <= destLen);
+            }
+            if (literalLength > srcEnd - sOff || literalLength > destEnd - dOff) {
+                throw new IOException("corrupted lz4 data, literals out of bounds");
+            }
+            System.arraycopy(src, sOff, dest, dOff, literalLength);
+            sOff += literalLength;
+            dOff += literalLength;
+
+            if (sOff == srcEnd) {
+                // the last sequence only has literals
+                break;
+            }
+
+            if (srcEnd - sOff < 2) {
+                throw new IOException("corrupted lz4 data, unexpected end of input");
+            }
+            int offset = (src[sOff] & 0xFF) | ((src[sOff + 1] & 0xFF) << 8);
+            sOff += 2;
+            int ref = dOff - offset;
+            if (offset == 0 || ref < destOff) {
+                throw new IOException("corrupted lz4 data, match offset out of bounds");
+            }
+
+            int matchLength = token & ML_MASK;
+            if (matchLength == ML_MASK) {
+                int len;
+                do {
+                    if (sOff >= srcEnd) {
+                        throw new IOException("corrupted lz4 data, unexpected end of input");
+                    }
+                    len = src[sOff++] & 0xFF;
+                    matchLength += len;
+                } while (len == 0xFF && matchLength <= destLen);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > destEnd - dOff) {
+                throw new IOException("corrupted lz4 data, match out of bounds");
+            }
+
+            if (offset >= matchLength) {
+                System.arraycopy(dest, ref, dest, dOff, matchLength);
+                dOff += matchLength;
+            } else {
+                // overlapping match, copy byte by byte to repeat the pattern
+                for (int end = dOff + matchLength; dOff < end; ) {
+                    dest[dOff++] = dest[ref++];
+                }
+            }
+        }
+        if (dOff != destEnd) {
+            throw new IOException("corrupted lz4 data, expected [" + destLen + "] bytes, got [" + (dOff - destOff) + "]");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.common.compress.lz4;
+
+import java.lang.ref.SoftReference;
+
+/**
+ * Per thread recycling of the (chunk sized) buffers used by the lz4 streams, so creating a stream, typically
+ * per transport message, doesn't allocate them each time. A buffer is taken out of the recycler while in use,
+ * so nested streams on the same thread simply allocate their own.
+ */
+final class LZ4BufferRecycler {
+
+    private static final ThreadLocal<SoftReference<LZ4BufferRecycler>> recyclers = new ThreadLocal<SoftReference<LZ4BufferRecycler>>();
+
+    static LZ4BufferRecycler instance() {
+        SoftReference<LZ4BufferRecycler> ref = recyclers.get();
+        LZ4BufferRecycler recycler = ref == null ? null : ref.get();
+        if (recycler == null) {
+            recycler = new LZ4BufferRecycler();
+            recyclers.set(new SoftReference<LZ4BufferRecycler>(recycler));
+        }
+        return recycler;
+    }
+
+    private byte[] uncompressed;
+    private byte[] compressed;
+    private int[] hashTable;
+
+    byte[] allocUncompressed(int size) {
+        byte[] buf = uncompressed;
+        if (buf == null || buf.length < size) {
+            return new byte[size];
+        }
+        uncompressed = null;
+        return buf;
+    }
+
+    void releaseUncompressed(byte[] buf) {
+        if (uncompressed == null || buf.length > uncompressed.length) {
+            uncompressed = buf;
+        }
+    }
+
+    byte[] allocCompressed(int size) {
+        byte[] buf = compressed;
+        if (buf == null || buf.length < size) {
+            return new byte[size];
+        }
+        compressed = null;
+        return buf;
+    }
+
+    void releaseCompressed(byte[] buf) {
+        if (compressed == null || buf.length > compressed.length) {
+            compressed = buf;
+        }
+    }
+
+    int[] allocHashTable() {
+        int[] table = hashTable;
+        if (table == null) {
+            return LZ4.newHashTable();
+        }
+        hashTable = null;
+        return table;
+    }
+
+    void releaseHashTable(int[] table) {
+        hashTable = table;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.common.compress.lz4;
+
+import org.elasticsearch.common.compress.CompressedStreamInput;
+import org.elasticsearch.common.io.stream.StreamInput;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads the chunks written by {@link LZ4CompressedStreamOutput}.
+ */
+public class LZ4CompressedStreamInput extends CompressedStreamInput<LZ4CompressorContext> {
+
+    private final LZ4BufferRecycler recycler;
+    private byte[] compressed;
+
+    public LZ4CompressedStreamInput(StreamInput in) throws IOException {
+        super(in, LZ4CompressorContext.INSTANCE);
+        this.recycler = LZ4BufferRecycler.instance();
+        this.uncompressed = recycler.allocUncompressed(LZ4Compressor.CHUNK_SIZE);
+        this.compressed = recycler.allocCompressed(LZ4.maxCompressedLength(LZ4Compressor.CHUNK_SIZE));
+    }
+
+    @Override
+    protected void readHeader(StreamInput in) throws IOException {
+        byte[] header = new byte[LZ4Compressor.HEADER.length];
+        in.readBytes(header, 0, header.length);
+        if (!Arrays.equals(header, LZ4Compressor.HEADER)) {
+            throw new IOException("wrong lz4 compressed header [" + Arrays.toString(header) + "]");
+        }
+    }
+
+    @Override
+    protected int uncompress(StreamInput in, byte[] out) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return -1;
+        }
+        int length = in.readVInt();
+        if (length < 0 || length > out.length) {
+            throw new IOException("corrupted lz4 stream, invalid chunk length [" + length + "]");
+        }
+        if (type == LZ4Compressor.CHUNK_STORED) {
+            in.readBytes(out, 0, length);
+        } else if (type == LZ4Compressor.CHUNK_COMPRESSED) {
+            int compressedLength = in.readVInt();
+            if (compressedLength < 0 || compressedLength > compressed.length) {
+                throw new IOException("corrupted lz4 stream, invalid compressed chunk length [" + compressedLength + "]");
+            }
+            in.readBytes(compressed, 0, compressedLength);
+            LZ4.decompress(compressed, 0, compressedLength, out, 0, length);
+        } else {
+            throw new IOException("corrupted lz4 stream, unknown chunk type [" + type + "]");
+        }
+        return length;
+    }
+
+    @Override
+    protected void doClose() throws IOException {
+        byte[] buf = compressed;
+        if (buf != null) {
+            compressed = null;
+            recycler.releaseCompressed(buf);
+        }
+        buf = uncompressed;
+        if (buf != null) {
+            uncompressed = null;
+            recycler.releaseUncompressed(buf);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.common.compress.lz4;
+
+import org.elasticsearch.common.compress.CompressedStreamOutput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * Writes the {@link LZ4Compressor#HEADER}, followed by chunks of up to {@link LZ4Compressor#CHUNK_SIZE}
+ * uncompressed bytes, each written as a type byte, the uncompressed length, and for compressed chunks the
+ * compressed length, followed by the data. Chunks that don't compress are stored as is.
+ */
+public class LZ4CompressedStreamOutput extends CompressedStreamOutput<LZ4CompressorContext> {
+
+    private final LZ4BufferRecycler recycler;
+    private byte[] compressed;
+    private int[] hashTable;
+
+    public LZ4CompressedStreamOutput(StreamOutput out) throws IOException {
+        super(out, LZ4CompressorContext.INSTANCE);
+        this.recycler = LZ4BufferRecycler.instance();
+        this.uncompressed = recycler.allocUncompressed(LZ4Compressor.CHUNK_SIZE);
+        this.uncompressedLength = LZ4Compressor.CHUNK_SIZE;
+        this.compressed = recycler.allocCompressed(LZ4.maxCompressedLength(LZ4Compressor.CHUNK_SIZE));
+        this.hashTable = recycler.allocHashTable();
+    }
+
+    @Override
+    protected void writeHeader(StreamOutput out) throws IOException {
+        out.writeBytes(LZ4Compressor.HEADER);
+    }
+
+    @Override
+    protected void compress(byte[] data, int offset, int len, StreamOutput out) throws IOException {
+        int compressedLength = LZ4.compress(data, offset, len, compressed, 0, hashTable);
+        if (compressedLength < len) {
+            out.writeByte(LZ4Compressor.CHUNK_COMPRESSED);
+            out.writeVInt(len);
+            out.writeVInt(compressedLength);
+            out.writeBytes(compressed, 0, compressedLength);
+        } else {
+            out.writeByte(LZ4Compressor.CHUNK_STORED);
+            out.writeVInt(len);
+            out.writeBytes(data, offset, len);
+        }
+    }
+
+    @Override
+    protected void doClose() throws IOException {
+        byte[] buf = uncompressed;
+        if (buf != null) {
+            uncompressed = null;
+            recycler.releaseUncompressed(buf);
+        }
+        buf = compressed;
+        if (buf != null) {
+            compressed = null;
+            recycler.releaseCompressed(buf);
+        }
+        int[] table = hashTable;
+        if (table != null) {
+            hashTable = null;
+            recycler.releaseHashTable(table);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.common.compress.lz4;
+
+import org.apache.lucene.store.IndexInput;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.CompressedIndexInput;
+import org.elasticsearch.common.compress.CompressedStreamInput;
+import org.elasticsearch.common.compress.CompressedStreamOutput;
+import org.elasticsearch.common.compress.Compressor;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import java.io.IOException;
+
+/**
+ * A compressor using the LZ4 block format (see {@link LZ4}), which compresses and especially decompresses
+ * noticeably faster than LZF for a similar ratio. Compressed data starts with the {@link #HEADER} bytes, so it
+ * can be told apart from LZF compressed (or uncompressed) data.
+ * <p/>
+ * Note, nodes before 1.0 can't read lz4 compressed data. Lucene files are never compressed with lz4 (there is
+ * no compressed index output), so index inputs are never detected as lz4 compressed.
+ */
+public class LZ4Compressor implements Compressor {
+
+    public static final String TYPE = "lz4";
+
+    static final byte[] HEADER = {'L', 'Z', '4', 0};
+
+    static final int CHUNK_SIZE = 1 << 16;
+
+    static final byte CHUNK_STORED = 0;
+    static final byte CHUNK_COMPRESSED = 1;
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public void configure(Settings settings) {
+    }
+
+    @Override
+    public boolean isCompressed(BytesReference bytes) {
+        if (bytes.length() < HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (bytes.get(i) != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCompressed(byte[] data, int offset, int length) {
+        if (length < HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (data[offset + i] != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCompressed(ChannelBuffer buffer) {
+        if (buffer.readableBytes() < HEADER.length) {
+            return false;
+        }
+        int offset = buffer.readerIndex();
+        for (int i = 0; i < HEADER.length; i++) {
+            if (buffer.getByte(offset + i) != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCompressed(IndexInput in) throws IOException {
+        return false;
+    }
+
+    @Override
+    public byte[] uncompress(byte[] data, int offset, int length) throws IOException {
+        StreamInput compressed = streamInput(new BytesStreamInput(data, offset, length, false));
+        BytesStreamOutput out = new BytesStreamOutput();
+        byte[] buffer = new byte[1024];
+        int len;
+        while ((len = compressed.read(buffer)) != -1) {
+            out.write(buffer, 0, len);
+        }
+        compressed.close();
+        return out.bytes().toBytes();
+    }
+
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput(HEADER.length + LZ4.maxCompressedLength(Math.min(length, CHUNK_SIZE)));
+        StreamOutput compressed = streamOutput(out);
+        compressed.writeBytes(data, offset, length);
+        compressed.close();
+        return out.bytes().toBytes();
+    }
+
+    @Override
+    public CompressedStreamInput streamInput(StreamInput in) throws IOException {
+        return new LZ4CompressedStreamInput(in);
+    }
+
+    @Override
+    public CompressedStreamOutput streamOutput(StreamOutput out) throws IOException {
+        return new LZ4CompressedStreamOutput(out);
+    }
+
+    @Override
+    public CompressedIndexInput indexInput(IndexInput in) throws IOException {
+        throw new UnsupportedOperationException("lz4 compressed index inputs are not supported");
+    }
+}
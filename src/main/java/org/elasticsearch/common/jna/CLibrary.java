@@ -20,6 +20,8 @@
 package org.elasticsearch.common.jna;
 
 import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 
@@ -35,14 +37,17 @@ public class CLibrary {
     public static final int MCL_FUTURE = 2;
 
     public static final int ENOMEM = 12;
+    public static final int ENOSYS = 38;
+
+    public static final int MADV_WILLNEED = 3;
 
     static {
         try {
             Native.register("c");
         } catch (NoClassDefFoundError e) {
-            logger.warn("jna not found. native methods (mlockall) will be disabled.");
+            logger.warn("jna not found. native methods (mlockall, madvise) will be disabled.");
         } catch (UnsatisfiedLinkError e) {
-            logger.debug("unable to link C library. native methods (mlockall) will be disabled.");
+            logger.debug("unable to link C library. native methods (mlockall, madvise) will be disabled.");
         }
     }
 
@@ -50,6 +55,8 @@ public class CLibrary {
 
     public static native int munlockall();
 
+    public static native int madvise(Pointer addr, NativeLong length, int advice);
+
     private CLibrary() {
     }
 }
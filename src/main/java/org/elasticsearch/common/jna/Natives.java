@@ -19,9 +19,12 @@
 
 package org.elasticsearch.common.jna;
 
+import java.nio.ByteBuffer;
 import java.util.Locale;
 
 import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 
@@ -54,4 +57,51 @@ public class Natives {
             }
         }
     }
+
+    /**
+     * The outcome of {@link #tryMadviseWillNeed(ByteBuffer)}.
+     */
+    public static enum MadviseResult {
+        /**
+         * The advice was given.
+         */
+        ADVISED,
+        /**
+         * The call failed for this buffer, later calls may still succeed.
+         */
+        FAILED,
+        /**
+         * <tt>madvise</tt> can't be used at all (no jna, or not implemented by the OS), later calls will fail too.
+         */
+        UNSUPPORTED
+    }
+
+    /**
+     * Advises the OS that the (page aligned) direct buffer, typically a mapped file, will be needed soon, so
+     * its pages are read ahead in the background. Nothing is read ahead unless {@link MadviseResult#ADVISED} is
+     * returned, the caller decides whether to try again on {@link MadviseResult#FAILED}.
+     */
+    public static MadviseResult tryMadviseWillNeed(ByteBuffer buffer) {
+        try {
+            Pointer address = Native.getDirectBufferPointer(buffer);
+            if (address == null) {
+                return MadviseResult.UNSUPPORTED;
+            }
+            int result = CLibrary.madvise(address, new NativeLong(buffer.capacity()), CLibrary.MADV_WILLNEED);
+            if (result != 0) {
+                int errno = Native.getLastError();
+                if (errno == CLibrary.ENOSYS) {
+                    return MadviseResult.UNSUPPORTED;
+                }
+                logger.trace("madvise failed with error [{}]", errno);
+                return MadviseResult.FAILED;
+            }
+            return MadviseResult.ADVISED;
+        } catch (UnsatisfiedLinkError e) {
+            // this will have already been logged by CLibrary, no need to repeat it
+            return MadviseResult.UNSUPPORTED;
+        } catch (NoClassDefFoundError e) {
+            return MadviseResult.UNSUPPORTED;
+        }
+    }
 }
@@ -0,0 +1,179 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.netty;
+
+import org.elasticsearch.ElasticSearchIllegalStateException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
+import org.elasticsearch.common.io.BytesStream;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.network.NetworkBufferPool;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link StreamOutput} that writes directly into pages acquired from a {@link NetworkBufferPool}, and exposes
+ * them as a single (composite, no copy) {@link ChannelBuffer}.
+ * <p/>
+ * The stream is reference counted, starting with a single reference held by its creator. Once the last reference
+ * is released (for example, using {@link #releaseListener()} once the buffer has been written to the channel),
+ * the pages are given back to the pool, and the bytes must no longer be accessed.
+ */
+public class PooledChannelBufferStreamOutput extends StreamOutput implements BytesStream {
+
+    private final NetworkBufferPool pool;
+    private final List<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    private ByteBuffer current;
+
+    public PooledChannelBufferStreamOutput(NetworkBufferPool pool) {
+        this.pool = pool;
+    }
+
+    private ByteBuffer page() {
+        if (current == null || !current.hasRemaining()) {
+            current = pool.acquire();
+            pages.add(current);
+        }
+        return current;
+    }
+
+    @Override
+    public void writeByte(byte b) throws IOException {
+        page().put(b);
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+        while (length > 0) {
+            ByteBuffer page = page();
+            int toWrite = Math.min(length, page.remaining());
+            page.put(b, offset, toWrite);
+            offset += toWrite;
+            length -= toWrite;
+        }
+    }
+
+    /**
+     * Skips the provided number of bytes (leaving them unset), typically to write a header later on.
+     */
+    public void skip(int length) {
+        while (length > 0) {
+            ByteBuffer page = page();
+            int toSkip = Math.min(length, page.remaining());
+            page.position(page.position() + toSkip);
+            length -= toSkip;
+        }
+    }
+
+    /**
+     * The number of bytes written.
+     */
+    public int size() {
+        int size = 0;
+        for (ByteBuffer page : pages) {
+            size += page.position();
+        }
+        return size;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // nothing to do here
+    }
+
+    @Override
+    public void close() throws IOException {
+        // nothing to do here, pages are released based on the reference count
+    }
+
+    /**
+     * Returns a channel buffer over the written bytes, sharing the pooled pages.
+     */
+    public ChannelBuffer toChannelBuffer() {
+        ensureOpen();
+        if (pages.isEmpty()) {
+            return ChannelBuffers.EMPTY_BUFFER;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[pages.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            ByteBuffer page = pages.get(i).duplicate();
+            page.flip();
+            buffers[i] = page;
+        }
+        return ChannelBuffers.wrappedBuffer(buffers);
+    }
+
+    @Override
+    public BytesReference bytes() {
+        return new ChannelBufferBytesReference(toChannelBuffer());
+    }
+
+    /**
+     * Increments the reference count, keeping the pages from being released.
+     */
+    public void incRef() {
+        ensureOpen();
+        refCount.incrementAndGet();
+    }
+
+    /**
+     * Decrements the reference count, giving back the pages to the pool once it reaches <tt>0</tt>.
+     */
+    public void decRef() {
+        int count = refCount.decrementAndGet();
+        if (count == 0) {
+            for (ByteBuffer page : pages) {
+                pool.release(page);
+            }
+            pages.clear();
+            current = null;
+        } else if (count < 0) {
+            throw new ElasticSearchIllegalStateException("pooled stream released more times than referenced");
+        }
+    }
+
+    /**
+     * A listener releasing a reference once the operation completes, to be used when writing the buffer.
+     */
+    public ChannelFutureListener releaseListener() {
+        return new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                decRef();
+            }
+        };
+    }
+
+    private void ensureOpen() {
+        if (refCount.get() <= 0) {
+            throw new ElasticSearchIllegalStateException("pooled stream already released");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.common.network;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.monitor.jvm.JvmInfo;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of fixed size (by default direct) byte buffer pages shared by the network layers (transport and http),
+ * used to serialize outgoing messages without allocating (and growing) a new byte array per message.
+ * <p/>
+ * Pages are handed out with {@link #acquire()} and must be given back with {@link #release(java.nio.ByteBuffer)}
+ * once no longer used. Released pages are pooled up to <tt>network.buffer_pool.max_size</tt>, the rest is left
+ * to the GC.
+ */
+public class NetworkBufferPool extends AbstractComponent {
+
+    private final boolean enabled;
+    private final boolean direct;
+    private final int pageSize;
+    private final int maxPooledPages;
+
+    private final Queue<ByteBuffer> pool = ConcurrentCollections.newQueue();
+    private final AtomicInteger pooledPages = new AtomicInteger();
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+
+    @Inject
+    public NetworkBufferPool(Settings settings) {
+        super(settings);
+        this.enabled = settings.getAsBoolean("network.buffer_pool.enabled", false);
+        this.direct = settings.getAsBoolean("network.buffer_pool.direct", true);
+        this.pageSize = (int) settings.getAsBytesSize("network.buffer_pool.page_size", new ByteSizeValue(16, ByteSizeUnit.KB)).bytes();
+
+        ByteSizeValue defaultMaxSize = new ByteSizeValue(64, ByteSizeUnit.MB);
+        long directMemoryMax = JvmInfo.jvmInfo().mem().directMemoryMax().bytes();
+        if (direct && directMemoryMax > 0) {
+            // don't pool more than 10% of the direct memory
+            defaultMaxSize = new ByteSizeValue(Math.min(defaultMaxSize.bytes(), directMemoryMax / 10));
+        }
+        ByteSizeValue maxSize = settings.getAsBytesSize("network.buffer_pool.max_size", defaultMaxSize);
+        this.maxPooledPages = (int) Math.max(0, maxSize.bytes() / pageSize);
+
+        if (enabled) {
+            logger.debug("using page_size [{}], max_size [{}], direct [{}]", new ByteSizeValue(pageSize), maxSize, direct);
+        }
+    }
+
+    /**
+     * Should the network layers serialize messages into pooled pages.
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * The size of each page.
+     */
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Acquires a cleared page, either from the pool or a newly allocated one.
+     */
+    public ByteBuffer acquire() {
+        acquired.incrementAndGet();
+        ByteBuffer page = pool.poll();
+        if (page != null) {
+            pooledPages.decrementAndGet();
+            page.clear();
+            return page;
+        }
+        allocated.incrementAndGet();
+        return direct ? ByteBuffer.allocateDirect(pageSize) : ByteBuffer.allocate(pageSize);
+    }
+
+    /**
+     * Gives back a page acquired using {@link #acquire()}. The page must not be used after it has been released.
+     */
+    public void release(ByteBuffer page) {
+        if (page.capacity() != pageSize) {
+            return;
+        }
+        if (pooledPages.incrementAndGet() > maxPooledPages) {
+            pooledPages.decrementAndGet();
+            return;
+        }
+        pool.add(page);
+    }
+
+    /**
+     * The number of pages currently pooled.
+     */
+    public int pooledPages() {
+        return pooledPages.get();
+    }
+
+    /**
+     * The total number of pages acquired.
+     */
+    public long acquiredPages() {
+        return acquired.get();
+    }
+
+    /**
+     * The total number of pages allocated because none were available in the pool.
+     */
+    public long allocatedPages() {
+        return allocated.get();
+    }
+}
@@ -29,5 +29,6 @@ public class NetworkModule extends AbstractModule {
     @Override
     protected void configure() {
         bind(NetworkService.class).asEagerSingleton();
+        bind(NetworkBufferPool.class).asEagerSingleton();
     }
 }
@@ -29,6 +29,7 @@ import org.elasticsearch.common.compress.CompressedStreamInput;
 import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -96,6 +97,24 @@ public class XContentHelper {
         }
     }
 
+    /**
+     * Converts the content to a map holding only the parts matching the includes / excludes (see
+     * {@link XContentMapValues#filter(XContentParser, String[], String[])}), without building the full map first.
+     */
+    public static Map<String, Object> convertToFilteredMap(BytesReference bytes, String[] includes, String[] excludes) throws ElasticSearchParseException {
+        XContentParser parser = null;
+        try {
+            parser = createParser(bytes);
+            return XContentMapValues.filter(parser, includes, excludes);
+        } catch (IOException e) {
+            throw new ElasticSearchParseException("Failed to parse content to map", e);
+        } finally {
+            if (parser != null) {
+                parser.close();
+            }
+        }
+    }
+
     public static Tuple<XContentType, Map<String, Object>> convertToMap(byte[] data, boolean ordered) throws ElasticSearchParseException {
         return convertToMap(data, 0, data.length, ordered);
     }
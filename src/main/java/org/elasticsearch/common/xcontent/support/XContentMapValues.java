@@ -24,7 +24,9 @@ import com.google.common.collect.Maps;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.regex.Regex;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentParser;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -215,6 +217,102 @@ public class XContentMapValues {
         }
     }
 
+    /**
+     * Same as {@link #filter(java.util.Map, String[], String[])}, only reading the values straight from the parser
+     * (positioned on, or right before, the start object), skipping the parts that are filtered out instead of
+     * building them first.
+     */
+    public static Map<String, Object> filter(XContentParser parser, String[] includes, String[] excludes) throws IOException {
+        Map<String, Object> result = Maps.newHashMap();
+        XContentParser.Token token = parser.currentToken();
+        if (token == null) {
+            token = parser.nextToken();
+        }
+        if (token != XContentParser.Token.START_OBJECT) {
+            return result;
+        }
+        filter(parser, result, includes, excludes, new StringBuilder());
+        return result;
+    }
+
+    private static void filter(XContentParser parser, Map<String, Object> into, String[] includes, String[] excludes, StringBuilder sb) throws IOException {
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+            String key = parser.currentName();
+            token = parser.nextToken();
+            int mark = sb.length();
+            if (sb.length() > 0) {
+                sb.append('.');
+            }
+            sb.append(key);
+            String path = sb.toString();
+            boolean excluded = false;
+            for (String exclude : excludes) {
+                if (Regex.simpleMatch(exclude, path)) {
+                    excluded = true;
+                    break;
+                }
+            }
+            if (excluded) {
+                parser.skipChildren();
+                sb.setLength(mark);
+                continue;
+            }
+            if (includes.length > 0) {
+                boolean atLeastOnOneIncludeMatched = false;
+                for (String include : includes) {
+                    // check for prefix as well, something like: obj1.arr1.*
+                    // note, this does not work well with middle matches, like obj1.*.obj3
+                    if (include.startsWith(path) || Regex.simpleMatch(include, path)) {
+                        atLeastOnOneIncludeMatched = true;
+                        break;
+                    }
+                }
+                if (!atLeastOnOneIncludeMatched) {
+                    parser.skipChildren();
+                    sb.setLength(mark);
+                    continue;
+                }
+            }
+
+            if (token == XContentParser.Token.START_OBJECT) {
+                Map<String, Object> innerInto = Maps.newHashMap();
+                filter(parser, innerInto, includes, excludes, sb);
+                if (!innerInto.isEmpty()) {
+                    into.put(key, innerInto);
+                }
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                List<Object> innerInto = new ArrayList<Object>();
+                filter(parser, innerInto, includes, excludes, sb);
+                into.put(key, innerInto);
+            } else {
+                into.put(key, XContentMapConverter.readValue(parser, XContentMapConverter.SIMPLE_MAP_FACTORY, token));
+            }
+            sb.setLength(mark);
+        }
+    }
+
+    private static void filter(XContentParser parser, List<Object> to, String[] includes, String[] excludes, StringBuilder sb) throws IOException {
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            if (token == XContentParser.Token.START_OBJECT) {
+                Map<String, Object> innerInto = Maps.newHashMap();
+                filter(parser, innerInto, includes, excludes, sb);
+                if (!innerInto.isEmpty()) {
+                    to.add(innerInto);
+                }
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                List<Object> innerInto = new ArrayList<Object>();
+                filter(parser, innerInto, includes, excludes, sb);
+                if (!innerInto.isEmpty()) {
+                    to.add(innerInto);
+                }
+            } else {
+                to.add(XContentMapConverter.readValue(parser, XContentMapConverter.SIMPLE_MAP_FACTORY, token));
+            }
+        }
+    }
+
     public static boolean isObject(Object node) {
         return node instanceof Map;
     }
@@ -22,12 +22,14 @@ package org.elasticsearch.gateway.blobstore;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.cluster.ClusterName;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.blobstore.*;
+import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.stream.CachedStreamOutput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -59,6 +61,8 @@ public abstract class BlobStoreGateway extends SharedStorageGateway {
 
     private boolean compress;
 
+    private Compressor compressor;
+
     private volatile int currentIndex;
 
     protected BlobStoreGateway(Settings settings, ThreadPool threadPool, ClusterService clusterService) {
@@ -72,6 +76,11 @@ public abstract class BlobStoreGateway extends SharedStorageGateway {
         this.metaDataBlobContainer = blobStore.immutableBlobContainer(basePath.add("metadata"));
         this.currentIndex = findLatestIndex();
         this.compress = componentSettings.getAsBoolean("compress", true);
+        String compressType = componentSettings.get("compress_type");
+        this.compressor = compressType == null ? CompressorFactory.defaultCompressor() : CompressorFactory.compressor(compressType);
+        if (compressor == null) {
+            throw new ElasticSearchIllegalArgumentException("unknown compress_type [" + compressType + "]");
+        }
         logger.debug("Latest metadata found at index [" + currentIndex + "]");
     }
 
@@ -154,7 +163,7 @@ public abstract class BlobStoreGateway extends SharedStorageGateway {
         try {
             StreamOutput streamOutput;
             if (compress) {
-                streamOutput = cachedEntry.bytes(CompressorFactory.defaultCompressor());
+                streamOutput = cachedEntry.bytes(compressor);
             } else {
                 streamOutput = cachedEntry.bytes();
             }
@@ -0,0 +1,170 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.http.netty;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.http.netty.pipelining.OrderedDownstreamMessage;
+import org.elasticsearch.http.netty.pipelining.OrderedUpstreamMessageEvent;
+import org.elasticsearch.rest.RestResponseStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+
+import java.io.IOException;
+
+/**
+ * Streams a response body as http chunks of (up to) the configured chunk size. A chunk is only handed to the
+ * channel once the previous one has been written, so a slow client blocks the writing thread (up to the write
+ * timeout) instead of chunks piling up in memory. It must not be written to from a netty I/O thread.
+ */
+public class NettyChunkedResponseStream extends RestResponseStream {
+
+    private final Channel channel;
+    private final OrderedUpstreamMessageEvent orderedUpstreamMessageEvent;
+    private final boolean close;
+    private final TimeValue writeTimeout;
+    private byte[] buffer;
+    private int count;
+    private int subSequence;
+    private ChannelFuture lastWrite;
+    private boolean closed;
+
+    public NettyChunkedResponseStream(Channel channel, @Nullable OrderedUpstreamMessageEvent orderedUpstreamMessageEvent,
+                                      int chunkSize, boolean close, TimeValue writeTimeout) {
+        this.channel = channel;
+        this.orderedUpstreamMessageEvent = orderedUpstreamMessageEvent;
+        this.close = close;
+        this.writeTimeout = writeTimeout;
+        this.buffer = new byte[chunkSize];
+    }
+
+    /**
+     * Writes the response status and headers, the first message of the response.
+     */
+    public void start(Object response) {
+        lastWrite = writeMessage(response, false);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            writeChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            int toCopy = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, toCopy);
+            count += toCopy;
+            off += toCopy;
+            len -= toCopy;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            writeChunk();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (count > 0) {
+            writeChunk();
+        }
+        closed = true;
+        buffer = null;
+        ChannelFuture future = writeMessage(HttpChunk.LAST_CHUNK, true);
+        if (close) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    @Override
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer = null;
+        // the status and part of the body have already been sent, the only way to signal the failure is to
+        // close the connection before the last chunk
+        closeChannel();
+    }
+
+    private void writeChunk() throws IOException {
+        awaitLastWrite();
+        // the written buffer is handed over to the channel, start a new one
+        lastWrite = writeMessage(new DefaultHttpChunk(ChannelBuffers.wrappedBuffer(buffer, 0, count)), false);
+        buffer = new byte[buffer.length];
+        count = 0;
+    }
+
+    private void awaitLastWrite() throws IOException {
+        if (lastWrite == null) {
+            return;
+        }
+        if (!lastWrite.isDone() && !lastWrite.awaitUninterruptibly(writeTimeout.millis())) {
+            throw new IOException("timed out after [" + writeTimeout + "] waiting for the client to read the response");
+        }
+        if (!lastWrite.isSuccess()) {
+            throw new IOException("failed to write response chunk", lastWrite.getCause());
+        }
+    }
+
+    private ChannelFuture writeMessage(Object message, boolean last) {
+        if (orderedUpstreamMessageEvent != null) {
+            return write(new OrderedDownstreamMessage(orderedUpstreamMessageEvent, subSequence++, last, message));
+        }
+        return write(message);
+    }
+
+    protected ChannelFuture write(Object message) {
+        return channel.write(message);
+    }
+
+    protected void closeChannel() {
+        channel.close();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("response stream already closed");
+        }
+    }
+}
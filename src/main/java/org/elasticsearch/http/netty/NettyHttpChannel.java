@@ -19,12 +19,18 @@
 
 package org.elasticsearch.http.netty;
 
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.CachedStreamOutput;
+import org.elasticsearch.common.netty.PooledChannelBufferStreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.http.HttpChannel;
 import org.elasticsearch.http.HttpException;
+import org.elasticsearch.http.netty.pipelining.OrderedDownstreamMessage;
+import org.elasticsearch.http.netty.pipelining.OrderedUpstreamMessageEvent;
 import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.RestResponseStream;
 import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.StreamingRestChannel;
 import org.elasticsearch.rest.XContentRestResponse;
 import org.elasticsearch.rest.support.RestUtils;
 import org.elasticsearch.transport.netty.NettyTransport;
@@ -43,54 +49,51 @@ import java.util.Set;
 /**
  *
  */
-public class NettyHttpChannel implements HttpChannel {
+public class NettyHttpChannel implements HttpChannel, StreamingRestChannel {
     private final NettyHttpServerTransport transport;
     private final Channel channel;
     private final org.jboss.netty.handler.codec.http.HttpRequest request;
+    private final OrderedUpstreamMessageEvent orderedUpstreamMessageEvent;
 
     public NettyHttpChannel(NettyHttpServerTransport transport, Channel channel, org.jboss.netty.handler.codec.http.HttpRequest request) {
+        this(transport, channel, request, null);
+    }
+
+    public NettyHttpChannel(NettyHttpServerTransport transport, Channel channel, org.jboss.netty.handler.codec.http.HttpRequest request,
+                            @Nullable OrderedUpstreamMessageEvent orderedUpstreamMessageEvent) {
         this.transport = transport;
         this.channel = channel;
         this.request = request;
+        this.orderedUpstreamMessageEvent = orderedUpstreamMessageEvent;
+    }
+
+    @Override
+    public boolean supportsChunkedResponse() {
+        // chunked transfer encoding is not supported by HTTP/1.0 clients
+        return !request.getProtocolVersion().equals(HttpVersion.HTTP_1_0);
+    }
+
+    @Override
+    public RestResponseStream startChunkedResponse(RestStatus status, String contentType) {
+        boolean close = isCloseConnection();
+        org.jboss.netty.handler.codec.http.HttpResponse resp = newResponse(getStatus(status), close);
+        resp.setChunked(true);
+        resp.setHeader(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+        resp.setHeader(HttpHeaders.Names.CONTENT_TYPE, contentType);
+        NettyChunkedResponseStream stream = new NettyChunkedResponseStream(channel, orderedUpstreamMessageEvent,
+                transport.streamChunkSize, close, transport.streamWriteTimeout);
+        stream.start(resp);
+        return stream;
     }
 
     @Override
     public void sendResponse(RestResponse response) {
 
         // Decide whether to close the connection or not.
-        boolean http10 = request.getProtocolVersion().equals(HttpVersion.HTTP_1_0);
-        boolean close =
-                HttpHeaders.Values.CLOSE.equalsIgnoreCase(request.getHeader(HttpHeaders.Names.CONNECTION)) ||
-                        (http10 && !HttpHeaders.Values.KEEP_ALIVE.equalsIgnoreCase(request.getHeader(HttpHeaders.Names.CONNECTION)));
+        boolean close = isCloseConnection();
 
         // Build the response object.
-        HttpResponseStatus status = getStatus(response.status());
-        org.jboss.netty.handler.codec.http.HttpResponse resp;
-        if (http10) {
-            resp = new DefaultHttpResponse(HttpVersion.HTTP_1_0, status);
-            if (!close) {
-                resp.addHeader(HttpHeaders.Names.CONNECTION, "Keep-Alive");
-            }
-        } else {
-            resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
-        }
-        if (RestUtils.isBrowser(request.getHeader(HttpHeaders.Names.USER_AGENT))) {
-            if (transport.settings().getAsBoolean("http.cors.enabled", true)) {
-                // Add support for cross-origin Ajax requests (CORS)
-                resp.addHeader("Access-Control-Allow-Origin", transport.settings().get("http.cors.allow-origin", "*"));
-                if (request.getMethod() == HttpMethod.OPTIONS) {
-                    // Allow Ajax requests based on the CORS "preflight" request
-                    resp.addHeader("Access-Control-Max-Age", transport.settings().getAsInt("http.cors.max-age", 1728000));
-                    resp.addHeader("Access-Control-Allow-Methods", transport.settings().get("http.cors.allow-methods", "OPTIONS, HEAD, GET, POST, PUT, DELETE"));
-                    resp.addHeader("Access-Control-Allow-Headers", transport.settings().get("http.cors.allow-headers", "X-Requested-With, Content-Type, Content-Length"));
-                }
-            }
-        }
-
-        String opaque = request.getHeader("X-Opaque-Id");
-        if (opaque != null) {
-            resp.addHeader("X-Opaque-Id", opaque);
-        }
+        org.jboss.netty.handler.codec.http.HttpResponse resp = newResponse(getStatus(response.status()), close);
 
         // Add all custom headers
         Map<String, List<String>> customHeaders = response.getHeaders();
@@ -105,8 +108,24 @@ public class NettyHttpChannel implements HttpChannel {
         // Convert the response content to a ChannelBuffer.
         ChannelFutureListener releaseContentListener = null;
         ChannelBuffer buf;
+        boolean pooledContent = false;
         try {
-            if (response instanceof XContentRestResponse) {
+            if (transport.bufferPool.enabled() && !response.contentThreadSafe() &&
+                    !(response instanceof XContentRestResponse && ((XContentRestResponse) response).builder().payload() instanceof CachedStreamOutput.Entry)) {
+                // the content needs to be copied anyhow, copy it (with the prefix and suffix) into pooled pages
+                // instead of allocating new buffers, and release them once the response is written
+                PooledChannelBufferStreamOutput pooled = new PooledChannelBufferStreamOutput(transport.bufferPool);
+                if (response.prefixContent() != null) {
+                    pooled.writeBytes(response.prefixContent(), response.prefixContentOffset(), response.prefixContentLength());
+                }
+                pooled.writeBytes(response.content(), response.contentOffset(), response.contentLength());
+                if (response.suffixContent() != null) {
+                    pooled.writeBytes(response.suffixContent(), response.suffixContentOffset(), response.suffixContentLength());
+                }
+                buf = pooled.toChannelBuffer();
+                releaseContentListener = pooled.releaseListener();
+                pooledContent = true;
+            } else if (response instanceof XContentRestResponse) {
                 // if its a builder based response, and it was created with a CachedStreamOutput, we can release it
                 // after we write the response, and no need to do an extra copy because its not thread safe
                 XContentBuilder builder = ((XContentRestResponse) response).builder();
@@ -128,7 +147,7 @@ public class NettyHttpChannel implements HttpChannel {
         } catch (IOException e) {
             throw new HttpException("Failed to convert response to bytes", e);
         }
-        if (response.prefixContent() != null || response.suffixContent() != null) {
+        if (!pooledContent && (response.prefixContent() != null || response.suffixContent() != null)) {
             ChannelBuffer prefixBuf = ChannelBuffers.EMPTY_BUFFER;
             if (response.prefixContent() != null) {
                 prefixBuf = ChannelBuffers.copiedBuffer(response.prefixContent(), response.prefixContentOffset(), response.prefixContentLength());
@@ -160,8 +179,13 @@ public class NettyHttpChannel implements HttpChannel {
             }
         }
 
-        // Write the response.
-        ChannelFuture future = channel.write(resp);
+        // Write the response, in request order if pipelined
+        ChannelFuture future;
+        if (orderedUpstreamMessageEvent != null) {
+            future = channel.write(new OrderedDownstreamMessage(orderedUpstreamMessageEvent, resp));
+        } else {
+            future = channel.write(resp);
+        }
         if (releaseContentListener != null) {
             future.addListener(releaseContentListener);
         }
@@ -172,6 +196,42 @@ public class NettyHttpChannel implements HttpChannel {
         }
     }
 
+    private boolean isCloseConnection() {
+        boolean http10 = request.getProtocolVersion().equals(HttpVersion.HTTP_1_0);
+        return HttpHeaders.Values.CLOSE.equalsIgnoreCase(request.getHeader(HttpHeaders.Names.CONNECTION)) ||
+                (http10 && !HttpHeaders.Values.KEEP_ALIVE.equalsIgnoreCase(request.getHeader(HttpHeaders.Names.CONNECTION)));
+    }
+
+    private org.jboss.netty.handler.codec.http.HttpResponse newResponse(HttpResponseStatus status, boolean close) {
+        org.jboss.netty.handler.codec.http.HttpResponse resp;
+        if (request.getProtocolVersion().equals(HttpVersion.HTTP_1_0)) {
+            resp = new DefaultHttpResponse(HttpVersion.HTTP_1_0, status);
+            if (!close) {
+                resp.addHeader(HttpHeaders.Names.CONNECTION, "Keep-Alive");
+            }
+        } else {
+            resp = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        }
+        if (RestUtils.isBrowser(request.getHeader(HttpHeaders.Names.USER_AGENT))) {
+            if (transport.settings().getAsBoolean("http.cors.enabled", true)) {
+                // Add support for cross-origin Ajax requests (CORS)
+                resp.addHeader("Access-Control-Allow-Origin", transport.settings().get("http.cors.allow-origin", "*"));
+                if (request.getMethod() == HttpMethod.OPTIONS) {
+                    // Allow Ajax requests based on the CORS "preflight" request
+                    resp.addHeader("Access-Control-Max-Age", transport.settings().getAsInt("http.cors.max-age", 1728000));
+                    resp.addHeader("Access-Control-Allow-Methods", transport.settings().get("http.cors.allow-methods", "OPTIONS, HEAD, GET, POST, PUT, DELETE"));
+                    resp.addHeader("Access-Control-Allow-Headers", transport.settings().get("http.cors.allow-headers", "X-Requested-With, Content-Type, Content-Length"));
+                }
+            }
+        }
+
+        String opaque = request.getHeader("X-Opaque-Id");
+        if (opaque != null) {
+            resp.addHeader("X-Opaque-Id", opaque);
+        }
+        return resp;
+    }
+
     private HttpResponseStatus getStatus(RestStatus status) {
         switch (status) {
             case CONTINUE:
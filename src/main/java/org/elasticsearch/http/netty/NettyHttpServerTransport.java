@@ -24,6 +24,7 @@ import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.netty.NettyStaticSetup;
 import org.elasticsearch.common.netty.OpenChannelsHandler;
+import org.elasticsearch.common.network.NetworkBufferPool;
 import org.elasticsearch.common.network.NetworkService;
 import org.elasticsearch.common.network.NetworkUtils;
 import org.elasticsearch.common.settings.Settings;
@@ -33,8 +34,10 @@ import org.elasticsearch.common.transport.NetworkExceptionHelper;
 import org.elasticsearch.common.transport.PortsRange;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.http.*;
 import org.elasticsearch.http.HttpRequest;
+import org.elasticsearch.http.netty.pipelining.HttpPipeliningHandler;
 import org.elasticsearch.monitor.jvm.JvmInfo;
 import org.elasticsearch.transport.BindTransportException;
 import org.jboss.netty.bootstrap.ServerBootstrap;
@@ -43,6 +46,8 @@ import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.jboss.netty.channel.socket.oio.OioServerSocketChannelFactory;
 import org.jboss.netty.handler.codec.http.*;
 import org.jboss.netty.handler.timeout.ReadTimeoutException;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -79,6 +84,20 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
 
     final boolean resetCookies;
 
+    final NetworkBufferPool bufferPool;
+
+    final boolean pipelining;
+
+    final int pipeliningMaxEvents;
+
+    final TimeValue pipeliningTimeout;
+
+    volatile Timer pipeliningTimer;
+
+    final int streamChunkSize;
+
+    final TimeValue streamWriteTimeout;
+
     private final String port;
 
     private final String bindHost;
@@ -109,9 +128,10 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
     private volatile HttpServerAdapter httpServerAdapter;
 
     @Inject
-    public NettyHttpServerTransport(Settings settings, NetworkService networkService) {
+    public NettyHttpServerTransport(Settings settings, NetworkService networkService, NetworkBufferPool bufferPool) {
         super(settings);
         this.networkService = networkService;
+        this.bufferPool = bufferPool;
 
         if (settings.getAsBoolean("netty.epollBugWorkaround", false)) {
             System.setProperty("org.jboss.netty.epollBugWorkaround", "true");
@@ -124,6 +144,11 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
         // don't reset cookies by default, since I don't think we really need to
         // note, parsing cookies was fixed in netty 3.5.1 regarding stack allocation, but still, currently, we don't need cookies
         this.resetCookies = componentSettings.getAsBoolean("reset_cookies", settings.getAsBoolean("http.reset_cookies", false));
+        this.pipelining = componentSettings.getAsBoolean("pipelining", settings.getAsBoolean("http.pipelining", false));
+        this.pipeliningMaxEvents = componentSettings.getAsInt("pipelining.max_events", settings.getAsInt("http.pipelining.max_events", 10000));
+        this.pipeliningTimeout = componentSettings.getAsTime("pipelining.timeout", settings.getAsTime("http.pipelining.timeout", TimeValue.timeValueSeconds(60)));
+        this.streamChunkSize = (int) componentSettings.getAsBytesSize("stream_chunk_size", settings.getAsBytesSize("http.stream_chunk_size", new ByteSizeValue(8, ByteSizeUnit.KB))).bytes();
+        this.streamWriteTimeout = componentSettings.getAsTime("stream_write_timeout", settings.getAsTime("http.stream_write_timeout", TimeValue.timeValueSeconds(30)));
         this.maxCumulationBufferCapacity = componentSettings.getAsBytesSize("max_cumulation_buffer_capacity", null);
         this.maxCompositeBufferComponents = componentSettings.getAsInt("max_composite_buffer_components", -1);
         this.workerCount = componentSettings.getAsInt("worker_count", Runtime.getRuntime().availableProcessors() * 2);
@@ -163,8 +188,8 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
         }
         this.maxContentLength = maxContentLength;
 
-        logger.debug("using max_chunk_size[{}], max_header_size[{}], max_initial_line_length[{}], max_content_length[{}], receive_predictor[{}->{}]",
-                maxChunkSize, maxHeaderSize, maxInitialLineLength, this.maxContentLength, receivePredictorMin, receivePredictorMax);
+        logger.debug("using max_chunk_size[{}], max_header_size[{}], max_initial_line_length[{}], max_content_length[{}], receive_predictor[{}->{}], pipelining[{}], pipelining_max_events[{}], pipelining_timeout[{}]",
+                maxChunkSize, maxHeaderSize, maxInitialLineLength, this.maxContentLength, receivePredictorMin, receivePredictorMax, pipelining, pipeliningMaxEvents, pipeliningTimeout);
     }
 
     public Settings settings() {
@@ -178,6 +203,9 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
     @Override
     protected void doStart() throws ElasticSearchException {
         this.serverOpenChannels = new OpenChannelsHandler(logger);
+        if (pipelining) {
+            this.pipeliningTimer = new HashedWheelTimer(daemonThreadFactory(settings, "http_pipelining_timer"));
+        }
 
         if (blockingServer) {
             serverBootstrap = new ServerBootstrap(new OioServerSocketChannelFactory(
@@ -265,6 +293,11 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
             serverBootstrap.releaseExternalResources();
             serverBootstrap = null;
         }
+
+        if (pipeliningTimer != null) {
+            pipeliningTimer.stop();
+            pipeliningTimer = null;
+        }
     }
 
     @Override
@@ -354,6 +387,9 @@ public class NettyHttpServerTransport extends AbstractLifecycleComponent<HttpSer
             if (transport.compression) {
                 pipeline.addLast("encoder_compress", new HttpContentCompressor(transport.compressionLevel));
             }
+            if (transport.pipelining) {
+                pipeline.addLast("pipelining", new HttpPipeliningHandler(transport.pipeliningMaxEvents, transport.pipeliningTimer, transport.pipeliningTimeout));
+            }
             pipeline.addLast("handler", requestHandler);
             return pipeline;
         }
@@ -0,0 +1,203 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty.pipelining;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements HTTP pipelining ordering for a channel: each request is tagged with a sequence number (using an
+ * {@link OrderedUpstreamMessageEvent}), and responses written as {@link OrderedDownstreamMessage} are held back
+ * until the responses of all the previous requests have been written, so they go out in request order even though
+ * requests are processed concurrently.
+ * <p/>
+ * Once <tt>maxEventsHeld</tt> requests are in flight on the channel, reading from it is suspended until responses
+ * are written, so a single connection can't queue up an unbounded number of requests.
+ * <p/>
+ * If responses are held back waiting for the response of an earlier request for longer than the timeout (no
+ * progress is made on the channel), the channel is closed. Once the channel is closed, all held back responses,
+ * and the ones written later on, fail.
+ * <p/>
+ * A new instance is required per channel.
+ */
+public class HttpPipeliningHandler extends SimpleChannelHandler {
+
+    private static final Comparator<MessageEvent> SEQUENCE_COMPARATOR = new Comparator<MessageEvent>() {
+        @Override
+        public int compare(MessageEvent o1, MessageEvent o2) {
+            return ((OrderedDownstreamMessage) o1.getMessage()).compareTo((OrderedDownstreamMessage) o2.getMessage());
+        }
+    };
+
+    private final int maxEventsHeld;
+
+    private final Timer timer;
+
+    private final TimeValue timeout;
+
+    private final Object mutex = new Object();
+    // all guarded by mutex
+    private int sequence;
+    private int nextRequiredSequence;
+    private int nextRequiredSubSequence;
+    private int inFlight;
+    private boolean readSuspended;
+    private boolean closed;
+    private Timeout headTimeout;
+    private final PriorityQueue<MessageEvent> holdingQueue;
+
+    /**
+     * @param maxEventsHeld the maximum number of requests that can be in flight on the channel before reading
+     *                      from it is suspended
+     * @param timer         the timer used to time out the response at the head of the queue, <tt>null</tt> to never
+     *                      time it out
+     * @param timeout       how long responses can be held back waiting for an earlier response
+     */
+    public HttpPipeliningHandler(int maxEventsHeld, @Nullable Timer timer, TimeValue timeout) {
+        this.maxEventsHeld = maxEventsHeld;
+        this.timer = timer;
+        this.timeout = timeout;
+        this.holdingQueue = new PriorityQueue<MessageEvent>(Math.max(1, Math.min(maxEventsHeld, 16)), SEQUENCE_COMPARATOR);
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (!(e.getMessage() instanceof HttpRequest)) {
+            ctx.sendUpstream(e);
+            return;
+        }
+        int requestSequence;
+        synchronized (mutex) {
+            requestSequence = sequence++;
+            inFlight++;
+            if (inFlight >= maxEventsHeld && !readSuspended) {
+                readSuspended = true;
+                ctx.getChannel().setReadable(false);
+            }
+        }
+        ctx.sendUpstream(new OrderedUpstreamMessageEvent(requestSequence, e.getChannel(), e.getMessage(), e.getRemoteAddress()));
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (!(e.getMessage() instanceof OrderedDownstreamMessage)) {
+            ctx.sendDownstream(e);
+            return;
+        }
+        List<MessageEvent> toWrite = null;
+        synchronized (mutex) {
+            if (closed) {
+                // the response can never be written, don't hold it forever
+                e.getFuture().setFailure(new ClosedChannelException());
+                return;
+            }
+            holdingQueue.add(e);
+            while (!holdingQueue.isEmpty()) {
+                MessageEvent next = holdingQueue.peek();
+                OrderedDownstreamMessage message = (OrderedDownstreamMessage) next.getMessage();
+                if (message.getSequence() != nextRequiredSequence || message.getSubSequence() != nextRequiredSubSequence) {
+                    break;
+                }
+                holdingQueue.remove();
+                if (message.isLast()) {
+                    nextRequiredSequence++;
+                    nextRequiredSubSequence = 0;
+                    inFlight--;
+                } else {
+                    nextRequiredSubSequence++;
+                }
+                if (toWrite == null) {
+                    toWrite = new ArrayList<MessageEvent>();
+                }
+                toWrite.add(next);
+            }
+            if (readSuspended && inFlight < maxEventsHeld) {
+                readSuspended = false;
+                ctx.getChannel().setReadable(true);
+            }
+            if (toWrite != null && headTimeout != null) {
+                // progress was made, the next response has a full timeout
+                headTimeout.cancel();
+                headTimeout = null;
+            }
+            if (!holdingQueue.isEmpty() && headTimeout == null && timer != null && timeout.millis() > 0) {
+                headTimeout = timer.newTimeout(new HeadTimeoutTask(ctx.getChannel()), timeout.millis(), TimeUnit.MILLISECONDS);
+            }
+            // write while holding the lock, so responses are sent down the pipeline in sequence order
+            if (toWrite != null) {
+                for (MessageEvent event : toWrite) {
+                    Channels.write(ctx, event.getFuture(), ((OrderedDownstreamMessage) event.getMessage()).getMessage(), event.getRemoteAddress());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        List<MessageEvent> pending;
+        synchronized (mutex) {
+            closed = true;
+            if (headTimeout != null) {
+                headTimeout.cancel();
+                headTimeout = null;
+            }
+            pending = new ArrayList<MessageEvent>(holdingQueue);
+            holdingQueue.clear();
+        }
+        for (MessageEvent event : pending) {
+            event.getFuture().setFailure(new ClosedChannelException());
+        }
+        super.channelClosed(ctx, e);
+    }
+
+    private class HeadTimeoutTask implements TimerTask {
+
+        private final Channel channel;
+
+        HeadTimeoutTask(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void run(Timeout timeout) throws Exception {
+            synchronized (mutex) {
+                if (headTimeout != timeout) {
+                    // progress was made in the meantime
+                    return;
+                }
+                headTimeout = null;
+            }
+            // closing the channel fails all the held back responses
+            channel.close();
+        }
+    }
+}
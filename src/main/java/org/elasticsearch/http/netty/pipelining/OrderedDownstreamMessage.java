@@ -0,0 +1,77 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.http.netty.pipelining;
+
+/**
+ * A response written to the channel for the request with the provided sequence. The {@link HttpPipeliningHandler}
+ * holds it back until all the responses for the previous requests on the same channel have been written.
+ * <p/>
+ * A response can be written as several messages (for example, a chunked response), each with an increasing
+ * sub sequence, the last one being marked as such.
+ */
+public class OrderedDownstreamMessage implements Comparable<OrderedDownstreamMessage> {
+
+    private final int sequence;
+    private final int subSequence;
+    private final boolean last;
+    private final Object message;
+
+    public OrderedDownstreamMessage(OrderedUpstreamMessageEvent upstreamEvent, Object message) {
+        this(upstreamEvent.getSequence(), 0, true, message);
+    }
+
+    public OrderedDownstreamMessage(OrderedUpstreamMessageEvent upstreamEvent, int subSequence, boolean last, Object message) {
+        this(upstreamEvent.getSequence(), subSequence, last, message);
+    }
+
+    public OrderedDownstreamMessage(int sequence, int subSequence, boolean last, Object message) {
+        this.sequence = sequence;
+        this.subSequence = subSequence;
+        this.last = last;
+        this.message = message;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getSubSequence() {
+        return subSequence;
+    }
+
+    /**
+     * Is this the last message of the response.
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    public Object getMessage() {
+        return message;
+    }
+
+    @Override
+    public int compareTo(OrderedDownstreamMessage o) {
+        if (sequence != o.sequence) {
+            return sequence < o.sequence ? -1 : 1;
+        }
+        return subSequence < o.subSequence ? -1 : (subSequence == o.subSequence ? 0 : 1);
+    }
+}
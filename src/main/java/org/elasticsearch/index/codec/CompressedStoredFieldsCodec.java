@@ -0,0 +1,91 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.index.codec;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.FilterCodec;
+import org.apache.lucene.codecs.StoredFieldsFormat;
+import org.apache.lucene.codecs.compressing.CompressingStoredFieldsFormat;
+import org.apache.lucene.codecs.compressing.CompressionMode;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+/**
+ * A codec delegating to another codec, but with its own stored fields format. Stored fields (including
+ * <tt>_source</tt>) are compressed in chunks of consecutive documents, so each document is compressed using the
+ * previous documents of the same chunk as a shared dictionary, which gives a much better ratio on small documents
+ * than compressing each one on its own.
+ * <p/>
+ * The compression is configured using <tt>index.codec.stored_fields.compression</tt>: <tt>fast</tt> (the default, LZ4
+ * as used by the default Lucene stored fields) or <tt>high</tt> (deflate, which is slower to fetch but smaller), and
+ * the chunk size using <tt>index.codec.stored_fields.chunk_size</tt> (defaults to <tt>16kb</tt>, bigger chunks
+ * compress better but each fetch has to decompress more).
+ * <p/>
+ * Note, the <tt>_source</tt> should not be compressed on its own (see <tt>compress</tt> in its mapping) for this
+ * to pay off, as already compressed bytes don't compress any further.
+ */
+public class CompressedStoredFieldsCodec extends FilterCodec {
+
+    public static final String COMPRESSION = "index.codec.stored_fields.compression";
+    public static final String CHUNK_SIZE = "index.codec.stored_fields.chunk_size";
+
+    public static final ByteSizeValue DEFAULT_CHUNK_SIZE = new ByteSizeValue(16, ByteSizeUnit.KB);
+
+    // the name and compression of the Lucene41 stored fields format, used by the Lucene42 codec
+    private static final String DEFAULT_FORMAT_NAME = "Lucene41StoredFields";
+
+    private final StoredFieldsFormat storedFieldsFormat;
+
+    protected CompressedStoredFieldsCodec(String name, Codec delegate, StoredFieldsFormat storedFieldsFormat) {
+        super(name, delegate);
+        this.storedFieldsFormat = storedFieldsFormat;
+    }
+
+    @Override
+    public StoredFieldsFormat storedFieldsFormat() {
+        return storedFieldsFormat;
+    }
+
+    /**
+     * Wraps the provided codec (which must write the same formats as <tt>Lucene42Codec</tt>) with the stored fields
+     * compression configured in the settings, returning it as is if the defaults are used.
+     */
+    public static Codec wrap(Codec delegate, Settings indexSettings) throws ElasticSearchIllegalArgumentException {
+        String compression = indexSettings.get(COMPRESSION, "fast");
+        int chunkSize = (int) indexSettings.getAsBytesSize(CHUNK_SIZE, DEFAULT_CHUNK_SIZE).bytes();
+        if (chunkSize <= 0) {
+            throw new ElasticSearchIllegalArgumentException("[" + CHUNK_SIZE + "] must be positive, got [" + chunkSize + "]");
+        }
+        if ("fast".equals(compression)) {
+            if (chunkSize == DEFAULT_CHUNK_SIZE.bytes()) {
+                return delegate;
+            }
+            // the chunk size is not needed to read the chunks back, so segments keep the delegate codec name and
+            // stay readable by it
+            return new CompressedStoredFieldsCodec(delegate.getName(), delegate, new CompressingStoredFieldsFormat(DEFAULT_FORMAT_NAME, CompressionMode.FAST, chunkSize));
+        } else if ("high".equals(compression)) {
+            return new HighCompressionCodec(delegate, chunkSize);
+        }
+        throw new ElasticSearchIllegalArgumentException("unknown [" + COMPRESSION + "] value [" + compression + "], must be one of [fast, high]");
+    }
+}
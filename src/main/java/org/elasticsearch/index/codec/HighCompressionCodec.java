@@ -0,0 +1,46 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.index.codec;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.compressing.CompressingStoredFieldsFormat;
+import org.apache.lucene.codecs.compressing.CompressionMode;
+import org.apache.lucene.codecs.lucene42.Lucene42Codec;
+
+/**
+ * A {@link CompressedStoredFieldsCodec} compressing stored fields using deflate, registered under its own name
+ * since the compression is needed to read them back.
+ */
+public final class HighCompressionCodec extends CompressedStoredFieldsCodec {
+
+    public static final String CODEC_NAME = "ElasticSearch090HighCompression";
+
+    /**
+     * Used when reading segments, the chunk size only matters when writing.
+     */
+    public HighCompressionCodec() {
+        this(new Lucene42Codec(), (int) DEFAULT_CHUNK_SIZE.bytes());
+    }
+
+    public HighCompressionCodec(Codec delegate, int chunkSize) {
+        super(CODEC_NAME, delegate, new CompressingStoredFieldsFormat(CODEC_NAME + "StoredFields", CompressionMode.HIGH_COMPRESSION, chunkSize));
+    }
+}
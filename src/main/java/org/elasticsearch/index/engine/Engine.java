@@ -60,8 +60,37 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
 
     void updateIndexingBufferSize(ByteSizeValue indexingBufferSize);
 
+    /**
+     * The heap used by the documents buffered in the index writer, freed by a refresh (or a flush).
+     */
+    long indexWriterRamBytesUsed();
+
+    /**
+     * The (estimated) heap used by the version map (the versions of the docs changed since the last flush), freed
+     * by a flush.
+     */
+    long versionMapRamBytesUsed();
+
     void addFailedEngineListener(FailedEngineListener listener);
 
+    /**
+     * The local checkpoint, the highest sequence number up to which all the operations have been applied,
+     * <tt>-1</tt> if none.
+     */
+    long localCheckpoint();
+
+    /**
+     * The id of the history the sequence numbers of the engine operations belong to. Two shards sharing a history
+     * id got their operations numbered by the same primary, and can be brought in sync by replaying operations.
+     */
+    String historyId();
+
+    /**
+     * Starts a new history of sequence numbers, to be called when the shard starts numbering operations as a
+     * primary without having recovered from the current primary.
+     */
+    void newHistory();
+
     /**
      * Starts the Engine.
      * <p/>
@@ -381,6 +410,7 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         private final ParsedDocument doc;
         private long version;
         private VersionType versionType = VersionType.INTERNAL;
+        private long seqNo = -1;
         private Origin origin = Origin.PRIMARY;
 
         private long startTime;
@@ -460,6 +490,18 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
             return this;
         }
 
+        /**
+         * The sequence number of the operation, assigned by the primary, <tt>-1</tt> if not assigned (yet).
+         */
+        public long seqNo() {
+            return this.seqNo;
+        }
+
+        public Create seqNo(long seqNo) {
+            this.seqNo = seqNo;
+            return this;
+        }
+
         public String parent() {
             return this.doc.parent();
         }
@@ -508,6 +550,7 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         private final ParsedDocument doc;
         private long version;
         private VersionType versionType = VersionType.INTERNAL;
+        private long seqNo = -1;
         private Origin origin = Origin.PRIMARY;
 
         private long startTime;
@@ -567,6 +610,18 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
             return this.versionType;
         }
 
+        /**
+         * The sequence number of the operation, assigned by the primary, <tt>-1</tt> if not assigned (yet).
+         */
+        public long seqNo() {
+            return this.seqNo;
+        }
+
+        public Index seqNo(long seqNo) {
+            this.seqNo = seqNo;
+            return this;
+        }
+
         @Override
         public List<Document> docs() {
             return this.doc.docs();
@@ -635,6 +690,7 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         private final Term uid;
         private long version;
         private VersionType versionType = VersionType.INTERNAL;
+        private long seqNo = -1;
         private Origin origin = Origin.PRIMARY;
         private boolean notFound;
 
@@ -692,6 +748,18 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
             return this.versionType;
         }
 
+        /**
+         * The sequence number of the operation, assigned by the primary, <tt>-1</tt> if not assigned (yet).
+         */
+        public long seqNo() {
+            return this.seqNo;
+        }
+
+        public Delete seqNo(long seqNo) {
+            this.seqNo = seqNo;
+            return this;
+        }
+
         public boolean notFound() {
             return this.notFound;
         }
@@ -734,6 +802,7 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
         private final Filter aliasFilter;
         private final String[] types;
         private final Filter parentFilter;
+        private long seqNo = -1;
 
         private long startTime;
         private long endTime;
@@ -775,6 +844,20 @@ public interface Engine extends IndexShardComponent, CloseableComponent {
             return parentFilter;
         }
 
+        /**
+         * The local checkpoint of the shard when the delete by query was applied, <tt>-1</tt> if not applied (yet).
+         * It doesn't consume a sequence number (each shard copy runs it on its own), it positions the delete by query
+         * after the operations up to it.
+         */
+        public long seqNo() {
+            return this.seqNo;
+        }
+
+        public DeleteByQuery seqNo(long seqNo) {
+            this.seqNo = seqNo;
+            return this;
+        }
+
         public DeleteByQuery startTime(long startTime) {
             this.startTime = startTime;
             return this;
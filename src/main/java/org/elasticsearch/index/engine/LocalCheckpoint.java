@@ -0,0 +1,118 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.index.engine;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.Map;
+
+/**
+ * Keeps track of the sequence numbers of the operations applied to a shard, and of its local checkpoint, the
+ * highest sequence number up to (and including) which all the operations have been applied.
+ * <p/>
+ * Operations complete out of order (concurrently, or when they are replicated), so the sequence numbers that
+ * completed above the checkpoint are kept until the gap below them is filled.
+ */
+public class LocalCheckpoint {
+
+    /**
+     * The commit user data key holding the local checkpoint of the commit.
+     */
+    public static final String LOCAL_CHECKPOINT_KEY = "local_checkpoint";
+
+    /**
+     * The commit user data key holding the max sequence number assigned before the commit translog was created.
+     */
+    public static final String MAX_SEQ_NO_KEY = "max_seq_no";
+
+    /**
+     * The commit user data key holding the id of the sequence numbers history of the commit.
+     */
+    public static final String HISTORY_ID_KEY = "seq_no_history_id";
+
+    private final TLongHashSet pending = new TLongHashSet();
+
+    private long checkpoint;
+
+    private long maxSeqNo;
+
+    public LocalCheckpoint(long checkpoint, long maxSeqNo) {
+        this.checkpoint = checkpoint;
+        this.maxSeqNo = Math.max(checkpoint, maxSeqNo);
+    }
+
+    /**
+     * Assigns the next sequence number, used on the primary.
+     */
+    public synchronized long generateSeqNo() {
+        return ++maxSeqNo;
+    }
+
+    /**
+     * Marks the operation with the provided sequence number as completed.
+     */
+    public synchronized void markCompleted(long seqNo) {
+        if (seqNo > maxSeqNo) {
+            maxSeqNo = seqNo;
+        }
+        if (seqNo <= checkpoint) {
+            return;
+        }
+        if (seqNo != checkpoint + 1) {
+            pending.add(seqNo);
+            return;
+        }
+        checkpoint = seqNo;
+        while (!pending.isEmpty() && pending.remove(checkpoint + 1)) {
+            checkpoint++;
+        }
+    }
+
+    /**
+     * The highest sequence number up to which all the operations have completed, <tt>-1</tt> if none.
+     */
+    public synchronized long checkpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * The highest sequence number seen (assigned or completed), <tt>-1</tt> if none.
+     */
+    public synchronized long maxSeqNo() {
+        return maxSeqNo;
+    }
+
+    /**
+     * Reads the local checkpoint out of the provided commit user data, <tt>-1</tt> if it has none.
+     */
+    public static long checkpoint(Map<String, String> commitUserData) {
+        String checkpoint = commitUserData.get(LOCAL_CHECKPOINT_KEY);
+        return checkpoint == null ? -1 : Long.parseLong(checkpoint);
+    }
+
+    /**
+     * Reads the max sequence number out of the provided commit user data, <tt>-1</tt> if it has none.
+     */
+    public static long maxSeqNo(Map<String, String> commitUserData) {
+        String maxSeqNo = commitUserData.get(MAX_SEQ_NO_KEY);
+        return maxSeqNo == null ? -1 : Long.parseLong(maxSeqNo);
+    }
+}
@@ -27,11 +27,13 @@ import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.ElasticSearchIllegalStateException;
 import org.elasticsearch.cluster.routing.operation.hash.djb.DjbHashFunction;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Preconditions;
+import org.elasticsearch.common.UUID;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.HashedBytesRef;
@@ -151,6 +153,9 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
 
     private final AtomicLong translogIdGenerator = new AtomicLong();
 
+    private volatile LocalCheckpoint localCheckpoint = new LocalCheckpoint(-1, -1);
+    private volatile String historyId = UUID.randomBase64UUID();
+
     private SegmentInfos lastCommittedSegmentInfos;
 
     @Inject
@@ -231,11 +236,60 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
         }
     }
 
+    @Override
+    public long indexWriterRamBytesUsed() {
+        IndexWriter indexWriter = this.indexWriter;
+        if (indexWriter == null) {
+            return 0;
+        }
+        try {
+            return indexWriter.ramSizeInBytes();
+        } catch (AlreadyClosedException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public long versionMapRamBytesUsed() {
+        int size = versionMap.size();
+        if (size == 0) {
+            return 0;
+        }
+        // uids vary in length per index (auto generated ids or not, type names), so sample a few entries
+        long sampledUidBytes = 0;
+        int sampled = 0;
+        for (HashedBytesRef key : versionMap.keySet()) {
+            sampledUidBytes += key.bytes.length;
+            if (++sampled == VERSION_MAP_SAMPLE_SIZE) {
+                break;
+            }
+        }
+        long uidBytes = sampled == 0 ? 0 : sampledUidBytes / sampled;
+        return size * (VERSION_MAP_ENTRY_SHALLOW_RAM_BYTES + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + uidBytes));
+    }
+
     @Override
     public void addFailedEngineListener(FailedEngineListener listener) {
         failedEngineListeners.add(listener);
     }
 
+    @Override
+    public long localCheckpoint() {
+        return localCheckpoint.checkpoint();
+    }
+
+    @Override
+    public String historyId() {
+        return historyId;
+    }
+
+    @Override
+    public void newHistory() {
+        historyId = UUID.randomBase64UUID();
+        // make sure the next flush persists it
+        flushNeeded = true;
+    }
+
     @Override
     public void start() throws EngineException {
         rwl.writeLock().lock();
@@ -260,16 +314,20 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                 // we rely on that for the commit data translog id key
                 if (Lucene.indexExists(store.directory())) {
                     Map<String, String> commitUserData = Lucene.readSegmentInfos(store.directory()).getUserData();
+                    localCheckpoint = new LocalCheckpoint(LocalCheckpoint.checkpoint(commitUserData), LocalCheckpoint.maxSeqNo(commitUserData));
+                    if (commitUserData.containsKey(LocalCheckpoint.HISTORY_ID_KEY)) {
+                        historyId = commitUserData.get(LocalCheckpoint.HISTORY_ID_KEY);
+                    }
                     if (commitUserData.containsKey(Translog.TRANSLOG_ID_KEY)) {
                         translogIdGenerator.set(Long.parseLong(commitUserData.get(Translog.TRANSLOG_ID_KEY)));
                     } else {
                         translogIdGenerator.set(System.currentTimeMillis());
-                        indexWriter.setCommitData(MapBuilder.<String, String>newMapBuilder().put(Translog.TRANSLOG_ID_KEY, Long.toString(translogIdGenerator.get())).map());
+                        indexWriter.setCommitData(commitUserData(translogIdGenerator.get(), localCheckpoint.maxSeqNo()));
                         indexWriter.commit();
                     }
                 } else {
                     translogIdGenerator.set(System.currentTimeMillis());
-                    indexWriter.setCommitData(MapBuilder.<String, String>newMapBuilder().put(Translog.TRANSLOG_ID_KEY, Long.toString(translogIdGenerator.get())).map());
+                    indexWriter.setCommitData(commitUserData(translogIdGenerator.get(), localCheckpoint.maxSeqNo()));
                     indexWriter.commit();
                 }
                 translog.newTranslog(translogIdGenerator.get());
@@ -358,7 +416,11 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
             if (writer == null) {
                 throw new EngineClosedException(shardId, failedEngine);
             }
-            innerCreate(create, writer);
+            try {
+                innerCreate(create, writer);
+            } finally {
+                markCompleted(create.seqNo());
+            }
             dirty = true;
             possibleMergeNeeded = true;
             flushNeeded = true;
@@ -464,6 +526,10 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
             } else {
                 writer.addDocument(create.docs().get(0), create.analyzer());
             }
+            if (create.origin() == Operation.Origin.PRIMARY) {
+                // numbered once applied, a failed operation is not replicated and would leave a gap on the replicas
+                create.seqNo(localCheckpoint.generateSeqNo());
+            }
             Translog.Location translogLocation = translog.add(new Translog.Create(create));
 
             versionMap.put(versionKey, new VersionValue(updatedVersion, false, threadPool.estimatedTimeInMillis(), translogLocation));
@@ -481,7 +547,11 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                 throw new EngineClosedException(shardId, failedEngine);
             }
 
-            innerIndex(index, writer);
+            try {
+                innerIndex(index, writer);
+            } finally {
+                markCompleted(index.seqNo());
+            }
             dirty = true;
             possibleMergeNeeded = true;
             flushNeeded = true;
@@ -577,6 +647,10 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                     writer.updateDocument(index.uid(), index.docs().get(0), index.analyzer());
                 }
             }
+            if (index.origin() == Operation.Origin.PRIMARY) {
+                // numbered once applied, a failed operation is not replicated and would leave a gap on the replicas
+                index.seqNo(localCheckpoint.generateSeqNo());
+            }
             Translog.Location translogLocation = translog.add(new Translog.Index(index));
 
             versionMap.put(versionKey, new VersionValue(updatedVersion, false, threadPool.estimatedTimeInMillis(), translogLocation));
@@ -593,7 +667,11 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
             if (writer == null) {
                 throw new EngineClosedException(shardId, failedEngine);
             }
-            innerDelete(delete, writer);
+            try {
+                innerDelete(delete, writer);
+            } finally {
+                markCompleted(delete.seqNo());
+            }
             dirty = true;
             possibleMergeNeeded = true;
             flushNeeded = true;
@@ -672,19 +750,19 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
             if (currentVersion == -1) {
                 // doc does not exists and no prior deletes
                 delete.version(updatedVersion).notFound(true);
-                Translog.Location translogLocation = translog.add(new Translog.Delete(delete));
-                versionMap.put(versionKey, new VersionValue(updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation));
             } else if (versionValue != null && versionValue.delete()) {
                 // a "delete on delete", in this case, we still increment the version, log it, and return that version
                 delete.version(updatedVersion).notFound(true);
-                Translog.Location translogLocation = translog.add(new Translog.Delete(delete));
-                versionMap.put(versionKey, new VersionValue(updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation));
             } else {
                 delete.version(updatedVersion);
                 writer.deleteDocuments(delete.uid());
-                Translog.Location translogLocation = translog.add(new Translog.Delete(delete));
-                versionMap.put(versionKey, new VersionValue(updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation));
             }
+            if (delete.origin() == Operation.Origin.PRIMARY) {
+                // numbered once applied, a failed operation is not replicated and would leave a gap on the replicas
+                delete.seqNo(localCheckpoint.generateSeqNo());
+            }
+            Translog.Location translogLocation = translog.add(new Translog.Delete(delete));
+            versionMap.put(versionKey, new VersionValue(updatedVersion, true, threadPool.estimatedTimeInMillis(), translogLocation));
 
             indexingService.postDeleteUnderLock(delete);
         }
@@ -711,6 +789,8 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
             }
 
             writer.deleteDocuments(query);
+            // all the operations up to the checkpoint were applied before it, so replaying it after them is safe
+            delete.seqNo(localCheckpoint.checkpoint());
             translog.add(new Translog.DeleteByQuery(delete));
             dirty = true;
             possibleMergeNeeded = true;
@@ -835,7 +915,7 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                         if (flushNeeded || flush.force()) {
                             flushNeeded = false;
                             long translogId = translogIdGenerator.incrementAndGet();
-                            indexWriter.setCommitData(MapBuilder.<String, String>newMapBuilder().put(Translog.TRANSLOG_ID_KEY, Long.toString(translogId)).map());
+                            indexWriter.setCommitData(commitUserData(translogId, localCheckpoint.maxSeqNo()));
                             indexWriter.commit();
                             translog.newTranslog(translogId);
                         }
@@ -874,7 +954,8 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                         try {
                             long translogId = translogIdGenerator.incrementAndGet();
                             translog.newTransientTranslog(translogId);
-                            indexWriter.setCommitData(MapBuilder.<String, String>newMapBuilder().put(Translog.TRANSLOG_ID_KEY, Long.toString(translogId)).map());
+                            // operations numbered after this point are all added to the new translog as well
+                            indexWriter.setCommitData(commitUserData(translogId, localCheckpoint.maxSeqNo()));
                             indexWriter.commit();
                             refreshVersioningTable(threadPool.estimatedTimeInMillis());
                             // we need to move transient to current only after we refresh
@@ -912,7 +993,7 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
                     // other flushes use flushLock
                     try {
                         long translogId = translog.currentId();
-                        indexWriter.setCommitData(MapBuilder.<String, String>newMapBuilder().put(Translog.TRANSLOG_ID_KEY, Long.toString(translogId)).map());
+                        indexWriter.setCommitData(commitUserData(translogId, localCheckpoint.maxSeqNo()));
                         indexWriter.commit();
                     } catch (OutOfMemoryError e) {
                         translog.revertTransient();
@@ -1292,6 +1373,25 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
         return new HashedBytesRef(uid.bytes());
     }
 
+    private void markCompleted(long seqNo) {
+        if (seqNo >= 0) {
+            localCheckpoint.markCompleted(seqNo);
+        }
+    }
+
+    /**
+     * The commit user data, the local checkpoint is read before committing, so all the operations up to it are
+     * part of the commit, and operations numbered above <tt>maxSeqNo</tt> are all in the translog of the commit.
+     */
+    private Map<String, String> commitUserData(long translogId, long maxSeqNo) {
+        return MapBuilder.<String, String>newMapBuilder()
+                .put(Translog.TRANSLOG_ID_KEY, Long.toString(translogId))
+                .put(LocalCheckpoint.LOCAL_CHECKPOINT_KEY, Long.toString(localCheckpoint.checkpoint()))
+                .put(LocalCheckpoint.MAX_SEQ_NO_KEY, Long.toString(maxSeqNo))
+                .put(LocalCheckpoint.HISTORY_ID_KEY, historyId)
+                .map();
+    }
+
     private Object dirtyLock(BytesRef uid) {
         int hash = DjbHashFunction.DJB_HASH(uid.bytes, uid.offset, uid.length);
         // abs returns Integer.MIN_VALUE, so we need to protect against it...
@@ -1445,6 +1545,17 @@ public class RobinEngine extends AbstractIndexShardComponent implements Engine {
         }
     }
 
+    // the heap used by a version map entry, without the uid bytes: the concurrent map entry (hash, key, value and
+    // next), the key with its BytesRef, and the version value with its translog location
+    static final long VERSION_MAP_ENTRY_SHALLOW_RAM_BYTES =
+            RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_INT + 3 * RamUsageEstimator.NUM_BYTES_OBJECT_REF)
+                    + RamUsageEstimator.shallowSizeOfInstance(HashedBytesRef.class)
+                    + RamUsageEstimator.shallowSizeOfInstance(BytesRef.class)
+                    + RamUsageEstimator.shallowSizeOfInstance(VersionValue.class)
+                    + RamUsageEstimator.shallowSizeOfInstance(Translog.Location.class);
+
+    private static final int VERSION_MAP_SAMPLE_SIZE = 16;
+
     static class VersionValue {
         private final long version;
         private final boolean delete;
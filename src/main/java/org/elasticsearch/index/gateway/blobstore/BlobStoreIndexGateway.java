@@ -19,24 +19,55 @@
 
 package org.elasticsearch.index.gateway.blobstore;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.lucene.store.RateLimiter;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.blobstore.BlobMetaData;
 import org.elasticsearch.common.blobstore.BlobPath;
 import org.elasticsearch.common.blobstore.BlobStore;
+import org.elasticsearch.common.blobstore.ImmutableBlobContainer;
+import org.elasticsearch.common.io.FastByteArrayInputStream;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.gateway.Gateway;
 import org.elasticsearch.gateway.blobstore.BlobStoreGateway;
 import org.elasticsearch.gateway.none.NoneGateway;
 import org.elasticsearch.index.AbstractIndexComponent;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.index.gateway.CommitPoint;
+import org.elasticsearch.index.gateway.CommitPoints;
 import org.elasticsearch.index.gateway.IndexGateway;
+import org.elasticsearch.index.gateway.IndexShardGatewayService;
 import org.elasticsearch.index.settings.IndexSettings;
 
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  *
  */
 public abstract class BlobStoreIndexGateway extends AbstractIndexComponent implements IndexGateway {
 
+    /**
+     * The blob (in the index container) recording since when each unreferenced shared file is unreferenced, shared
+     * by all the nodes cleaning the index.
+     */
+    static final String UNREFERENCED_SHARED_FILES_BLOB = "unreferenced-files";
+
     private final BlobStoreGateway gateway;
 
     private final BlobStore blobStore;
@@ -45,6 +76,26 @@ public abstract class BlobStoreIndexGateway extends AbstractIndexComponent imple
 
     protected ByteSizeValue chunkSize;
 
+    private final ImmutableBlobContainer sharedFilesContainer;
+
+    private final RateLimiter snapshotRateLimiter;
+
+    private final ImmutableBlobContainer indexContainer;
+
+    private final TimeValue sharedFilesGracePeriod;
+
+    private final AtomicBoolean cleaningSharedFiles = new AtomicBoolean();
+
+    // snapshots of the shards allocated on this node hold the read lock, so shared files are never deleted while
+    // a local snapshot is about to reference them
+    private final ReadWriteLock sharedFilesLock = new ReentrantReadWriteLock();
+
+    // the unreferenced shared files as of the last clean up, and since when they are unreferenced
+    private volatile Map<String, Long> unreferencedSharedFiles = ImmutableMap.of();
+
+    // commit points are never modified once written, so the files they reference are only read once
+    private final Map<String, Set<String>> commitPointFiles = Maps.newHashMap();
+
     protected BlobStoreIndexGateway(Index index, @IndexSettings Settings indexSettings, Gateway gateway) {
         super(index, indexSettings);
 
@@ -58,6 +109,22 @@ public abstract class BlobStoreIndexGateway extends AbstractIndexComponent imple
         this.chunkSize = componentSettings.getAsBytesSize("chunk_size", this.gateway.chunkSize());
 
         this.indexPath = this.gateway.basePath().add("indices").add(index.name());
+
+        this.sharedFilesContainer = blobStore.immutableBlobContainer(indexPath.add("files"));
+        this.indexContainer = blobStore.immutableBlobContainer(indexPath);
+
+        // several snapshot intervals, so a file uploaded (or reused) by an ongoing snapshot of any shard, on any node,
+        // is referenced by its commit point long before it can be deleted
+        TimeValue snapshotInterval = indexSettings.getAsTime(IndexShardGatewayService.INDEX_GATEWAY_SNAPSHOT_INTERVAL, TimeValue.timeValueSeconds(10));
+        long defaultGracePeriod = Math.max(TimeValue.timeValueMinutes(30).millis(), snapshotInterval.millis() * 10);
+        this.sharedFilesGracePeriod = componentSettings.getAsTime("shared_files.grace_period", TimeValue.timeValueMillis(defaultGracePeriod));
+
+        ByteSizeValue maxSnapshotBytesPerSec = componentSettings.getAsBytesSize("max_snapshot_bytes_per_sec", new ByteSizeValue(0, ByteSizeUnit.BYTES));
+        if (maxSnapshotBytesPerSec.bytes() <= 0) {
+            this.snapshotRateLimiter = null;
+        } else {
+            this.snapshotRateLimiter = new RateLimiter.SimpleRateLimiter(maxSnapshotBytesPerSec.mbFrac());
+        }
     }
 
     @Override
@@ -77,6 +144,212 @@ public abstract class BlobStoreIndexGateway extends AbstractIndexComponent imple
         return indexPath.add(Integer.toString(shardId));
     }
 
+    /**
+     * The container holding the index files of all the shards of the index, keyed by their content (see
+     * {@link BlobStoreIndexShardGateway#sharedFileName(String, long, String)}), so the same file is only stored once
+     * no matter how many shards, or snapshots, reference it.
+     */
+    public ImmutableBlobContainer sharedFilesContainer() {
+        return this.sharedFilesContainer;
+    }
+
+    /**
+     * The rate limiter snapshot uploads are throttled with, <tt>null</tt> if not throttled. A single limiter is
+     * shared by all the files uploaded by the snapshots of all the shards of the index on this node, so
+     * <tt>max_snapshot_bytes_per_sec</tt> bounds their total rate, not the rate of each file.
+     */
+    public RateLimiter snapshotRateLimiter() {
+        return this.snapshotRateLimiter;
+    }
+
+    /**
+     * The lock a shard snapshot holds from the time it lists the shared files until its commit point is written, so
+     * a clean up running on this node can't delete a shared file the snapshot reuses.
+     */
+    public Lock snapshotLock() {
+        return sharedFilesLock.readLock();
+    }
+
+    /**
+     * Returns <tt>true</tt> if shared files found unreferenced by an earlier clean up have been unreferenced for
+     * longer than the grace period, and are due for deletion.
+     */
+    public boolean hasUnreferencedSharedFiles() {
+        long deleteBefore = System.currentTimeMillis() - sharedFilesGracePeriod.millis();
+        for (Long since : unreferencedSharedFiles.values()) {
+            if (since <= deleteBefore) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the shared files that are no longer referenced by the commit points of any of the shards of the index.
+     * Snapshots of the shards allocated on this node are blocked while cleaning up (see {@link #snapshotLock()}).
+     * Shards allocated on other nodes might still be uploading a file, or about to reference a file they found in
+     * the shared container, so files are only deleted once they have been unreferenced for longer than the grace
+     * period, and the commit points are read again right before deleting. The time a file was first found
+     * unreferenced is stored in the blob store, so it is the same no matter which node cleans up. Returns
+     * <tt>false</tt> if a clean up is already running.
+     */
+    public boolean cleanUnreferencedSharedFiles() {
+        if (!cleaningSharedFiles.compareAndSet(false, true)) {
+            return false;
+        }
+        Lock lock = sharedFilesLock.writeLock();
+        lock.lock();
+        try {
+            doCleanUnreferencedSharedFiles();
+        } finally {
+            lock.unlock();
+            cleaningSharedFiles.set(false);
+        }
+        return true;
+    }
+
+    private void doCleanUnreferencedSharedFiles() {
+        ImmutableMap<String, BlobMetaData> sharedBlobs;
+        try {
+            sharedBlobs = sharedFilesContainer.listBlobs();
+        } catch (IOException e) {
+            logger.warn("failed to list shared files", e);
+            return;
+        }
+        Set<String> referenced = referencedSharedFiles();
+        if (referenced == null) {
+            return;
+        }
+
+        Map<String, Long> unreferencedSince = readUnreferencedSharedFiles();
+        Set<String> deletable = deletableSharedFiles(sharedBlobs.keySet(), referenced, unreferencedSince,
+                System.currentTimeMillis(), sharedFilesGracePeriod.millis());
+        if (!deletable.isEmpty()) {
+            // a shard on another node might have written a commit point reusing a file since we read them
+            Set<String> referencedNow = referencedSharedFiles();
+            if (referencedNow == null) {
+                return;
+            }
+            deletable.removeAll(referencedNow);
+        }
+        for (String blobName : sharedBlobs.keySet()) {
+            if (deletable.contains(sharedFileName(blobName))) {
+                try {
+                    sharedFilesContainer.deleteBlob(blobName);
+                } catch (IOException e) {
+                    // ignore, will delete it later
+                }
+            }
+        }
+        try {
+            writeUnreferencedSharedFiles(unreferencedSince);
+        } catch (IOException e) {
+            logger.warn("failed to write unreferenced shared files", e);
+        }
+        unreferencedSharedFiles = ImmutableMap.copyOf(unreferencedSince);
+    }
+
+    /**
+     * Returns the shared files referenced by the commit points of all the shards of the index, or <tt>null</tt> if
+     * the commit points of a shard could not be read.
+     */
+    private Set<String> referencedSharedFiles() {
+        Set<String> referenced = Sets.newHashSet();
+        Set<String> commitPoints = Sets.newHashSet();
+        int numberOfShards = indexSettings.getAsInt(IndexMetaData.SETTING_NUMBER_OF_SHARDS, -1);
+        for (int shardId = 0; shardId < numberOfShards; shardId++) {
+            ImmutableBlobContainer shardContainer = blobStore.immutableBlobContainer(shardPath(shardId));
+            try {
+                for (String name : shardContainer.listBlobsByPrefix("commit-").keySet()) {
+                    String key = shardId + "/" + name;
+                    commitPoints.add(key);
+                    Set<String> files = commitPointFiles.get(key);
+                    if (files == null) {
+                        CommitPoint commitPoint = CommitPoints.fromXContent(shardContainer.readBlobFully(name));
+                        files = Sets.newHashSet();
+                        for (CommitPoint.FileInfo fileInfo : commitPoint.indexFiles()) {
+                            files.add(fileInfo.name());
+                        }
+                        commitPointFiles.put(key, files);
+                    }
+                    referenced.addAll(files);
+                }
+            } catch (Exception e) {
+                // we can't tell which files are referenced by this shard, so don't delete anything
+                logger.warn("failed to read commit points of shard [{}], not cleaning shared files", e, shardId);
+                return null;
+            }
+        }
+        commitPointFiles.keySet().retainAll(commitPoints);
+        return referenced;
+    }
+
+    /**
+     * Updates <tt>unreferencedSince</tt> (shared file name to the time it was first found unreferenced) with the
+     * current listing of the shared files container, and returns the names of the files that have been unreferenced
+     * for longer than the grace period, which are removed from it.
+     */
+    public static Set<String> deletableSharedFiles(Set<String> sharedBlobNames, Set<String> referenced, Map<String, Long> unreferencedSince,
+                                                   long now, long gracePeriod) {
+        Set<String> existing = Sets.newHashSet();
+        for (String blobName : sharedBlobNames) {
+            existing.add(sharedFileName(blobName));
+        }
+        // files that are gone, or referenced again, start over if they ever become unreferenced
+        for (Iterator<String> it = unreferencedSince.keySet().iterator(); it.hasNext(); ) {
+            String name = it.next();
+            if (!existing.contains(name) || referenced.contains(name)) {
+                it.remove();
+            }
+        }
+        Set<String> deletable = Sets.newHashSet();
+        for (String name : existing) {
+            if (referenced.contains(name)) {
+                continue;
+            }
+            Long since = unreferencedSince.get(name);
+            if (since == null) {
+                unreferencedSince.put(name, now);
+            } else if (now - since >= gracePeriod) {
+                deletable.add(name);
+                unreferencedSince.remove(name);
+            }
+        }
+        return deletable;
+    }
+
+    private static String sharedFileName(String blobName) {
+        int index = blobName.indexOf(".part");
+        return index == -1 ? blobName : blobName.substring(0, index);
+    }
+
+    private Map<String, Long> readUnreferencedSharedFiles() {
+        Map<String, Long> unreferencedSince = Maps.newHashMap();
+        try {
+            if (!indexContainer.blobExists(UNREFERENCED_SHARED_FILES_BLOB)) {
+                return unreferencedSince;
+            }
+            byte[] data = indexContainer.readBlobFully(UNREFERENCED_SHARED_FILES_BLOB);
+            for (Map.Entry<String, Object> entry : XContentHelper.convertToMap(data, 0, data.length, false).v2().entrySet()) {
+                unreferencedSince.put(entry.getKey(), ((Number) entry.getValue()).longValue());
+            }
+        } catch (Exception e) {
+            // start over, files will be deleted one grace period later
+            logger.warn("failed to read unreferenced shared files", e);
+        }
+        return unreferencedSince;
+    }
+
+    private void writeUnreferencedSharedFiles(Map<String, Long> unreferencedSince) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        for (Map.Entry<String, Long> entry : unreferencedSince.entrySet()) {
+            builder.field(entry.getKey(), entry.getValue());
+        }
+        builder.endObject();
+        byte[] data = builder.bytes().toBytes();
+        indexContainer.writeBlob(UNREFERENCED_SHARED_FILES_BLOB, new FastByteArrayInputStream(data), data.length);
+    }
+
     public static BlobPath shardPath(BlobPath basePath, String index, int shardId) {
         return basePath.add("indices").add(index).add(Integer.toString(shardId));
     }
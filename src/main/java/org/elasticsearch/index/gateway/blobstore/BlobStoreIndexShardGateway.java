@@ -27,6 +27,7 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RateLimiter;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.common.blobstore.*;
 import org.elasticsearch.common.io.FastByteArrayInputStream;
@@ -50,7 +51,9 @@ import org.elasticsearch.index.translog.Translog;
 import org.elasticsearch.index.translog.TranslogStreams;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -59,6 +62,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 
 /**
  *
@@ -79,6 +83,10 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
 
     protected final ImmutableBlobContainer blobContainer;
 
+    protected final ImmutableBlobContainer sharedBlobContainer;
+
+    private final BlobStoreIndexGateway blobStoreIndexGateway;
+
     private volatile RecoveryStatus recoveryStatus;
 
     private volatile SnapshotStatus lastSnapshotStatus;
@@ -93,13 +101,14 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         this.indexShard = (InternalIndexShard) indexShard;
         this.store = store;
 
-        BlobStoreIndexGateway blobStoreIndexGateway = (BlobStoreIndexGateway) indexGateway;
+        this.blobStoreIndexGateway = (BlobStoreIndexGateway) indexGateway;
 
         this.chunkSize = blobStoreIndexGateway.chunkSize(); // can be null -> no chunking
         this.blobStore = blobStoreIndexGateway.blobStore();
         this.shardPath = blobStoreIndexGateway.shardPath(shardId.id());
 
         this.blobContainer = blobStore.immutableBlobContainer(shardPath);
+        this.sharedBlobContainer = blobStoreIndexGateway.sharedFilesContainer();
 
         this.recoveryStatus = new RecoveryStatus();
     }
@@ -155,6 +164,9 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         currentSnapshotStatus = new SnapshotStatus();
         currentSnapshotStatus.startTime(System.currentTimeMillis());
 
+        // blocks a clean up of the shared files on this node while the snapshot reuses them
+        Lock sharedFilesLock = blobStoreIndexGateway.snapshotLock();
+        sharedFilesLock.lock();
         try {
             doSnapshot(snapshot);
             currentSnapshotStatus.time(System.currentTimeMillis() - currentSnapshotStatus.startTime());
@@ -169,6 +181,7 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
                 throw new IndexShardGatewaySnapshotFailedException(shardId, e.getMessage(), e);
             }
         } finally {
+            sharedFilesLock.unlock();
             this.lastSnapshotStatus = currentSnapshotStatus;
             this.currentSnapshotStatus = null;
         }
@@ -177,8 +190,10 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
 
     private void doSnapshot(final Snapshot snapshot) throws IndexShardGatewaySnapshotFailedException {
         ImmutableMap<String, BlobMetaData> blobs;
+        ImmutableMap<String, BlobMetaData> sharedBlobs;
         try {
             blobs = blobContainer.listBlobs();
+            sharedBlobs = sharedBlobContainer.listBlobs();
         } catch (IOException e) {
             throw new IndexShardGatewaySnapshotFailedException(shardId, "failed to list blobs", e);
         }
@@ -211,10 +226,20 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
                 snapshotRequired = true; // we want to always snapshot the segment file if the index changed
             }
 
-            CommitPoint.FileInfo fileInfo = commitPoints.findPhysicalIndexFile(fileName);
-            if (fileInfo == null || !fileInfo.isSame(md) || !commitPointFileExistsInBlobs(fileInfo, blobs)) {
-                // commit point file does not exists in any commit point, or has different length, or does not fully exists in the listed blobs
-                snapshotRequired = true;
+            CommitPoint.FileInfo fileInfo;
+            boolean shared = isShareable(fileName, md);
+            if (shared) {
+                // keyed by its content, so it is reused if it was snapshotted before by this shard or by any other one
+                fileInfo = new CommitPoint.FileInfo(sharedFileName(fileName, md.length(), md.checksum()), fileName, md.length(), md.checksum());
+                if (!commitPointFileExistsInBlobs(fileInfo, sharedBlobs)) {
+                    snapshotRequired = true;
+                }
+            } else {
+                fileInfo = commitPoints.findPhysicalIndexFile(fileName);
+                if (fileInfo == null || !fileInfo.isSame(md) || !commitPointFileExistsInBlobs(fileInfo, blobs)) {
+                    // commit point file does not exists in any commit point, or has different length, or does not fully exists in the listed blobs
+                    snapshotRequired = true;
+                }
             }
 
             if (snapshotRequired) {
@@ -222,7 +247,7 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
                 indexTotalFilesSize += md.length();
                 // create a new FileInfo
                 try {
-                    CommitPoint.FileInfo snapshotFileInfo = new CommitPoint.FileInfo(fileNameFromGeneration(++generation), fileName, md.length(), md.checksum());
+                    CommitPoint.FileInfo snapshotFileInfo = shared ? fileInfo : new CommitPoint.FileInfo(fileNameFromGeneration(++generation), fileName, md.length(), md.checksum());
                     indexCommitPointFiles.add(snapshotFileInfo);
                     snapshotFile(snapshotIndexCommit.getDirectory(), snapshotFileInfo, indexLatch, failures);
                 } catch (IOException e) {
@@ -323,6 +348,24 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
             throw new IndexShardGatewaySnapshotFailedException(shardId, "Failed to write commit point", e);
         }
 
+        // a shared file might have been cleaned up (by another shard, possibly on another node) while we were
+        // snapshotting, drop the commit point so the next snapshot uploads it again
+        try {
+            ImmutableMap<String, BlobMetaData> currentSharedBlobs = sharedBlobContainer.listBlobs();
+            for (CommitPoint.FileInfo fileInfo : indexCommitPointFiles) {
+                if (isSharedFile(fileInfo.name()) && !commitPointFileExistsInBlobs(fileInfo, currentSharedBlobs)) {
+                    try {
+                        blobContainer.deleteBlob(commitPointName);
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                    throw new IndexShardGatewaySnapshotFailedException(shardId, "shared file [" + fileInfo.name() + "] was deleted while snapshotting", null);
+                }
+            }
+        } catch (IOException e) {
+            throw new IndexShardGatewaySnapshotFailedException(shardId, "failed to list shared files", e);
+        }
+
         // delete all files that are not referenced by any commit point
         // build a new CommitPoint, that includes this one and all the saved ones
         List<CommitPoint> newCommitPointsList = Lists.newArrayList();
@@ -333,6 +376,14 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
             }
         }
         CommitPoints newCommitPoints = new CommitPoints(newCommitPointsList);
+        boolean droppedSharedFiles = false;
+        for (CommitPoint point : commitPoints) {
+            for (CommitPoint.FileInfo fileInfo : point.indexFiles()) {
+                if (isSharedFile(fileInfo.name()) && newCommitPoints.findNameFile(fileInfo.name()) == null) {
+                    droppedSharedFiles = true;
+                }
+            }
+        }
         // first, go over and delete all the commit points
         for (String blobName : blobs.keySet()) {
             if (!blobName.startsWith("commit-")) {
@@ -364,6 +415,16 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
                 }
             }
         }
+        // shared files are deleted once no shard references them anymore, reading the commit points of all the
+        // shards, so do it without holding the snapshot
+        if (droppedSharedFiles || blobStoreIndexGateway.hasUnreferencedSharedFiles()) {
+            threadPool.executor(ThreadPool.Names.SNAPSHOT).execute(new Runnable() {
+                @Override
+                public void run() {
+                    blobStoreIndexGateway.cleanUnreferencedSharedFiles();
+                }
+            });
+        }
     }
 
     @Override
@@ -371,8 +432,10 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         this.recoveryStatus = recoveryStatus;
 
         final ImmutableMap<String, BlobMetaData> blobs;
+        final ImmutableMap<String, BlobMetaData> sharedBlobs;
         try {
             blobs = blobContainer.listBlobs();
+            sharedBlobs = sharedBlobContainer.listBlobs();
         } catch (IOException e) {
             throw new IndexShardGatewayRecoveryException(shardId, "Failed to list content of gateway", e);
         }
@@ -408,13 +471,13 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         }
 
         for (CommitPoint commitPoint : commitPoints) {
-            if (!commitPointExistsInBlobs(commitPoint, blobs)) {
+            if (!commitPointExistsInBlobs(commitPoint, blobs, sharedBlobs)) {
                 logger.warn("listed commit_point [{}]/[{}], but not all files exists, ignoring", commitPoint.name(), commitPoint.version());
                 continue;
             }
             try {
                 recoveryStatus.index().startTime(System.currentTimeMillis());
-                recoverIndex(commitPoint, blobs);
+                recoverIndex(commitPoint, blobs, sharedBlobs);
                 recoveryStatus.index().time(System.currentTimeMillis() - recoveryStatus.index().startTime());
 
                 recoverTranslog(commitPoint, blobs);
@@ -539,7 +602,7 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         }
     }
 
-    private void recoverIndex(CommitPoint commitPoint, ImmutableMap<String, BlobMetaData> blobs) throws Exception {
+    private void recoverIndex(CommitPoint commitPoint, ImmutableMap<String, BlobMetaData> blobs, ImmutableMap<String, BlobMetaData> sharedBlobs) throws Exception {
         recoveryStatus.updateStage(RecoveryStatus.Stage.INDEX);
         int numberOfFiles = 0;
         long totalSize = 0;
@@ -591,7 +654,7 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         final CopyOnWriteArrayList<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
 
         for (final CommitPoint.FileInfo fileToRecover : filesToRecover) {
-            recoverFile(fileToRecover, blobs, latch, failures);
+            recoverFile(fileToRecover, isSharedFile(fileToRecover.name()) ? sharedBlobs : blobs, latch, failures);
         }
 
         try {
@@ -655,8 +718,9 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
             return;
         }
         final AtomicInteger partIndex = new AtomicInteger();
+        final ImmutableBlobContainer container = container(fileInfo);
 
-        blobContainer.readBlob(firstFileToRecover, new BlobContainer.ReadBlobListener() {
+        container.readBlob(firstFileToRecover, new BlobContainer.ReadBlobListener() {
             @Override
             public synchronized void onPartial(byte[] data, int offset, int size) throws IOException {
                 recoveryStatus.index().addCurrentFilesSize(size);
@@ -669,7 +733,7 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
                 String partName = fileInfo.name() + ".part" + part;
                 if (blobs.containsKey(partName)) {
                     // continue with the new part
-                    blobContainer.readBlob(partName, this);
+                    container.readBlob(partName, this);
                     return;
                 } else {
                     // we are done...
@@ -755,6 +819,10 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
                 indexInput = indexShard.store().openInputRaw(fileInfo.physicalName(), IOContext.READ);
                 indexInput.seek(partNumber * chunkBytes);
                 InputStreamIndexInput is = new ThreadSafeInputStreamIndexInput(indexInput, chunkBytes);
+                InputStream stream = is;
+                if (blobStoreIndexGateway.snapshotRateLimiter() != null) {
+                    stream = new RateLimitingInputStream(is, blobStoreIndexGateway.snapshotRateLimiter());
+                }
 
                 String blobName = fileInfo.name();
                 if (fNumberOfChunks > 1) {
@@ -763,7 +831,7 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
                 }
 
                 final IndexInput fIndexInput = indexInput;
-                blobContainer.writeBlob(blobName, is, is.actualSizeToRead(), new ImmutableBlobContainer.WriterListener() {
+                container(fileInfo).writeBlob(blobName, stream, is.actualSizeToRead(), new ImmutableBlobContainer.WriterListener() {
                     @Override
                     public void onCompleted() {
                         try {
@@ -803,9 +871,9 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         }
     }
 
-    private boolean commitPointExistsInBlobs(CommitPoint commitPoint, ImmutableMap<String, BlobMetaData> blobs) {
+    private boolean commitPointExistsInBlobs(CommitPoint commitPoint, ImmutableMap<String, BlobMetaData> blobs, ImmutableMap<String, BlobMetaData> sharedBlobs) {
         for (CommitPoint.FileInfo fileInfo : Iterables.concat(commitPoint.indexFiles(), commitPoint.translogFiles())) {
-            if (!commitPointFileExistsInBlobs(fileInfo, blobs)) {
+            if (!commitPointFileExistsInBlobs(fileInfo, isSharedFile(fileInfo.name()) ? sharedBlobs : blobs)) {
                 return false;
             }
         }
@@ -857,6 +925,62 @@ public abstract class BlobStoreIndexShardGateway extends AbstractIndexShardCompo
         return "__" + Long.toString(generation, Character.MAX_RADIX);
     }
 
+    /**
+     * The name of an index file in the shared files container, derived from its name, length and checksum, so
+     * identical files map to the same blob.
+     */
+    public static String sharedFileName(String physicalName, long length, String checksum) {
+        return physicalName + "." + Long.toString(length, Character.MAX_RADIX) + "." + checksum;
+    }
+
+    /**
+     * Only files with a checksum can be identified by their content, segments files are always snapshotted since
+     * we don't compute a checksum for them.
+     */
+    private boolean isShareable(String fileName, StoreFileMetaData md) {
+        return md.checksum() != null && !fileName.startsWith("segments");
+    }
+
+    /**
+     * Files private to the shard are named based on a generation (starting with <tt>__</tt>), all the other ones
+     * live in the shared files container.
+     */
+    private boolean isSharedFile(String name) {
+        return !name.startsWith("__");
+    }
+
+    private ImmutableBlobContainer container(CommitPoint.FileInfo fileInfo) {
+        return isSharedFile(fileInfo.name()) ? sharedBlobContainer : blobContainer;
+    }
+
+    private static class RateLimitingInputStream extends FilterInputStream {
+
+        private final RateLimiter rateLimiter;
+
+        RateLimitingInputStream(InputStream in, RateLimiter rateLimiter) {
+            super(in);
+            this.rateLimiter = rateLimiter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                rateLimiter.pause(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                rateLimiter.pause(n);
+            }
+            return n;
+        }
+    }
+
     private long findLatestFileNameGeneration(ImmutableMap<String, BlobMetaData> blobs) {
         long generation = -1;
         for (String name : blobs.keySet()) {
@@ -91,6 +91,8 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
 
         private Boolean compress = null;
 
+        private String compressType = null;
+
         private String format = Defaults.FORMAT;
 
         private String[] includes = Defaults.INCLUDES;
@@ -115,6 +117,11 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
             return this;
         }
 
+        public Builder compressType(String compressType) {
+            this.compressType = compressType;
+            return this;
+        }
+
         public Builder format(String format) {
             this.format = format;
             return this;
@@ -132,7 +139,7 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
 
         @Override
         public SourceFieldMapper build(BuilderContext context) {
-            return new SourceFieldMapper(name, enabled, format, compress, compressThreshold, includes, excludes);
+            return new SourceFieldMapper(name, enabled, format, compress, compressThreshold, compressType, includes, excludes);
         }
     }
 
@@ -156,6 +163,13 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
                         builder.compressThreshold(ByteSizeValue.parseBytesSizeValue(fieldNode.toString()).bytes());
                         builder.compress(true);
                     }
+                } else if (fieldName.equals("compress_type") && fieldNode != null) {
+                    String compressType = fieldNode.toString();
+                    if (CompressorFactory.compressor(compressType) == null) {
+                        throw new MapperParsingException("unknown compress_type [" + compressType + "] for [" + name + "]");
+                    }
+                    builder.compressType(compressType);
+                    builder.compress(true);
                 } else if ("format".equals(fieldName)) {
                     builder.format(nodeStringValue(fieldNode, null));
                 } else if (fieldName.equals("includes")) {
@@ -185,6 +199,8 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
 
     private long compressThreshold;
 
+    private String compressType;
+
     private String[] includes;
 
     private String[] excludes;
@@ -194,16 +210,17 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
     private XContentType formatContentType;
 
     public SourceFieldMapper() {
-        this(Defaults.NAME, Defaults.ENABLED, Defaults.FORMAT, null, -1, Defaults.INCLUDES, Defaults.EXCLUDES);
+        this(Defaults.NAME, Defaults.ENABLED, Defaults.FORMAT, null, -1, null, Defaults.INCLUDES, Defaults.EXCLUDES);
     }
 
     protected SourceFieldMapper(String name, boolean enabled, String format, Boolean compress, long compressThreshold,
-                                String[] includes, String[] excludes) {
+                                String compressType, String[] includes, String[] excludes) {
         super(new Names(name, name, name, name), Defaults.BOOST, new FieldType(Defaults.FIELD_TYPE),
                 Lucene.KEYWORD_ANALYZER, Lucene.KEYWORD_ANALYZER, null, null, null); // Only stored.
         this.enabled = enabled;
         this.compress = compress;
         this.compressThreshold = compressThreshold;
+        this.compressType = compressType;
         this.includes = includes;
         this.excludes = excludes;
         this.format = format;
@@ -214,6 +231,16 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
         return this.enabled;
     }
 
+    /**
+     * The compressor used to compress the source, the default one unless <tt>compress_type</tt> is set.
+     */
+    private Compressor compressor() {
+        if (compressType == null) {
+            return CompressorFactory.defaultCompressor();
+        }
+        return CompressorFactory.compressor(compressType);
+    }
+
     public String[] excludes() {
         return this.excludes;
 
@@ -277,7 +304,7 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
             CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
             StreamOutput streamOutput;
             if (compress != null && compress && (compressThreshold == -1 || source.length() > compressThreshold)) {
-                streamOutput = cachedEntry.bytes(CompressorFactory.defaultCompressor());
+                streamOutput = cachedEntry.bytes(compressor());
             } else {
                 streamOutput = cachedEntry.bytes();
             }
@@ -297,11 +324,11 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
                 try {
                     XContentType contentType = XContentFactory.xContentType(source);
                     if (formatContentType != null && formatContentType != contentType) {
-                        XContentBuilder builder = XContentFactory.contentBuilder(formatContentType, cachedEntry.bytes(CompressorFactory.defaultCompressor()));
+                        XContentBuilder builder = XContentFactory.contentBuilder(formatContentType, cachedEntry.bytes(compressor()));
                         builder.copyCurrentStructure(XContentFactory.xContent(contentType).createParser(source));
                         builder.close();
                     } else {
-                        StreamOutput streamOutput = cachedEntry.bytes(CompressorFactory.defaultCompressor());
+                        StreamOutput streamOutput = cachedEntry.bytes(compressor());
                         source.writeTo(streamOutput);
                         streamOutput.close();
                     }
@@ -325,7 +352,7 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
                     // we need to reread and store back, compressed....
                     CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
                     try {
-                        StreamOutput streamOutput = cachedEntry.bytes(CompressorFactory.defaultCompressor());
+                        StreamOutput streamOutput = cachedEntry.bytes(compressor());
                         XContentBuilder builder = XContentFactory.contentBuilder(formatContentType, streamOutput);
                         builder.copyCurrentStructure(XContentFactory.xContent(contentType).createParser(compressedStreamInput));
                         builder.close();
@@ -387,7 +414,7 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         // all are defaults, no need to write it at all
-        if (enabled == Defaults.ENABLED && compress == null && compressThreshold == -1 && includes.length == 0 && excludes.length == 0) {
+        if (enabled == Defaults.ENABLED && compress == null && compressThreshold == -1 && compressType == null && includes.length == 0 && excludes.length == 0) {
             return builder;
         }
         builder.startObject(contentType());
@@ -403,6 +430,9 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
         if (compressThreshold != -1) {
             builder.field("compress_threshold", new ByteSizeValue(compressThreshold).toString());
         }
+        if (compressType != null) {
+            builder.field("compress_type", compressType);
+        }
         if (includes.length > 0) {
             builder.field("includes", includes);
         }
@@ -423,6 +453,9 @@ public class SourceFieldMapper extends AbstractFieldMapper<byte[]> implements In
             if (sourceMergeWith.compressThreshold != -1) {
                 this.compressThreshold = sourceMergeWith.compressThreshold;
             }
+            if (sourceMergeWith.compressType != null) {
+                this.compressType = sourceMergeWith.compressType;
+            }
         }
     }
 }
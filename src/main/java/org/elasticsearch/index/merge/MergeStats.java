@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.merge;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -42,6 +43,8 @@ public class MergeStats implements Streamable, ToXContent {
     private long current;
     private long currentNumDocs;
     private long currentSizeInBytes;
+    private long totalThrottledTimeInMillis;
+    private long autoThrottleRateInBytes;
 
     public MergeStats() {
 
@@ -57,6 +60,13 @@ public class MergeStats implements Streamable, ToXContent {
         this.currentSizeInBytes += currentSizeInBytes;
     }
 
+    public void add(long totalMerges, long totalMergeTime, long totalNumDocs, long totalSizeInBytes, long currentMerges, long currentNumDocs, long currentSizeInBytes,
+                    long totalThrottledTimeInMillis, long autoThrottleRateInBytes) {
+        add(totalMerges, totalMergeTime, totalNumDocs, totalSizeInBytes, currentMerges, currentNumDocs, currentSizeInBytes);
+        this.totalThrottledTimeInMillis += totalThrottledTimeInMillis;
+        this.autoThrottleRateInBytes += autoThrottleRateInBytes;
+    }
+
     public void add(MergeStats mergeStats) {
         if (mergeStats == null) {
             return;
@@ -68,6 +78,8 @@ public class MergeStats implements Streamable, ToXContent {
         this.current += mergeStats.current;
         this.currentNumDocs += mergeStats.currentNumDocs;
         this.currentSizeInBytes += mergeStats.currentSizeInBytes;
+        this.totalThrottledTimeInMillis += mergeStats.totalThrottledTimeInMillis;
+        this.autoThrottleRateInBytes += mergeStats.autoThrottleRateInBytes;
     }
 
     /**
@@ -122,6 +134,32 @@ public class MergeStats implements Streamable, ToXContent {
         return new ByteSizeValue(currentSizeInBytes);
     }
 
+    /**
+     * The total time merges were paused by the (auto) merge IO throttling (in milliseconds).
+     */
+    public long getTotalThrottledTimeInMillis() {
+        return this.totalThrottledTimeInMillis;
+    }
+
+    /**
+     * The total time merges were paused by the (auto) merge IO throttling.
+     */
+    public TimeValue getTotalThrottledTime() {
+        return new TimeValue(totalThrottledTimeInMillis);
+    }
+
+    /**
+     * The current rate (per second) large merges are auto throttled to, summed across shards. <tt>0</tt> when merges
+     * are not auto throttled.
+     */
+    public long getAutoThrottleRateInBytes() {
+        return this.autoThrottleRateInBytes;
+    }
+
+    public ByteSizeValue getAutoThrottleRate() {
+        return new ByteSizeValue(autoThrottleRateInBytes);
+    }
+
     public static MergeStats readMergeStats(StreamInput in) throws IOException {
         MergeStats stats = new MergeStats();
         stats.readFrom(in);
@@ -141,6 +179,10 @@ public class MergeStats implements Streamable, ToXContent {
         builder.field(Fields.TOTAL_DOCS, totalNumDocs);
         builder.field(Fields.TOTAL_SIZE, getTotalSize().toString());
         builder.field(Fields.TOTAL_SIZE_IN_BYTES, totalSizeInBytes);
+        builder.field(Fields.TOTAL_THROTTLED_TIME, getTotalThrottledTime().toString());
+        builder.field(Fields.TOTAL_THROTTLED_TIME_IN_MILLIS, totalThrottledTimeInMillis);
+        builder.field(Fields.AUTO_THROTTLE_RATE, getAutoThrottleRate().toString() + "/s");
+        builder.field(Fields.AUTO_THROTTLE_RATE_IN_BYTES, autoThrottleRateInBytes);
         builder.endObject();
         return builder;
     }
@@ -157,6 +199,10 @@ public class MergeStats implements Streamable, ToXContent {
         static final XContentBuilderString TOTAL_DOCS = new XContentBuilderString("total_docs");
         static final XContentBuilderString TOTAL_SIZE = new XContentBuilderString("total_size");
         static final XContentBuilderString TOTAL_SIZE_IN_BYTES = new XContentBuilderString("total_size_in_bytes");
+        static final XContentBuilderString TOTAL_THROTTLED_TIME = new XContentBuilderString("total_throttled_time");
+        static final XContentBuilderString TOTAL_THROTTLED_TIME_IN_MILLIS = new XContentBuilderString("total_throttled_time_in_millis");
+        static final XContentBuilderString AUTO_THROTTLE_RATE = new XContentBuilderString("auto_throttle_rate");
+        static final XContentBuilderString AUTO_THROTTLE_RATE_IN_BYTES = new XContentBuilderString("auto_throttle_rate_in_bytes");
     }
 
     @Override
@@ -168,6 +214,10 @@ public class MergeStats implements Streamable, ToXContent {
         current = in.readVLong();
         currentNumDocs = in.readVLong();
         currentSizeInBytes = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            totalThrottledTimeInMillis = in.readVLong();
+            autoThrottleRateInBytes = in.readVLong();
+        }
     }
 
     @Override
@@ -179,5 +229,9 @@ public class MergeStats implements Streamable, ToXContent {
         out.writeVLong(current);
         out.writeVLong(currentNumDocs);
         out.writeVLong(currentSizeInBytes);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            out.writeVLong(totalThrottledTimeInMillis);
+            out.writeVLong(autoThrottleRateInBytes);
+        }
     }
 }
\ No newline at end of file
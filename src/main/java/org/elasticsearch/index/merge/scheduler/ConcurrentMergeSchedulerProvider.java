@@ -23,9 +23,14 @@ import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.MergePolicy;
 import org.apache.lucene.index.MergeScheduler;
 import org.apache.lucene.index.TrackingConcurrentMergeScheduler;
+import org.apache.lucene.store.MergeRateLimiter;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.index.merge.MergeStats;
 import org.elasticsearch.index.settings.IndexSettings;
@@ -35,25 +40,56 @@ import org.elasticsearch.threadpool.ThreadPool;
 import java.io.IOException;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * A provider of concurrent merge schedulers.
+ * <p/>
+ * With <tt>auto_throttle</tt> enabled, the IO of merges larger than <tt>min_throttled_merge_size</tt> is rate limited
+ * (through the store directory) to a rate that adapts to the merge backlog. The rate goes up by 20% if merges are
+ * waiting, checked when a throttled merge starts and every <tt>auto_throttle_interval</tt> while throttled merges run.
+ * It goes down by 10% when a throttled merge finishes and no merges are waiting. The rate stays within
+ * <tt>min_auto_throttle_rate</tt> and <tt>max_auto_throttle_rate</tt>. Small merges are never throttled, so they keep
+ * going through quickly while large merges don't saturate the disk.
  */
 public class ConcurrentMergeSchedulerProvider extends MergeSchedulerProvider {
 
     private final int maxThreadCount;
     private final int maxMergeCount;
 
+    private final boolean autoThrottle;
+    private final ByteSizeValue minThrottledMergeSize;
+    private final double minAutoThrottleRateMB;
+    private final double maxAutoThrottleRateMB;
+    private final double initialAutoThrottleRateMB;
+    private final TimeValue autoThrottleInterval;
+
+    private final ThreadPool threadPool;
+
     private Set<CustomConcurrentMergeScheduler> schedulers = new CopyOnWriteArraySet<CustomConcurrentMergeScheduler>();
 
     @Inject
     public ConcurrentMergeSchedulerProvider(ShardId shardId, @IndexSettings Settings indexSettings, ThreadPool threadPool) {
         super(shardId, indexSettings, threadPool);
+        this.threadPool = threadPool;
 
         // TODO LUCENE MONITOR this will change in Lucene 4.0
         this.maxThreadCount = componentSettings.getAsInt("max_thread_count", Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() / 2)));
         this.maxMergeCount = componentSettings.getAsInt("max_merge_count", maxThreadCount + 2);
-        logger.debug("using [concurrent] merge scheduler with max_thread_count[{}]", maxThreadCount);
+        this.autoThrottle = componentSettings.getAsBoolean("auto_throttle", false);
+        this.minThrottledMergeSize = componentSettings.getAsBytesSize("min_throttled_merge_size", new ByteSizeValue(50, ByteSizeUnit.MB));
+        this.minAutoThrottleRateMB = componentSettings.getAsBytesSize("min_auto_throttle_rate", new ByteSizeValue(5, ByteSizeUnit.MB)).mbFrac();
+        this.maxAutoThrottleRateMB = componentSettings.getAsBytesSize("max_auto_throttle_rate", new ByteSizeValue(200, ByteSizeUnit.MB)).mbFrac();
+        this.initialAutoThrottleRateMB = Math.max(minAutoThrottleRateMB, Math.min(maxAutoThrottleRateMB, 20));
+        this.autoThrottleInterval = componentSettings.getAsTime("auto_throttle_interval", TimeValue.timeValueSeconds(1));
+        if (autoThrottle) {
+            logger.debug("using [concurrent] merge scheduler with max_thread_count[{}], auto_throttle [{}] to [{}] every [{}], min_throttled_merge_size [{}]", maxThreadCount,
+                    new ByteSizeValue((long) (minAutoThrottleRateMB * 1024 * 1024)), new ByteSizeValue((long) (maxAutoThrottleRateMB * 1024 * 1024)), autoThrottleInterval, minThrottledMergeSize);
+        } else {
+            logger.debug("using [concurrent] merge scheduler with max_thread_count[{}]", maxThreadCount);
+        }
     }
 
     @Override
@@ -70,7 +106,8 @@ public class ConcurrentMergeSchedulerProvider extends MergeSchedulerProvider {
         MergeStats mergeStats = new MergeStats();
         for (CustomConcurrentMergeScheduler scheduler : schedulers) {
             mergeStats.add(scheduler.totalMerges(), scheduler.totalMergeTime(), scheduler.totalMergeNumDocs(), scheduler.totalMergeSizeInBytes(),
-                    scheduler.currentMerges(), scheduler.currentMergesNumDocs(), scheduler.currentMergesSizeInBytes());
+                    scheduler.currentMerges(), scheduler.currentMergesNumDocs(), scheduler.currentMergesSizeInBytes(),
+                    TimeUnit.NANOSECONDS.toMillis(scheduler.throttledNanos.get()), autoThrottle ? (long) (scheduler.targetMBPerSec * 1024 * 1024) : 0);
         }
         return mergeStats;
     }
@@ -81,10 +118,96 @@ public class ConcurrentMergeSchedulerProvider extends MergeSchedulerProvider {
 
         private final ConcurrentMergeSchedulerProvider provider;
 
+        private final Set<MergeRateLimiter> rateLimiters = ConcurrentCollections.newConcurrentSet();
+
+        private final AtomicLong throttledNanos = new AtomicLong();
+
+        private volatile double targetMBPerSec;
+
+        // guarded by this
+        private ScheduledFuture<?> rateUpdater;
+
         private CustomConcurrentMergeScheduler(ESLogger logger, ShardId shardId, ConcurrentMergeSchedulerProvider provider) {
             super(logger);
             this.shardId = shardId;
             this.provider = provider;
+            this.targetMBPerSec = provider.initialAutoThrottleRateMB;
+        }
+
+        @Override
+        protected void doMerge(MergePolicy.OneMerge merge) throws IOException {
+            if (!provider.autoThrottle || merge.estimatedMergeBytes < provider.minThrottledMergeSize.bytes()) {
+                super.doMerge(merge);
+                return;
+            }
+            MergeRateLimiter rateLimiter;
+            synchronized (this) {
+                rateLimiter = new MergeRateLimiter(updateTargetRate(false), throttledNanos);
+                rateLimiters.add(rateLimiter);
+                if (rateUpdater == null) {
+                    // keep adapting the rate while throttled merges run, not only when they start
+                    rateUpdater = provider.threadPool.scheduleWithFixedDelay(new Runnable() {
+                        @Override
+                        public void run() {
+                            updateTargetRate(false);
+                        }
+                    }, provider.autoThrottleInterval);
+                }
+            }
+            MergeRateLimiter.current(rateLimiter);
+            try {
+                super.doMerge(merge);
+            } finally {
+                MergeRateLimiter.current(null);
+                synchronized (this) {
+                    rateLimiters.remove(rateLimiter);
+                    updateTargetRate(true);
+                    if (rateLimiters.isEmpty()) {
+                        cancelRateUpdater();
+                    }
+                }
+            }
+        }
+
+        private synchronized void cancelRateUpdater() {
+            if (rateUpdater != null) {
+                rateUpdater.cancel(false);
+                rateUpdater = null;
+            }
+        }
+
+        /**
+         * Adapts the target rate to the merge backlog, applying it to the running merges. Called when a throttled merge
+         * starts, every auto throttle interval while throttled merges run, and when a throttled merge finishes.
+         */
+        private synchronized double updateTargetRate(boolean mergeFinished) {
+            boolean backlog = writer != null && writer.hasPendingMerges();
+            double rate = nextTargetRate(targetMBPerSec, backlog, mergeFinished, provider.minAutoThrottleRateMB, provider.maxAutoThrottleRateMB);
+            if (rate != targetMBPerSec) {
+                if (logger.isTraceEnabled()) {
+                    logger.trace("updating merge auto throttle rate from [{}] to [{}] mb/s", targetMBPerSec, rate);
+                }
+                targetMBPerSec = rate;
+                for (MergeRateLimiter rateLimiter : rateLimiters) {
+                    rateLimiter.setMbPerSec(rate);
+                }
+            }
+            return rate;
+        }
+
+        /**
+         * The next auto throttle rate: up by 20% if merges are waiting (we are falling behind), down by 10% if a merge
+         * just finished without merges waiting (we are keeping up), unchanged otherwise. A long running merge alone
+         * doesn't tell whether we keep up, so the rate is only lowered once a merge completes.
+         */
+        public static double nextTargetRate(double rate, boolean backlog, boolean mergeFinished, double minRate, double maxRate) {
+            if (backlog) {
+                return Math.min(maxRate, rate * 1.2);
+            }
+            if (mergeFinished) {
+                return Math.max(minRate, rate / 1.1);
+            }
+            return rate;
         }
 
         @Override
@@ -103,6 +226,7 @@ public class ConcurrentMergeSchedulerProvider extends MergeSchedulerProvider {
 
         @Override
         public void close() {
+            cancelRateUpdater();
             super.close();
             provider.schedulers.remove(this);
         }
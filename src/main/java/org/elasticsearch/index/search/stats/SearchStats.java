@@ -19,10 +19,12 @@
 
 package org.elasticsearch.index.search.stats;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -148,6 +150,8 @@ public class SearchStats implements Streamable, ToXContent {
 
     Stats totalStats;
     long openContexts;
+    long openScrollContexts;
+    long scrollSegmentsSizeInBytes;
 
     @Nullable
     Map<String, Stats> groupStats;
@@ -157,8 +161,14 @@ public class SearchStats implements Streamable, ToXContent {
     }
 
     public SearchStats(Stats totalStats, long openContexts, @Nullable Map<String, Stats> groupStats) {
+        this(totalStats, openContexts, 0, 0, groupStats);
+    }
+
+    public SearchStats(Stats totalStats, long openContexts, long openScrollContexts, long scrollSegmentsSizeInBytes, @Nullable Map<String, Stats> groupStats) {
         this.totalStats = totalStats;
         this.openContexts = openContexts;
+        this.openScrollContexts = openScrollContexts;
+        this.scrollSegmentsSizeInBytes = scrollSegmentsSizeInBytes;
         this.groupStats = groupStats;
     }
 
@@ -172,6 +182,8 @@ public class SearchStats implements Streamable, ToXContent {
         }
         totalStats.add(searchStats.totalStats);
         openContexts += searchStats.openContexts;
+        openScrollContexts += searchStats.openScrollContexts;
+        scrollSegmentsSizeInBytes += searchStats.scrollSegmentsSizeInBytes;
         if (includeTypes && searchStats.groupStats != null && !searchStats.groupStats.isEmpty()) {
             if (groupStats == null) {
                 groupStats = new HashMap<String, Stats>(searchStats.groupStats.size());
@@ -195,6 +207,22 @@ public class SearchStats implements Streamable, ToXContent {
         return this.openContexts;
     }
 
+    /**
+     * The number of open scroll contexts.
+     */
+    public long getOpenScrollContexts() {
+        return this.openScrollContexts;
+    }
+
+    /**
+     * The size of the segments held open by scroll contexts (each segment is only counted once per shard, even
+     * when held by several scrolls). This includes segments that have since been merged away, and are kept on disk
+     * only because of the scrolls.
+     */
+    public ByteSizeValue getScrollSegmentsSize() {
+        return new ByteSizeValue(scrollSegmentsSizeInBytes);
+    }
+
     @Nullable
     public Map<String, Stats> getGroupStats() {
         return this.groupStats;
@@ -204,6 +232,9 @@ public class SearchStats implements Streamable, ToXContent {
     public XContentBuilder toXContent(XContentBuilder builder, ToXContent.Params params) throws IOException {
         builder.startObject(Fields.SEARCH);
         builder.field(Fields.OPEN_CONTEXTS, openContexts);
+        builder.field(Fields.OPEN_SCROLL_CONTEXTS, openScrollContexts);
+        builder.field(Fields.SCROLL_SEGMENTS_SIZE, getScrollSegmentsSize().toString());
+        builder.field(Fields.SCROLL_SEGMENTS_SIZE_IN_BYTES, scrollSegmentsSizeInBytes);
         totalStats.toXContent(builder, params);
         if (groupStats != null && !groupStats.isEmpty()) {
             builder.startObject(Fields.GROUPS);
@@ -221,6 +252,9 @@ public class SearchStats implements Streamable, ToXContent {
     static final class Fields {
         static final XContentBuilderString SEARCH = new XContentBuilderString("search");
         static final XContentBuilderString OPEN_CONTEXTS = new XContentBuilderString("open_contexts");
+        static final XContentBuilderString OPEN_SCROLL_CONTEXTS = new XContentBuilderString("open_scroll_contexts");
+        static final XContentBuilderString SCROLL_SEGMENTS_SIZE = new XContentBuilderString("scroll_segments_size");
+        static final XContentBuilderString SCROLL_SEGMENTS_SIZE_IN_BYTES = new XContentBuilderString("scroll_segments_size_in_bytes");
         static final XContentBuilderString GROUPS = new XContentBuilderString("groups");
         static final XContentBuilderString QUERY_TOTAL = new XContentBuilderString("query_total");
         static final XContentBuilderString QUERY_TIME = new XContentBuilderString("query_time");
@@ -242,6 +276,10 @@ public class SearchStats implements Streamable, ToXContent {
     public void readFrom(StreamInput in) throws IOException {
         totalStats = Stats.readStats(in);
         openContexts = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            openScrollContexts = in.readVLong();
+            scrollSegmentsSizeInBytes = in.readVLong();
+        }
         if (in.readBoolean()) {
             int size = in.readVInt();
             groupStats = new HashMap<String, Stats>(size);
@@ -255,6 +293,10 @@ public class SearchStats implements Streamable, ToXContent {
     public void writeTo(StreamOutput out) throws IOException {
         totalStats.writeTo(out);
         out.writeVLong(openContexts);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            out.writeVLong(openScrollContexts);
+            out.writeVLong(scrollSegmentsSizeInBytes);
+        }
         if (groupStats == null || groupStats.isEmpty()) {
             out.writeBoolean(false);
         } else {
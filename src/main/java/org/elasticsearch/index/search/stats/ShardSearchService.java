@@ -20,19 +20,26 @@
 package org.elasticsearch.index.search.stats;
 
 import com.google.common.collect.ImmutableMap;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SegmentReader;
 import org.elasticsearch.common.collect.MapBuilder;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.ConcurrentMapLong;
 import org.elasticsearch.index.search.slowlog.ShardSlowLogSearchService;
 import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.index.shard.AbstractIndexShardComponent;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.search.internal.SearchContext;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -43,6 +50,8 @@ public class ShardSearchService extends AbstractIndexShardComponent {
 
     private final StatsHolder totalStats = new StatsHolder();
     private final CounterMetric openContexts = new CounterMetric();
+    // the segments (core cache key to size) held by each open scroll context, recorded when the context was opened
+    private final ConcurrentMapLong<Map<Object, Long>> scrollContexts = ConcurrentCollections.newConcurrentMapLong();
 
     private volatile Map<String, StatsHolder> groupsStats = ImmutableMap.of();
 
@@ -76,7 +85,7 @@ public class ShardSearchService extends AbstractIndexShardComponent {
                 }
             }
         }
-        return new SearchStats(total, openContexts.count(), groupsSt);
+        return new SearchStats(total, openContexts.count(), scrollContexts.size(), scrollSegmentsSizeInBytes(), groupsSt);
     }
 
     public void onPreQueryPhase(SearchContext searchContext) {
@@ -174,10 +183,48 @@ public class ShardSearchService extends AbstractIndexShardComponent {
 
     public void onNewContext(SearchContext context) {
         openContexts.inc();
+        if (context.scroll() != null) {
+            // the sizes are read now, while the segments are live, later on they might have been merged away
+            scrollContexts.put(context.id(), segmentsSizeInBytes(context));
+        }
     }
 
     public void onFreeContext(SearchContext context) {
         openContexts.dec();
+        scrollContexts.remove(context.id());
+    }
+
+    private Map<Object, Long> segmentsSizeInBytes(SearchContext context) {
+        Map<Object, Long> sizes = new HashMap<Object, Long>();
+        for (AtomicReaderContext leaf : context.searcher().getIndexReader().leaves()) {
+            if (leaf.reader() instanceof SegmentReader) {
+                try {
+                    sizes.put(leaf.reader().getCoreCacheKey(), ((SegmentReader) leaf.reader()).getSegmentInfo().sizeInBytes());
+                } catch (IOException e) {
+                    logger.trace("failed to compute the size of a segment of scroll context [{}]", e, context.id());
+                }
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * The size of the (distinct) segments held by the open scroll contexts.
+     */
+    private long scrollSegmentsSizeInBytes() {
+        if (scrollContexts.isEmpty()) {
+            return 0;
+        }
+        Set<Object> seen = new HashSet<Object>();
+        long size = 0;
+        for (Map<Object, Long> segments : scrollContexts.values()) {
+            for (Map.Entry<Object, Long> segment : segments.entrySet()) {
+                if (seen.add(segment.getKey())) {
+                    size += segment.getValue();
+                }
+            }
+        }
+        return size;
     }
 
     static class StatsHolder {
@@ -229,6 +229,10 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
             if (currentRouting.equals(shardRouting)) {
                 return this;
             }
+            if (shardRouting.primary() && !currentRouting.primary()) {
+                // promoted to primary, the operations the previous primary numbered might not have all made it here
+                engine.newHistory();
+            }
         }
         this.shardRouting = shardRouting;
         indicesLifecycle.shardRoutingChanged(this, currentRouting, shardRouting);
@@ -579,11 +583,20 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
     }
 
     public void performRecoveryFinalization(boolean withFlush, RecoveryStatus peerRecoveryStatus) throws ElasticSearchException {
-        performRecoveryFinalization(withFlush);
+        performRecoveryFinalization(withFlush, false);
         this.peerRecoveryStatus = peerRecoveryStatus;
     }
 
     public void performRecoveryFinalization(boolean withFlush) throws ElasticSearchException {
+        // recovered from the gateway, operations the replicas (or a previous primary) got might be missing here
+        // and numbered differently from now on, so start a new history of sequence numbers
+        performRecoveryFinalization(withFlush, true);
+    }
+
+    private void performRecoveryFinalization(boolean withFlush, boolean newHistory) throws ElasticSearchException {
+        if (newHistory) {
+            engine.newHistory();
+        }
         if (withFlush) {
             engine.flush(new Engine.Flush());
         }
@@ -608,19 +621,19 @@ public class InternalIndexShard extends AbstractIndexShardComponent implements I
                 case CREATE:
                     Translog.Create create = (Translog.Create) operation;
                     engine.create(prepareCreate(source(create.source()).type(create.type()).id(create.id())
-                            .routing(create.routing()).parent(create.parent()).timestamp(create.timestamp()).ttl(create.ttl())).version(create.version())
+                            .routing(create.routing()).parent(create.parent()).timestamp(create.timestamp()).ttl(create.ttl())).version(create.version()).seqNo(create.seqNo())
                             .origin(Engine.Operation.Origin.RECOVERY));
                     break;
                 case SAVE:
                     Translog.Index index = (Translog.Index) operation;
                     engine.index(prepareIndex(source(index.source()).type(index.type()).id(index.id())
-                            .routing(index.routing()).parent(index.parent()).timestamp(index.timestamp()).ttl(index.ttl())).version(index.version())
+                            .routing(index.routing()).parent(index.parent()).timestamp(index.timestamp()).ttl(index.ttl())).version(index.version()).seqNo(index.seqNo())
                             .origin(Engine.Operation.Origin.RECOVERY));
                     break;
                 case DELETE:
                     Translog.Delete delete = (Translog.Delete) operation;
                     Uid uid = Uid.createUid(delete.uid().text());
-                    engine.delete(new Engine.Delete(uid.type(), uid.id(), delete.uid()).version(delete.version())
+                    engine.delete(new Engine.Delete(uid.type(), uid.id(), delete.uid()).version(delete.version()).seqNo(delete.seqNo())
                             .origin(Engine.Operation.Origin.RECOVERY));
                     break;
                 case DELETE_BY_QUERY:
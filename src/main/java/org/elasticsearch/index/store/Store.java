@@ -38,6 +38,7 @@ import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.index.shard.AbstractIndexShardComponent;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.store.distributor.Distributor;
+import org.elasticsearch.index.store.fs.HybridFsDirectoryService;
 import org.elasticsearch.index.store.support.ForceSyncDirectory;
 
 import java.io.File;
@@ -142,6 +143,11 @@ public class Store extends AbstractIndexShardComponent implements CloseableIndex
     }
 
     public StoreStats stats() throws IOException {
+        if (directoryService instanceof HybridFsDirectoryService) {
+            HybridFsDirectoryService hybridDirectoryService = (HybridFsDirectoryService) directoryService;
+            return new StoreStats(Directories.estimateSize(directory), directoryService.throttleTimeInNanos(), hybridDirectoryService.memorySizeInBytes(),
+                    hybridDirectoryService.memoryOpens(), hybridDirectoryService.diskOpens());
+        }
         return new StoreStats(Directories.estimateSize(directory), directoryService.throttleTimeInNanos());
     }
 
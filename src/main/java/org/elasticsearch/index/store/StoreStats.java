@@ -19,6 +19,7 @@
 
 package org.elasticsearch.index.store;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -38,13 +39,26 @@ public class StoreStats implements Streamable, ToXContent {
 
     private long throttleTimeInNanos;
 
+    private long memorySizeInBytes;
+
+    private long memoryOpens;
+
+    private long diskOpens;
+
     public StoreStats() {
 
     }
 
     public StoreStats(long sizeInBytes, long throttleTimeInNanos) {
+        this(sizeInBytes, throttleTimeInNanos, 0, 0, 0);
+    }
+
+    public StoreStats(long sizeInBytes, long throttleTimeInNanos, long memorySizeInBytes, long memoryOpens, long diskOpens) {
         this.sizeInBytes = sizeInBytes;
         this.throttleTimeInNanos = throttleTimeInNanos;
+        this.memorySizeInBytes = memorySizeInBytes;
+        this.memoryOpens = memoryOpens;
+        this.diskOpens = diskOpens;
     }
 
     public void add(StoreStats stats) {
@@ -53,6 +67,9 @@ public class StoreStats implements Streamable, ToXContent {
         }
         sizeInBytes += stats.sizeInBytes;
         throttleTimeInNanos += stats.throttleTimeInNanos;
+        memorySizeInBytes += stats.memorySizeInBytes;
+        memoryOpens += stats.memoryOpens;
+        diskOpens += stats.diskOpens;
     }
 
 
@@ -72,6 +89,39 @@ public class StoreStats implements Streamable, ToXContent {
         return size();
     }
 
+    /**
+     * The size of the files held in memory by a hybrid store (on top of being stored on disk).
+     */
+    public ByteSizeValue memorySize() {
+        return new ByteSizeValue(memorySizeInBytes);
+    }
+
+    public ByteSizeValue getMemorySize() {
+        return memorySize();
+    }
+
+    /**
+     * The number of files a hybrid store opened from memory.
+     */
+    public long memoryOpens() {
+        return memoryOpens;
+    }
+
+    public long getMemoryOpens() {
+        return memoryOpens();
+    }
+
+    /**
+     * The number of files a hybrid store opened from disk.
+     */
+    public long diskOpens() {
+        return diskOpens;
+    }
+
+    public long getDiskOpens() {
+        return diskOpens();
+    }
+
     public TimeValue throttleTime() {
         return TimeValue.timeValueNanos(throttleTimeInNanos);
     }
@@ -90,12 +140,22 @@ public class StoreStats implements Streamable, ToXContent {
     public void readFrom(StreamInput in) throws IOException {
         sizeInBytes = in.readVLong();
         throttleTimeInNanos = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            memorySizeInBytes = in.readVLong();
+            memoryOpens = in.readVLong();
+            diskOpens = in.readVLong();
+        }
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVLong(sizeInBytes);
         out.writeVLong(throttleTimeInNanos);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            out.writeVLong(memorySizeInBytes);
+            out.writeVLong(memoryOpens);
+            out.writeVLong(diskOpens);
+        }
     }
 
     @Override
@@ -105,6 +165,12 @@ public class StoreStats implements Streamable, ToXContent {
         builder.field(Fields.SIZE_IN_BYTES, sizeInBytes);
         builder.field(Fields.THROTTLE_TIME, throttleTime().toString());
         builder.field(Fields.THROTTLE_TIME_IN_MILLIS, throttleTime().millis());
+        if (memorySizeInBytes > 0 || memoryOpens > 0 || diskOpens > 0) {
+            builder.field(Fields.MEMORY_SIZE, memorySize().toString());
+            builder.field(Fields.MEMORY_SIZE_IN_BYTES, memorySizeInBytes);
+            builder.field(Fields.MEMORY_OPENS, memoryOpens);
+            builder.field(Fields.DISK_OPENS, diskOpens);
+        }
         builder.endObject();
         return builder;
     }
@@ -116,5 +182,9 @@ public class StoreStats implements Streamable, ToXContent {
 
         static final XContentBuilderString THROTTLE_TIME = new XContentBuilderString("throttle_time");
         static final XContentBuilderString THROTTLE_TIME_IN_MILLIS = new XContentBuilderString("throttle_time_in_millis");
+        static final XContentBuilderString MEMORY_SIZE = new XContentBuilderString("memory_size");
+        static final XContentBuilderString MEMORY_SIZE_IN_BYTES = new XContentBuilderString("memory_size_in_bytes");
+        static final XContentBuilderString MEMORY_OPENS = new XContentBuilderString("memory_opens");
+        static final XContentBuilderString DISK_OPENS = new XContentBuilderString("disk_opens");
     }
 }
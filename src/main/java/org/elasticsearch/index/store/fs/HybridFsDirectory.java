@@ -0,0 +1,246 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.index.store.fs;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.lucene.store.*;
+import org.apache.lucene.store.bytebuffer.ByteBufferAllocator;
+import org.apache.lucene.store.bytebuffer.ByteBufferDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.metrics.CounterMetric;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A file system directory with two tiers for reading: files with one of the configured extensions (for example the
+ * terms index, norms, segments files and deletes), and not larger than the configured size, are loaded on first
+ * open into byte buffers (typically off heap) and read from memory, while all other files are read through the
+ * provided disk directory (mmap or nio).
+ * <p/>
+ * All files are written to, and kept on, disk, the memory tier only acts as a cache of their content. Since Lucene
+ * files are write once, a cached file is only evicted when it is deleted, overwritten or renamed. Files opened for
+ * merging are always read from disk.
+ * <p/>
+ * The memory tier is bounded by a memory budget, which can be shared by several directories (for example all the
+ * data locations of a shard). A file that doesn't fit in what is left of the budget is read from disk, until enough
+ * cached files are evicted.
+ */
+public class HybridFsDirectory extends FSDirectory {
+
+    private final FSDirectory diskDirectory;
+
+    private final ByteBufferDirectory memoryDirectory;
+
+    private final Set<String> memoryExtensions;
+
+    private final long memoryMaxFileSize;
+
+    private final AtomicLong memoryUsed;
+
+    private final long memoryMaxSize;
+
+    private final CounterMetric memoryOpens = new CounterMetric();
+
+    private final CounterMetric diskOpens = new CounterMetric();
+
+    public HybridFsDirectory(File path, LockFactory lockFactory, FSDirectory diskDirectory, ByteBufferAllocator allocator,
+                             Set<String> memoryExtensions, long memoryMaxFileSize, AtomicLong memoryUsed, long memoryMaxSize) throws IOException {
+        super(path, lockFactory);
+        this.diskDirectory = diskDirectory;
+        this.memoryDirectory = new ByteBufferDirectory(allocator);
+        this.memoryExtensions = ImmutableSet.copyOf(memoryExtensions);
+        this.memoryMaxFileSize = memoryMaxFileSize;
+        this.memoryUsed = memoryUsed;
+        this.memoryMaxSize = memoryMaxSize;
+    }
+
+    /**
+     * The size in bytes of the files currently held in memory.
+     */
+    public long memorySizeInBytes() {
+        return memoryDirectory.sizeInBytes();
+    }
+
+    /**
+     * The number of inputs opened from the memory tier.
+     */
+    public long memoryOpens() {
+        return memoryOpens.count();
+    }
+
+    /**
+     * The number of inputs opened from the disk tier.
+     */
+    public long diskOpens() {
+        return diskOpens.count();
+    }
+
+    @Override
+    public IndexInput openInput(String name, IOContext context) throws IOException {
+        ensureOpen();
+        if (context.context != IOContext.Context.MERGE && inMemory(name)) {
+            IndexInput input = openMemoryInput(name);
+            if (input != null) {
+                memoryOpens.inc();
+                return input;
+            }
+        }
+        diskOpens.inc();
+        return diskDirectory.openInput(name, context);
+    }
+
+    @Override
+    public IndexInputSlicer createSlicer(String name, IOContext context) throws IOException {
+        ensureOpen();
+        if (context.context != IOContext.Context.MERGE && inMemory(name) && fitsInMemory(name)) {
+            return super.createSlicer(name, context);
+        }
+        return diskDirectory.createSlicer(name, context);
+    }
+
+    @Override
+    public IndexOutput createOutput(String name, IOContext context) throws IOException {
+        evict(name);
+        return super.createOutput(name, context);
+    }
+
+    @Override
+    public void deleteFile(String name) throws IOException {
+        evict(name);
+        super.deleteFile(name);
+    }
+
+    /**
+     * Drops the file from the memory tier, if it is held there.
+     */
+    public void evict(String name) throws IOException {
+        synchronized (memoryDirectory) {
+            if (memoryDirectory.fileExists(name)) {
+                long length = memoryDirectory.fileLength(name);
+                memoryDirectory.deleteFile(name);
+                memoryUsed.addAndGet(-length);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        synchronized (memoryDirectory) {
+            long length = 0;
+            try {
+                for (String name : memoryDirectory.listAll()) {
+                    length += memoryDirectory.fileLength(name);
+                }
+            } catch (IOException e) {
+                // ignore, the memory directory never fails listing its files
+            }
+            memoryUsed.addAndGet(-length);
+        }
+        try {
+            IOUtils.close(memoryDirectory, diskDirectory);
+        } catch (IOException e) {
+            // ignore, closing only releases the memory buffers and mappings
+        }
+        super.close();
+    }
+
+    @Override
+    public String toString() {
+        return "hybrid(" + diskDirectory + ")";
+    }
+
+    private boolean inMemory(String name) throws IOException {
+        if (!memoryExtensions.contains(extension(name))) {
+            return false;
+        }
+        return memoryMaxFileSize < 0 || fileLength(name) <= memoryMaxFileSize;
+    }
+
+    /**
+     * Is the file already held in memory, or can it be loaded within the memory budget. Only a hint, since the budget
+     * is shared.
+     */
+    private boolean fitsInMemory(String name) throws IOException {
+        synchronized (memoryDirectory) {
+            return memoryDirectory.fileExists(name) || memoryMaxSize < 0 || memoryUsed.get() + fileLength(name) <= memoryMaxSize;
+        }
+    }
+
+    /**
+     * Opens the file from memory, loading it first if needed. Returns <tt>null</tt> if the file doesn't fit in what is
+     * left of the memory budget.
+     */
+    private IndexInput openMemoryInput(String name) throws IOException {
+        synchronized (memoryDirectory) {
+            if (!memoryDirectory.fileExists(name)) {
+                long length = fileLength(name);
+                if (memoryUsed.addAndGet(length) > memoryMaxSize && memoryMaxSize >= 0) {
+                    memoryUsed.addAndGet(-length);
+                    return null;
+                }
+                IndexInput input;
+                try {
+                    input = diskDirectory.openInput(name, IOContext.READONCE);
+                } catch (IOException e) {
+                    memoryUsed.addAndGet(-length);
+                    throw e;
+                }
+                IndexOutput output = null;
+                boolean success = false;
+                try {
+                    output = memoryDirectory.createOutput(name, IOContext.DEFAULT);
+                    output.copyBytes(input, input.length());
+                    success = true;
+                } finally {
+                    if (success) {
+                        IOUtils.close(input, output);
+                    } else {
+                        IOUtils.closeWhileHandlingException(input, output);
+                        if (memoryDirectory.fileExists(name)) {
+                            memoryDirectory.deleteFile(name);
+                        }
+                        memoryUsed.addAndGet(-length);
+                    }
+                }
+            }
+            return memoryDirectory.openInput(name, IOContext.DEFAULT);
+        }
+    }
+
+    /**
+     * The extension of the file, or its prefix for files with no extension (for example <tt>segments</tt> for
+     * <tt>segments_N</tt>).
+     */
+    static String extension(String name) {
+        int index = name.lastIndexOf('.');
+        if (index != -1) {
+            return name.substring(index + 1);
+        }
+        index = name.indexOf('_');
+        if (index > 0) {
+            return name.substring(0, index);
+        }
+        return name;
+    }
+}
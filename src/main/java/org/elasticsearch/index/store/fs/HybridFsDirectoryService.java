@@ -0,0 +1,141 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.index.store.fs;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.lucene.store.*;
+import org.apache.lucene.store.bytebuffer.ByteBufferAllocator;
+import org.apache.lucene.store.bytebuffer.PlainByteBufferAllocator;
+import org.apache.lucene.util.Constants;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.index.settings.IndexSettings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.index.store.IndexStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A directory service using {@link HybridFsDirectory}, keeping small and hot files in memory and reading the rest
+ * from disk.
+ * <p/>
+ * Settings (prefixed with <tt>index.store.fs.hybrid.</tt>): <tt>memory_extensions</tt> lists the extensions of the
+ * files held in memory (defaults to <tt>segments, del, tip, nvd, nvm</tt>), <tt>memory_max_file_size</tt> is the
+ * largest file held in memory (defaults to <tt>10mb</tt>, <tt>-1</tt> for no limit), <tt>memory_max_size</tt> is the
+ * memory budget of the shard, shared by its data locations (defaults to <tt>64mb</tt>, <tt>-1</tt> for no limit),
+ * <tt>memory_direct</tt> controls
+ * if the memory tier is off heap (defaults to <tt>true</tt>), and <tt>disk_type</tt> is the directory used for the
+ * other files, <tt>mmapfs</tt> (the default on 64bit JVMs) or <tt>niofs</tt>.
+ */
+public class HybridFsDirectoryService extends FsDirectoryService {
+
+    private final ImmutableSet<String> memoryExtensions;
+
+    private final ByteSizeValue memoryMaxFileSize;
+
+    private final ByteSizeValue memoryMaxSize;
+
+    private final AtomicLong memoryUsed = new AtomicLong();
+
+    private final ByteBufferAllocator allocator;
+
+    private final String diskType;
+
+    private final List<HybridFsDirectory> directories = new CopyOnWriteArrayList<HybridFsDirectory>();
+
+    @Inject
+    public HybridFsDirectoryService(ShardId shardId, @IndexSettings Settings indexSettings, IndexStore indexStore) {
+        super(shardId, indexSettings, indexStore);
+        this.memoryExtensions = ImmutableSet.copyOf(componentSettings.getAsArray("hybrid.memory_extensions", new String[]{"segments", "del", "tip", "nvd", "nvm"}));
+        this.memoryMaxFileSize = componentSettings.getAsBytesSize("hybrid.memory_max_file_size", new ByteSizeValue(10, ByteSizeUnit.MB));
+        this.memoryMaxSize = componentSettings.getAsBytesSize("hybrid.memory_max_size", new ByteSizeValue(64, ByteSizeUnit.MB));
+        boolean direct = componentSettings.getAsBoolean("hybrid.memory_direct", true);
+        this.allocator = new PlainByteBufferAllocator(direct, (int) new ByteSizeValue(1, ByteSizeUnit.KB).bytes(), (int) new ByteSizeValue(32, ByteSizeUnit.KB).bytes());
+        this.diskType = componentSettings.get("hybrid.disk_type", Constants.JRE_IS_64BIT ? "mmapfs" : "niofs");
+        if (!"mmapfs".equals(diskType) && !"niofs".equals(diskType)) {
+            throw new ElasticSearchIllegalArgumentException("unsupported hybrid disk type [" + diskType + "], must be one of [mmapfs, niofs]");
+        }
+        logger.debug("using hybrid store with memory_extensions {}, memory_max_file_size [{}], memory_max_size [{}], memory_direct [{}], disk_type [{}]",
+                memoryExtensions, memoryMaxFileSize, memoryMaxSize, direct, diskType);
+    }
+
+    /**
+     * The size in bytes of the files currently held in memory, across all the shard directories.
+     */
+    public long memorySizeInBytes() {
+        long size = 0;
+        for (HybridFsDirectory directory : directories) {
+            size += directory.memorySizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * The number of inputs opened from memory, across all the shard directories.
+     */
+    public long memoryOpens() {
+        long opens = 0;
+        for (HybridFsDirectory directory : directories) {
+            opens += directory.memoryOpens();
+        }
+        return opens;
+    }
+
+    /**
+     * The number of inputs opened from disk, across all the shard directories.
+     */
+    public long diskOpens() {
+        long opens = 0;
+        for (HybridFsDirectory directory : directories) {
+            opens += directory.diskOpens();
+        }
+        return opens;
+    }
+
+    @Override
+    protected FSDirectory newFSDirectory(File location, LockFactory lockFactory) throws IOException {
+        FSDirectory diskDirectory;
+        if ("mmapfs".equals(diskType)) {
+            diskDirectory = new MMapDirectory(location, NoLockFactory.getNoLockFactory());
+        } else {
+            diskDirectory = new NIOFSDirectory(location, NoLockFactory.getNoLockFactory());
+        }
+        HybridFsDirectory directory = new HybridFsDirectory(location, lockFactory, diskDirectory, allocator, memoryExtensions, memoryMaxFileSize.bytes(),
+                memoryUsed, memoryMaxSize.bytes());
+        directories.add(directory);
+        return directory;
+    }
+
+    @Override
+    public void renameFile(Directory dir, String from, String to) throws IOException {
+        HybridFsDirectory directory = (HybridFsDirectory) ((RateLimitedFSDirectory) dir).wrappedDirectory();
+        directory.evict(from);
+        directory.evict(to);
+        super.renameFile(dir, from, to);
+    }
+}
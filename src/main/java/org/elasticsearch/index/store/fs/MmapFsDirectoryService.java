@@ -19,9 +19,11 @@
 
 package org.elasticsearch.index.store.fs;
 
+import com.google.common.collect.ImmutableSet;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.LockFactory;
 import org.apache.lucene.store.MMapDirectory;
+import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.settings.IndexSettings;
@@ -32,16 +34,28 @@ import java.io.File;
 import java.io.IOException;
 
 /**
+ * A directory service using {@link MMapDirectory}. The <tt>index.store.fs.mmap.preload</tt> setting can list file
+ * extensions (for example <tt>tim, tip, dvd, nvd</tt>) that will be preloaded into the page cache when opened for
+ * reading, see {@link PreloadMMapDirectory}.
  */
 public class MmapFsDirectoryService extends FsDirectoryService {
 
+    private final ImmutableSet<String> preloadExtensions;
+
     @Inject
     public MmapFsDirectoryService(ShardId shardId, @IndexSettings Settings indexSettings, IndexStore indexStore) {
         super(shardId, indexSettings, indexStore);
+        this.preloadExtensions = ImmutableSet.copyOf(componentSettings.getAsArray("mmap.preload", Strings.EMPTY_ARRAY));
+        if (!preloadExtensions.isEmpty()) {
+            logger.debug("using mmap with preload of {}", preloadExtensions);
+        }
     }
 
     @Override
     protected FSDirectory newFSDirectory(File location, LockFactory lockFactory) throws IOException {
+        if (!preloadExtensions.isEmpty()) {
+            return new PreloadMMapDirectory(location, buildLockFactory(), preloadExtensions);
+        }
         return new MMapDirectory(location, buildLockFactory());
     }
 }
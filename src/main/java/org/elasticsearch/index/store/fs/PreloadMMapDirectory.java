@@ -0,0 +1,124 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.index.store.fs;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.LockFactory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.bytebuffer.ByteBufferAllocator;
+import org.elasticsearch.common.jna.Natives;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+
+/**
+ * A {@link MMapDirectory} that warms up the page cache for files with one of the configured extensions (for
+ * example the terms dictionary and index, <tt>tim</tt> and <tt>tip</tt>, or norms and doc values, <tt>nvd</tt> and
+ * <tt>dvd</tt>) when they are opened for reading, so the first searches after a restart don't have to fault them
+ * in page by page.
+ * <p/>
+ * The file is mapped and advised as needed using <tt>madvise(MADV_WILLNEED)</tt>, letting the OS read it ahead in
+ * the background, and the mapping is released right away (the read ahead pages stay in the page cache). Preloading
+ * requires jna, it is disabled (rather than falling back to a blocking {@link MappedByteBuffer#load()} on the
+ * opening thread) once <tt>madvise</tt> turns out not to be available (a failure on a single file only skips
+ * that file). Files opened for merging are not preloaded, and files within a compound file are only preloaded
+ * when <tt>cfs</tt> is configured.
+ */
+public class PreloadMMapDirectory extends MMapDirectory {
+
+    private static final ESLogger logger = Loggers.getLogger(PreloadMMapDirectory.class);
+
+    private static final long PRELOAD_CHUNK_SIZE = 1L << 30;
+
+    private final Set<String> preloadExtensions;
+
+    private volatile boolean madviseSupported = true;
+
+    public PreloadMMapDirectory(File path, LockFactory lockFactory, Set<String> preloadExtensions) throws IOException {
+        super(path, lockFactory);
+        this.preloadExtensions = ImmutableSet.copyOf(preloadExtensions);
+    }
+
+    public Set<String> preloadExtensions() {
+        return preloadExtensions;
+    }
+
+    @Override
+    public IndexInput openInput(String name, IOContext context) throws IOException {
+        IndexInput input = super.openInput(name, context);
+        if (madviseSupported && context.context != IOContext.Context.MERGE && shouldPreload(name)) {
+            try {
+                preload(new File(getDirectory(), name));
+            } catch (IOException e) {
+                input.close();
+                throw e;
+            }
+        }
+        return input;
+    }
+
+    private boolean shouldPreload(String name) {
+        int index = name.lastIndexOf('.');
+        return index != -1 && preloadExtensions.contains(name.substring(index + 1));
+    }
+
+    private void preload(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            // map in chunks, a single mapping can't go beyond 2gb, and each chunk starts page aligned
+            for (long position = 0; position < length; position += PRELOAD_CHUNK_SIZE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(PRELOAD_CHUNK_SIZE, length - position));
+                try {
+                    Natives.MadviseResult result = Natives.tryMadviseWillNeed(buffer);
+                    if (result == Natives.MadviseResult.UNSUPPORTED) {
+                        if (madviseSupported) {
+                            madviseSupported = false;
+                            logger.warn("madvise not available, disabling preload of {}", preloadExtensions);
+                        }
+                        return;
+                    }
+                    if (result == Natives.MadviseResult.FAILED) {
+                        // might be specific to this file, keep preloading the others
+                        logger.debug("failed to preload [{}]", file);
+                        return;
+                    }
+                } finally {
+                    // unmap like MMapDirectory does for its own buffers, instead of waiting for the GC to release it
+                    if (getUseUnmap()) {
+                        ByteBufferAllocator.Cleaner.clean(buffer);
+                    }
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.elasticsearch.index.translog;
 
 import org.apache.lucene.index.Term;
 import org.elasticsearch.ElasticSearchIllegalStateException;
+import org.elasticsearch.Version;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesArray;
@@ -35,6 +36,7 @@ import org.elasticsearch.index.shard.IndexShardComponent;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
 /**
  *
@@ -111,6 +113,19 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
      */
     Snapshot snapshot(Snapshot snapshot);
 
+    /**
+     * Snapshots the transaction logs that were flushed, but are still retained (up to
+     * <tt>index.translog.retention.age</tt> and <tt>index.translog.retention.size</tt>), oldest
+     * first. The snapshots must be released.
+     */
+    List<Snapshot> retainedSnapshots();
+
+    /**
+     * Releases the retained transaction logs that are past the retention age or size, or all of them if
+     * retention is disabled.
+     */
+    void trimRetained();
+
     /**
      * Clears unreferenced transaclogs.
      */
@@ -215,6 +230,11 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
 
         Type opType();
 
+        /**
+         * The sequence number assigned to the operation by the primary, <tt>-1</tt> if it has none.
+         */
+        long seqNo();
+
         long estimateSize();
 
         Source readSource(StreamInput in) throws IOException;
@@ -245,6 +265,7 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
         private long timestamp;
         private long ttl;
         private long version;
+        private long seqNo = -1;
 
         public Create() {
         }
@@ -258,6 +279,7 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             this.timestamp = create.timestamp();
             this.ttl = create.ttl();
             this.version = create.version();
+            this.seqNo = create.seqNo();
         }
 
         public Create(String type, String id, byte[] source) {
@@ -308,6 +330,11 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             return this.version;
         }
 
+        @Override
+        public long seqNo() {
+            return this.seqNo;
+        }
+
         @Override
         public Source readSource(StreamInput in) throws IOException {
             readFrom(in);
@@ -339,11 +366,16 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             if (version >= 5) {
                 this.ttl = in.readLong();
             }
+            if (version >= 6) {
+                this.seqNo = in.readLong();
+            }
         }
 
         @Override
         public void writeTo(StreamOutput out) throws IOException {
-            out.writeVInt(5); // version
+            // nodes before 1.0 can't read the seq no, which is only sent to them during peer recovery
+            boolean writeSeqNo = out.getVersion().onOrAfter(Version.V_1_0_0_Beta1);
+            out.writeVInt(writeSeqNo ? 6 : 5); // version
             out.writeString(id);
             out.writeString(type);
             out.writeBytesReference(source);
@@ -362,6 +394,9 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             out.writeLong(version);
             out.writeLong(timestamp);
             out.writeLong(ttl);
+            if (writeSeqNo) {
+                out.writeLong(seqNo);
+            }
         }
     }
 
@@ -374,6 +409,7 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
         private String parent;
         private long timestamp;
         private long ttl;
+        private long seqNo = -1;
 
         public Index() {
         }
@@ -387,6 +423,7 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             this.version = index.version();
             this.timestamp = index.timestamp();
             this.ttl = index.ttl();
+            this.seqNo = index.seqNo();
         }
 
         public Index(String type, String id, byte[] source) {
@@ -437,6 +474,11 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             return this.version;
         }
 
+        @Override
+        public long seqNo() {
+            return this.seqNo;
+        }
+
         @Override
         public Source readSource(StreamInput in) throws IOException {
             readFrom(in);
@@ -468,11 +510,16 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             if (version >= 5) {
                 this.ttl = in.readLong();
             }
+            if (version >= 6) {
+                this.seqNo = in.readLong();
+            }
         }
 
         @Override
         public void writeTo(StreamOutput out) throws IOException {
-            out.writeVInt(5); // version
+            // nodes before 1.0 can't read the seq no, which is only sent to them during peer recovery
+            boolean writeSeqNo = out.getVersion().onOrAfter(Version.V_1_0_0_Beta1);
+            out.writeVInt(writeSeqNo ? 6 : 5); // version
             out.writeString(id);
             out.writeString(type);
             out.writeBytesReference(source);
@@ -491,12 +538,16 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             out.writeLong(version);
             out.writeLong(timestamp);
             out.writeLong(ttl);
+            if (writeSeqNo) {
+                out.writeLong(seqNo);
+            }
         }
     }
 
     static class Delete implements Operation {
         private Term uid;
         private long version;
+        private long seqNo = -1;
 
         public Delete() {
         }
@@ -504,6 +555,7 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
         public Delete(Engine.Delete delete) {
             this(delete.uid());
             this.version = delete.version();
+            this.seqNo = delete.seqNo();
         }
 
         public Delete(Term uid) {
@@ -528,6 +580,11 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             return this.version;
         }
 
+        @Override
+        public long seqNo() {
+            return this.seqNo;
+        }
+
         @Override
         public Source readSource(StreamInput in) throws IOException {
             throw new ElasticSearchIllegalStateException("trying to read doc source from delete operation");
@@ -540,14 +597,21 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             if (version >= 1) {
                 this.version = in.readLong();
             }
+            if (version >= 2) {
+                this.seqNo = in.readLong();
+            }
         }
 
         @Override
         public void writeTo(StreamOutput out) throws IOException {
-            out.writeVInt(1); // version
+            boolean writeSeqNo = out.getVersion().onOrAfter(Version.V_1_0_0_Beta1);
+            out.writeVInt(writeSeqNo ? 2 : 1); // version
             out.writeString(uid.field());
             out.writeString(uid.text());
             out.writeLong(version);
+            if (writeSeqNo) {
+                out.writeLong(seqNo);
+            }
         }
     }
 
@@ -556,12 +620,14 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
         @Nullable
         private String[] filteringAliases;
         private String[] types = Strings.EMPTY_ARRAY;
+        private long seqNo = -1;
 
         public DeleteByQuery() {
         }
 
         public DeleteByQuery(Engine.DeleteByQuery deleteByQuery) {
             this(deleteByQuery.source(), deleteByQuery.filteringAliases(), deleteByQuery.types());
+            this.seqNo = deleteByQuery.seqNo();
         }
 
         public DeleteByQuery(BytesReference source, String[] filteringAliases, String... types) {
@@ -575,6 +641,12 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             return Type.DELETE_BY_QUERY;
         }
 
+        @Override
+        public long seqNo() {
+            // the local checkpoint it was applied at, it doesn't consume a sequence number
+            return this.seqNo;
+        }
+
         @Override
         public long estimateSize() {
             return source.length() + 8;
@@ -623,11 +695,15 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
                     }
                 }
             }
+            if (version >= 3) {
+                this.seqNo = in.readLong();
+            }
         }
 
         @Override
         public void writeTo(StreamOutput out) throws IOException {
-            out.writeVInt(2); // version
+            boolean writeSeqNo = out.getVersion().onOrAfter(Version.V_1_0_0_Beta1);
+            out.writeVInt(writeSeqNo ? 3 : 2); // version
             out.writeBytesReference(source);
             out.writeVInt(types.length);
             for (String type : types) {
@@ -641,6 +717,9 @@ public interface Translog extends IndexShardComponent, CloseableIndexComponent {
             } else {
                 out.writeVInt(0);
             }
+            if (writeSeqNo) {
+                out.writeLong(seqNo);
+            }
         }
     }
 }
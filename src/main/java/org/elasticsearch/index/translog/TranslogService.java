@@ -134,6 +134,13 @@ public class TranslogService extends AbstractIndexShardComponent {
                 return;
             }
 
+            // enforce the retention age on idle shards as well, not only when flushing
+            try {
+                translog.trimRetained();
+            } catch (Exception e) {
+                logger.warn("failed to trim retained translogs", e);
+            }
+
             // flush is disabled, but still reschedule
             if (disableFlush) {
                 reschedule();
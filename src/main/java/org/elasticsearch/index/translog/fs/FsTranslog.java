@@ -27,6 +27,7 @@ import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.CachedStreamOutput;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.env.NodeEnvironment;
 import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.index.settings.IndexSettingsService;
@@ -39,6 +40,9 @@ import org.elasticsearch.index.translog.TranslogStreams;
 import java.io.File;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -50,6 +54,14 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
     public static final String INDEX_TRANSLOG_FS_TYPE = "index.translog.fs.type";
     public static final String INDEX_TRANSLOG_FS_BUFFER_SIZE = "index.translog.fs.buffer_size";
     public static final String INDEX_TRANSLOG_FS_TRANSIENT_BUFFER_SIZE = "index.translog.fs.transient_buffer_size";
+    public static final String INDEX_TRANSLOG_RETENTION_AGE = "index.translog.retention.age";
+    public static final String INDEX_TRANSLOG_RETENTION_SIZE = "index.translog.retention.size";
+
+    /**
+     * Retention is opt-in, flushed translogs are only kept once <tt>index.translog.retention.age</tt> is set.
+     */
+    public static final TimeValue DEFAULT_RETENTION_AGE = TimeValue.timeValueMillis(0);
+    public static final ByteSizeValue DEFAULT_RETENTION_SIZE = ByteSizeValue.parseBytesSizeValue("512mb");
 
     class ApplySettings implements IndexSettingsService.Listener {
         @Override
@@ -71,6 +83,35 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
                 logger.info("updating type from [{}] to [{}]", FsTranslog.this.type, type);
                 FsTranslog.this.type = type;
             }
+
+            TimeValue retentionAge = settings.getAsTime(INDEX_TRANSLOG_RETENTION_AGE, FsTranslog.this.retentionAge);
+            TimeValue previousRetentionAge = FsTranslog.this.retentionAge;
+            if (!retentionAge.equals(previousRetentionAge)) {
+                logger.info("updating retention.age from [{}] to [{}]", previousRetentionAge, retentionAge);
+                FsTranslog.this.retentionAge = retentionAge;
+            }
+
+            ByteSizeValue retentionSize = settings.getAsBytesSize(INDEX_TRANSLOG_RETENTION_SIZE, FsTranslog.this.retentionSize);
+            boolean retentionChanged = !retentionAge.equals(previousRetentionAge);
+            if (!retentionSize.equals(FsTranslog.this.retentionSize)) {
+                logger.info("updating retention.size from [{}] to [{}]", FsTranslog.this.retentionSize, retentionSize);
+                FsTranslog.this.retentionSize = retentionSize;
+                retentionChanged = true;
+            }
+            if (retentionChanged) {
+                // apply the new retention right away, for example releasing all retained translogs when disabled
+                trimRetained();
+            }
+        }
+    }
+
+    static class RetainedTranslogFile {
+        final FsTranslogFile file;
+        final long time;
+
+        RetainedTranslogFile(FsTranslogFile file, long time) {
+            this.file = file;
+            this.time = time;
         }
     }
 
@@ -82,6 +123,12 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
     private volatile FsTranslogFile current;
     private volatile FsTranslogFile trans;
 
+    // translogs flushed to the index, kept (open) for a while so replicas can catch up from them, oldest first,
+    // trimmed on flush, periodically and when the retention changes, a recovery holds its own reference on them
+    private final LinkedList<RetainedTranslogFile> retained = new LinkedList<RetainedTranslogFile>();
+    private volatile TimeValue retentionAge;
+    private volatile ByteSizeValue retentionSize;
+
     private FsTranslogFile.Type type;
 
     private boolean syncOnEachOperation = false;
@@ -105,6 +152,8 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
         this.type = FsTranslogFile.Type.fromString(componentSettings.get("type", FsTranslogFile.Type.BUFFERED.name()));
         this.bufferSize = (int) componentSettings.getAsBytesSize("buffer_size", ByteSizeValue.parseBytesSizeValue("64k")).bytes();
         this.transientBufferSize = (int) componentSettings.getAsBytesSize("transient_buffer_size", ByteSizeValue.parseBytesSizeValue("8k")).bytes();
+        this.retentionAge = indexSettings.getAsTime(INDEX_TRANSLOG_RETENTION_AGE, DEFAULT_RETENTION_AGE);
+        this.retentionSize = indexSettings.getAsBytesSize(INDEX_TRANSLOG_RETENTION_SIZE, DEFAULT_RETENTION_SIZE);
 
         indexSettingsService.addListener(applySettings);
     }
@@ -116,6 +165,8 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
         FileSystemUtils.mkdirs(location);
 
         this.type = FsTranslogFile.Type.fromString(componentSettings.get("type", FsTranslogFile.Type.BUFFERED.name()));
+        this.retentionAge = indexSettings.getAsTime(INDEX_TRANSLOG_RETENTION_AGE, DEFAULT_RETENTION_AGE);
+        this.retentionSize = indexSettings.getAsBytesSize(INDEX_TRANSLOG_RETENTION_SIZE, DEFAULT_RETENTION_SIZE);
     }
 
     @Override
@@ -142,6 +193,12 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
             if (current1 != null) {
                 current1.close(delete);
             }
+            synchronized (retained) {
+                for (RetainedTranslogFile retainedFile : retained) {
+                    retainedFile.file.close(delete);
+                }
+                retained.clear();
+            }
         } finally {
             rwl.writeLock().unlock();
         }
@@ -197,6 +254,9 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
                         if (trans != null && file.getName().equals("translog-" + trans.id())) {
                             continue;
                         }
+                        if (isRetained(file.getName())) {
+                            continue;
+                        }
                         try {
                             file.delete();
                         } catch (Exception e) {
@@ -235,11 +295,11 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
             current = newFile;
             if (old != null) {
                 // we might create a new translog overriding the current translog id
-                boolean delete = true;
                 if (old.id() == id) {
-                    delete = false;
+                    old.close(false);
+                } else if (!retain(old)) {
+                    old.close(true);
                 }
-                old.close(delete);
             }
         } finally {
             rwl.writeLock().unlock();
@@ -282,8 +342,73 @@ public class FsTranslog extends AbstractIndexShardComponent implements Translog
         } finally {
             rwl.writeLock().unlock();
         }
-        old.close(true);
-        current.reuse(old);
+        if (!retain(old)) {
+            old.close(true);
+            current.reuse(old);
+        }
+    }
+
+    @Override
+    public List<Snapshot> retainedSnapshots() {
+        List<Snapshot> snapshots = new ArrayList<Snapshot>();
+        synchronized (retained) {
+            for (RetainedTranslogFile retainedFile : retained) {
+                FsChannelSnapshot snapshot = retainedFile.file.snapshot();
+                if (snapshot != null) {
+                    snapshots.add(snapshot);
+                }
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Keeps the provided (no longer current) translog around, returns <tt>false</tt> if retention is disabled (the
+     * default, unless a retention age is set).
+     */
+    private boolean retain(FsTranslogFile file) {
+        if (retentionAge.millis() <= 0 || retentionSize.bytes() <= 0) {
+            return false;
+        }
+        // make sure all its operations are written, nothing will be added to it anymore
+        file.sync();
+        synchronized (retained) {
+            retained.add(new RetainedTranslogFile(file, System.currentTimeMillis()));
+        }
+        trimRetained();
+        return true;
+    }
+
+    @Override
+    public void trimRetained() {
+        synchronized (retained) {
+            boolean disabled = retentionAge.millis() <= 0 || retentionSize.bytes() <= 0;
+            long totalSize = 0;
+            for (RetainedTranslogFile retainedFile : retained) {
+                totalSize += retainedFile.file.translogSizeInBytes();
+            }
+            long now = System.currentTimeMillis();
+            while (!retained.isEmpty()) {
+                RetainedTranslogFile oldest = retained.getFirst();
+                if (!disabled && totalSize <= retentionSize.bytes() && (now - oldest.time) <= retentionAge.millis()) {
+                    break;
+                }
+                retained.removeFirst();
+                totalSize -= oldest.file.translogSizeInBytes();
+                oldest.file.close(true);
+            }
+        }
+    }
+
+    private boolean isRetained(String fileName) {
+        synchronized (retained) {
+            for (RetainedTranslogFile retainedFile : retained) {
+                if (fileName.equals("translog-" + retainedFile.file.id())) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     @Override
@@ -24,10 +24,14 @@ import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.index.shard.AbstractIndexShardComponent;
 import org.elasticsearch.index.shard.ShardId;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -36,7 +40,7 @@ public class ShardIndexWarmerService extends AbstractIndexShardComponent {
 
     private final CounterMetric current = new CounterMetric();
     private final MeanMetric warmerMetric = new MeanMetric();
-
+    private final ConcurrentMap<String, CounterMetric> typeMetrics = ConcurrentCollections.newConcurrentMap();
 
     @Inject
     public ShardIndexWarmerService(ShardId shardId, @IndexSettings Settings indexSettings) {
@@ -56,7 +60,28 @@ public class ShardIndexWarmerService extends AbstractIndexShardComponent {
         warmerMetric.inc(tookInNanos);
     }
 
+    /**
+     * Records the time spent by a single warmer type (field data, id cache, search...) as part of a warm.
+     */
+    public void onPostWarm(String type, long tookInNanos) {
+        CounterMetric typeMetric = typeMetrics.get(type);
+        if (typeMetric == null) {
+            CounterMetric existing = typeMetrics.putIfAbsent(type, typeMetric = new CounterMetric());
+            if (existing != null) {
+                typeMetric = existing;
+            }
+        }
+        typeMetric.inc(tookInNanos);
+    }
+
     public WarmerStats stats() {
-        return new WarmerStats(current.count(), warmerMetric.count(), TimeUnit.NANOSECONDS.toMillis(warmerMetric.sum()));
+        Map<String, Long> typesTimeInMillis = null;
+        if (!typeMetrics.isEmpty()) {
+            typesTimeInMillis = new HashMap<String, Long>();
+            for (Map.Entry<String, CounterMetric> entry : typeMetrics.entrySet()) {
+                typesTimeInMillis.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().count()));
+            }
+        }
+        return new WarmerStats(current.count(), warmerMetric.count(), TimeUnit.NANOSECONDS.toMillis(warmerMetric.sum()), typesTimeInMillis);
     }
 }
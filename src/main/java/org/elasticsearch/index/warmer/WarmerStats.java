@@ -19,6 +19,8 @@
 
 package org.elasticsearch.index.warmer;
 
+import org.elasticsearch.Version;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -28,6 +30,8 @@ import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class WarmerStats implements Streamable, ToXContent {
 
@@ -37,6 +41,9 @@ public class WarmerStats implements Streamable, ToXContent {
 
     private long totalTimeInMillis;
 
+    @Nullable
+    private Map<String, Long> typesTimeInMillis;
+
     public WarmerStats() {
 
     }
@@ -47,6 +54,11 @@ public class WarmerStats implements Streamable, ToXContent {
         this.totalTimeInMillis = totalTimeInMillis;
     }
 
+    public WarmerStats(long current, long total, long totalTimeInMillis, @Nullable Map<String, Long> typesTimeInMillis) {
+        this(current, total, totalTimeInMillis);
+        this.typesTimeInMillis = typesTimeInMillis;
+    }
+
     public void add(long current, long total, long totalTimeInMillis) {
         this.current += current;
         this.total += total;
@@ -60,6 +72,15 @@ public class WarmerStats implements Streamable, ToXContent {
         this.current += warmerStats.current;
         this.total += warmerStats.total;
         this.totalTimeInMillis += warmerStats.totalTimeInMillis;
+        if (warmerStats.typesTimeInMillis != null) {
+            if (typesTimeInMillis == null) {
+                typesTimeInMillis = new HashMap<String, Long>();
+            }
+            for (Map.Entry<String, Long> entry : warmerStats.typesTimeInMillis.entrySet()) {
+                Long existing = typesTimeInMillis.get(entry.getKey());
+                typesTimeInMillis.put(entry.getKey(), existing == null ? entry.getValue() : existing + entry.getValue());
+            }
+        }
     }
 
     public long current() {
@@ -87,6 +108,15 @@ public class WarmerStats implements Streamable, ToXContent {
         return new TimeValue(totalTimeInMillis);
     }
 
+    /**
+     * The total time (in milliseconds) spent per warmer type (for example <tt>field_data</tt>, <tt>id_cache</tt>
+     * or <tt>search</tt>), might be <tt>null</tt>.
+     */
+    @Nullable
+    public Map<String, Long> typesTimeInMillis() {
+        return this.typesTimeInMillis;
+    }
+
     public static WarmerStats readWarmerStats(StreamInput in) throws IOException {
         WarmerStats refreshStats = new WarmerStats();
         refreshStats.readFrom(in);
@@ -100,6 +130,16 @@ public class WarmerStats implements Streamable, ToXContent {
         builder.field(Fields.TOTAL, total);
         builder.field(Fields.TOTAL_TIME, totalTime().toString());
         builder.field(Fields.TOTAL_TIME_IN_MILLIS, totalTimeInMillis);
+        if (typesTimeInMillis != null) {
+            builder.startObject(Fields.TYPES);
+            for (Map.Entry<String, Long> entry : typesTimeInMillis.entrySet()) {
+                builder.startObject(entry.getKey(), XContentBuilder.FieldCaseConversion.NONE);
+                builder.field(Fields.TOTAL_TIME, new TimeValue(entry.getValue()).toString());
+                builder.field(Fields.TOTAL_TIME_IN_MILLIS, entry.getValue());
+                builder.endObject();
+            }
+            builder.endObject();
+        }
         builder.endObject();
         return builder;
     }
@@ -110,6 +150,7 @@ public class WarmerStats implements Streamable, ToXContent {
         static final XContentBuilderString TOTAL = new XContentBuilderString("total");
         static final XContentBuilderString TOTAL_TIME = new XContentBuilderString("total_time");
         static final XContentBuilderString TOTAL_TIME_IN_MILLIS = new XContentBuilderString("total_time_in_millis");
+        static final XContentBuilderString TYPES = new XContentBuilderString("types");
     }
 
     @Override
@@ -117,6 +158,13 @@ public class WarmerStats implements Streamable, ToXContent {
         current = in.readVLong();
         total = in.readVLong();
         totalTimeInMillis = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1) && in.readBoolean()) {
+            int size = in.readVInt();
+            typesTimeInMillis = new HashMap<String, Long>(size);
+            for (int i = 0; i < size; i++) {
+                typesTimeInMillis.put(in.readString(), in.readVLong());
+            }
+        }
     }
 
     @Override
@@ -124,5 +172,17 @@ public class WarmerStats implements Streamable, ToXContent {
         out.writeVLong(current);
         out.writeVLong(total);
         out.writeVLong(totalTimeInMillis);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            if (typesTimeInMillis == null) {
+                out.writeBoolean(false);
+            } else {
+                out.writeBoolean(true);
+                out.writeVInt(typesTimeInMillis.size());
+                for (Map.Entry<String, Long> entry : typesTimeInMillis.entrySet()) {
+                    out.writeString(entry.getKey());
+                    out.writeVLong(entry.getValue());
+                }
+            }
+        }
     }
 }
\ No newline at end of file
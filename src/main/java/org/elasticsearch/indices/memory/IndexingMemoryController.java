@@ -22,6 +22,7 @@ package org.elasticsearch.indices.memory;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
@@ -31,7 +32,9 @@ import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.EngineClosedException;
 import org.elasticsearch.index.engine.FlushNotAllowedEngineException;
+import org.elasticsearch.index.indexing.IndexingOperationListener;
 import org.elasticsearch.index.service.IndexService;
+import org.elasticsearch.index.shard.IllegalIndexShardStateException;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.index.shard.service.InternalIndexShard;
@@ -41,12 +44,23 @@ import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.monitor.jvm.JvmInfo;
 import org.elasticsearch.threadpool.ThreadPool;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * Controls the heap used for indexing on the node, as set by <tt>indices.memory.index_buffer_size</tt>.
+ * <p/>
+ * The budget is divided across the active shards to set their index writer buffers. On top of that, the actual heap
+ * used by each shard (the documents buffered by its index writer and its version map) is checked periodically, and
+ * whenever enough has been indexed since the last check. Once the node total goes over the budget, the shards using
+ * the most are freed first, with a refresh (or a flush, when most of it is taken by the version map), until the
+ * total is back under the budget. Shards that don't index for <tt>shard_inactive_time</tt> are flushed and set to
+ * a minimal buffer.
  */
 public class IndexingMemoryController extends AbstractLifecycleComponent<IndexingMemoryController> {
 
@@ -64,6 +78,11 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
     private final TimeValue interval;
 
     private final Listener listener = new Listener();
+    private final OperationListener operationListener = new OperationListener();
+
+    // the (approximate) bytes indexed since the indexing memory was last checked
+    private final AtomicLong bytesIndexedSinceCheck = new AtomicLong();
+    private final AtomicBoolean checkPending = new AtomicBoolean();
 
     private final Map<ShardId, ShardIndexingStatus> shardsIndicesStatus = Maps.newHashMap();
 
@@ -101,8 +120,9 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
         this.maxShardIndexBufferSize = componentSettings.getAsBytesSize("max_shard_index_buffer_size", new ByteSizeValue(512, ByteSizeUnit.MB));
 
         this.inactiveTime = componentSettings.getAsTime("shard_inactive_time", TimeValue.timeValueMinutes(30));
-        // we need to have this relatively small to move a shard from inactive to active fast (enough)
-        this.interval = componentSettings.getAsTime("interval", TimeValue.timeValueSeconds(30));
+        // we need to have this relatively small to move a shard from inactive to active fast (enough), heavy
+        // indexing triggers checks in between (see OperationListener)
+        this.interval = componentSettings.getAsTime("interval", TimeValue.timeValueSeconds(5));
 
         logger.debug("using index_buffer_size [{}], with min_shard_index_buffer_size [{}], max_shard_index_buffer_size [{}], shard_inactive_time [{}]", this.indexingBuffer, this.minShardIndexBufferSize, this.maxShardIndexBufferSize, this.inactiveTime);
 
@@ -185,6 +205,8 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
                 if (activeInactiveStatusChanges) {
                     calcAndSetShardIndexingBuffer("shards became active/inactive (indexing wise)");
                 }
+                bytesIndexedSinceCheck.set(0);
+                checkIndexingMemory();
             }
         }
     }
@@ -197,6 +219,14 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
                 calcAndSetShardIndexingBuffer("created_shard[" + indexShard.shardId().index().name() + "][" + indexShard.shardId().id() + "]");
                 shardsIndicesStatus.put(indexShard.shardId(), new ShardIndexingStatus());
             }
+            indexShard.indexingService().addListener(operationListener);
+        }
+
+        @Override
+        public void beforeIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard) {
+            if (indexShard != null) {
+                indexShard.indexingService().removeListener(operationListener);
+            }
         }
 
         @Override
@@ -208,22 +238,79 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
         }
     }
 
+    /**
+     * Counts the bytes indexed on the node, and checks the indexing memory (off the indexing thread) every time
+     * 1/{@value #INDEXED_BYTES_CHECK_RATIO} of the budget got indexed, so heavy indexing can't go far over the budget
+     * in between two scheduled checks.
+     */
+    class OperationListener extends IndexingOperationListener {
 
-    private void calcAndSetShardIndexingBuffer(String reason) {
-        int shardsCount = countShards();
-        if (shardsCount == 0) {
+        @Override
+        public void postCreate(Engine.Create create) {
+            indexed(create.source().length());
+        }
+
+        @Override
+        public void postIndex(Engine.Index index) {
+            indexed(index.source().length());
+        }
+
+        @Override
+        public void postDelete(Engine.Delete delete) {
+            indexed(delete.uid().bytes().length);
+        }
+    }
+
+    static final int INDEXED_BYTES_CHECK_RATIO = 30;
+
+    private void indexed(long bytes) {
+        if (bytesIndexedSinceCheck.addAndGet(bytes) < indexingBuffer.bytes() / INDEXED_BYTES_CHECK_RATIO) {
             return;
         }
-        ByteSizeValue shardIndexingBufferSize = calcShardIndexingBuffer(shardsCount);
-        if (shardIndexingBufferSize == null) {
+        if (!checkPending.compareAndSet(false, true)) {
             return;
         }
+        try {
+            threadPool.generic().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        synchronized (mutex) {
+                            bytesIndexedSinceCheck.set(0);
+                            checkIndexingMemory();
+                        }
+                    } finally {
+                        checkPending.set(false);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            checkPending.set(false);
+            logger.debug("failed to check indexing memory", e);
+        }
+    }
+
+    /**
+     * The indexing buffer of each active shard: the node budget divided across the active shards, within the
+     * min and max shard index buffer sizes.
+     */
+    public static ByteSizeValue shardIndexingBufferSize(ByteSizeValue indexingBuffer, int activeShards, ByteSizeValue minShardIndexBufferSize, ByteSizeValue maxShardIndexBufferSize) {
+        ByteSizeValue shardIndexingBufferSize = new ByteSizeValue(indexingBuffer.bytes() / activeShards);
         if (shardIndexingBufferSize.bytes() < minShardIndexBufferSize.bytes()) {
             shardIndexingBufferSize = minShardIndexBufferSize;
         }
         if (shardIndexingBufferSize.bytes() > maxShardIndexBufferSize.bytes()) {
             shardIndexingBufferSize = maxShardIndexBufferSize;
         }
+        return shardIndexingBufferSize;
+    }
+
+    private void calcAndSetShardIndexingBuffer(String reason) {
+        int shardsCount = countShards();
+        if (shardsCount == 0) {
+            return;
+        }
+        ByteSizeValue shardIndexingBufferSize = shardIndexingBufferSize(indexingBuffer, shardsCount, minShardIndexBufferSize, maxShardIndexBufferSize);
         logger.debug("recalculating shard indexing buffer (reason={}), total is [{}] with [{}] active shards, each shard set to [{}]", reason, indexingBuffer, shardsCount, shardIndexingBufferSize);
         for (IndexService indexService : indicesService) {
             for (IndexShard indexShard : indexService) {
@@ -245,10 +332,6 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
         }
     }
 
-    private ByteSizeValue calcShardIndexingBuffer(int shardsCount) {
-        return new ByteSizeValue(indexingBuffer.bytes() / shardsCount);
-    }
-
     private int countShards() {
         int shardsCount = 0;
         for (IndexService indexService : indicesService) {
@@ -262,10 +345,132 @@ public class IndexingMemoryController extends AbstractLifecycleComponent<Indexin
         return shardsCount;
     }
 
+    /**
+     * Sums up the indexing heap used by the shards, and if it's over the budget, frees the shards using the most
+     * until it's back under it.
+     */
+    private void checkIndexingMemory() {
+        List<ShardMemoryUsage> usages = Lists.newArrayList();
+        long totalBytes = 0;
+        for (IndexService indexService : indicesService) {
+            for (IndexShard indexShard : indexService) {
+                ShardIndexingStatus status = shardsIndicesStatus.get(indexShard.shardId());
+                if (status == null) { // not added yet
+                    continue;
+                }
+                Engine engine = ((InternalIndexShard) indexShard).engine();
+                ShardMemoryUsage usage = new ShardMemoryUsage(indexShard, status, engine.indexWriterRamBytesUsed(), engine.versionMapRamBytesUsed());
+                totalBytes += usage.bytes();
+                if (!status.freeingMemory) {
+                    usages.add(usage);
+                }
+            }
+        }
+        if (totalBytes <= indexingBuffer.bytes()) {
+            return;
+        }
+        logger.debug("indexing memory [{}] is over the budget [{}], freeing the shards using the most", new ByteSizeValue(totalBytes), indexingBuffer);
+        for (ShardMemoryUsage usage : shardsToFree(usages, totalBytes, indexingBuffer.bytes(), minShardIndexBufferSize.bytes())) {
+            freeMemory(usage);
+        }
+    }
+
+    /**
+     * The shards to free, largest first, to bring the total back under the budget. Shards using less than the
+     * min shard buffer are never picked, so they don't write tiny segments.
+     */
+    public static List<ShardMemoryUsage> shardsToFree(List<ShardMemoryUsage> usages, long totalBytes, long budgetBytes, long minShardBytes) {
+        List<ShardMemoryUsage> toFree = Lists.newArrayList();
+        List<ShardMemoryUsage> sorted = Lists.newArrayList(usages);
+        Collections.sort(sorted, USAGE_COMPARATOR);
+        for (ShardMemoryUsage usage : sorted) {
+            if (totalBytes <= budgetBytes) {
+                break;
+            }
+            if (usage.bytes() < minShardBytes) {
+                // sorted, the rest are smaller
+                break;
+            }
+            toFree.add(usage);
+            totalBytes -= usage.bytes();
+        }
+        return toFree;
+    }
+
+    private void freeMemory(final ShardMemoryUsage usage) {
+        final IndexShard indexShard = usage.indexShard;
+        // the version map is only cleared on flush, while a refresh is enough to write the buffered docs
+        final boolean flush = usage.versionMapBytes > usage.indexWriterBytes;
+        if (logger.isTraceEnabled()) {
+            logger.trace("[{}][{}] {} to free indexing memory, index writer [{}], version map [{}]", indexShard.shardId().index().name(), indexShard.shardId().id(),
+                    flush ? "flushing" : "refreshing", new ByteSizeValue(usage.indexWriterBytes), new ByteSizeValue(usage.versionMapBytes));
+        }
+        usage.status.freeingMemory = true;
+        try {
+            threadPool.executor(flush ? ThreadPool.Names.FLUSH : ThreadPool.Names.REFRESH).execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (flush) {
+                            indexShard.flush(new Engine.Flush());
+                        } else {
+                            indexShard.refresh(new Engine.Refresh(false));
+                        }
+                    } catch (EngineClosedException e) {
+                        // ignore
+                    } catch (FlushNotAllowedEngineException e) {
+                        // ignore
+                    } catch (IllegalIndexShardStateException e) {
+                        // ignore
+                    } catch (Exception e) {
+                        logger.warn("failed to free indexing memory of shard [{}][{}]", e, indexShard.shardId().index().name(), indexShard.shardId().id());
+                    } finally {
+                        usage.status.freeingMemory = false;
+                    }
+                }
+            });
+        } catch (Exception e) {
+            usage.status.freeingMemory = false;
+            logger.debug("failed to free indexing memory of shard [{}][{}]", e, indexShard.shardId().index().name(), indexShard.shardId().id());
+        }
+    }
+
+    private static final Comparator<ShardMemoryUsage> USAGE_COMPARATOR = new Comparator<ShardMemoryUsage>() {
+        @Override
+        public int compare(ShardMemoryUsage o1, ShardMemoryUsage o2) {
+            // largest first
+            long diff = o2.bytes() - o1.bytes();
+            return diff == 0 ? 0 : (diff > 0 ? 1 : -1);
+        }
+    };
+
+    public static class ShardMemoryUsage {
+        final IndexShard indexShard;
+        final ShardIndexingStatus status;
+        final long indexWriterBytes;
+        final long versionMapBytes;
+
+        public ShardMemoryUsage(IndexShard indexShard, ShardIndexingStatus status, long indexWriterBytes, long versionMapBytes) {
+            this.indexShard = indexShard;
+            this.status = status;
+            this.indexWriterBytes = indexWriterBytes;
+            this.versionMapBytes = versionMapBytes;
+        }
+
+        public IndexShard indexShard() {
+            return indexShard;
+        }
+
+        public long bytes() {
+            return indexWriterBytes + versionMapBytes;
+        }
+    }
+
     static class ShardIndexingStatus {
         long translogId = -1;
         int translogNumberOfOperations = -1;
         boolean inactiveIndexing = false;
         long time = -1; // contains the first time we saw this shard with no operations done on it
+        volatile boolean freeingMemory = false; // a refresh/flush to free its indexing memory is in flight
     }
 }
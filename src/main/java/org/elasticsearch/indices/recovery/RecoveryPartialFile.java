@@ -0,0 +1,138 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.indices.recovery;
+
+import org.apache.lucene.store.IndexInput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+
+import java.io.IOException;
+import java.util.zip.Adler32;
+import java.util.zip.Checksum;
+
+/**
+ * A file a previous (failed) recovery of the shard partially copied to the target. The target reports the file
+ * along with the number of bytes it holds and their checksum, so the source can verify it holds the same bytes
+ * and only send the rest of the file.
+ */
+public class RecoveryPartialFile implements Streamable {
+
+    private String name;
+
+    private long length;
+
+    private String checksum;
+
+    private long offset;
+
+    private String offsetChecksum;
+
+    RecoveryPartialFile() {
+    }
+
+    /**
+     * @param name           the name of the file
+     * @param length         the length of the full file, as sent by the source
+     * @param checksum       the checksum of the full file, as sent by the source
+     * @param offset         the number of bytes of the file the target holds
+     * @param offsetChecksum the checksum of the first <tt>offset</tt> bytes of the file, see {@link #checksum(IndexInput, long)}
+     */
+    public RecoveryPartialFile(String name, long length, String checksum, long offset, String offsetChecksum) {
+        this.name = name;
+        this.length = length;
+        this.checksum = checksum;
+        this.offset = offset;
+        this.offsetChecksum = offsetChecksum;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public String checksum() {
+        return checksum;
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    public String offsetChecksum() {
+        return offsetChecksum;
+    }
+
+    /**
+     * Computes the checksum of the first <tt>length</tt> bytes of the input.
+     */
+    public static String checksum(IndexInput input, long length) throws IOException {
+        Adler32 adler32 = new Adler32();
+        byte[] buffer = new byte[8192];
+        long left = length;
+        while (left > 0) {
+            int toRead = (int) Math.min(buffer.length, left);
+            input.readBytes(buffer, 0, toRead);
+            adler32.update(buffer, 0, toRead);
+            left -= toRead;
+        }
+        return checksum(adler32);
+    }
+
+    /**
+     * The string form of a checksum (computed as an {@link Adler32}), as reported in {@link #offsetChecksum()}.
+     */
+    public static String checksum(Checksum checksum) {
+        return Long.toString(checksum.getValue(), Character.MAX_RADIX);
+    }
+
+    public static RecoveryPartialFile readRecoveryPartialFile(StreamInput in) throws IOException {
+        RecoveryPartialFile partialFile = new RecoveryPartialFile();
+        partialFile.readFrom(in);
+        return partialFile;
+    }
+
+    @Override
+    public String toString() {
+        return "name [" + name + "], length [" + length + "], checksum [" + checksum + "], offset [" + offset + "]";
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        name = in.readString();
+        length = in.readVLong();
+        checksum = in.readString();
+        offset = in.readVLong();
+        offsetChecksum = in.readString();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(name);
+        out.writeVLong(length);
+        out.writeString(checksum);
+        out.writeVLong(offset);
+        out.writeString(offsetChecksum);
+    }
+}
@@ -37,6 +37,7 @@ import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.deletionpolicy.SnapshotIndexCommit;
 import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.engine.LocalCheckpoint;
 import org.elasticsearch.index.shard.IllegalIndexShardStateException;
 import org.elasticsearch.index.shard.IndexShardClosedException;
 import org.elasticsearch.index.shard.IndexShardState;
@@ -114,6 +115,10 @@ public class RecoverySource extends AbstractComponent {
         logger.trace("[{}][{}] starting recovery to {}, mark_as_relocated {}", request.shardId().index().name(), request.shardId().id(), request.targetNode(), request.markAsRelocated());
         final RecoveryResponse response = new RecoveryResponse();
         shard.recover(new Engine.RecoveryHandler() {
+
+            // set when the target only misses operations we still have, and catches up by replaying them
+            private boolean replayRetainedTranslog = false;
+
             @Override
             public void phase1(final SnapshotIndexCommit snapshot) throws ElasticSearchException {
                 long totalSize = 0;
@@ -121,6 +126,17 @@ public class RecoverySource extends AbstractComponent {
                 try {
                     StopWatch stopWatch = new StopWatch().start();
 
+                    if (canReplayRetainedTranslog()) {
+                        logger.trace("[{}][{}] recovery [phase1] to {}: target is at seq no [{}], replaying the retained translog instead of recovering files", request.shardId().index().name(), request.shardId().id(), request.targetNode(), request.localCheckpoint());
+                        replayRetainedTranslog = true;
+                        RecoveryFilesInfoRequest recoveryInfoFilesRequest = new RecoveryFilesInfoRequest(request.recoveryId(), request.shardId(), response.phase1FileNames, response.phase1FileSizes,
+                                response.phase1ExistingFileNames, response.phase1ExistingFileSizes, 0, 0);
+                        transportService.submitRequest(request.targetNode(), RecoveryTarget.Actions.FILES_INFO, recoveryInfoFilesRequest, TransportRequestOptions.options().withTimeout(internalActionTimeout), EmptyTransportResponseHandler.INSTANCE_SAME).txGet();
+                        stopWatch.stop();
+                        response.phase1Time = stopWatch.totalTime().millis();
+                        return;
+                    }
+
                     for (String name : snapshot.getFiles()) {
                         StoreFileMetaData md = shard.store().metaData(name);
                         boolean useExisting = false;
@@ -175,7 +191,15 @@ public class RecoverySource extends AbstractComponent {
                                     }
 
                                     long len = indexInput.length();
-                                    long readCount = 0;
+                                    long readCount = resumeOffset(name, md);
+                                    if (readCount > 0) {
+                                        indexInput.seek(readCount);
+                                        if (readCount == len) {
+                                            // the target has the whole file, let it know so it can use it
+                                            transportService.submitRequest(request.targetNode(), RecoveryTarget.Actions.FILE_CHUNK, new RecoveryFileChunkRequest(request.recoveryId(), request.shardId(), name, len, len, md.checksum(), BytesArray.EMPTY),
+                                                    TransportRequestOptions.options().withLowType().withTimeout(internalActionTimeout), EmptyTransportResponseHandler.INSTANCE_SAME).txGet();
+                                        }
+                                    }
                                     while (readCount < len) {
                                         if (shard.state() == IndexShardState.CLOSED) { // check if the shard got closed on us
                                             throw new IndexShardClosedException(shard.shardId());
@@ -227,6 +251,96 @@ public class RecoverySource extends AbstractComponent {
                 }
             }
 
+            /**
+             * Returns the offset to start sending the file from: if the target partially copied the file in a previous
+             * recovery, and the bytes it holds are the same as ours, only the rest of the file is sent.
+             */
+            private long resumeOffset(String name, StoreFileMetaData md) {
+                RecoveryPartialFile partialFile = request.partialFiles().get(name);
+                if (partialFile == null || md.checksum() == null || !md.checksum().equals(partialFile.checksum())
+                        || md.length() != partialFile.length() || partialFile.offset() > md.length()) {
+                    return 0;
+                }
+                IndexInput indexInput = null;
+                try {
+                    indexInput = shard.store().openInputRaw(name, IOContext.READONCE);
+                    if (!RecoveryPartialFile.checksum(indexInput, partialFile.offset()).equals(partialFile.offsetChecksum())) {
+                        return 0;
+                    }
+                } catch (IOException e) {
+                    return 0;
+                } finally {
+                    if (indexInput != null) {
+                        try {
+                            indexInput.close();
+                        } catch (IOException e) {
+                            // ignore
+                        }
+                    }
+                }
+                logger.trace("[{}][{}] recovery [phase1] to {}: resuming [{}] from [{}]", request.shardId().index().name(), request.shardId().id(), request.targetNode(), name, partialFile.offset());
+                return partialFile.offset();
+            }
+
+            /**
+             * Can the target, which shares our history of sequence numbers, catch up by replaying the operations
+             * above its local checkpoint? Only if the retained and current translogs hold all of them. Delete by query
+             * operations don't consume a sequence number, they are replayed along when applied at or above the
+             * target checkpoint.
+             */
+            private boolean canReplayRetainedTranslog() {
+                if (request.historyId() == null || request.localCheckpoint() < 0 || !request.historyId().equals(shard.engine().historyId())) {
+                    return false;
+                }
+                long localCheckpoint = shard.engine().localCheckpoint();
+                if (request.localCheckpoint() > localCheckpoint) {
+                    return false;
+                }
+                LocalCheckpoint replayed = new LocalCheckpoint(request.localCheckpoint(), request.localCheckpoint());
+                long oldestSeqNo = Long.MAX_VALUE;
+                List<Translog.Snapshot> snapshots = shard.translog().retainedSnapshots();
+                try {
+                    for (Translog.Snapshot snapshot : snapshots) {
+                        while (snapshot.hasNext()) {
+                            Translog.Operation operation = snapshot.next();
+                            if (operation.seqNo() < 0) {
+                                // an operation numbered by an older primary, or a delete by query of an older node
+                                return false;
+                            }
+                            if (operation.opType() != Translog.Operation.Type.DELETE_BY_QUERY) {
+                                oldestSeqNo = Math.min(oldestSeqNo, operation.seqNo());
+                                replayed.markCompleted(operation.seqNo());
+                            }
+                        }
+                    }
+                    Translog.Snapshot snapshot = shard.translog().snapshot();
+                    try {
+                        while (snapshot.hasNext()) {
+                            Translog.Operation operation = snapshot.next();
+                            if (operation.opType() != Translog.Operation.Type.DELETE_BY_QUERY) {
+                                oldestSeqNo = Math.min(oldestSeqNo, operation.seqNo());
+                                replayed.markCompleted(operation.seqNo());
+                            }
+                        }
+                    } finally {
+                        snapshot.release();
+                    }
+                } finally {
+                    for (Translog.Snapshot snapshot : snapshots) {
+                        snapshot.release();
+                    }
+                }
+                // delete by queries are positioned at the checkpoint they were applied at, and are written after
+                // all the operations up to it, so as long as an operation the target already has is still around,
+                // every delete by query at or above the target checkpoint is too, otherwise it might have been
+                // trimmed along with an older translog
+                if (oldestSeqNo > request.localCheckpoint()) {
+                    return false;
+                }
+                // operations above our checkpoint (still in flight) will be in the current translog
+                return replayed.checkpoint() >= localCheckpoint;
+            }
+
             @Override
             public void phase2(Translog.Snapshot snapshot) throws ElasticSearchException {
                 if (shard.state() == IndexShardState.CLOSED) {
@@ -241,7 +355,22 @@ public class RecoverySource extends AbstractComponent {
 
                 logger.trace("[{}][{}] recovery [phase2] to {}: sending transaction log operations", request.shardId().index().name(), request.shardId().id(), request.targetNode());
                 stopWatch = new StopWatch().start();
-                int totalOperations = sendSnapshot(snapshot);
+                int totalOperations = 0;
+                if (replayRetainedTranslog) {
+                    // no flush happens while recovering, so these are the translogs checked in phase1
+                    List<Translog.Snapshot> retainedSnapshots = shard.translog().retainedSnapshots();
+                    try {
+                        for (Translog.Snapshot retainedSnapshot : retainedSnapshots) {
+                            totalOperations += sendSnapshot(retainedSnapshot, request.localCheckpoint());
+                        }
+                    } finally {
+                        for (Translog.Snapshot retainedSnapshot : retainedSnapshots) {
+                            retainedSnapshot.release();
+                        }
+                    }
+                }
+                // the current translog is sent fully, so delete by query operations are replayed in order
+                totalOperations += sendSnapshot(snapshot);
                 stopWatch.stop();
                 logger.trace("[{}][{}] recovery [phase2] to {}: took [{}]", request.shardId().index().name(), request.shardId().id(), request.targetNode(), stopWatch.totalTime());
                 response.phase2Time = stopWatch.totalTime().millis();
@@ -274,6 +403,13 @@ public class RecoverySource extends AbstractComponent {
             }
 
             private int sendSnapshot(Translog.Snapshot snapshot) throws ElasticSearchException {
+                return sendSnapshot(snapshot, Long.MIN_VALUE);
+            }
+
+            /**
+             * Sends the operations of the snapshot numbered above the provided sequence number.
+             */
+            private int sendSnapshot(Translog.Snapshot snapshot, long aboveSeqNo) throws ElasticSearchException {
                 int ops = 0;
                 long size = 0;
                 int totalOperations = 0;
@@ -283,6 +419,14 @@ public class RecoverySource extends AbstractComponent {
                         throw new IndexShardClosedException(request.shardId());
                     }
                     Translog.Operation operation = snapshot.next();
+                    if (operation.opType() == Translog.Operation.Type.DELETE_BY_QUERY) {
+                        // applied at that checkpoint, the target might have missed it if it is not below its own
+                        if (operation.seqNo() < aboveSeqNo) {
+                            continue;
+                        }
+                    } else if (operation.seqNo() <= aboveSeqNo) {
+                        continue;
+                    }
                     operations.add(operation);
                     ops += 1;
                     size += operation.estimateSize();
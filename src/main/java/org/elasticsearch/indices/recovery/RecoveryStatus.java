@@ -19,14 +19,17 @@
 
 package org.elasticsearch.indices.recovery;
 
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.index.shard.service.InternalIndexShard;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
 
 /**
  *
@@ -57,6 +60,10 @@ public class RecoveryStatus {
 
     ConcurrentMap<String, IndexOutput> openIndexOutputs = ConcurrentCollections.newConcurrentMap();
     ConcurrentMap<String, String> checksums = ConcurrentCollections.newConcurrentMap();
+    // the files copied (so far) by this recovery, so they can be resumed if it fails
+    ConcurrentMap<String, PartialFile> recoveringFiles = ConcurrentCollections.newConcurrentMap();
+    // the files partially copied by a previous recovery, that this recovery resumes
+    ConcurrentMap<String, PartialFile> resumableFiles = ConcurrentCollections.newConcurrentMap();
 
     final long startTime = System.currentTimeMillis();
     long time;
@@ -98,4 +105,64 @@ public class RecoveryStatus {
     public long currentFilesSize() {
         return currentFilesSize.get();
     }
+
+    /**
+     * A file being copied by the recovery. It keeps a running checksum of the bytes written so far, so the file can
+     * be reported as resumable if the recovery fails, without reading it back.
+     */
+    public static class PartialFile {
+        final String name;
+        // the name of the file in the store, might be a temporary recovery name
+        final String storeName;
+        final long length;
+        final String checksum;
+        private final Adler32 offsetChecksum = new Adler32();
+        private long offset;
+
+        public PartialFile(String name, String storeName, long length, String checksum) {
+            this.name = name;
+            this.storeName = storeName;
+            this.length = length;
+            this.checksum = checksum;
+        }
+
+        public String storeName() {
+            return storeName;
+        }
+
+        /**
+         * Marks the bytes as written to the file, after the bytes written so far.
+         */
+        public synchronized void written(byte[] bytes, int offset, int length) {
+            offsetChecksum.update(bytes, offset, length);
+            this.offset += length;
+        }
+
+        /**
+         * Copies the first <tt>length</tt> bytes of the input, the part of the file a previous recovery copied, to the
+         * output, and marks them as written.
+         */
+        public void copy(IndexInput input, IndexOutput output, long length) throws IOException {
+            byte[] buffer = new byte[8192];
+            long left = length;
+            while (left > 0) {
+                int toRead = (int) Math.min(buffer.length, left);
+                input.readBytes(buffer, 0, toRead);
+                output.writeBytes(buffer, 0, toRead);
+                written(buffer, 0, toRead);
+                left -= toRead;
+            }
+        }
+
+        public synchronized long offset() {
+            return offset;
+        }
+
+        /**
+         * The file as reported to the source by the next recovery, with the checksum of the bytes written so far.
+         */
+        public synchronized RecoveryPartialFile toRecoveryPartialFile() {
+            return new RecoveryPartialFile(name, length, checksum, offset, RecoveryPartialFile.checksum(offsetChecksum));
+        }
+    }
 }
@@ -19,8 +19,12 @@
 
 package org.elasticsearch.indices.recovery;
 
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.common.Nullable;
@@ -28,13 +32,16 @@ import org.elasticsearch.common.StopWatch;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.ConcurrentMapLong;
 import org.elasticsearch.index.IndexShardMissingException;
+import org.elasticsearch.index.engine.LocalCheckpoint;
 import org.elasticsearch.index.engine.RecoveryEngineException;
+import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.shard.*;
 import org.elasticsearch.index.shard.service.IndexShard;
 import org.elasticsearch.index.shard.service.InternalIndexShard;
@@ -50,6 +57,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.elasticsearch.common.unit.TimeValue.timeValueMillis;
 
@@ -80,6 +88,9 @@ public class RecoveryTarget extends AbstractComponent {
 
     private final ConcurrentMapLong<RecoveryStatus> onGoingRecoveries = ConcurrentCollections.newConcurrentMapLong();
 
+    // files partially copied by failed recoveries, per shard, resumed by the next recovery of the shard
+    private final ConcurrentMap<ShardId, ShardPartialFiles> partialFiles = ConcurrentCollections.newConcurrentMap();
+
     @Inject
     public RecoveryTarget(Settings settings, ThreadPool threadPool, TransportService transportService, IndicesService indicesService,
                           IndicesLifecycle indicesLifecycle, RecoverySettings recoverySettings) {
@@ -99,8 +110,25 @@ public class RecoveryTarget extends AbstractComponent {
         indicesLifecycle.addListener(new IndicesLifecycle.Listener() {
             @Override
             public void beforeIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard) {
+                RecoveryStatus recoveryStatus = null;
                 if (indexShard != null) {
-                    removeAndCleanOnGoingRecovery(findRecoveryByShard(indexShard));
+                    recoveryStatus = findRecoveryByShard(indexShard);
+                    removeAndCleanOnGoingRecovery(recoveryStatus);
+                }
+                // the shard is removed right after its recovery failed, keep the partial files for the next recovery
+                // in that case only, other closes (a canceled recovery, a relocated or deleted shard) drop them
+                ShardPartialFiles shardPartialFiles = partialFiles.get(shardId);
+                if (shardPartialFiles != null && (recoveryStatus != null || indexShard == null || shardPartialFiles.failedShard != indexShard)) {
+                    partialFiles.remove(shardId, shardPartialFiles);
+                }
+            }
+
+            @Override
+            public void beforeIndexClosed(IndexService indexService) {
+                for (ShardId shardId : partialFiles.keySet()) {
+                    if (shardId.index().equals(indexService.index())) {
+                        partialFiles.remove(shardId);
+                    }
                 }
             }
         });
@@ -159,6 +187,8 @@ public class RecoveryTarget extends AbstractComponent {
             public void run() {
                 // create a new recovery status, and process...
                 RecoveryStatus recoveryStatus = new RecoveryStatus(request.recoveryId(), indexShard);
+                resumePartialFiles(request, recoveryStatus);
+                reportLocalCheckpoint(request, recoveryStatus);
                 onGoingRecoveries.put(recoveryStatus.recoveryId, recoveryStatus);
                 doRecovery(request, recoveryStatus, listener);
             }
@@ -174,6 +204,66 @@ public class RecoveryTarget extends AbstractComponent {
         });
     }
 
+    /**
+     * Reports the files partially copied by a previous recovery of the shard, along with the checksum of the bytes
+     * copied (computed while they were written), so the source only sends the rest of them.
+     */
+    private void resumePartialFiles(StartRecoveryRequest request, RecoveryStatus recoveryStatus) {
+        ShardPartialFiles shardPartialFiles = partialFiles.remove(request.shardId());
+        if (shardPartialFiles == null) {
+            return;
+        }
+        Map<String, RecoveryPartialFile> reportedFiles = Maps.newHashMap();
+        Store store = recoveryStatus.indexShard.store();
+        for (RecoveryStatus.PartialFile file : shardPartialFiles.files.values()) {
+            RecoveryPartialFile partialFile = file.toRecoveryPartialFile();
+            if (partialFile.offset() == 0) {
+                continue;
+            }
+            try {
+                if (store.directory().fileLength(file.storeName()) < partialFile.offset()) {
+                    continue;
+                }
+            } catch (IOException e) {
+                // the file is gone, it will be recovered fully
+                logger.trace("[{}][{}] can't resume recovery of [{}]", e, request.shardId().index().name(), request.shardId().id(), file.storeName());
+                continue;
+            }
+            reportedFiles.put(partialFile.name(), partialFile);
+            recoveryStatus.resumableFiles.put(partialFile.name(), file);
+            // still resumable if this recovery fails before getting to it
+            recoveryStatus.recoveringFiles.put(partialFile.name(), file);
+        }
+        request.partialFiles(reportedFiles);
+    }
+
+    /**
+     * Reports the local checkpoint (and history) of the last commit of the shard, so the source can send only the
+     * operations we miss if it still has them, instead of recovering the files.
+     */
+    private void reportLocalCheckpoint(StartRecoveryRequest request, RecoveryStatus recoveryStatus) {
+        Store store = recoveryStatus.indexShard.store();
+        try {
+            if (!Lucene.indexExists(store.directory())) {
+                return;
+            }
+            SegmentInfos infos = Lucene.readSegmentInfos(store.directory());
+            // a previous recovery might have failed while replacing the files, only report a complete commit
+            for (String file : infos.files(store.directory(), true)) {
+                if (!store.directory().fileExists(file)) {
+                    return;
+                }
+            }
+            Map<String, String> commitUserData = infos.getUserData();
+            String historyId = commitUserData.get(LocalCheckpoint.HISTORY_ID_KEY);
+            if (historyId != null) {
+                request.localCheckpoint(historyId, LocalCheckpoint.checkpoint(commitUserData));
+            }
+        } catch (Exception e) {
+            logger.trace("[{}][{}] failed to read the local checkpoint of the last commit", e, request.shardId().index().name(), request.shardId().id());
+        }
+    }
+
     private void doRecovery(final StartRecoveryRequest request, final RecoveryStatus recoveryStatus, final RecoveryListener listener) {
         if (request.sourceNode() == null) {
             listener.onIgnoreRecovery(false, "No node to recover from, retry on next cluster state update");
@@ -229,6 +319,7 @@ public class RecoveryTarget extends AbstractComponent {
                 logger.debug(sb.toString());
             }
             removeAndCleanOnGoingRecovery(recoveryStatus);
+            partialFiles.remove(recoveryStatus.shardId);
             listener.onRecoveryDone();
         } catch (Exception e) {
 //            logger.trace("[{}][{}] Got exception on recovery", e, request.shardId().index().name(), request.shardId().id());
@@ -348,6 +439,21 @@ public class RecoveryTarget extends AbstractComponent {
         }
         status.openIndexOutputs = null;
         status.checksums = null;
+        if ((status.stage == RecoveryStatus.Stage.INIT || status.stage == RecoveryStatus.Stage.INDEX) && !status.recoveringFiles.isEmpty()) {
+            // failed while copying files, keep track of what was copied, so the next recovery of the shard can resume it
+            partialFiles.put(status.shardId, new ShardPartialFiles(status.indexShard, Maps.newHashMap(status.recoveringFiles)));
+        }
+    }
+
+    static class ShardPartialFiles {
+        // the shard whose recovery failed, closing it (right after) must not drop the files
+        final IndexShard failedShard;
+        final Map<String, RecoveryStatus.PartialFile> files;
+
+        ShardPartialFiles(IndexShard failedShard, Map<String, RecoveryStatus.PartialFile> files) {
+            this.failedShard = failedShard;
+            this.files = files;
+        }
     }
 
     class PrepareForTranslogOperationsRequestHandler extends BaseTransportRequestHandler<RecoveryPrepareForTranslogOperationsRequest> {
@@ -585,7 +691,12 @@ public class RecoveryTarget extends AbstractComponent {
             Store store = onGoingRecovery.indexShard.store();
 
             IndexOutput indexOutput;
-            if (request.position() == 0) {
+            RecoveryStatus.PartialFile resumedFile = null;
+            if (request.position() > 0 && !onGoingRecovery.openIndexOutputs.containsKey(request.name())) {
+                // the first request of a file partially copied by a previous recovery, the source only sends the rest
+                resumedFile = onGoingRecovery.resumableFiles.remove(request.name());
+            }
+            if (request.position() == 0 || resumedFile != null) {
                 // first request
                 onGoingRecovery.checksums.remove(request.name());
                 indexOutput = onGoingRecovery.openIndexOutputs.remove(request.name());
@@ -611,6 +722,21 @@ public class RecoveryTarget extends AbstractComponent {
 
                 indexOutput = store.createOutputRaw(name);
                 onGoingRecovery.openIndexOutputs.put(request.name(), indexOutput);
+                RecoveryStatus.PartialFile recoveringFile = new RecoveryStatus.PartialFile(request.name(), name, request.length(), request.checksum());
+                if (resumedFile != null) {
+                    // index outputs can't be appended to, so copy over the bytes we already have locally
+                    IndexInput indexInput = store.openInputRaw(resumedFile.storeName(), IOContext.READONCE);
+                    try {
+                        recoveringFile.copy(indexInput, indexOutput, request.position());
+                    } finally {
+                        indexInput.close();
+                    }
+                }
+                if (request.checksum() != null) {
+                    onGoingRecovery.recoveringFiles.put(request.name(), recoveringFile);
+                } else {
+                    onGoingRecovery.recoveringFiles.remove(request.name());
+                }
             } else {
                 indexOutput = onGoingRecovery.openIndexOutputs.get(request.name());
             }
@@ -629,6 +755,10 @@ public class RecoveryTarget extends AbstractComponent {
                     }
                     indexOutput.writeBytes(content.array(), content.arrayOffset(), content.length());
                     onGoingRecovery.currentFilesSize.addAndGet(request.length());
+                    RecoveryStatus.PartialFile recoveringFile = onGoingRecovery.recoveringFiles.get(request.name());
+                    if (recoveringFile != null) {
+                        recoveringFile.written(content.array(), content.arrayOffset(), content.length());
+                    }
                     if (indexOutput.getFilePointer() == request.length()) {
                         // we are done
                         indexOutput.close();
@@ -19,7 +19,9 @@
 
 package org.elasticsearch.indices.recovery;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import org.elasticsearch.Version;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -50,6 +52,12 @@ public class StartRecoveryRequest extends TransportRequest {
 
     private Map<String, StoreFileMetaData> existingFiles;
 
+    private Map<String, RecoveryPartialFile> partialFiles = ImmutableMap.of();
+
+    private String historyId;
+
+    private long localCheckpoint = -1;
+
     StartRecoveryRequest() {
     }
 
@@ -95,6 +103,36 @@ public class StartRecoveryRequest extends TransportRequest {
         return existingFiles;
     }
 
+    /**
+     * The files partially copied by a previous recovery of the shard, that can be resumed.
+     */
+    public Map<String, RecoveryPartialFile> partialFiles() {
+        return partialFiles;
+    }
+
+    void partialFiles(Map<String, RecoveryPartialFile> partialFiles) {
+        this.partialFiles = partialFiles;
+    }
+
+    /**
+     * The sequence numbers history id of the last commit of the target shard, <tt>null</tt> if unknown.
+     */
+    public String historyId() {
+        return historyId;
+    }
+
+    /**
+     * The local checkpoint of the last commit of the target shard, <tt>-1</tt> if unknown.
+     */
+    public long localCheckpoint() {
+        return localCheckpoint;
+    }
+
+    void localCheckpoint(String historyId, long localCheckpoint) {
+        this.historyId = historyId;
+        this.localCheckpoint = localCheckpoint;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
@@ -109,6 +147,16 @@ public class StartRecoveryRequest extends TransportRequest {
             StoreFileMetaData md = StoreFileMetaData.readStoreFileMetaData(in);
             existingFiles.put(md.name(), md);
         }
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            size = in.readVInt();
+            partialFiles = Maps.newHashMapWithExpectedSize(size);
+            for (int i = 0; i < size; i++) {
+                RecoveryPartialFile partialFile = RecoveryPartialFile.readRecoveryPartialFile(in);
+                partialFiles.put(partialFile.name(), partialFile);
+            }
+            historyId = in.readOptionalString();
+            localCheckpoint = in.readLong();
+        }
     }
 
     @Override
@@ -123,5 +171,13 @@ public class StartRecoveryRequest extends TransportRequest {
         for (StoreFileMetaData md : existingFiles.values()) {
             md.writeTo(out);
         }
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            out.writeVInt(partialFiles.size());
+            for (RecoveryPartialFile partialFile : partialFiles.values()) {
+                partialFile.writeTo(out);
+            }
+            out.writeOptionalString(historyId);
+            out.writeLong(localCheckpoint);
+        }
     }
 }
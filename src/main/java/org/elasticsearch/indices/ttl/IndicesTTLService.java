@@ -19,7 +19,9 @@
 
 package org.elasticsearch.indices.ttl;
 
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.NumericRangeQuery;
@@ -34,12 +36,15 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.uid.Versions;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.fieldvisitor.UidAndRoutingFieldsVisitor;
 import org.elasticsearch.index.mapper.FieldMapper;
@@ -57,15 +62,23 @@ import org.elasticsearch.node.settings.NodeSettingsService;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
  * A node level service that delete expired docs on node primary shards.
+ * <p/>
+ * Indices with <tt>index.ttl.expire_segments</tt> set expire docs per shard copy (primaries and replicas) instead,
+ * with a single (local) delete by query on the <tt>_ttl</tt> field. The min / max expiration time of each segment
+ * (see {@link SegmentTTLStats}) is used to skip shards with no segment holding docs that expired since the segment
+ * was last expired (new segments are checked from the start). Lucene drops the segments that end up fully deleted as
+ * a whole, the other segments getting rid of their expired docs when merged.
  */
 public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLService> {
 
     public static final String INDICES_TTL_INTERVAL = "indices.ttl.interval";
     public static final String INDEX_TTL_DISABLE_PURGE = "index.ttl.disable_purge";
+    public static final String INDEX_TTL_EXPIRE_SEGMENTS = "index.ttl.expire_segments";
 
     private final ClusterService clusterService;
     private final IndicesService indicesService;
@@ -75,6 +88,18 @@ public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLServ
     private final int bulkSize;
     private PurgerThread purgerThread;
 
+    // the ttl stats of each segment, and the time up to which its docs have been expired (using segment expiration),
+    // both keyed by the segment core
+    private final ConcurrentMap<Object, SegmentTTLStats> segmentsStats = ConcurrentCollections.newConcurrentMap();
+    private final ConcurrentMap<Object, Long> segmentsExpiredUpTo = ConcurrentCollections.newConcurrentMap();
+    private final SegmentReader.CoreClosedListener segmentsStatsCleaner = new SegmentReader.CoreClosedListener() {
+        @Override
+        public void onClose(SegmentReader owner) {
+            segmentsStats.remove(owner.getCoreCacheKey());
+            segmentsExpiredUpTo.remove(owner.getCoreCacheKey());
+        }
+    };
+
     @Inject
     public IndicesTTLService(Settings settings, ClusterService clusterService, IndicesService indicesService, NodeSettingsService nodeSettingsService, Client client) {
         super(settings);
@@ -118,8 +143,11 @@ public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLServ
         public void run() {
             while (running) {
                 try {
-                    List<IndexShard> shardsToPurge = getShardsToPurge();
+                    List<IndexShard> shardsToPurge = new ArrayList<IndexShard>();
+                    List<IndexShard> shardsToExpire = new ArrayList<IndexShard>();
+                    getShardsToPurge(shardsToPurge, shardsToExpire);
                     purgeShards(shardsToPurge);
+                    expireShards(shardsToExpire);
                 } catch (Throwable e) {
                     if (running) {
                         logger.warn("failed to execute ttl purge", e);
@@ -135,10 +163,10 @@ public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLServ
         }
 
         /**
-         * Returns the shards to purge, i.e. the local started primary shards that have ttl enabled and disable_purge to false
+         * Returns the shards to purge, i.e. the local started primary shards that have ttl enabled and disable_purge to false,
+         * and the shards to expire segments on, i.e. all the local started shards of indices with expire_segments set.
          */
-        private List<IndexShard> getShardsToPurge() {
-            List<IndexShard> shardsToPurge = new ArrayList<IndexShard>();
+        private void getShardsToPurge(List<IndexShard> shardsToPurge, List<IndexShard> shardsToExpire) {
             MetaData metaData = clusterService.state().metaData();
             for (IndexService indexService : indicesService) {
                 // check the value of disable_purge for this index
@@ -165,14 +193,20 @@ public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLServ
                     }
                 }
                 if (hasTTLEnabled) {
+                    boolean expireSegments = indexMetaData.settings().getAsBoolean(INDEX_TTL_EXPIRE_SEGMENTS, false);
                     for (IndexShard indexShard : indexService) {
-                        if (indexShard.state() == IndexShardState.STARTED && indexShard.routingEntry().primary() && indexShard.routingEntry().started()) {
+                        if (indexShard.state() != IndexShardState.STARTED || !indexShard.routingEntry().started()) {
+                            continue;
+                        }
+                        if (expireSegments) {
+                            // deletes are applied locally, on each shard copy
+                            shardsToExpire.add(indexShard);
+                        } else if (indexShard.routingEntry().primary()) {
                             shardsToPurge.add(indexShard);
                         }
                     }
                 }
             }
-            return shardsToPurge;
         }
     }
 
@@ -199,6 +233,73 @@ public class IndicesTTLService extends AbstractLifecycleComponent<IndicesTTLServ
         }
     }
 
+    private void expireShards(List<IndexShard> shardsToExpire) {
+        for (IndexShard shardToExpire : shardsToExpire) {
+            long now = System.currentTimeMillis();
+            List<Object> segments = new ArrayList<Object>();
+            int segmentsToExpire = 0;
+            int fullyExpiredSegments = 0;
+            // held until the segments are marked as expired, so their cores (and entries) can't go away meanwhile
+            Engine.Searcher searcher = shardToExpire.searcher();
+            try {
+                try {
+                    for (AtomicReaderContext context : searcher.reader().leaves()) {
+                        AtomicReader reader = context.reader();
+                        SegmentTTLStats stats = segmentStats(reader);
+                        // a segment is checked from the start until it has been expired once, since it might hold
+                        // docs that expired before they reached this copy (for example, replicated or recovered)
+                        Long upTo = null;
+                        if (reader instanceof SegmentReader) {
+                            segments.add(reader.getCoreCacheKey());
+                            upTo = segmentsExpiredUpTo.get(reader.getCoreCacheKey());
+                        }
+                        if (stats.hasExpirationsIn(upTo == null ? Long.MIN_VALUE : upTo, now)) {
+                            segmentsToExpire++;
+                            if (stats.fullyExpired(now)) {
+                                fullyExpiredSegments++;
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    logger.warn("[{}][{}] failed to load segments ttl stats", e, shardToExpire.shardId().index().name(), shardToExpire.shardId().id());
+                    continue;
+                }
+                if (segmentsToExpire > 0) {
+                    logger.debug("[{}][{}] expiring docs in [{}] segments ([{}] fully expired)", shardToExpire.shardId().index().name(), shardToExpire.shardId().id(), segmentsToExpire, fullyExpiredSegments);
+                    try {
+                        // the query holds the expiration time, so it is deterministic when replayed from the translog
+                        BytesReference querySource = XContentFactory.jsonBuilder().startObject()
+                                .startObject("range").startObject(TTLFieldMapper.NAME).field("lte", now).endObject().endObject()
+                                .endObject().bytes();
+                        shardToExpire.deleteByQuery(shardToExpire.prepareDeleteByQuery(querySource, null));
+                    } catch (Exception e) {
+                        logger.warn("[{}][{}] failed to expire docs", e, shardToExpire.shardId().index().name(), shardToExpire.shardId().id());
+                        continue;
+                    }
+                }
+                for (Object segment : segments) {
+                    segmentsExpiredUpTo.put(segment, now);
+                }
+            } finally {
+                searcher.release();
+            }
+        }
+    }
+
+    private SegmentTTLStats segmentStats(AtomicReader reader) throws IOException {
+        if (!(reader instanceof SegmentReader)) {
+            return SegmentTTLStats.load(reader);
+        }
+        SegmentTTLStats stats = segmentsStats.get(reader.getCoreCacheKey());
+        if (stats == null) {
+            stats = SegmentTTLStats.load(reader);
+            if (segmentsStats.putIfAbsent(reader.getCoreCacheKey(), stats) == null) {
+                ((SegmentReader) reader).addCoreClosedListener(segmentsStatsCleaner);
+            }
+        }
+        return stats;
+    }
+
     private static class DocToPurge {
         public final String type;
         public final String id;
@@ -0,0 +1,107 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.indices.ttl;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.index.mapper.internal.TTLFieldMapper;
+
+import java.io.IOException;
+
+/**
+ * The min / max expiration time (the <tt>_ttl</tt> field) of the docs of a segment, read from the terms dictionary
+ * of the field (without visiting the docs), so segments that have nothing to expire can be skipped, and fully
+ * expired ones can be identified.
+ */
+public class SegmentTTLStats {
+
+    public static final SegmentTTLStats EMPTY = new SegmentTTLStats(0, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+
+    private final int maxDoc;
+    private final int docsWithTTL;
+    private final long minExpiration;
+    private final long maxExpiration;
+
+    SegmentTTLStats(int maxDoc, int docsWithTTL, long minExpiration, long maxExpiration) {
+        this.maxDoc = maxDoc;
+        this.docsWithTTL = docsWithTTL;
+        this.minExpiration = minExpiration;
+        this.maxExpiration = maxExpiration;
+    }
+
+    public static SegmentTTLStats load(AtomicReader reader) throws IOException {
+        Terms terms = reader.terms(TTLFieldMapper.NAME);
+        if (terms == null) {
+            return EMPTY;
+        }
+        TermsEnum termsEnum = terms.iterator(null);
+        // full precision terms (shift 0) sort first
+        BytesRef term = termsEnum.next();
+        if (term == null || NumericUtils.getPrefixCodedLongShift(term) != 0) {
+            return EMPTY;
+        }
+        long min = NumericUtils.prefixCodedToLong(term);
+        // binary search the max full precision term, seeking instead of iterating over all the terms
+        long lo = min;
+        long hi = Long.MAX_VALUE;
+        BytesRef target = new BytesRef(NumericUtils.BUF_SIZE_LONG);
+        while (lo < hi) {
+            long mid = lo + ((hi - lo) >>> 1) + 1;
+            NumericUtils.longToPrefixCoded(mid, 0, target);
+            if (termsEnum.seekCeil(target, true) != TermsEnum.SeekStatus.END && NumericUtils.getPrefixCodedLongShift(termsEnum.term()) == 0) {
+                lo = NumericUtils.prefixCodedToLong(termsEnum.term());
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return new SegmentTTLStats(reader.maxDoc(), terms.getDocCount(), min, lo);
+    }
+
+    /**
+     * The earliest expiration time of the docs in the segment.
+     */
+    public long minExpiration() {
+        return minExpiration;
+    }
+
+    /**
+     * The latest expiration time of the docs in the segment.
+     */
+    public long maxExpiration() {
+        return maxExpiration;
+    }
+
+    /**
+     * Does the segment have docs expiring in the <tt>(from, to]</tt> range.
+     */
+    public boolean hasExpirationsIn(long from, long to) {
+        return minExpiration <= to && maxExpiration > from;
+    }
+
+    /**
+     * Are all the docs of the segment (including deleted ones) expired at the provided time.
+     */
+    public boolean fullyExpired(long now) {
+        return maxDoc > 0 && docsWithTTL == maxDoc && maxExpiration <= now;
+    }
+}
@@ -35,6 +35,19 @@ public interface IndicesWarmer {
             return ThreadPool.Names.WARMER;
         }
 
+        /**
+         * The type of warming done by this listener, the time spent is reported per type in the warmer stats.
+         */
+        public String type() {
+            return "custom";
+        }
+
+        /**
+         * Warms the new segments, the {@link WarmerContext#newSearcher()} only includes the readers that were
+         * not part of the previously published searcher, so anything loaded per segment should be loaded for
+         * it only.
+         */
+
         public abstract void warm(IndexShard indexShard, IndexMetaData indexMetaData, WarmerContext context);
     }
 
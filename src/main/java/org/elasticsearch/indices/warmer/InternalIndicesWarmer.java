@@ -90,11 +90,13 @@ public class InternalIndicesWarmer extends AbstractComponent implements IndicesW
             threadPool.executor(listener.executor()).execute(new Runnable() {
                 @Override
                 public void run() {
+                    long listenerTime = System.nanoTime();
                     try {
                         listener.warm(indexShard, indexMetaData, context);
                     } catch (Throwable e) {
                         indexShard.warmerService().logger().warn("failed to warm [{}]", e, listener);
                     } finally {
+                        indexShard.warmerService().onPostWarm(listener.type(), System.nanoTime() - listenerTime);
                         latch.countDown();
                     }
                 }
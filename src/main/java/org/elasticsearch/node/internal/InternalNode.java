@@ -31,6 +31,7 @@ import org.elasticsearch.client.node.NodeClientModule;
 import org.elasticsearch.cluster.ClusterModule;
 import org.elasticsearch.cluster.ClusterNameModule;
 import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.InternalClusterInfoService;
 import org.elasticsearch.cluster.routing.RoutingService;
 import org.elasticsearch.cluster.routing.allocation.AllocationService;
 import org.elasticsearch.common.CacheRecycler;
@@ -200,6 +201,7 @@ public final class InternalNode implements Node {
         injector.getInstance(RiversManager.class).start();
         injector.getInstance(ClusterService.class).start();
         injector.getInstance(RoutingService.class).start();
+        injector.getInstance(InternalClusterInfoService.class).start();
         injector.getInstance(SearchService.class).start();
         injector.getInstance(MonitorService.class).start();
         injector.getInstance(RestController.class).start();
@@ -246,6 +248,7 @@ public final class InternalNode implements Node {
 //        } catch (InterruptedException e) {
 //            // ignore
 //        }
+        injector.getInstance(InternalClusterInfoService.class).stop();
         injector.getInstance(RoutingService.class).stop();
         injector.getInstance(ClusterService.class).stop();
         injector.getInstance(DiscoveryService.class).stop();
@@ -298,6 +301,7 @@ public final class InternalNode implements Node {
         injector.getInstance(IndicesService.class).close();
         stopWatch.stop().start("routing");
         injector.getInstance(RoutingService.class).close();
+        injector.getInstance(InternalClusterInfoService.class).close();
         stopWatch.stop().start("cluster");
         injector.getInstance(ClusterService.class).close();
         stopWatch.stop().start("discovery");
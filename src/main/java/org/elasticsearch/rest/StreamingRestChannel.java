@@ -0,0 +1,41 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest;
+
+import java.io.IOException;
+
+/**
+ * A {@link RestChannel} that can stream the response body as it is being built (using chunked transfer encoding)
+ * instead of sending it in one go once fully built.
+ */
+public interface StreamingRestChannel extends RestChannel {
+
+    /**
+     * Can a chunked response be started on this channel (for example, HTTP/1.0 clients don't support it).
+     */
+    boolean supportsChunkedResponse();
+
+    /**
+     * Sends the response status and headers, and returns the stream to write the body to. The stream must be
+     * closed once the body has been written (or aborted in case of a failure), and {@link #sendResponse(RestResponse)}
+     * must not be used for the same request.
+     */
+    RestResponseStream startChunkedResponse(RestStatus status, String contentType) throws IOException;
+}
@@ -65,10 +65,12 @@ public class RestSearchAction extends BaseRestHandler {
 
     @Override
     public void handleRequest(final RestRequest request, final RestChannel channel) {
+        final boolean stream = RestActions.streamResponse(request, channel);
         SearchRequest searchRequest;
         try {
             searchRequest = parseSearchRequest(request);
-            searchRequest.listenerThreaded(false);
+            // a streamed response blocks while the client is not reading, so don't send it on a network thread
+            searchRequest.listenerThreaded(stream);
             SearchOperationThreading operationThreading = SearchOperationThreading.fromString(request.param("operation_threading"), null);
             if (operationThreading != null) {
                 if (operationThreading == SearchOperationThreading.NO_THREADS) {
@@ -93,6 +95,10 @@ public class RestSearchAction extends BaseRestHandler {
             @Override
             public void onResponse(SearchResponse response) {
                 try {
+                    if (stream) {
+                        RestActions.streamResponse(request, channel, response.status(), response, logger);
+                        return;
+                    }
                     XContentBuilder builder = restContentBuilder(request);
                     builder.startObject();
                     response.toXContent(builder, request);
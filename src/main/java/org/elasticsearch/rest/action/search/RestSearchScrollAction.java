@@ -28,6 +28,7 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.rest.*;
+import org.elasticsearch.rest.action.support.RestActions;
 import org.elasticsearch.search.Scroll;
 
 import java.io.IOException;
@@ -60,7 +61,9 @@ public class RestSearchScrollAction extends BaseRestHandler {
             scrollId = request.content().toUtf8();
         }
         SearchScrollRequest searchScrollRequest = new SearchScrollRequest(scrollId);
-        searchScrollRequest.listenerThreaded(false);
+        final boolean stream = RestActions.streamResponse(request, channel);
+        // a streamed response blocks while the client is not reading, so don't send it on a network thread
+        searchScrollRequest.listenerThreaded(stream);
         try {
             String scroll = request.param("scroll");
             if (scroll != null) {
@@ -88,6 +91,10 @@ public class RestSearchScrollAction extends BaseRestHandler {
             @Override
             public void onResponse(SearchResponse response) {
                 try {
+                    if (stream) {
+                        RestActions.streamResponse(request, channel, response.status(), response, logger);
+                        return;
+                    }
                     XContentBuilder builder = restContentBuilder(request);
                     builder.startObject();
                     response.toXContent(builder, request);
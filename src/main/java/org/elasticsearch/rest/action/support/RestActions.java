@@ -24,10 +24,17 @@ import org.elasticsearch.action.ShardOperationFailedException;
 import org.elasticsearch.action.support.broadcast.BroadcastOperationResponse;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.elasticsearch.rest.RestChannel;
 import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponseStream;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.StreamingRestChannel;
 
 import java.io.IOException;
 
@@ -91,6 +98,37 @@ public class RestActions {
         return queryBuilder.buildAsBytes();
     }
 
+    /**
+     * Should the response be streamed (<tt>stream</tt> parameter) as it is being built, and can it be. JSONP
+     * responses are not streamed.
+     */
+    public static boolean streamResponse(RestRequest request, RestChannel channel) {
+        return request.paramAsBoolean("stream", false) && request.param("callback") == null
+                && channel instanceof StreamingRestChannel && ((StreamingRestChannel) channel).supportsChunkedResponse();
+    }
+
+    /**
+     * Streams the response (as a single object) to the channel, see {@link #streamResponse(RestRequest, RestChannel)}.
+     * Writing blocks while the client is not reading, so it must not be called on a network thread. Failures once
+     * the response has been started can't be sent back, the connection is closed instead.
+     */
+    public static void streamResponse(RestRequest request, RestChannel channel, RestStatus status, ToXContent response, ESLogger logger) throws IOException {
+        XContentType contentType = RestXContentBuilder.restContentType(request);
+        RestResponseStream stream = ((StreamingRestChannel) channel).startChunkedResponse(status, contentType.restContentType());
+        try {
+            // the builder writes to the stream as the response is serialized, one chunk at a time
+            XContentBuilder builder = RestXContentBuilder.restContentBuilder(request, contentType, stream);
+            builder.startObject();
+            response.toXContent(builder, request);
+            builder.endObject();
+            builder.flush();
+            stream.close();
+        } catch (Throwable e) {
+            logger.debug("failed to stream response for [{}]", e, request.path());
+            stream.abort();
+        }
+    }
+
     public static String[] splitIndices(String indices) {
         if (indices == null) {
             return Strings.EMPTY_ARRAY;
@@ -30,6 +30,7 @@ import org.elasticsearch.common.xcontent.*;
 import org.elasticsearch.rest.RestRequest;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  *
@@ -42,6 +43,25 @@ public class RestXContentBuilder {
     }
 
     public static XContentBuilder restContentBuilder(RestRequest request, @Nullable BytesReference autoDetectSource) throws IOException {
+        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
+        XContentBuilder builder = new XContentBuilder(XContentFactory.xContent(restContentType(request, autoDetectSource)), cachedEntry.bytes(), cachedEntry);
+        return configure(request, builder);
+    }
+
+    /**
+     * A builder writing directly to the provided stream (for example, a streamed response body) instead of
+     * buffering the whole content.
+     */
+    public static XContentBuilder restContentBuilder(RestRequest request, XContentType contentType, OutputStream os) throws IOException {
+        return configure(request, new XContentBuilder(XContentFactory.xContent(contentType), os));
+    }
+
+    public static XContentType restContentType(RestRequest request) {
+        // use the request body as the auto detect source (if it exists)
+        return restContentType(request, request.hasContent() ? request.content() : null);
+    }
+
+    public static XContentType restContentType(RestRequest request, @Nullable BytesReference autoDetectSource) {
         XContentType contentType = XContentType.fromRestContentType(request.param("format", request.header("Content-Type")));
         if (contentType == null) {
             // try and guess it from the auto detect source
@@ -53,8 +73,10 @@ public class RestXContentBuilder {
             // default to JSON
             contentType = XContentType.JSON;
         }
-        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
-        XContentBuilder builder = new XContentBuilder(XContentFactory.xContent(contentType), cachedEntry.bytes(), cachedEntry);
+        return contentType;
+    }
+
+    private static XContentBuilder configure(RestRequest request, XContentBuilder builder) {
         if (request.paramAsBoolean("pretty", false)) {
             builder.prettyPrint();
         }
@@ -20,6 +20,7 @@
 package org.elasticsearch.search;
 
 import com.google.common.collect.ImmutableMap;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.TopDocs;
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.action.search.SearchType;
@@ -33,11 +34,16 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.ConcurrentMapLong;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.fielddata.FieldDataType;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.FieldMapper;
 import org.elasticsearch.index.search.stats.StatsGroupsParseElement;
 import org.elasticsearch.index.service.IndexService;
 import org.elasticsearch.index.shard.ShardId;
@@ -60,7 +66,9 @@ import org.elasticsearch.threadpool.ThreadPool;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.elasticsearch.common.unit.TimeValue.timeValueMinutes;
@@ -89,6 +97,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     private final long defaultKeepAlive;
 
+    private final int maxOpenScrollContexts;
+
     private final ScheduledFuture keepAliveReaper;
 
 
@@ -98,6 +108,12 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
     private final ConcurrentMapLong<SearchContext> activeContexts = ConcurrentCollections.newConcurrentMapLongWithAggressiveConcurrency();
 
+    // the ids of the active contexts opened with a scroll (a later scroll request might clear the scroll of the context)
+    private final Set<Long> scrollContexts = ConcurrentCollections.newConcurrentSet();
+
+    // the number of open scroll contexts, a slot is reserved before the context is created
+    private final AtomicInteger openScrollContexts = new AtomicInteger();
+
     private final ImmutableMap<String, SearchParseElement> elementParsers;
 
     @Inject
@@ -116,6 +132,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         TimeValue keepAliveInterval = componentSettings.getAsTime("keep_alive_interval", timeValueMinutes(1));
         // we can have 5 minutes here, since we make sure to clean with search requests and when shard/index closes
         this.defaultKeepAlive = componentSettings.getAsTime("default_keep_alive", timeValueMinutes(5)).millis();
+        // each scroll context holds on to the segments of its searcher, -1 means no limit
+        this.maxOpenScrollContexts = componentSettings.getAsInt("max_open_scroll_contexts", -1);
 
         Map<String, SearchParseElement> elementParsers = new HashMap<String, SearchParseElement>();
         elementParsers.putAll(dfsPhase.parseElements());
@@ -127,6 +145,9 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
 
         this.keepAliveReaper = threadPool.scheduleWithFixedDelay(new Reaper(), keepAliveInterval);
 
+        // cheaper per segment structures are loaded first, so the warmer queries can already make use of them
+        this.indicesWarmer.addListener(new FieldDataWarmer());
+        this.indicesWarmer.addListener(new IdCacheWarmer());
         this.indicesWarmer.addListener(new SearchWarmer());
     }
 
@@ -459,7 +480,27 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
     }
 
     SearchContext createAndPutContext(ShardSearchRequest request) throws ElasticSearchException {
-        SearchContext context = createContext(request);
+        if (request.scroll() == null) {
+            return putContext(createContext(request));
+        }
+        int open = openScrollContexts.incrementAndGet();
+        if (maxOpenScrollContexts >= 0 && open > maxOpenScrollContexts) {
+            openScrollContexts.decrementAndGet();
+            throw new EsRejectedExecutionException("too many open scroll contexts [" + (open - 1) + "], the limit is [" + maxOpenScrollContexts + "] (set by [search.max_open_scroll_contexts])");
+        }
+        SearchContext context;
+        try {
+            context = createContext(request);
+        } catch (RuntimeException e) {
+            openScrollContexts.decrementAndGet();
+            throw e;
+        }
+        // from now on, the slot is released when the context is freed
+        scrollContexts.add(context.id());
+        return putContext(context);
+    }
+
+    private SearchContext putContext(SearchContext context) {
         activeContexts.put(context.id(), context);
         context.indexShard().searchService().onNewContext(context);
         return context;
@@ -516,6 +557,9 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         if (context == null) {
             return;
         }
+        if (scrollContexts.remove(id)) {
+            openScrollContexts.decrementAndGet();
+        }
         context.indexShard().searchService().onFreeContext(context);
         context.release();
     }
@@ -523,6 +567,9 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
     private void freeContext(SearchContext context) {
         SearchContext removed = activeContexts.remove(context.id());
         if (removed != null) {
+            if (scrollContexts.remove(removed.id())) {
+                openScrollContexts.decrementAndGet();
+            }
             removed.indexShard().searchService().onFreeContext(removed);
         }
         context.release();
@@ -538,6 +585,8 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
     }
 
     private void cleanContext(SearchContext context) {
+        // the results have been handed over already, no need to hold on to the per request state until the next one
+        context.compact();
         SearchContext.removeCurrent();
     }
 
@@ -629,8 +678,103 @@ public class SearchService extends AbstractLifecycleComponent<SearchService> {
         }
     }
 
+    /**
+     * Loads the field data of fields mapped with <tt>fielddata.loading</tt> set to <tt>eager</tt> for the new
+     * segments only, before the searcher is published.
+     */
+    class FieldDataWarmer extends IndicesWarmer.Listener {
+
+        @Override
+        public String type() {
+            return "field_data";
+        }
+
+        @Override
+        public void warm(IndexShard indexShard, IndexMetaData indexMetaData, IndicesWarmer.WarmerContext warmerContext) {
+            IndexService indexService = indicesService.indexService(indexShard.shardId().index().name());
+            if (indexService == null) {
+                return;
+            }
+            Map<String, FieldMapper> warmUp = new HashMap<String, FieldMapper>();
+            for (DocumentMapper docMapper : indexService.mapperService()) {
+                for (FieldMapper fieldMapper : docMapper.mappers()) {
+                    FieldDataType fieldDataType = fieldMapper.fieldDataType();
+                    if (fieldDataType == null || !"eager".equals(fieldDataType.getSettings().get("loading"))) {
+                        continue;
+                    }
+                    String indexName = fieldMapper.names().indexName();
+                    if (!warmUp.containsKey(indexName)) {
+                        warmUp.put(indexName, fieldMapper);
+                    }
+                }
+            }
+            for (FieldMapper fieldMapper : warmUp.values()) {
+                try {
+                    long now = System.nanoTime();
+                    IndexFieldData indexFieldData = indexService.fieldData().getForField(fieldMapper);
+                    for (AtomicReaderContext context : warmerContext.newSearcher().reader().leaves()) {
+                        indexFieldData.load(context);
+                    }
+                    if (indexShard.warmerService().logger().isTraceEnabled()) {
+                        indexShard.warmerService().logger().trace("warmed field data for [{}], took [{}]", fieldMapper.names().name(), TimeValue.timeValueNanos(System.nanoTime() - now));
+                    }
+                } catch (Throwable t) {
+                    indexShard.warmerService().logger().warn("failed to warm field data for [{}]", t, fieldMapper.names().name());
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the id cache for the new segments only when parent/child mappings exist, so the first has_child /
+     * has_parent / top_children query after a refresh doesn't have to.
+     */
+    class IdCacheWarmer extends IndicesWarmer.Listener {
+
+        @Override
+        public String type() {
+            return "id_cache";
+        }
+
+        @Override
+        public void warm(IndexShard indexShard, IndexMetaData indexMetaData, IndicesWarmer.WarmerContext warmerContext) {
+            IndexService indexService = indicesService.indexService(indexShard.shardId().index().name());
+            if (indexService == null) {
+                return;
+            }
+            boolean hasParent = false;
+            for (DocumentMapper docMapper : indexService.mapperService()) {
+                if (docMapper.parentFieldMapper() != null) {
+                    hasParent = true;
+                    break;
+                }
+            }
+            if (!hasParent) {
+                return;
+            }
+            try {
+                long now = System.nanoTime();
+                indexService.cache().idCache().refresh(warmerContext.newSearcher().reader().leaves());
+                if (indexShard.warmerService().logger().isTraceEnabled()) {
+                    indexShard.warmerService().logger().trace("warmed id cache, took [{}]", TimeValue.timeValueNanos(System.nanoTime() - now));
+                }
+            } catch (Throwable t) {
+                indexShard.warmerService().logger().warn("failed to warm id cache", t);
+            }
+        }
+    }
+
+    /**
+     * Runs the registered warmers (see {@link IndexWarmersMetaData}) against the new segments, which also
+     * populates the filter cache for them.
+     */
     class SearchWarmer extends IndicesWarmer.Listener {
 
+        @Override
+        public String type() {
+            return "search";
+        }
+
         @Override
         public void warm(IndexShard indexShard, IndexMetaData indexMetaData, IndicesWarmer.WarmerContext warmerContext) {
             IndexWarmersMetaData custom = indexMetaData.custom(IndexWarmersMetaData.TYPE);
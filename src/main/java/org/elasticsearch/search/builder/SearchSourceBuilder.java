@@ -91,8 +91,14 @@ public class SearchSourceBuilder implements ToXContent {
 
     private boolean trackScores = false;
 
+    private Object[] searchAfter;
+
     private Float minScore;
 
+    private int sliceId = -1;
+    private int sliceMax = -1;
+    private String sliceField;
+
     private long timeoutInMillis = -1;
 
     private List<String> fieldNames;
@@ -265,6 +271,26 @@ public class SearchSourceBuilder implements ToXContent {
         return this;
     }
 
+    /**
+     * Restricts a scroll to the slice <tt>id</tt> out of <tt>max</tt> disjoint slices of each shard, so that the
+     * slices can be scrolled over in parallel by independent consumers. Docs are partitioned by their <tt>_uid</tt>.
+     */
+    public SearchSourceBuilder slice(int id, int max) {
+        return slice(id, max, null);
+    }
+
+    /**
+     * Restricts a scroll to the slice <tt>id</tt> out of <tt>max</tt> disjoint slices of each shard, partitioned
+     * using the provided field, either <tt>_uid</tt> (the default) or <tt>_doc</tt> (doc id ranges, which require
+     * all the slices to run on the same shard copies, for example using the <tt>_primary</tt> preference).
+     */
+    public SearchSourceBuilder slice(int id, int max, @Nullable String field) {
+        this.sliceId = id;
+        this.sliceMax = max;
+        this.sliceField = field;
+        return this;
+    }
+
     /**
      * Should each {@link org.elasticsearch.search.SearchHit} be returned with an
      * explanation of the hit (ranking).
@@ -299,6 +325,16 @@ public class SearchSourceBuilder implements ToXContent {
         return this;
     }
 
+    /**
+     * Starts the page right after the hit with the provided sort values (typically, the sort values of the last
+     * hit of the previous page), instead of using <tt>from</tt>. The sort must include <tt>_uid</tt> as a
+     * tiebreaker, since hits with the exact same sort values are skipped.
+     */
+    public SearchSourceBuilder searchAfter(Object... values) {
+        this.searchAfter = values;
+        return this;
+    }
+
     /**
      * Adds a sort against the given field name and the sort ordering.
      *
@@ -626,6 +662,16 @@ public class SearchSourceBuilder implements ToXContent {
             builder.field("min_score", minScore);
         }
 
+        if (sliceMax != -1) {
+            builder.startObject("slice");
+            builder.field("id", sliceId);
+            builder.field("max", sliceMax);
+            if (sliceField != null) {
+                builder.field("field", sliceField);
+            }
+            builder.endObject();
+        }
+
         if (version != null) {
             builder.field("version", version);
         }
@@ -699,6 +745,10 @@ public class SearchSourceBuilder implements ToXContent {
             }
         }
 
+        if (searchAfter != null) {
+            builder.array("search_after", searchAfter);
+        }
+
         if (indexBoost != null) {
             builder.startObject("indices_boost");
             for (TObjectFloatIterator<String> it = indexBoost.iterator(); it.hasNext(); ) {
@@ -22,10 +22,14 @@ package org.elasticsearch.search.fetch;
 import com.google.common.collect.ImmutableMap;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.ReaderUtil;
+import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.text.StringAndBytesText;
 import org.elasticsearch.common.text.Text;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.fieldvisitor.CustomFieldsVisitor;
 import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
 import org.elasticsearch.index.fieldvisitor.JustUidFieldsVisitor;
@@ -46,23 +50,42 @@ import org.elasticsearch.search.internal.InternalSearchHit;
 import org.elasticsearch.search.internal.InternalSearchHitField;
 import org.elasticsearch.search.internal.InternalSearchHits;
 import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.lookup.SearchLookup;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.collect.Lists.newArrayList;
 
 /**
  *
  */
-public class FetchPhase implements SearchPhase {
+public class FetchPhase extends AbstractComponent implements SearchPhase {
 
     private final FetchSubPhase[] fetchSubPhases;
 
+    private final ThreadPool threadPool;
+
+    private final boolean parallel;
+
+    private final int parallelChunkSize;
+
     @Inject
-    public FetchPhase(HighlightPhase highlightPhase, ScriptFieldsFetchSubPhase scriptFieldsPhase, PartialFieldsFetchSubPhase partialFieldsPhase,
+    public FetchPhase(Settings settings, ThreadPool threadPool, HighlightPhase highlightPhase, ScriptFieldsFetchSubPhase scriptFieldsPhase, PartialFieldsFetchSubPhase partialFieldsPhase,
                       MatchedFiltersFetchSubPhase matchFiltersPhase, ExplainFetchSubPhase explainPhase, VersionFetchSubPhase versionPhase) {
+        super(settings);
+        this.threadPool = threadPool;
         this.fetchSubPhases = new FetchSubPhase[]{scriptFieldsPhase, partialFieldsPhase, matchFiltersPhase, explainPhase, highlightPhase, versionPhase};
+        this.parallel = componentSettings.getAsBoolean("parallel", false);
+        this.parallelChunkSize = Math.max(1, componentSettings.getAsInt("parallel_chunk_size", 50));
+        if (parallel) {
+            logger.debug("using parallel fetch with parallel_chunk_size [{}]", parallelChunkSize);
+        }
     }
 
     @Override
@@ -80,25 +103,25 @@ public class FetchPhase implements SearchPhase {
     }
 
     public void execute(SearchContext context) {
-        FieldsVisitor fieldsVisitor;
         List<String> extractFieldNames = null;
         boolean sourceRequested = false;
+        boolean loadAllStored = false;
+        Set<String> fieldNames = null;
+        boolean loadSource;
         if (!context.hasFieldNames()) {
             if (context.hasPartialFields()) {
                 // partial fields need the source, so fetch it, but don't return it
-                fieldsVisitor = new UidAndSourceFieldsVisitor();
+                loadSource = true;
             } else if (context.hasScriptFields()) {
                 // we ask for script fields, and no field names, don't load the source
-                fieldsVisitor = new JustUidFieldsVisitor();
+                loadSource = false;
             } else {
                 sourceRequested = true;
-                fieldsVisitor = new UidAndSourceFieldsVisitor();
+                loadSource = true;
             }
         } else if (context.fieldNames().isEmpty()) {
-            fieldsVisitor = new JustUidFieldsVisitor();
+            loadSource = false;
         } else {
-            boolean loadAllStored = false;
-            Set<String> fieldNames = null;
             for (String fieldName : context.fieldNames()) {
                 if (fieldName.equals("*")) {
                     loadAllStored = true;
@@ -121,92 +144,192 @@ public class FetchPhase implements SearchPhase {
                     extractFieldNames.add(fieldName);
                 }
             }
-            if (loadAllStored) {
-                if (sourceRequested || extractFieldNames != null) {
-                    fieldsVisitor = new CustomFieldsVisitor(true, true); // load everything, including _source
-                } else {
-                    fieldsVisitor = new CustomFieldsVisitor(true, false);
-                }
-            } else if (fieldNames != null) {
-                boolean loadSource = extractFieldNames != null || sourceRequested;
-                fieldsVisitor = new CustomFieldsVisitor(fieldNames, loadSource);
-            } else if (extractFieldNames != null || sourceRequested) {
-                fieldsVisitor = new UidAndSourceFieldsVisitor();
-            } else {
-                fieldsVisitor = new JustUidFieldsVisitor();
-            }
+            loadSource = extractFieldNames != null || sourceRequested;
         }
 
         InternalSearchHit[] hits = new InternalSearchHit[context.docIdsToLoadSize()];
-        for (int index = 0; index < context.docIdsToLoadSize(); index++) {
-            int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
+        if (parallel && hits.length > parallelChunkSize && !context.hasScriptFields() && !context.explain()) {
+            // script fields are bound to the context lookup, and are not thread safe, the same goes for explain
+            executeParallel(context, hits, loadAllStored, fieldNames, loadSource, extractFieldNames, sourceRequested);
+        } else {
+            FieldsVisitor fieldsVisitor = createFieldsVisitor(loadAllStored, fieldNames, loadSource);
+            for (int index = 0; index < hits.length; index++) {
+                hits[index] = fetchHit(context, index, fieldsVisitor, extractFieldNames, sourceRequested);
+            }
+        }
 
-            loadStoredFields(context, fieldsVisitor, docId);
-            fieldsVisitor.postProcess(context.mapperService());
+        for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
+            if (fetchSubPhase.hitsExecutionNeeded(context)) {
+                fetchSubPhase.hitsExecute(context, hits);
+            }
+        }
 
-            Map<String, SearchHitField> searchFields = null;
-            if (!fieldsVisitor.fields().isEmpty()) {
-                searchFields = new HashMap<String, SearchHitField>(fieldsVisitor.fields().size());
-                for (Map.Entry<String, List<Object>> entry : fieldsVisitor.fields().entrySet()) {
-                    searchFields.put(entry.getKey(), new InternalSearchHitField(entry.getKey(), entry.getValue()));
+        context.fetchResult().hits(new InternalSearchHits(hits, context.queryResult().topDocs().totalHits, context.queryResult().topDocs().getMaxScore()));
+    }
+
+    /**
+     * Splits the hits, sorted by doc id, into chunks, and fetches each chunk (loading the stored fields and
+     * executing the hit level sub phases) on the search thread pool. Each chunk uses its own fields visitor and
+     * lookup, and the fetched hits are placed back in their original position. The calling thread fetches chunks
+     * as well, and runs the chunks that haven't been picked by the thread pool, so it never just waits on tasks
+     * queued behind it.
+     */
+    private void executeParallel(final SearchContext context, final InternalSearchHit[] hits, final boolean loadAllStored, final Set<String> fieldNames,
+                                 final boolean loadSource, final List<String> extractFieldNames, final boolean sourceRequested) {
+        final Integer[] sortedIndices = new Integer[hits.length];
+        for (int i = 0; i < sortedIndices.length; i++) {
+            sortedIndices[i] = i;
+        }
+        Arrays.sort(sortedIndices, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int docId1 = context.docIdsToLoad()[context.docIdsToLoadFrom() + o1];
+                int docId2 = context.docIdsToLoad()[context.docIdsToLoadFrom() + o2];
+                return docId1 < docId2 ? -1 : (docId1 == docId2 ? 0 : 1);
+            }
+        });
+
+        final int numberOfChunks = (sortedIndices.length + parallelChunkSize - 1) / parallelChunkSize;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(numberOfChunks);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        final Runnable fetchChunks = new Runnable() {
+            @Override
+            public void run() {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < numberOfChunks) {
+                    try {
+                        if (failure.get() == null) {
+                            SearchLookup lookup = new SearchLookup(context.mapperService(), context.fieldData(), context.types());
+                            context.threadLookup(lookup);
+                            try {
+                                FieldsVisitor fieldsVisitor = createFieldsVisitor(loadAllStored, fieldNames, loadSource);
+                                int to = Math.min(sortedIndices.length, (chunk + 1) * parallelChunkSize);
+                                for (int i = chunk * parallelChunkSize; i < to; i++) {
+                                    int index = sortedIndices[i];
+                                    hits[index] = fetchHit(context, index, fieldsVisitor, extractFieldNames, sourceRequested);
+                                }
+                            } finally {
+                                context.threadLookup(null);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        latch.countDown();
+                    }
                 }
             }
+        };
 
-            DocumentMapper documentMapper = context.mapperService().documentMapper(fieldsVisitor.uid().type());
-            Text typeText;
-            if (documentMapper == null) {
-                typeText = new StringAndBytesText(fieldsVisitor.uid().type());
-            } else {
-                typeText = documentMapper.typeText();
+        Executor executor = threadPool.executor(ThreadPool.Names.SEARCH);
+        for (int i = 1; i < numberOfChunks; i++) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        SearchContext.setCurrent(context);
+                        try {
+                            fetchChunks.run();
+                        } finally {
+                            SearchContext.removeCurrent();
+                        }
+                    }
+                });
+            } catch (EsRejectedExecutionException e) {
+                // the calling thread will fetch the remaining chunks
+                break;
             }
-            InternalSearchHit searchHit = new InternalSearchHit(docId, fieldsVisitor.uid().id(), typeText, sourceRequested ? fieldsVisitor.source() : null, searchFields);
+        }
+        fetchChunks.run();
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FetchPhaseExecutionException(context, "Interrupted while fetching hits", e);
+        }
+        Throwable t = failure.get();
+        if (t != null) {
+            if (t instanceof ElasticSearchException) {
+                throw (ElasticSearchException) t;
+            }
+            throw new FetchPhaseExecutionException(context, "Failed to fetch hits", t);
+        }
+    }
 
-            hits[index] = searchHit;
+    private FieldsVisitor createFieldsVisitor(boolean loadAllStored, Set<String> fieldNames, boolean loadSource) {
+        if (loadAllStored) {
+            return new CustomFieldsVisitor(true, loadSource);
+        } else if (fieldNames != null) {
+            return new CustomFieldsVisitor(fieldNames, loadSource);
+        } else if (loadSource) {
+            return new UidAndSourceFieldsVisitor();
+        } else {
+            return new JustUidFieldsVisitor();
+        }
+    }
 
-            int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
-            AtomicReaderContext subReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
-            int subDoc = docId - subReaderContext.docBase;
+    private InternalSearchHit fetchHit(SearchContext context, int index, FieldsVisitor fieldsVisitor, List<String> extractFieldNames, boolean sourceRequested) {
+        int docId = context.docIdsToLoad()[context.docIdsToLoadFrom() + index];
 
-            // go over and extract fields that are not mapped / stored
-            context.lookup().setNextReader(subReaderContext);
-            context.lookup().setNextDocId(subDoc);
-            if (searchHit.source() != null) {
-                context.lookup().source().setNextSource(new BytesArray(searchHit.source()));
+        loadStoredFields(context, fieldsVisitor, docId);
+        fieldsVisitor.postProcess(context.mapperService());
+
+        Map<String, SearchHitField> searchFields = null;
+        if (!fieldsVisitor.fields().isEmpty()) {
+            searchFields = new HashMap<String, SearchHitField>(fieldsVisitor.fields().size());
+            for (Map.Entry<String, List<Object>> entry : fieldsVisitor.fields().entrySet()) {
+                searchFields.put(entry.getKey(), new InternalSearchHitField(entry.getKey(), entry.getValue()));
             }
-            if (extractFieldNames != null) {
-                for (String extractFieldName : extractFieldNames) {
-                    Object value = context.lookup().source().extractValue(extractFieldName);
-                    if (value != null) {
-                        if (searchHit.fieldsOrNull() == null) {
-                            searchHit.fields(new HashMap<String, SearchHitField>(2));
-                        }
+        }
 
-                        SearchHitField hitField = searchHit.fields().get(extractFieldName);
-                        if (hitField == null) {
-                            hitField = new InternalSearchHitField(extractFieldName, new ArrayList<Object>(2));
-                            searchHit.fields().put(extractFieldName, hitField);
-                        }
-                        hitField.values().add(value);
+        DocumentMapper documentMapper = context.mapperService().documentMapper(fieldsVisitor.uid().type());
+        Text typeText;
+        if (documentMapper == null) {
+            typeText = new StringAndBytesText(fieldsVisitor.uid().type());
+        } else {
+            typeText = documentMapper.typeText();
+        }
+        InternalSearchHit searchHit = new InternalSearchHit(docId, fieldsVisitor.uid().id(), typeText, sourceRequested ? fieldsVisitor.source() : null, searchFields);
+
+        int readerIndex = ReaderUtil.subIndex(docId, context.searcher().getIndexReader().leaves());
+        AtomicReaderContext subReaderContext = context.searcher().getIndexReader().leaves().get(readerIndex);
+        int subDoc = docId - subReaderContext.docBase;
+
+        // go over and extract fields that are not mapped / stored
+        context.lookup().setNextReader(subReaderContext);
+        context.lookup().setNextDocId(subDoc);
+        if (searchHit.source() != null) {
+            context.lookup().source().setNextSource(new BytesArray(searchHit.source()));
+        }
+        if (extractFieldNames != null) {
+            for (String extractFieldName : extractFieldNames) {
+                Object value = context.lookup().source().extractValue(extractFieldName);
+                if (value != null) {
+                    if (searchHit.fieldsOrNull() == null) {
+                        searchHit.fields(new HashMap<String, SearchHitField>(2));
                     }
-                }
-            }
 
-            for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
-                FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
-                if (fetchSubPhase.hitExecutionNeeded(context)) {
-                    hitContext.reset(searchHit, subReaderContext, subDoc, context.searcher().getIndexReader(), docId, fieldsVisitor);
-                    fetchSubPhase.hitExecute(context, hitContext);
+                    SearchHitField hitField = searchHit.fields().get(extractFieldName);
+                    if (hitField == null) {
+                        hitField = new InternalSearchHitField(extractFieldName, new ArrayList<Object>(2));
+                        searchHit.fields().put(extractFieldName, hitField);
+                    }
+                    hitField.values().add(value);
                 }
             }
         }
 
         for (FetchSubPhase fetchSubPhase : fetchSubPhases) {
-            if (fetchSubPhase.hitsExecutionNeeded(context)) {
-                fetchSubPhase.hitsExecute(context, hits);
+            FetchSubPhase.HitContext hitContext = new FetchSubPhase.HitContext();
+            if (fetchSubPhase.hitExecutionNeeded(context)) {
+                hitContext.reset(searchHit, subReaderContext, subDoc, context.searcher().getIndexReader(), docId, fieldsVisitor);
+                fetchSubPhase.hitExecute(context, hitContext);
             }
         }
-
-        context.fetchResult().hits(new InternalSearchHits(hits, context.queryResult().topDocs().totalHits, context.queryResult().topDocs().getMaxScore()));
+        return searchHit;
     }
 
     private void loadStoredFields(SearchContext context, FieldsVisitor fieldVisitor, int docId) {
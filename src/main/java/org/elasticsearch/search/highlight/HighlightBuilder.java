@@ -185,7 +185,8 @@ public class HighlightBuilder implements ToXContent {
 
     /**
      * Set type of highlighter to use. Supported types
-     * are <tt>highlighter</tt> and <tt>fast-vector-highlighter</tt>.
+     * are <tt>highlighter</tt>, <tt>fast-vector-highlighter</tt> and <tt>postings</tt>
+     * (requires the field to be indexed with <tt>offsets</tt> index options).
      */
     public HighlightBuilder highlighterType(String highlighterType) {
         this.highlighterType = highlighterType;
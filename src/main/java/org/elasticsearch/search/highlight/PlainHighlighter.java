@@ -163,9 +163,4 @@ public class PlainHighlighter implements Highlighter {
 
         return null;
     }
-
-    private static class Encoders {
-        public static Encoder DEFAULT = new DefaultEncoder();
-        public static Encoder HTML = new SimpleHTMLEncoder();
-    }
 }
@@ -0,0 +1,383 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.elasticsearch.search.highlight;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.highlight.Encoder;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
+import org.elasticsearch.common.text.StringText;
+import org.elasticsearch.index.fieldvisitor.CustomFieldsVisitor;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.search.fetch.FetchPhaseExecutionException;
+import org.elasticsearch.search.fetch.FetchSubPhase;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.lookup.SearchLookup;
+
+import java.io.IOException;
+import java.text.BreakIterator;
+import java.util.*;
+
+/**
+ * A highlighter that picks the passages to highlight straight from the postings of the field, which need to be
+ * indexed with offsets (<tt>index_options</tt> set to <tt>offsets</tt>). Unlike the plain highlighter, the text
+ * doesn't need to be analyzed again, and unlike the fast vector highlighter, no term vectors are required.
+ * <p/>
+ * The text is broken into sentences, each sentence holding a match is scored (BM25 like, based on the matching
+ * terms), and the best ones are returned. When <tt>number_of_fragments</tt> is set to <tt>0</tt>, each value
+ * holding a match is returned as a whole. Note, the <tt>fragment_size</tt> is ignored, as passages are sentences.
+ */
+public class PostingsHighlighter implements Highlighter {
+
+    // values of multi valued fields are indexed with an offset gap of 1
+    private static final char MULTI_VAL_SEPARATOR = '\u2029';
+
+    // BM25 parameters used to score passages
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final float PIVOT = 87f;
+
+    @Override
+    public String[] names() {
+        return new String[]{"postings", "postings-highlighter"};
+    }
+
+    @Override
+    public HighlightField highlight(HighlighterContext highlighterContext) {
+        SearchContextHighlight.Field field = highlighterContext.field;
+        SearchContext context = highlighterContext.context;
+        FetchSubPhase.HitContext hitContext = highlighterContext.hitContext;
+        FieldMapper<?> mapper = highlighterContext.mapper;
+        String indexName = mapper.names().indexName();
+
+        FieldInfo fieldInfo = hitContext.reader().getFieldInfos().fieldInfo(indexName);
+        if (fieldInfo == null) {
+            // the field doesn't exist in this segment
+            return null;
+        }
+        if (fieldInfo.getIndexOptions() != FieldInfo.IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS) {
+            throw new ElasticSearchIllegalArgumentException("the field [" + highlighterContext.fieldName + "] should be indexed with positions and offsets in the postings list to be used with postings highlighter");
+        }
+
+        Encoder encoder = field.encoder().equals("html") ? Encoders.HTML : Encoders.DEFAULT;
+
+        try {
+            List<Term> terms = extractTerms(context, indexName, field.requireFieldMatch());
+            if (terms.isEmpty()) {
+                return null;
+            }
+
+            List<Match> matches = new ArrayList<Match>();
+            float[] weights = new float[terms.size()];
+            Terms fieldTerms = hitContext.reader().terms(indexName);
+            if (fieldTerms == null) {
+                return null;
+            }
+            TermsEnum termsEnum = fieldTerms.iterator(null);
+            DocsAndPositionsEnum postings = null;
+            IndexReader topLevelReader = hitContext.topLevelReader();
+            for (int i = 0; i < terms.size(); i++) {
+                Term term = terms.get(i);
+                if (!termsEnum.seekExact(term.bytes(), true)) {
+                    continue;
+                }
+                postings = termsEnum.docsAndPositions(null, postings, DocsAndPositionsEnum.FLAG_OFFSETS);
+                if (postings == null || postings.advance(hitContext.docId()) != hitContext.docId()) {
+                    continue;
+                }
+                int docFreq = topLevelReader.docFreq(term);
+                weights[i] = (float) Math.log(1 + (topLevelReader.maxDoc() - docFreq + 0.5) / (docFreq + 0.5));
+                int freq = postings.freq();
+                for (int j = 0; j < freq; j++) {
+                    postings.nextPosition();
+                    int startOffset = postings.startOffset();
+                    if (startOffset >= 0) {
+                        matches.add(new Match(startOffset, postings.endOffset(), i));
+                    }
+                }
+            }
+            if (matches.isEmpty()) {
+                return null;
+            }
+            Collections.sort(matches);
+
+            String text = loadText(highlighterContext);
+            if (text == null) {
+                return null;
+            }
+
+            List<Passage> passages = passages(text, matches, weights, terms.size(), field.numberOfFragments() == 0);
+            if (passages.isEmpty()) {
+                return null;
+            }
+            if (field.numberOfFragments() > 0 && passages.size() > field.numberOfFragments()) {
+                // keep the best passages
+                Collections.sort(passages, Passage.SCORE_ORDER);
+                passages = new ArrayList<Passage>(passages.subList(0, field.numberOfFragments()));
+                if (!field.scoreOrdered()) {
+                    Collections.sort(passages, Passage.OFFSET_ORDER);
+                }
+            } else if (field.scoreOrdered()) {
+                Collections.sort(passages, Passage.SCORE_ORDER);
+            }
+
+            String[] fragments = new String[passages.size()];
+            for (int i = 0; i < fragments.length; i++) {
+                fragments[i] = format(text, passages.get(i), encoder, field.preTags()[0], field.postTags()[0]);
+            }
+            return new HighlightField(highlighterContext.fieldName, StringText.convertFromStringArray(fragments));
+        } catch (IOException e) {
+            throw new FetchPhaseExecutionException(context, "Failed to highlight field [" + highlighterContext.fieldName + "]", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Term> extractTerms(SearchContext context, String indexName, boolean requireFieldMatch) throws IOException {
+        // the query terms are the same for all hits and fields, rewrite and extract them once per request
+        SearchContextHighlight highlight = context.highlight();
+        Set<Term> queryTerms = highlight.queryTerms();
+        if (queryTerms == null) {
+            synchronized (highlight) {
+                queryTerms = highlight.queryTerms();
+                if (queryTerms == null) {
+                    queryTerms = new HashSet<Term>();
+                    Query query = context.searcher().rewrite(context.parsedQuery().query());
+                    try {
+                        query.extractTerms(queryTerms);
+                    } catch (UnsupportedOperationException e) {
+                        // some queries (for example, filter based multi term queries) can't extract their terms
+                    }
+                    highlight.queryTerms(queryTerms);
+                }
+            }
+        }
+        Set<BytesRef> seen = new HashSet<BytesRef>();
+        List<Term> terms = new ArrayList<Term>();
+        for (Term term : queryTerms) {
+            if (requireFieldMatch && !indexName.equals(term.field())) {
+                continue;
+            }
+            if (seen.add(term.bytes())) {
+                terms.add(new Term(indexName, term.bytes()));
+            }
+        }
+        return terms;
+    }
+
+    private String loadText(HighlighterContext highlighterContext) throws IOException {
+        FieldMapper<?> mapper = highlighterContext.mapper;
+        FetchSubPhase.HitContext hitContext = highlighterContext.hitContext;
+        List<Object> textsToHighlight;
+        if (mapper.fieldType().stored()) {
+            CustomFieldsVisitor fieldVisitor = new CustomFieldsVisitor(ImmutableSet.of(mapper.names().indexName()), false);
+            hitContext.reader().document(hitContext.docId(), fieldVisitor);
+            textsToHighlight = fieldVisitor.fields().get(mapper.names().indexName());
+            if (textsToHighlight == null) {
+                // Can happen if the document doesn't have the field to highlight
+                textsToHighlight = ImmutableList.of();
+            }
+        } else {
+            SearchLookup lookup = highlighterContext.context.lookup();
+            lookup.setNextReader(hitContext.readerContext());
+            lookup.setNextDocId(hitContext.docId());
+            textsToHighlight = lookup.source().extractRawValues(mapper.names().sourcePath());
+        }
+        if (textsToHighlight.isEmpty()) {
+            return null;
+        }
+        if (textsToHighlight.size() == 1) {
+            return textsToHighlight.get(0).toString();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Object textToHighlight : textsToHighlight) {
+            if (sb.length() > 0) {
+                sb.append(MULTI_VAL_SEPARATOR);
+            }
+            sb.append(textToHighlight.toString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Groups the (sorted) matches into passages, either sentences, or whole values.
+     */
+    private List<Passage> passages(String text, List<Match> matches, float[] weights, int numberOfTerms, boolean wholeValues) {
+        BreakIterator breakIterator = null;
+        if (!wholeValues) {
+            breakIterator = BreakIterator.getSentenceInstance(Locale.ROOT);
+            breakIterator.setText(text);
+        }
+        List<Passage> passages = new ArrayList<Passage>();
+        Passage current = null;
+        for (Match match : matches) {
+            if (match.endOffset > text.length()) {
+                // the text doesn't match what was indexed
+                continue;
+            }
+            if (current != null && match.startOffset < current.endOffset) {
+                current.add(match, text, breakIterator);
+                continue;
+            }
+            if (current != null) {
+                current.score(weights, numberOfTerms);
+                passages.add(current);
+            }
+            int start;
+            int end;
+            if (wholeValues) {
+                start = text.lastIndexOf(MULTI_VAL_SEPARATOR, match.startOffset) + 1;
+                end = text.indexOf(MULTI_VAL_SEPARATOR, match.endOffset);
+                if (end == -1) {
+                    end = text.length();
+                }
+            } else {
+                start = breakIterator.preceding(match.startOffset + 1);
+                if (start == BreakIterator.DONE) {
+                    start = 0;
+                }
+                end = following(breakIterator, match.endOffset, text);
+            }
+            current = new Passage(start, end);
+            current.add(match, text, breakIterator);
+        }
+        if (current != null) {
+            current.score(weights, numberOfTerms);
+            passages.add(current);
+        }
+        return passages;
+    }
+
+    private static int following(BreakIterator breakIterator, int offset, String text) {
+        if (offset >= text.length()) {
+            return text.length();
+        }
+        int end = breakIterator.following(Math.max(0, offset - 1));
+        return end == BreakIterator.DONE ? text.length() : end;
+    }
+
+    private String format(String text, Passage passage, Encoder encoder, String preTag, String postTag) {
+        int start = passage.startOffset;
+        int end = passage.endOffset;
+        // trim the passage (the multi value separator is a whitespace as well), without cutting matches
+        while (start < passage.matches.get(0).startOffset && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > passage.lastMatchEnd() && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        StringBuilder sb = new StringBuilder();
+        int pos = start;
+        for (Match match : passage.matches) {
+            if (match.startOffset < pos) {
+                // overlapping match (for example, synonyms), already highlighted
+                continue;
+            }
+            sb.append(encoder.encodeText(text.substring(pos, match.startOffset)));
+            sb.append(preTag);
+            sb.append(encoder.encodeText(text.substring(match.startOffset, match.endOffset)));
+            sb.append(postTag);
+            pos = match.endOffset;
+        }
+        sb.append(encoder.encodeText(text.substring(pos, end)));
+        return sb.toString();
+    }
+
+    private static class Match implements Comparable<Match> {
+        final int startOffset;
+        final int endOffset;
+        final int term;
+
+        Match(int startOffset, int endOffset, int term) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.term = term;
+        }
+
+        @Override
+        public int compareTo(Match o) {
+            if (startOffset != o.startOffset) {
+                return startOffset < o.startOffset ? -1 : 1;
+            }
+            return endOffset < o.endOffset ? -1 : (endOffset == o.endOffset ? 0 : 1);
+        }
+    }
+
+    private static class Passage {
+
+        static final Comparator<Passage> SCORE_ORDER = new Comparator<Passage>() {
+            @Override
+            public int compare(Passage o1, Passage o2) {
+                if (o1.score != o2.score) {
+                    return o1.score > o2.score ? -1 : 1;
+                }
+                return OFFSET_ORDER.compare(o1, o2);
+            }
+        };
+
+        static final Comparator<Passage> OFFSET_ORDER = new Comparator<Passage>() {
+            @Override
+            public int compare(Passage o1, Passage o2) {
+                return o1.startOffset < o2.startOffset ? -1 : (o1.startOffset == o2.startOffset ? 0 : 1);
+            }
+        };
+
+        final int startOffset;
+        int endOffset;
+        final List<Match> matches = new ArrayList<Match>();
+        float score;
+
+        Passage(int startOffset, int endOffset) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        void add(Match match, String text, BreakIterator breakIterator) {
+            matches.add(match);
+            if (match.endOffset > endOffset) {
+                // the match crosses the passage boundary, extend it
+                endOffset = breakIterator == null ? match.endOffset : following(breakIterator, match.endOffset, text);
+            }
+        }
+
+        int lastMatchEnd() {
+            int end = 0;
+            for (Match match : matches) {
+                end = Math.max(end, match.endOffset);
+            }
+            return end;
+        }
+
+        void score(float[] weights, int numberOfTerms) {
+            int[] freqs = new int[numberOfTerms];
+            for (Match match : matches) {
+                freqs[match.term]++;
+            }
+            float norm = K1 * (1 - B + B * ((endOffset - startOffset) / PIVOT));
+            score = 0;
+            for (int i = 0; i < freqs.length; i++) {
+                if (freqs[i] > 0) {
+                    score += weights[i] * (freqs[i] * (K1 + 1)) / (freqs[i] + norm);
+                }
+            }
+        }
+    }
+}
@@ -19,8 +19,11 @@
 
 package org.elasticsearch.search.highlight;
 
+import org.apache.lucene.index.Term;
+
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -29,6 +32,9 @@ public class SearchContextHighlight {
 
     private final List<Field> fields;
 
+    // the terms of the rewritten query, shared by all hits of the request (which may be fetched in parallel)
+    private volatile Set<Term> queryTerms;
+
     public SearchContextHighlight(List<Field> fields) {
         this.fields = fields;
     }
@@ -37,6 +43,14 @@ public class SearchContextHighlight {
         return fields;
     }
 
+    public Set<Term> queryTerms() {
+        return queryTerms;
+    }
+
+    public void queryTerms(Set<Term> queryTerms) {
+        this.queryTerms = queryTerms;
+    }
+
     public static class Field {
 
         private final String field;
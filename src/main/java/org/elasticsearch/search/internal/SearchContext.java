@@ -62,6 +62,7 @@ import org.elasticsearch.search.lookup.SearchLookup;
 import org.elasticsearch.search.query.QuerySearchResult;
 import org.elasticsearch.search.rescore.RescoreSearchContext;
 import org.elasticsearch.search.scan.ScanContext;
+import org.elasticsearch.search.slice.SliceFilter;
 import org.elasticsearch.search.suggest.SuggestionSearchContext;
 
 import java.util.ArrayList;
@@ -117,7 +118,7 @@ public class SearchContext implements Releasable {
 
     private final QuerySearchResult queryResult;
 
-    private final FetchSearchResult fetchResult;
+    private FetchSearchResult fetchResult;
 
     // lazy initialized only if needed
     private ScanContext scanContext;
@@ -150,6 +151,8 @@ public class SearchContext implements Releasable {
 
     private boolean trackScores = false; // when sorting, track scores as well...
 
+    private Object[] searchAfter;
+
     private ParsedQuery originalQuery;
 
     private Query query;
@@ -158,6 +161,8 @@ public class SearchContext implements Releasable {
 
     private Filter aliasFilter;
 
+    private SliceFilter sliceFilter;
+
     private int[] docIdsToLoad;
 
     private int docsIdsToLoadFrom;
@@ -174,6 +179,8 @@ public class SearchContext implements Releasable {
 
     private SearchLookup searchLookup;
 
+    private final ThreadLocal<SearchLookup> threadLookups = new ThreadLocal<SearchLookup>();
+
     private boolean queryRewritten;
 
     private volatile long keepAlive;
@@ -230,6 +237,9 @@ public class SearchContext implements Releasable {
             parsedQuery(new ParsedQuery(new FunctionScoreQuery(query(), new BoostScoreFunction(queryBoost)), parsedQuery()));
         }
         Filter searchFilter = searchFilter(types());
+        if (sliceFilter != null) {
+            searchFilter = searchFilter == null ? sliceFilter : new AndFilter(ImmutableList.<Filter>of(searchFilter, sliceFilter));
+        }
         if (searchFilter != null) {
             if (Queries.isConstantMatchAllQuery(query())) {
                 Query q = new XConstantScoreQuery(searchFilter);
@@ -435,6 +445,19 @@ public class SearchContext implements Releasable {
         return this.sort;
     }
 
+    public SearchContext searchAfter(Object[] searchAfter) {
+        this.searchAfter = searchAfter;
+        return this;
+    }
+
+    /**
+     * The sort values of the hit to start the page after, if any.
+     */
+    @Nullable
+    public Object[] searchAfter() {
+        return this.searchAfter;
+    }
+
     public SearchContext trackScores(boolean trackScores) {
         this.trackScores = trackScores;
         return this;
@@ -457,6 +480,19 @@ public class SearchContext implements Releasable {
         return aliasFilter;
     }
 
+    public SearchContext sliceFilter(SliceFilter sliceFilter) {
+        this.sliceFilter = sliceFilter;
+        return this;
+    }
+
+    /**
+     * The slice of the shard this (scroll) search is restricted to, if any.
+     */
+    @Nullable
+    public SliceFilter sliceFilter() {
+        return sliceFilter;
+    }
+
     public SearchContext parsedQuery(ParsedQuery query) {
         queryRewritten = false;
         this.originalQuery = query;
@@ -585,6 +621,10 @@ public class SearchContext implements Releasable {
     }
 
     public SearchLookup lookup() {
+        SearchLookup threadLookup = threadLookups.get();
+        if (threadLookup != null) {
+            return threadLookup;
+        }
         // TODO: The types should take into account the parsing context in QueryParserContext...
         if (searchLookup == null) {
             searchLookup = new SearchLookup(mapperService(), fieldData(), request.types());
@@ -592,6 +632,18 @@ public class SearchContext implements Releasable {
         return searchLookup;
     }
 
+    /**
+     * Sets the lookup returned by {@link #lookup()} for the current thread, used when hits are fetched
+     * concurrently, or clears it when <tt>null</tt>.
+     */
+    public void threadLookup(@Nullable SearchLookup lookup) {
+        if (lookup == null) {
+            threadLookups.remove();
+        } else {
+            threadLookups.set(lookup);
+        }
+    }
+
     public DfsSearchResult dfsResult() {
         return dfsResult;
     }
@@ -604,6 +656,25 @@ public class SearchContext implements Releasable {
         return fetchResult;
     }
 
+    /**
+     * Drops the fetched hits, the docs to load and the source loaded for the last doc, once the last processed
+     * request has been answered. Everything else stays until the context is released, including the query result
+     * (the fetch phase and the results merging, when executed locally, still need it), the facets, the lookups
+     * and the searcher.
+     */
+    public void compact() {
+        if (fetchResult.hits() != null) {
+            // a new instance, the fetched hits might still be used by whoever got them
+            fetchResult = new FetchSearchResult(id, shardTarget);
+        }
+        docIdsToLoad = null;
+        docsIdsToLoadFrom = 0;
+        docsIdsToLoadSize = 0;
+        if (searchLookup != null) {
+            searchLookup.source().clearDoc();
+        }
+    }
+
     public void addRewrite(Rewrite rewrite) {
         if (this.rewrites == null) {
             this.rewrites = new ArrayList<Rewrite>();
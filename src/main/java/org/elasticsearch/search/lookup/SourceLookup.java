@@ -34,7 +34,10 @@ import java.util.Map;
 import java.util.Set;
 
 /**
- *
+ * Lazily loads the source of the current doc. Path lookups, map access (scripts, fields) and filtering all share the
+ * source converted to a map, which is parsed at most once per doc. The only exception is the first
+ * {@link #filter(String[], String[])} of a doc whose source wasn't converted yet, which parses just the included
+ * parts of the source.
  */
 // TODO: If we are processing it in the per hit fetch phase, we cna initialize it with a source if it was loaded..
 public class SourceLookup implements Map {
@@ -44,31 +47,44 @@ public class SourceLookup implements Map {
     private int docId = -1;
 
     private BytesReference sourceAsBytes;
+    private boolean sourceAsBytesLoaded;
     private Map<String, Object> source;
 
+    // whether the current doc was already filtered without converting its source to a map
+    private boolean filteredSelectively;
+
     public Map<String, Object> source() {
         return source;
     }
 
-    private Map<String, Object> loadSourceIfNeeded() {
-        if (source != null) {
-            return source;
-        }
-        if (sourceAsBytes != null) {
-            source = sourceAsMap(sourceAsBytes);
-            return source;
+    private BytesReference loadSourceBytesIfNeeded() {
+        if (sourceAsBytesLoaded) {
+            return sourceAsBytes;
         }
         try {
             JustSourceFieldsVisitor sourceFieldVisitor = new JustSourceFieldsVisitor();
             reader.document(docId, sourceFieldVisitor);
-            BytesReference source = sourceFieldVisitor.source();
-            if (source == null) {
-                this.source = ImmutableMap.of();
-            } else {
-                this.source = sourceAsMap(source);
-            }
+            sourceAsBytes = sourceFieldVisitor.source();
+            sourceAsBytesLoaded = true;
         } catch (Exception e) {
-            throw new ElasticSearchParseException("failed to parse / load source", e);
+            throw new ElasticSearchParseException("failed to load source", e);
+        }
+        return sourceAsBytes;
+    }
+
+    private Map<String, Object> loadSourceIfNeeded() {
+        if (source != null) {
+            return source;
+        }
+        BytesReference sourceAsBytes = loadSourceBytesIfNeeded();
+        if (sourceAsBytes == null) {
+            this.source = ImmutableMap.of();
+        } else {
+            try {
+                this.source = sourceAsMap(sourceAsBytes);
+            } catch (Exception e) {
+                throw new ElasticSearchParseException("failed to parse source", e);
+            }
         }
         return this.source;
     }
@@ -86,9 +102,8 @@ public class SourceLookup implements Map {
             return;
         }
         this.reader = context.reader();
-        this.source = null;
-        this.sourceAsBytes = null;
         this.docId = -1;
+        reset();
     }
 
     public void setNextDocId(int docId) {
@@ -96,18 +111,34 @@ public class SourceLookup implements Map {
             return;
         }
         this.docId = docId;
-        this.sourceAsBytes = null;
-        this.source = null;
+        reset();
+    }
+
+    /**
+     * Forgets the current doc, dropping its loaded source.
+     */
+    public void clearDoc() {
+        this.docId = -1;
+        reset();
     }
 
     public void setNextSource(BytesReference source) {
+        reset();
         this.sourceAsBytes = source;
+        this.sourceAsBytesLoaded = true;
     }
 
     public void setNextSource(Map<String, Object> source) {
         this.source = source;
     }
 
+    private void reset() {
+        this.sourceAsBytes = null;
+        this.sourceAsBytesLoaded = false;
+        this.source = null;
+        this.filteredSelectively = false;
+    }
+
     /**
      * Returns the values associated with the path. Those are "low" level values, and it can
      * handle path expression where an array/list is navigated within.
@@ -117,7 +148,16 @@ public class SourceLookup implements Map {
     }
 
     public Object filter(String[] includes, String[] excludes) {
-        return XContentMapValues.filter(loadSourceIfNeeded(), includes, excludes);
+        if (source != null) {
+            return XContentMapValues.filter(source, includes, excludes);
+        }
+        BytesReference sourceAsBytes = loadSourceBytesIfNeeded();
+        if (sourceAsBytes == null || filteredSelectively) {
+            // filtering the same doc again (for example, several partial fields), parse the source once for all
+            return XContentMapValues.filter(loadSourceIfNeeded(), includes, excludes);
+        }
+        filteredSelectively = true;
+        return XContentHelper.convertToFilteredMap(sourceAsBytes, includes, excludes);
     }
 
     public Object extractValue(String path) {
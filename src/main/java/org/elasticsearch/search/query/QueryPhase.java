@@ -20,18 +20,19 @@
 package org.elasticsearch.search.query;
 
 import com.google.common.collect.ImmutableMap;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.*;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.search.SearchParseElement;
+import org.elasticsearch.search.SearchParseException;
 import org.elasticsearch.search.SearchPhase;
 import org.elasticsearch.search.facet.FacetPhase;
 import org.elasticsearch.search.internal.ContextIndexSearcher;
 import org.elasticsearch.search.internal.SearchContext;
 import org.elasticsearch.search.rescore.RescorePhase;
+import org.elasticsearch.search.searchafter.SearchAfterParseElement;
+import org.elasticsearch.search.slice.SliceParseElement;
 import org.elasticsearch.search.sort.SortParseElement;
 import org.elasticsearch.search.sort.TrackScoresParseElement;
 import org.elasticsearch.search.suggest.SuggestPhase;
@@ -73,6 +74,8 @@ public class QueryPhase implements SearchPhase {
                 .put("min_score", new MinScoreParseElement())
                 .put("minScore", new MinScoreParseElement())
                 .put("timeout", new TimeoutParseElement())
+                .put("slice", new SliceParseElement())
+                .put("search_after", new SearchAfterParseElement())
                 .putAll(facetPhase.parseElements())
                 .putAll(suggestPhase.parseElements())
                 .putAll(rescorePhase.parseElements());
@@ -82,6 +85,15 @@ public class QueryPhase implements SearchPhase {
     @Override
     public void preProcess(SearchContext context) {
         context.preProcess();
+        if (context.searchAfter() != null) {
+            if (context.from() > 0) {
+                throw new SearchParseException(context, "from must be 0 (or not set) when using search_after");
+            }
+            if (context.scroll() != null) {
+                throw new SearchParseException(context, "search_after can't be used with a scroll");
+            }
+            SearchAfterParseElement.validateSort(context, context.sort());
+        }
         facetPhase.preProcess(context);
     }
 
@@ -123,6 +135,10 @@ public class QueryPhase implements SearchPhase {
                 topDocs = new TopDocs(collector.getTotalHits(), Lucene.EMPTY_SCORE_DOCS, 0);
             } else if (searchContext.searchType() == SearchType.SCAN) {
                 topDocs = searchContext.scanContext().execute(searchContext);
+            } else if (searchContext.searchAfter() != null) {
+                FieldDoc after = SearchAfterParseElement.buildFieldDoc(searchContext, searchContext.sort(), searchContext.searchAfter());
+                topDocs = searchContext.searcher().searchAfter(after, query, null, numDocs, searchContext.sort(),
+                        searchContext.trackScores(), searchContext.trackScores());
             } else if (searchContext.sort() != null) {
                 topDocs = searchContext.searcher().search(query, null, numDocs, searchContext.sort(),
                         searchContext.trackScores(), searchContext.trackScores());
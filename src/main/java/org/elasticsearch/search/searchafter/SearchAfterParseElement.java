@@ -0,0 +1,138 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.searchafter;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.search.SearchParseElement;
+import org.elasticsearch.search.SearchParseException;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the sort values of the last hit of the previous page, the page will start right after it:
+ * <pre>
+ * "search_after" : [1371110912000, "tweet#123"]
+ * </pre>
+ * Each shard then only collects the hits sorting after those values (and keeps just <tt>size</tt> of them), instead
+ * of collecting <tt>from + size</tt> hits. Hits with the exact same sort values as the last hit are skipped, so the
+ * sort must include <tt>_uid</tt> as a tiebreaker, otherwise hits tying across pages would be silently dropped.
+ */
+public class SearchAfterParseElement implements SearchParseElement {
+
+    @Override
+    public void parse(XContentParser parser, SearchContext context) throws Exception {
+        XContentParser.Token token = parser.currentToken();
+        if (token != XContentParser.Token.START_ARRAY) {
+            throw new SearchParseException(context, "search_after must be an array of sort values");
+        }
+        List<Object> values = new ArrayList<Object>();
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            if (token == XContentParser.Token.VALUE_NULL) {
+                values.add(null);
+            } else if (token == XContentParser.Token.VALUE_NUMBER) {
+                values.add(parser.numberValue());
+            } else if (token.isValue()) {
+                values.add(parser.text());
+            } else {
+                throw new SearchParseException(context, "search_after values must be sort values, got [" + token + "]");
+            }
+        }
+        context.searchAfter(values.toArray());
+    }
+
+    /**
+     * Makes sure the sort includes the unique <tt>_uid</tt> field, so no two hits have the same sort values.
+     */
+    public static void validateSort(SearchContext context, @Nullable Sort sort) {
+        if (sort != null) {
+            for (SortField sortField : sort.getSort()) {
+                if (UidFieldMapper.NAME.equals(sortField.getField())) {
+                    return;
+                }
+            }
+        }
+        throw new SearchParseException(context, "search_after requires a sort with [" + UidFieldMapper.NAME + "] as a tiebreaker, for example [_score, _uid]");
+    }
+
+    /**
+     * Builds the doc to search after, converting the provided values to the ones the sort field comparators
+     * expect.
+     */
+    public static FieldDoc buildFieldDoc(SearchContext context, Sort sort, Object[] values) {
+        SortField[] sortFields = sort.getSort();
+        if (sortFields.length != values.length) {
+            throw new SearchParseException(context, "search_after has [" + values.length + "] values, but the sort has [" + sortFields.length + "] fields");
+        }
+        Object[] fields = new Object[values.length];
+        for (int i = 0; i < sortFields.length; i++) {
+            fields[i] = convertValue(context, sortFields[i], values[i]);
+        }
+        // docs with the same sort values are considered as already returned, doc ids differ between shards, the _uid
+        // in the sort makes sure only the last hit has those values
+        return new FieldDoc(Integer.MAX_VALUE, Float.NaN, fields);
+    }
+
+    private static Object convertValue(SearchContext context, SortField sortField, Object value) {
+        SortField.Type type = sortField.getType();
+        if (type == SortField.Type.CUSTOM && sortField.getComparatorSource() instanceof IndexFieldData.XFieldComparatorSource) {
+            type = ((IndexFieldData.XFieldComparatorSource) sortField.getComparatorSource()).reducedType();
+        }
+        if (value == null) {
+            if (type == SortField.Type.STRING || type == SortField.Type.STRING_VAL) {
+                return null;
+            }
+            throw new SearchParseException(context, "search_after value for [" + sortField.getField() + "] can't be null");
+        }
+        try {
+            switch (type) {
+                case STRING:
+                case STRING_VAL:
+                    return new BytesRef(value.toString());
+                case SCORE:
+                case FLOAT:
+                    return value instanceof Number ? ((Number) value).floatValue() : Float.parseFloat(value.toString());
+                case DOUBLE:
+                    return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+                case DOC:
+                case INT:
+                    return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+                case LONG:
+                    return value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+                case SHORT:
+                    return value instanceof Number ? ((Number) value).shortValue() : Short.parseShort(value.toString());
+                case BYTE:
+                    return value instanceof Number ? ((Number) value).byteValue() : Byte.parseByte(value.toString());
+                default:
+                    throw new SearchParseException(context, "search_after is not supported when sorting on [" + sortField + "]");
+            }
+        } catch (NumberFormatException e) {
+            throw new SearchParseException(context, "search_after value [" + value + "] is not a number, as required by [" + sortField.getField() + "]");
+        }
+    }
+}
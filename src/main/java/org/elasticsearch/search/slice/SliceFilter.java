@@ -0,0 +1,161 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.slice;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.codec.postingsformat.BloomFilter;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A filter matching a single slice out of <tt>max</tt> disjoint slices of the shard, allowing to consume a
+ * (scan) scroll with several independent consumers, each one scrolling over its own slice.
+ * <p/>
+ * Docs are partitioned either by a hash of their <tt>_uid</tt>, which is the same on all the copies of a shard, or
+ * by ranges of doc ids (<tt>_doc</tt>), which is cheaper to compute but only consistent when all the slices are
+ * executed on the same shard copy (for example, using the <tt>_primary</tt> preference).
+ * <p/>
+ * The slice of each segment is computed once and kept for the lifetime of the filter, since the scroll query is
+ * executed again for every scroll request against the same point in time reader.
+ */
+public class SliceFilter extends Filter {
+
+    public static final String UID_FIELD = UidFieldMapper.NAME;
+    public static final String DOC_FIELD = "_doc";
+
+    private final String field;
+    private final int id;
+    private final int max;
+
+    private final ConcurrentMap<Object, DocIdSet> segmentSlices = ConcurrentCollections.newConcurrentMap();
+
+    public SliceFilter(String field, int id, int max) {
+        this.field = field;
+        this.id = id;
+        this.max = max;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public int max() {
+        return max;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        Object key = context.reader().getCoreCacheKey();
+        DocIdSet slice = segmentSlices.get(key);
+        if (slice == null) {
+            if (DOC_FIELD.equals(field)) {
+                slice = docIdSlice(context);
+            } else {
+                slice = uidSlice(context.reader());
+            }
+            segmentSlices.put(key, slice);
+        }
+        if (slice == DocIdSet.EMPTY_DOCIDSET) {
+            return null;
+        }
+        return BitsFilteredDocIdSet.wrap(slice, acceptDocs);
+    }
+
+    private DocIdSet docIdSlice(AtomicReaderContext context) {
+        int shardMaxDoc = ReaderUtil.getTopLevelContext(context).reader().maxDoc();
+        // the range of (shard level) doc ids of this slice, intersected with the segment
+        int from = (int) ((long) shardMaxDoc * id / max) - context.docBase;
+        int to = (int) ((long) shardMaxDoc * (id + 1) / max) - context.docBase;
+        int maxDoc = context.reader().maxDoc();
+        from = Math.max(0, from);
+        to = Math.min(maxDoc, to);
+        if (from >= to) {
+            return DocIdSet.EMPTY_DOCIDSET;
+        }
+        FixedBitSet result = new FixedBitSet(maxDoc);
+        result.set(from, to);
+        return result;
+    }
+
+    private DocIdSet uidSlice(AtomicReader reader) throws IOException {
+        Terms terms = reader.terms(field);
+        if (terms == null) {
+            return DocIdSet.EMPTY_DOCIDSET;
+        }
+        FixedBitSet result = null;
+        TermsEnum termsEnum = terms.iterator(null);
+        DocsEnum docsEnum = null;
+        for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+            long hash = BloomFilter.hash3_x64_128(term.bytes, term.offset, term.length, 0);
+            if ((int) ((hash & Long.MAX_VALUE) % max) != id) {
+                continue;
+            }
+            if (result == null) {
+                result = new FixedBitSet(reader.maxDoc());
+            }
+            // all docs, the live ones are filtered per request (nested docs share the _uid of their parent)
+            docsEnum = termsEnum.docs(null, docsEnum, DocsEnum.FLAG_NONE);
+            for (int docId = docsEnum.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docsEnum.nextDoc()) {
+                result.set(docId);
+            }
+        }
+        return result == null ? DocIdSet.EMPTY_DOCIDSET : result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SliceFilter that = (SliceFilter) o;
+
+        if (id != that.id) return false;
+        if (max != that.max) return false;
+        if (!field.equals(that.field)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = field.hashCode();
+        result = 31 * result + id;
+        result = 31 * result + max;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "slice(" + field + ", id=" + id + ", max=" + max + ")";
+    }
+}
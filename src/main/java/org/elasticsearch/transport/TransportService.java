@@ -86,6 +86,8 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
     protected void doStart() throws ElasticSearchException {
         adapter.rxMetric.clear();
         adapter.txMetric.clear();
+        adapter.coalescedWriteMetric.clear();
+        adapter.coalescedMessagesMetric.clear();
         transport.transportServiceAdapter(adapter);
         transport.start();
         if (transport.boundAddress() != null && logger.isInfoEnabled()) {
@@ -112,7 +114,8 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
     }
 
     public TransportStats stats() {
-        return new TransportStats(transport.serverOpen(), adapter.rxMetric.count(), adapter.rxMetric.sum(), adapter.txMetric.count(), adapter.txMetric.sum());
+        return new TransportStats(transport.serverOpen(), adapter.rxMetric.count(), adapter.rxMetric.sum(), adapter.txMetric.count(), adapter.txMetric.sum(),
+                adapter.coalescedWriteMetric.count(), adapter.coalescedMessagesMetric.sum(), adapter.coalescedWriteMetric.sum());
     }
 
     public BoundTransportAddress boundAddress() {
@@ -234,6 +237,8 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
 
         final MeanMetric rxMetric = new MeanMetric();
         final MeanMetric txMetric = new MeanMetric();
+        final MeanMetric coalescedWriteMetric = new MeanMetric();
+        final MeanMetric coalescedMessagesMetric = new MeanMetric();
 
         @Override
         public void received(long size) {
@@ -245,6 +250,12 @@ public class TransportService extends AbstractLifecycleComponent<TransportServic
             txMetric.inc(size);
         }
 
+        @Override
+        public void coalescedWrite(int messages, long size) {
+            coalescedWriteMetric.inc(size);
+            coalescedMessagesMetric.inc(messages);
+        }
+
         @Override
         public TransportRequestHandler handler(String action) {
             return serverHandlers.get(action);
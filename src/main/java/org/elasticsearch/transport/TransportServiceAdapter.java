@@ -30,6 +30,11 @@ public interface TransportServiceAdapter {
 
     void sent(long size);
 
+    /**
+     * Called when several messages have been coalesced into a single write of the provided size.
+     */
+    void coalescedWrite(int messages, long size);
+
     TransportRequestHandler handler(String action);
 
     TransportResponseHandler remove(long requestId);
@@ -19,6 +19,7 @@
 
 package org.elasticsearch.transport;
 
+import org.elasticsearch.Version;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.io.stream.Streamable;
@@ -36,17 +37,27 @@ public class TransportStats implements Streamable, ToXContent {
     private long rxSize;
     private long txCount;
     private long txSize;
+    private long coalescedCount;
+    private long coalescedMessages;
+    private long coalescedSize;
 
     TransportStats() {
 
     }
 
     public TransportStats(long serverOpen, long rxCount, long rxSize, long txCount, long txSize) {
+        this(serverOpen, rxCount, rxSize, txCount, txSize, 0, 0, 0);
+    }
+
+    public TransportStats(long serverOpen, long rxCount, long rxSize, long txCount, long txSize, long coalescedCount, long coalescedMessages, long coalescedSize) {
         this.serverOpen = serverOpen;
         this.rxCount = rxCount;
         this.rxSize = rxSize;
         this.txCount = txCount;
         this.txSize = txSize;
+        this.coalescedCount = coalescedCount;
+        this.coalescedMessages = coalescedMessages;
+        this.coalescedSize = coalescedSize;
     }
 
     public long serverOpen() {
@@ -89,6 +100,50 @@ public class TransportStats implements Streamable, ToXContent {
         return txSize();
     }
 
+    /**
+     * The number of writes that coalesced several messages.
+     */
+    public long coalescedCount() {
+        return coalescedCount;
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount();
+    }
+
+    /**
+     * The number of messages sent as part of coalesced writes.
+     */
+    public long coalescedMessages() {
+        return coalescedMessages;
+    }
+
+    public long getCoalescedMessages() {
+        return coalescedMessages();
+    }
+
+    /**
+     * The total size of the coalesced writes.
+     */
+    public ByteSizeValue coalescedSize() {
+        return new ByteSizeValue(coalescedSize);
+    }
+
+    public ByteSizeValue getCoalescedSize() {
+        return coalescedSize();
+    }
+
+    /**
+     * The average size of a coalesced write.
+     */
+    public ByteSizeValue coalescedAvgSize() {
+        return new ByteSizeValue(coalescedCount == 0 ? 0 : coalescedSize / coalescedCount);
+    }
+
+    public ByteSizeValue getCoalescedAvgSize() {
+        return coalescedAvgSize();
+    }
+
     public static TransportStats readTransportStats(StreamInput in) throws IOException {
         TransportStats stats = new TransportStats();
         stats.readFrom(in);
@@ -102,6 +157,11 @@ public class TransportStats implements Streamable, ToXContent {
         rxSize = in.readVLong();
         txCount = in.readVLong();
         txSize = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            coalescedCount = in.readVLong();
+            coalescedMessages = in.readVLong();
+            coalescedSize = in.readVLong();
+        }
     }
 
     @Override
@@ -111,6 +171,11 @@ public class TransportStats implements Streamable, ToXContent {
         out.writeVLong(rxSize);
         out.writeVLong(txCount);
         out.writeVLong(txSize);
+        if (out.getVersion().onOrAfter(Version.V_1_0_0_Beta1)) {
+            out.writeVLong(coalescedCount);
+            out.writeVLong(coalescedMessages);
+            out.writeVLong(coalescedSize);
+        }
     }
 
     @Override
@@ -123,6 +188,16 @@ public class TransportStats implements Streamable, ToXContent {
         builder.field(Fields.TX_COUNT, txCount);
         builder.field(Fields.TX_SIZE, txSize().toString());
         builder.field(Fields.TX_SIZE_IN_BYTES, txSize);
+        if (coalescedCount > 0) {
+            builder.startObject(Fields.COALESCED);
+            builder.field(Fields.COUNT, coalescedCount);
+            builder.field(Fields.MESSAGES, coalescedMessages);
+            builder.field(Fields.SIZE, coalescedSize().toString());
+            builder.field(Fields.SIZE_IN_BYTES, coalescedSize);
+            builder.field(Fields.AVG_SIZE, coalescedAvgSize().toString());
+            builder.field(Fields.AVG_SIZE_IN_BYTES, coalescedAvgSize().bytes());
+            builder.endObject();
+        }
         builder.endObject();
         return builder;
     }
@@ -136,5 +211,12 @@ public class TransportStats implements Streamable, ToXContent {
         static final XContentBuilderString TX_COUNT = new XContentBuilderString("tx_count");
         static final XContentBuilderString TX_SIZE = new XContentBuilderString("tx_size");
         static final XContentBuilderString TX_SIZE_IN_BYTES = new XContentBuilderString("tx_size_in_bytes");
+        static final XContentBuilderString COALESCED = new XContentBuilderString("coalesced");
+        static final XContentBuilderString COUNT = new XContentBuilderString("count");
+        static final XContentBuilderString MESSAGES = new XContentBuilderString("messages");
+        static final XContentBuilderString SIZE = new XContentBuilderString("size");
+        static final XContentBuilderString SIZE_IN_BYTES = new XContentBuilderString("size_in_bytes");
+        static final XContentBuilderString AVG_SIZE = new XContentBuilderString("avg_size");
+        static final XContentBuilderString AVG_SIZE_IN_BYTES = new XContentBuilderString("avg_size_in_bytes");
     }
 }
\ No newline at end of file
@@ -22,16 +22,22 @@ package org.elasticsearch.transport.netty;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.ElasticSearchIllegalStateException;
+import org.elasticsearch.Version;
 import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.compress.Compressor;
 import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.stream.CachedStreamOutput;
+import org.elasticsearch.common.io.stream.HandlesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.netty.NettyStaticSetup;
 import org.elasticsearch.common.netty.OpenChannelsHandler;
+import org.elasticsearch.common.netty.PooledChannelBufferStreamOutput;
+import org.elasticsearch.common.network.NetworkBufferPool;
 import org.elasticsearch.common.network.NetworkService;
 import org.elasticsearch.common.network.NetworkUtils;
 import org.elasticsearch.common.settings.Settings;
@@ -39,6 +45,7 @@ import org.elasticsearch.common.transport.BoundTransportAddress;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.common.transport.PortsRange;
 import org.elasticsearch.common.transport.TransportAddress;
+import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.monitor.jvm.JvmInfo;
@@ -109,6 +116,9 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
 
     final boolean compress;
 
+    // null to use the default compressor
+    final Compressor compressor;
+
     final TimeValue connectTimeout;
 
     final Boolean tcpNoDelay;
@@ -128,8 +138,14 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
     final ByteSizeValue maxCumulationBufferCapacity;
     final int maxCompositeBufferComponents;
 
+    final boolean coalesceWrites;
+    final TimeValue coalesceWindow;
+    final ByteSizeValue coalesceMaxSize;
+
     private final ThreadPool threadPool;
 
+    private final NetworkBufferPool bufferPool;
+
     private volatile OpenChannelsHandler serverOpenChannels;
 
     private volatile ClientBootstrap clientBootstrap;
@@ -152,18 +168,19 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
     private final ReadWriteLock globalLock = new ReentrantReadWriteLock();
 
     public NettyTransport(ThreadPool threadPool) {
-        this(EMPTY_SETTINGS, threadPool, new NetworkService(EMPTY_SETTINGS));
+        this(EMPTY_SETTINGS, threadPool, new NetworkService(EMPTY_SETTINGS), new NetworkBufferPool(EMPTY_SETTINGS));
     }
 
     public NettyTransport(Settings settings, ThreadPool threadPool) {
-        this(settings, threadPool, new NetworkService(settings));
+        this(settings, threadPool, new NetworkService(settings), new NetworkBufferPool(settings));
     }
 
     @Inject
-    public NettyTransport(Settings settings, ThreadPool threadPool, NetworkService networkService) {
+    public NettyTransport(Settings settings, ThreadPool threadPool, NetworkService networkService, NetworkBufferPool bufferPool) {
         super(settings);
         this.threadPool = threadPool;
         this.networkService = networkService;
+        this.bufferPool = bufferPool;
 
         if (settings.getAsBoolean("netty.epollBugWorkaround", false)) {
             System.setProperty("org.jboss.netty.epollBugWorkaround", "true");
@@ -182,6 +199,15 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
         this.bindHost = componentSettings.get("bind_host", settings.get("transport.bind_host", settings.get("transport.host")));
         this.publishHost = componentSettings.get("publish_host", settings.get("transport.publish_host", settings.get("transport.host")));
         this.compress = settings.getAsBoolean("transport.tcp.compress", false);
+        String compressType = settings.get("transport.tcp.compress_type");
+        if (compressType != null) {
+            this.compressor = CompressorFactory.compressor(compressType);
+            if (compressor == null) {
+                throw new ElasticSearchIllegalArgumentException("unknown [transport.tcp.compress_type] [" + compressType + "]");
+            }
+        } else {
+            this.compressor = null;
+        }
         this.connectTimeout = componentSettings.getAsTime("connect_timeout", settings.getAsTime("transport.tcp.connect_timeout", settings.getAsTime(TCP_CONNECT_TIMEOUT, TCP_DEFAULT_CONNECT_TIMEOUT)));
         this.tcpNoDelay = componentSettings.getAsBoolean("tcp_no_delay", settings.getAsBoolean(TCP_NO_DELAY, true));
         this.tcpKeepAlive = componentSettings.getAsBoolean("tcp_keep_alive", settings.getAsBoolean(TCP_KEEP_ALIVE, true));
@@ -195,6 +221,10 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
         this.maxCumulationBufferCapacity = componentSettings.getAsBytesSize("max_cumulation_buffer_capacity", null);
         this.maxCompositeBufferComponents = componentSettings.getAsInt("max_composite_buffer_components", -1);
 
+        this.coalesceWrites = componentSettings.getAsBoolean("coalesce_writes", settings.getAsBoolean("transport.tcp.coalesce_writes", false));
+        this.coalesceWindow = componentSettings.getAsTime("coalesce_window", TimeValue.timeValueMillis(0));
+        this.coalesceMaxSize = componentSettings.getAsBytesSize("coalesce_max_size", new ByteSizeValue(64, ByteSizeUnit.KB));
+
         long defaultReceiverPredictor = 512 * 1024;
         if (JvmInfo.jvmInfo().mem().directMemoryMax().bytes() > 0) {
             // we can guess a better default...
@@ -211,8 +241,8 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
             receiveBufferSizePredictorFactory = new AdaptiveReceiveBufferSizePredictorFactory((int) receivePredictorMin.bytes(), (int) receivePredictorMin.bytes(), (int) receivePredictorMax.bytes());
         }
 
-        logger.debug("using worker_count[{}], port[{}], bind_host[{}], publish_host[{}], compress[{}], connect_timeout[{}], connections_per_node[{}/{}/{}], receive_predictor[{}->{}]",
-                workerCount, port, bindHost, publishHost, compress, connectTimeout, connectionsPerNodeLow, connectionsPerNodeMed, connectionsPerNodeHigh, receivePredictorMin, receivePredictorMax);
+        logger.debug("using worker_count[{}], port[{}], bind_host[{}], publish_host[{}], compress[{}], connect_timeout[{}], connections_per_node[{}/{}/{}], receive_predictor[{}->{}], coalesce_writes[{}]",
+                workerCount, port, bindHost, publishHost, compress, connectTimeout, connectionsPerNodeLow, connectionsPerNodeMed, connectionsPerNodeHigh, receivePredictorMin, receivePredictorMax, coalesceWrites);
     }
 
     public Settings settings() {
@@ -232,6 +262,10 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
         return threadPool;
     }
 
+    NetworkBufferPool bufferPool() {
+        return bufferPool;
+    }
+
     @Override
     protected void doStart() throws ElasticSearchException {
         if (blockingClient) {
@@ -260,6 +294,9 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
                 }
                 pipeline.addLast("size", sizeHeader);
                 pipeline.addLast("dispatcher", new MessageChannelHandler(NettyTransport.this, logger));
+                if (coalesceWrites) {
+                    pipeline.addBefore("dispatcher", "coalescer", new WriteCoalescingHandler(threadPool, transportServiceAdapter, coalesceWindow, coalesceMaxSize.bytes()));
+                }
                 return pipeline;
             }
         };
@@ -316,6 +353,9 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
                 }
                 pipeline.addLast("size", sizeHeader);
                 pipeline.addLast("dispatcher", new MessageChannelHandler(NettyTransport.this, logger));
+                if (coalesceWrites) {
+                    pipeline.addBefore("dispatcher", "coalescer", new WriteCoalescingHandler(threadPool, transportServiceAdapter, coalesceWindow, coalesceMaxSize.bytes()));
+                }
                 return pipeline;
             }
         };
@@ -517,6 +557,17 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
         return channels == null ? 0 : channels.numberOfOpenChannels();
     }
 
+    /**
+     * The compressor to use for messages sent to a node of the provided version. Nodes before 1.0 only get the
+     * default compressor, since they can't read the newer ones.
+     */
+    Compressor compressor(Version version) {
+        if (compressor != null && version.onOrAfter(Version.V_1_0_0_Beta1)) {
+            return compressor;
+        }
+        return CompressorFactory.defaultCompressor();
+    }
+
     @Override
     public void sendRequest(final DiscoveryNode node, final long requestId, final String action, final TransportRequest request, TransportRequestOptions options) throws IOException, TransportException {
         Channel targetChannel = nodeChannel(node, options);
@@ -525,15 +576,41 @@ public class NettyTransport extends AbstractLifecycleComponent<Transport> implem
             options.withCompress(true);
         }
 
-        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
-
         byte status = 0;
         status = TransportStatus.setRequest(status);
-
         if (options.compress()) {
             status = TransportStatus.setCompress(status);
+        }
+
+        if (bufferPool.enabled()) {
+            // serialize directly into pooled pages, released once written
+            PooledChannelBufferStreamOutput pooled = new PooledChannelBufferStreamOutput(bufferPool);
+            try {
+                pooled.skip(NettyHeader.HEADER_SIZE);
+                StreamOutput stream = new HandlesStreamOutput(options.compress() ? compressor(node.version()).streamOutput(pooled) : pooled);
+                stream.setVersion(node.version());
+                stream.writeString(action);
+                request.writeTo(stream);
+                stream.close();
+            } catch (IOException e) {
+                pooled.decRef();
+                throw e;
+            } catch (RuntimeException e) {
+                pooled.decRef();
+                throw e;
+            }
+            ChannelBuffer buffer = pooled.toChannelBuffer();
+            NettyHeader.writeHeader(buffer, requestId, status, node.version());
+            ChannelFuture future = targetChannel.write(buffer);
+            future.addListener(pooled.releaseListener());
+            return;
+        }
+
+        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
+
+        if (options.compress()) {
             cachedEntry.bytes().skip(NettyHeader.HEADER_SIZE);
-            StreamOutput stream = cachedEntry.handles(CompressorFactory.defaultCompressor());
+            StreamOutput stream = cachedEntry.handles(compressor(node.version()));
             stream.setVersion(node.version());
             stream.writeString(action);
             request.writeTo(stream);
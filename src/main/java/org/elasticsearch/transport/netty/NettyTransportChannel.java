@@ -20,11 +20,12 @@
 package org.elasticsearch.transport.netty;
 
 import org.elasticsearch.Version;
-import org.elasticsearch.common.compress.CompressorFactory;
 import org.elasticsearch.common.io.ThrowableObjectOutputStream;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.io.stream.CachedStreamOutput;
+import org.elasticsearch.common.io.stream.HandlesStreamOutput;
 import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.netty.PooledChannelBufferStreamOutput;
 import org.elasticsearch.transport.*;
 import org.elasticsearch.transport.support.TransportStatus;
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -72,15 +73,40 @@ public class NettyTransportChannel implements TransportChannel {
         if (transport.compress) {
             options.withCompress(true);
         }
-        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
-
         byte status = 0;
         status = TransportStatus.setResponse(status);
-
         if (options.compress()) {
             status = TransportStatus.setCompress(status);
+        }
+
+        if (transport.bufferPool().enabled()) {
+            // serialize directly into pooled pages, released once written
+            PooledChannelBufferStreamOutput pooled = new PooledChannelBufferStreamOutput(transport.bufferPool());
+            try {
+                pooled.skip(NettyHeader.HEADER_SIZE);
+                StreamOutput stream = new HandlesStreamOutput(options.compress() ? transport.compressor(version).streamOutput(pooled) : pooled);
+                stream.setVersion(version);
+                response.writeTo(stream);
+                stream.close();
+            } catch (IOException e) {
+                pooled.decRef();
+                throw e;
+            } catch (RuntimeException e) {
+                pooled.decRef();
+                throw e;
+            }
+            ChannelBuffer buffer = pooled.toChannelBuffer();
+            NettyHeader.writeHeader(buffer, requestId, status, version);
+            ChannelFuture future = channel.write(buffer);
+            future.addListener(pooled.releaseListener());
+            return;
+        }
+
+        CachedStreamOutput.Entry cachedEntry = CachedStreamOutput.popEntry();
+
+        if (options.compress()) {
             cachedEntry.bytes().skip(NettyHeader.HEADER_SIZE);
-            StreamOutput stream = cachedEntry.handles(CompressorFactory.defaultCompressor());
+            StreamOutput stream = cachedEntry.handles(transport.compressor(version));
             stream.setVersion(version);
             response.writeTo(stream);
             stream.close();
@@ -0,0 +1,193 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.transport.netty;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportServiceAdapter;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.*;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A per channel handler that coalesces transport messages written to the channel into a single (composite, no copy)
+ * write. Messages are queued while a previous write is still in flight, or for up to the configured window, and
+ * flushed together once the write completes, the window passes, or the queued bytes go over the configured size.
+ */
+public class WriteCoalescingHandler extends SimpleChannelHandler {
+
+    private final ThreadPool threadPool;
+    private final TransportServiceAdapter transportServiceAdapter;
+    private final TimeValue window;
+    private final long maxSize;
+
+    private final Object mutex = new Object();
+    // all guarded by mutex
+    private List<MessageEvent> queue = new ArrayList<MessageEvent>();
+    private long queuedSize;
+    private boolean writeInFlight;
+    private boolean flushScheduled;
+    private boolean closed;
+
+    public WriteCoalescingHandler(ThreadPool threadPool, TransportServiceAdapter transportServiceAdapter, TimeValue window, long maxSize) {
+        this.threadPool = threadPool;
+        this.transportServiceAdapter = transportServiceAdapter;
+        this.window = window;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void writeRequested(final ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (!(e.getMessage() instanceof ChannelBuffer)) {
+            ctx.sendDownstream(e);
+            return;
+        }
+        List<MessageEvent> toFlush = null;
+        synchronized (mutex) {
+            if (closed) {
+                toFlush = new ArrayList<MessageEvent>(1);
+                toFlush.add(e);
+            } else {
+                queue.add(e);
+                queuedSize += ((ChannelBuffer) e.getMessage()).readableBytes();
+                if (queuedSize >= maxSize) {
+                    toFlush = drain();
+                } else if (!writeInFlight) {
+                    if (window.millis() <= 0) {
+                        toFlush = drain();
+                    } else if (!flushScheduled) {
+                        flushScheduled = true;
+                        threadPool.schedule(window, ThreadPool.Names.SAME, new Runnable() {
+                            @Override
+                            public void run() {
+                                List<MessageEvent> toFlush;
+                                synchronized (mutex) {
+                                    flushScheduled = false;
+                                    if (writeInFlight || queue.isEmpty()) {
+                                        // will be flushed once the in flight write completes
+                                        return;
+                                    }
+                                    toFlush = drain();
+                                }
+                                flush(ctx, toFlush);
+                            }
+                        });
+                    }
+                }
+            }
+        }
+        if (toFlush != null) {
+            flush(ctx, toFlush);
+        }
+    }
+
+    @Override
+    public void closeRequested(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        List<MessageEvent> toFlush;
+        synchronized (mutex) {
+            closed = true;
+            toFlush = drain();
+        }
+        // write whatever is pending before the close event goes down the pipeline
+        if (!toFlush.isEmpty()) {
+            flush(ctx, toFlush);
+        }
+        super.closeRequested(ctx, e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        List<MessageEvent> pending;
+        synchronized (mutex) {
+            closed = true;
+            pending = drain();
+        }
+        for (MessageEvent event : pending) {
+            event.getFuture().setFailure(new ClosedChannelException());
+        }
+        super.channelClosed(ctx, e);
+    }
+
+    // must be called under the mutex
+    private List<MessageEvent> drain() {
+        List<MessageEvent> drained = queue;
+        queue = new ArrayList<MessageEvent>();
+        queuedSize = 0;
+        if (!drained.isEmpty() && !closed) {
+            writeInFlight = true;
+        }
+        return drained;
+    }
+
+    private void flush(final ChannelHandlerContext ctx, final List<MessageEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        if (events.size() == 1) {
+            MessageEvent event = events.get(0);
+            event.getFuture().addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    onWriteComplete(ctx);
+                }
+            });
+            ctx.sendDownstream(event);
+            return;
+        }
+        ChannelBuffer[] buffers = new ChannelBuffer[events.size()];
+        long size = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = (ChannelBuffer) events.get(i).getMessage();
+            size += buffers[i].readableBytes();
+        }
+        transportServiceAdapter.coalescedWrite(events.size(), size);
+        ChannelFuture future = Channels.future(ctx.getChannel());
+        future.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                for (MessageEvent event : events) {
+                    if (future.isSuccess()) {
+                        event.getFuture().setSuccess();
+                    } else {
+                        event.getFuture().setFailure(future.getCause());
+                    }
+                }
+                onWriteComplete(ctx);
+            }
+        });
+        Channels.write(ctx, future, ChannelBuffers.wrappedBuffer(buffers), events.get(0).getRemoteAddress());
+    }
+
+    private void onWriteComplete(ChannelHandlerContext ctx) {
+        List<MessageEvent> toFlush;
+        synchronized (mutex) {
+            writeInFlight = false;
+            if (queue.isEmpty() || flushScheduled) {
+                return;
+            }
+            toFlush = drain();
+        }
+        flush(ctx, toFlush);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.benchmark.cluster;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.allocation.AllocationService;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.transport.DummyTransportAddress;
+
+import static org.elasticsearch.cluster.ClusterState.newClusterStateBuilder;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.newIndexMetaDataBuilder;
+import static org.elasticsearch.cluster.metadata.MetaData.newMetaDataBuilder;
+import static org.elasticsearch.cluster.node.DiscoveryNodes.newNodesBuilder;
+import static org.elasticsearch.cluster.routing.RoutingBuilders.routingTable;
+import static org.elasticsearch.cluster.routing.ShardRoutingState.INITIALIZING;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+
+/**
+ * Builds a synthetic large cluster state (many nodes, indices and shards), allocates it fully, and then measures
+ * the time it takes to reroute it, both when nothing changed and after adding a node.
+ */
+public class ClusterAllocationRerouteBenchmark {
+
+    private static final int NUMBER_OF_NODES = 100;
+    private static final int NUMBER_OF_INDICES = 500;
+    private static final int NUMBER_OF_SHARDS = 5;
+    private static final int NUMBER_OF_REPLICAS = 1;
+    private static final int NUMBER_OF_ITERATIONS = 10;
+
+    public static void main(String[] args) throws Exception {
+        AllocationService strategy = new AllocationService(settingsBuilder()
+                .put("cluster.routing.allocation.node_concurrent_recoveries", Integer.MAX_VALUE)
+                .put("cluster.routing.allocation.node_initial_primaries_recoveries", Integer.MAX_VALUE)
+                .put("cluster.routing.allocation.cluster_concurrent_rebalance", -1)
+                .build());
+
+        MetaData.Builder metaDataBuilder = newMetaDataBuilder();
+        for (int i = 0; i < NUMBER_OF_INDICES; i++) {
+            metaDataBuilder.put(newIndexMetaDataBuilder("test" + i).numberOfShards(NUMBER_OF_SHARDS).numberOfReplicas(NUMBER_OF_REPLICAS));
+        }
+        MetaData metaData = metaDataBuilder.build();
+        RoutingTable.Builder routingTableBuilder = routingTable();
+        for (IndexMetaData index : metaData.indices().values()) {
+            routingTableBuilder.addAsNew(index);
+        }
+        DiscoveryNodes.Builder nodes = newNodesBuilder();
+        for (int i = 0; i < NUMBER_OF_NODES; i++) {
+            nodes.put(new DiscoveryNode("node" + i, DummyTransportAddress.INSTANCE));
+        }
+        ClusterState clusterState = newClusterStateBuilder().nodes(nodes).metaData(metaData).routingTable(routingTableBuilder.build()).build();
+
+        System.out.println("Allocating " + NUMBER_OF_INDICES * NUMBER_OF_SHARDS * (NUMBER_OF_REPLICAS + 1) + " shards on " + NUMBER_OF_NODES + " nodes");
+        StopWatch stopWatch = new StopWatch().start();
+        clusterState = newClusterStateBuilder().state(clusterState).routingTable(strategy.reroute(clusterState).routingTable()).build();
+        while (!clusterState.routingNodes().shardsWithState(INITIALIZING).isEmpty()) {
+            RoutingTable routingTable = strategy.applyStartedShards(clusterState, clusterState.routingNodes().shardsWithState(INITIALIZING)).routingTable();
+            clusterState = newClusterStateBuilder().state(clusterState).routingTable(routingTable).build();
+        }
+        System.out.println("Took " + stopWatch.stop().totalTime());
+
+        System.out.println("Rerouting an unchanged cluster " + NUMBER_OF_ITERATIONS + " times");
+        stopWatch = new StopWatch().start();
+        for (int i = 0; i < NUMBER_OF_ITERATIONS; i++) {
+            strategy.reroute(clusterState);
+        }
+        stopWatch.stop();
+        System.out.println("Took " + stopWatch.totalTime() + ", " + (stopWatch.totalTime().millis() / NUMBER_OF_ITERATIONS) + "ms per reroute");
+
+        System.out.println("Adding a node and rerouting");
+        clusterState = newClusterStateBuilder().state(clusterState).nodes(newNodesBuilder().putAll(clusterState.nodes())
+                .put(new DiscoveryNode("node" + NUMBER_OF_NODES, DummyTransportAddress.INSTANCE))).build();
+        stopWatch = new StopWatch().start();
+        strategy.reroute(clusterState);
+        System.out.println("Took " + stopWatch.stop().totalTime());
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.benchmark.common.lucene.storedfields;
+
+import jsr166y.ThreadLocalRandom;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.compress.CompressorFactory;
+import org.elasticsearch.common.io.FileSystemUtils;
+import org.elasticsearch.common.lucene.Directories;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.SizeValue;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.codec.CompressedStoredFieldsCodec;
+
+import java.io.File;
+
+/**
+ * Compares the index size and fetch latency of small json sources, compressed per document (as done by
+ * <tt>_source</tt> compression), and compressed in chunks of documents using the different stored fields
+ * compression settings.
+ */
+public class StoredFieldsCompressionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final long DOC_COUNT = SizeValue.parseSizeValue("1m").singles();
+        final long FETCH_COUNT = SizeValue.parseSizeValue("100k").singles();
+
+        run("lzf_per_doc", Codec.getDefault(), true, DOC_COUNT, FETCH_COUNT);
+        run("fast_16kb", Codec.getDefault(), false, DOC_COUNT, FETCH_COUNT);
+        run("fast_64kb", CompressedStoredFieldsCodec.wrap(Codec.getDefault(), ImmutableSettings.settingsBuilder()
+                .put(CompressedStoredFieldsCodec.CHUNK_SIZE, "64kb").build()), false, DOC_COUNT, FETCH_COUNT);
+        run("high_16kb", CompressedStoredFieldsCodec.wrap(Codec.getDefault(), ImmutableSettings.settingsBuilder()
+                .put(CompressedStoredFieldsCodec.COMPRESSION, "high").build()), false, DOC_COUNT, FETCH_COUNT);
+        run("high_64kb", CompressedStoredFieldsCodec.wrap(Codec.getDefault(), ImmutableSettings.settingsBuilder()
+                .put(CompressedStoredFieldsCodec.COMPRESSION, "high")
+                .put(CompressedStoredFieldsCodec.CHUNK_SIZE, "64kb").build()), false, DOC_COUNT, FETCH_COUNT);
+    }
+
+    private static void run(String name, Codec codec, boolean compressPerDoc, long docCount, long fetchCount) throws Exception {
+        File location = new File("work/stored_fields/" + name);
+        FileSystemUtils.deleteRecursively(location);
+        FSDirectory dir = FSDirectory.open(location);
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER).setCodec(codec));
+
+        StopWatch watch = new StopWatch().start();
+        for (long i = 0; i < docCount; i++) {
+            byte[] source = XContentFactory.jsonBuilder().startObject()
+                    .field("id", i)
+                    .field("user", "user" + (i % 1000))
+                    .field("message", "trying out elasticsearch, message number " + i)
+                    .field("tags", "tag" + (i % 10), "tag" + (i % 7))
+                    .endObject().bytes().toBytes();
+            if (compressPerDoc) {
+                source = CompressorFactory.defaultCompressor().compress(source, 0, source.length);
+            }
+            Document doc = new Document();
+            doc.add(new StoredField("_source", source));
+            writer.addDocument(doc);
+        }
+        writer.forceMerge(1);
+        writer.close();
+        long indexTime = watch.stop().lastTaskTime().millis();
+
+        DirectoryReader reader = DirectoryReader.open(dir);
+        watch = new StopWatch().start();
+        for (long i = 0; i < fetchCount; i++) {
+            BytesRef source = reader.document(ThreadLocalRandom.current().nextInt(reader.maxDoc())).getBinaryValue("_source");
+            CompressorFactory.uncompressIfNeeded(new BytesArray(source));
+        }
+        watch.stop();
+        System.out.println("[" + name + "] size [" + new ByteSizeValue(Directories.estimateSize(dir)) + "], indexed in [" + indexTime
+                + "ms], fetched " + fetchCount + " docs in " + watch.totalTime() + ", avg [" + (watch.totalTime().micros() / fetchCount) + "micros]");
+        reader.close();
+        dir.close();
+    }
+}
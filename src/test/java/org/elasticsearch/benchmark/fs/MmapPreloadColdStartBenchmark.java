@@ -0,0 +1,94 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.benchmark.fs;
+
+import com.google.common.collect.ImmutableSet;
+import jsr166y.ThreadLocalRandom;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NativeFSLockFactory;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.unit.SizeValue;
+import org.elasticsearch.index.store.fs.PreloadMMapDirectory;
+
+import java.io.File;
+
+/**
+ * Measures the latency of the first searches on a freshly opened reader, with and without preloading.
+ * <p/>
+ * Run once with <tt>index</tt> to create the index, then drop the OS page cache before each run (for example,
+ * <tt>sync; echo 3 > /proc/sys/vm/drop_caches</tt>) and run with <tt>plain</tt> or <tt>preload</tt>.
+ */
+public class MmapPreloadColdStartBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "preload";
+        File location = new File("work/mmap_preload");
+
+        final long INDEX_COUNT = SizeValue.parseSizeValue("5m").singles();
+        final long SEARCH_COUNT = SizeValue.parseSizeValue("10k").singles();
+
+        if ("index".equals(mode)) {
+            MMapDirectory dir = new MMapDirectory(location, new NativeFSLockFactory());
+            IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER).setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+            StopWatch watch = new StopWatch().start();
+            System.out.println("Indexing " + INDEX_COUNT + " docs...");
+            for (long i = 0; i < INDEX_COUNT; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("_uid", Long.toString(i), Store.NO));
+                doc.add(new NumericDocValuesField("_version", i));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+            writer.close();
+            System.out.println("Done indexing, took " + watch.stop().lastTaskTime());
+            return;
+        }
+
+        MMapDirectory dir;
+        if ("preload".equals(mode)) {
+            dir = new PreloadMMapDirectory(location, new NativeFSLockFactory(), ImmutableSet.of("tim", "tip", "dvd", "nvd"));
+        } else {
+            dir = new MMapDirectory(location, new NativeFSLockFactory());
+        }
+
+        StopWatch watch = new StopWatch().start("open");
+        DirectoryReader reader = DirectoryReader.open(dir);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        watch.stop().start("first search");
+        searcher.search(new TermQuery(new Term("_uid", Long.toString(ThreadLocalRandom.current().nextLong(INDEX_COUNT)))), 1);
+        watch.stop().start("searches");
+        for (long i = 0; i < SEARCH_COUNT; i++) {
+            searcher.search(new TermQuery(new Term("_uid", Long.toString(ThreadLocalRandom.current().nextLong(INDEX_COUNT)))), 1);
+        }
+        watch.stop();
+        System.out.println("[" + mode + "] " + watch.prettyPrint());
+        reader.close();
+        dir.close();
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.integration.document;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Priority;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ */
+public class BulkProcessorTests extends AbstractNodesTests {
+
+    private Client client;
+
+    @BeforeClass
+    public void createNodes() throws Exception {
+        // a tiny bulk thread pool, so shard bulks get rejected
+        startNode("node1", settingsBuilder()
+                .put("threadpool.bulk.type", "fixed")
+                .put("threadpool.bulk.size", 1)
+                .put("threadpool.bulk.queue_size", 1));
+        client = client("node1");
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @Test
+    public void testAdaptiveRetriesRejectedItems() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test")
+                .setSettings(settingsBuilder().put("index.number_of_shards", 5).put("index.number_of_replicas", 0))
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForGreenStatus().execute().actionGet();
+
+        FailureCountingListener listener = new FailureCountingListener();
+        BulkProcessor processor = BulkProcessor.builder(client, listener)
+                .setConcurrentRequests(0)
+                .setBulkActions(100)
+                .setAdaptive(true)
+                .setMinBulkActions(10)
+                .setInitialBackoff(TimeValue.timeValueMillis(1))
+                .setMaxRetries(20)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            processor.add(new IndexRequest("test", "type1", Integer.toString(i)).source("field", i));
+        }
+        processor.close();
+
+        assertThat(listener.failedBulks.get(), equalTo(0));
+        assertThat(listener.failedItems.get(), equalTo(0));
+        BulkProcessor.Stats stats = processor.stats();
+        assertThat(stats.getActions(), equalTo(1000l));
+        assertThat(stats.getFailedActions(), equalTo(0l));
+        // rejected items were retried, and the rejections shrunk the bulks
+        assertThat(stats.getRejectedActions(), greaterThan(0l));
+        assertThat(stats.getRetries(), greaterThan(0l));
+
+        client.admin().indices().prepareRefresh("test").execute().actionGet();
+        assertThat(client.prepareCount("test").execute().actionGet().getCount(), equalTo(1000l));
+    }
+
+    @Test
+    public void testAdaptiveConcurrentRetriesCompleteBeforeClose() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test")
+                .setSettings(settingsBuilder().put("index.number_of_shards", 5).put("index.number_of_replicas", 0))
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForGreenStatus().execute().actionGet();
+
+        FailureCountingListener listener = new FailureCountingListener();
+        BulkProcessor processor = BulkProcessor.builder(client, listener)
+                .setConcurrentRequests(4)
+                .setBulkActions(100)
+                .setAdaptive(true)
+                .setMinBulkActions(10)
+                .setInitialBackoff(TimeValue.timeValueMillis(10))
+                .setMaxRetries(20)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            processor.add(new IndexRequest("test", "type1", Integer.toString(i)).source("field", i));
+        }
+        processor.close();
+
+        // close waited for the bulks in flight, including their backed off retries
+        assertThat(listener.beforeBulks.get(), equalTo(listener.afterBulks.get()));
+        assertThat(listener.failedBulks.get(), equalTo(0));
+        assertThat(listener.failedItems.get(), equalTo(0));
+        BulkProcessor.Stats stats = processor.stats();
+        assertThat(stats.getActions(), equalTo(1000l));
+        assertThat(stats.getFailedActions(), equalTo(0l));
+        assertThat(stats.getRejectedActions(), greaterThan(0l));
+        assertThat(stats.getRetries(), greaterThan(0l));
+
+        client.admin().indices().prepareRefresh("test").execute().actionGet();
+        assertThat(client.prepareCount("test").execute().actionGet().getCount(), equalTo(1000l));
+    }
+
+    @Test
+    public void testAdaptiveKeepsBulkActionsDisabled() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+        client.admin().indices().prepareCreate("test")
+                .setSettings(settingsBuilder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForGreenStatus().execute().actionGet();
+
+        FailureCountingListener listener = new FailureCountingListener();
+        BulkProcessor processor = BulkProcessor.builder(client, listener)
+                .setConcurrentRequests(0)
+                .setBulkActions(-1)
+                .setBulkSize(new ByteSizeValue(1, ByteSizeUnit.KB))
+                .setAdaptive(true)
+                .build();
+        assertThat(processor.stats().getCurrentBulkActions(), equalTo(-1));
+        for (int i = 0; i < 100; i++) {
+            processor.add(new IndexRequest("test", "type1", Integer.toString(i)).source("field", i));
+        }
+        processor.close();
+
+        assertThat(listener.failedItems.get(), equalTo(0));
+        assertThat(processor.stats().getBulks(), greaterThan(1l));
+        // the bulks were flushed on size only, whatever their latency
+        assertThat(processor.stats().getCurrentBulkActions(), equalTo(-1));
+    }
+
+    static class FailureCountingListener implements BulkProcessor.Listener {
+
+        final AtomicInteger beforeBulks = new AtomicInteger();
+        final AtomicInteger afterBulks = new AtomicInteger();
+        final AtomicInteger failedBulks = new AtomicInteger();
+        final AtomicInteger failedItems = new AtomicInteger();
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            beforeBulks.incrementAndGet();
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            afterBulks.incrementAndGet();
+            for (BulkItemResponse item : response) {
+                if (item.isFailed()) {
+                    failedItems.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            afterBulks.incrementAndGet();
+            failedBulks.incrementAndGet();
+        }
+    }
+}
@@ -32,6 +32,7 @@ import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.gateway.Gateway;
 import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.translog.fs.FsTranslog;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.node.Node;
 import org.elasticsearch.node.internal.InternalNode;
@@ -425,6 +426,134 @@ public class SimpleRecoveryLocalGatewayTests extends AbstractNodesTests {
         }
     }
 
+    @Test
+    public void testReplicaRecoveryReplaysRetainedTranslog() throws Exception {
+        buildNode("node1", settingsBuilder().put("gateway.type", "local").build());
+        buildNode("node2", settingsBuilder().put("gateway.type", "local").build());
+        cleanAndCloseNodes();
+
+        startNode("node1", settingsBuilder().put("gateway.type", "local").build());
+        startNode("node2", settingsBuilder().put("gateway.type", "local").build());
+
+        client("node1").admin().indices().prepareCreate("test").setSettings(settingsBuilder()
+                .put("index.number_of_shards", 1)
+                .put("index.number_of_replicas", 1)
+                .put(FsTranslog.INDEX_TRANSLOG_RETENTION_AGE, "10m")).execute().actionGet();
+
+        logger.info("--> indexing docs");
+        for (int i = 0; i < 100; i++) {
+            client("node1").prepareIndex("test", "type1", Integer.toString(i)).setSource("field", "value").execute().actionGet();
+        }
+        ClusterHealthResponse clusterHealth = client("node1").admin().cluster().health(clusterHealthRequest().waitForGreenStatus().waitForActiveShards(2)).actionGet();
+        assertThat(clusterHealth.isTimedOut(), equalTo(false));
+        client("node1").admin().indices().prepareFlush().execute().actionGet();
+
+        ClusterState state = client("node1").admin().cluster().prepareState().execute().actionGet().getState();
+        String replicaNode = state.nodes().get(state.routingTable().index("test").shard(0).replicaShards().get(0).currentNodeId()).name();
+        String primaryNode = replicaNode.equals("node1") ? "node2" : "node1";
+
+        logger.info("--> closing the replica node [{}], indexing and deleting by query while it is down", replicaNode);
+        closeNode(replicaNode);
+        for (int i = 100; i < 150; i++) {
+            client(primaryNode).prepareIndex("test", "type1", Integer.toString(i)).setSource("field", i < 110 ? "expired" : "value").execute().actionGet();
+        }
+        client(primaryNode).prepareDeleteByQuery("test").setQuery(termQuery("field", "expired")).execute().actionGet();
+        // the missed operations end up in a retained translog
+        client(primaryNode).admin().indices().prepareFlush().execute().actionGet();
+        for (int i = 150; i < 160; i++) {
+            client(primaryNode).prepareIndex("test", "type1", Integer.toString(i)).setSource("field", "value").execute().actionGet();
+        }
+
+        logger.info("--> starting the replica node back");
+        startNode(replicaNode, settingsBuilder().put("gateway.type", "local").build());
+        clusterHealth = client("node1").admin().cluster().health(clusterHealthRequest().waitForGreenStatus().waitForActiveShards(2)).actionGet();
+        assertThat(clusterHealth.isTimedOut(), equalTo(false));
+        assertThat(clusterHealth.getStatus(), equalTo(ClusterHealthStatus.GREEN));
+
+        IndicesStatusResponse statusResponse = client("node1").admin().indices().prepareStatus("test").setRecovery(true).execute().actionGet();
+        for (IndexShardStatus indexShardStatus : statusResponse.getIndex("test")) {
+            for (ShardStatus shardStatus : indexShardStatus) {
+                if (!shardStatus.getShardRouting().primary()) {
+                    logger.info("--> shard {}, index size {}, translog ops {}", shardStatus.getShardId(), shardStatus.getPeerRecoveryStatus().getIndexSize(), shardStatus.getPeerRecoveryStatus().getRecoveredTranslogOperations());
+                    // no files copied, the 50 missed operations, the delete by query and the 10 current ones replayed
+                    assertThat(shardStatus.getPeerRecoveryStatus().getIndexSize().bytes(), equalTo(0l));
+                    assertThat(shardStatus.getPeerRecoveryStatus().getRecoveredTranslogOperations(), equalTo(61l));
+                }
+            }
+        }
+
+        client("node1").admin().indices().prepareRefresh().execute().actionGet();
+        for (int i = 0; i < 10; i++) {
+            // hits both copies
+            assertThat(client("node1").prepareCount("test").setQuery(matchAllQuery()).execute().actionGet().getCount(), equalTo(150l));
+        }
+    }
+
+    @Test
+    public void testReplicaRecoveryWithTrimmedDeleteByQuery() throws Exception {
+        buildNode("node1", settingsBuilder().put("gateway.type", "local").build());
+        buildNode("node2", settingsBuilder().put("gateway.type", "local").build());
+        cleanAndCloseNodes();
+
+        startNode("node1", settingsBuilder().put("gateway.type", "local").build());
+        startNode("node2", settingsBuilder().put("gateway.type", "local").build());
+
+        client("node1").admin().indices().prepareCreate("test").setSettings(settingsBuilder()
+                .put("index.number_of_shards", 1)
+                .put("index.number_of_replicas", 1)
+                .put(FsTranslog.INDEX_TRANSLOG_RETENTION_AGE, "10m")).execute().actionGet();
+
+        logger.info("--> indexing docs");
+        for (int i = 0; i < 100; i++) {
+            client("node1").prepareIndex("test", "type1", Integer.toString(i)).setSource("field", i < 10 ? "expired" : "value").execute().actionGet();
+        }
+        ClusterHealthResponse clusterHealth = client("node1").admin().cluster().health(clusterHealthRequest().waitForGreenStatus().waitForActiveShards(2)).actionGet();
+        assertThat(clusterHealth.isTimedOut(), equalTo(false));
+        client("node1").admin().indices().prepareFlush().execute().actionGet();
+
+        ClusterState state = client("node1").admin().cluster().prepareState().execute().actionGet().getState();
+        String replicaNode = state.nodes().get(state.routingTable().index("test").shard(0).replicaShards().get(0).currentNodeId()).name();
+        String primaryNode = replicaNode.equals("node1") ? "node2" : "node1";
+
+        logger.info("--> closing the replica node [{}], deleting by query while it is down", replicaNode);
+        closeNode(replicaNode);
+        // positioned at the replica checkpoint, in a translog of its own once flushed
+        client(primaryNode).prepareDeleteByQuery("test").setQuery(termQuery("field", "expired")).execute().actionGet();
+        client(primaryNode).admin().indices().prepareFlush().execute().actionGet();
+
+        Thread.sleep(6000);
+        for (int i = 100; i < 110; i++) {
+            client(primaryNode).prepareIndex("test", "type1", Integer.toString(i)).setSource("field", "value").execute().actionGet();
+        }
+        client(primaryNode).admin().indices().prepareFlush().execute().actionGet();
+        logger.info("--> trimming the retained translogs holding the delete by query");
+        client(primaryNode).admin().indices().prepareUpdateSettings("test").setSettings(settingsBuilder()
+                .put(FsTranslog.INDEX_TRANSLOG_RETENTION_AGE, "5s")).execute().actionGet();
+
+        logger.info("--> starting the replica node back");
+        startNode(replicaNode, settingsBuilder().put("gateway.type", "local").build());
+        clusterHealth = client("node1").admin().cluster().health(clusterHealthRequest().waitForGreenStatus().waitForActiveShards(2)).actionGet();
+        assertThat(clusterHealth.isTimedOut(), equalTo(false));
+        assertThat(clusterHealth.getStatus(), equalTo(ClusterHealthStatus.GREEN));
+
+        IndicesStatusResponse statusResponse = client("node1").admin().indices().prepareStatus("test").setRecovery(true).execute().actionGet();
+        for (IndexShardStatus indexShardStatus : statusResponse.getIndex("test")) {
+            for (ShardStatus shardStatus : indexShardStatus) {
+                if (!shardStatus.getShardRouting().primary()) {
+                    logger.info("--> shard {}, index size {}, translog ops {}", shardStatus.getShardId(), shardStatus.getPeerRecoveryStatus().getIndexSize(), shardStatus.getPeerRecoveryStatus().getRecoveredTranslogOperations());
+                    // the retained translogs no longer reach back to the replica checkpoint, files are copied
+                    assertThat(shardStatus.getPeerRecoveryStatus().getIndexSize().bytes(), greaterThan(0l));
+                }
+            }
+        }
+
+        client("node1").admin().indices().prepareRefresh().execute().actionGet();
+        for (int i = 0; i < 10; i++) {
+            // hits both copies, the delete by query was not lost on the replica
+            assertThat(client("node1").prepareCount("test").setQuery(matchAllQuery()).execute().actionGet().getCount(), equalTo(100l));
+        }
+    }
+
     @Test
     public void testRecoveryDifferentNodeOrderStartup() throws Exception {
         // we need different data paths so we make sure we start the second node fresh
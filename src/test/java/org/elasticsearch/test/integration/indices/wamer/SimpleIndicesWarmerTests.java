@@ -19,6 +19,7 @@
 
 package org.elasticsearch.test.integration.indices.wamer;
 
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.common.Priority;
 import org.elasticsearch.common.settings.ImmutableSettings;
@@ -31,6 +32,8 @@ import org.testng.annotations.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
 
 /**
  */
@@ -124,6 +127,43 @@ public class SimpleIndicesWarmerTests extends AbstractSharedClusterTest {
         client().prepareIndex("test", "type1", "2").setSource("field", "value2").setRefresh(true).execute().actionGet();
     }
 
+    @Test
+    public void eagerFieldDataWarmer() {
+        client().admin().indices().prepareDelete().execute().actionGet();
+
+        client().admin().indices().prepareCreate("test")
+                .setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .addMapping("type1", "{\n" +
+                        "    \"type1\" : {\n" +
+                        "        \"properties\" : {\n" +
+                        "            \"field\" : {\n" +
+                        "                \"type\" : \"string\",\n" +
+                        "                \"index\" : \"not_analyzed\",\n" +
+                        "                \"fielddata\" : { \"loading\" : \"eager\" }\n" +
+                        "            }\n" +
+                        "        }\n" +
+                        "    }\n" +
+                        "}")
+                .execute().actionGet();
+
+        client().admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForGreenStatus().execute().actionGet();
+
+        client().admin().indices().preparePutWarmer("warmer_1")
+                .setSearchRequest(client().prepareSearch("test").setQuery(QueryBuilders.termQuery("field", "value1")))
+                .execute().actionGet();
+
+        client().prepareIndex("test", "type1", "1").setSource("field", "value1").setRefresh(true).execute().actionGet();
+        client().prepareIndex("test", "type1", "2").setSource("field", "value2").setRefresh(true).execute().actionGet();
+
+        // no search was executed, field data was loaded by the warmer on each new segment
+        IndicesStatsResponse stats = client().admin().indices().prepareStats("test").clear().setFieldData(true).setWarmer(true).execute().actionGet();
+        assertThat(stats.getTotal().getFieldData().getMemorySizeInBytes(), greaterThan(0l));
+        assertThat(stats.getTotal().getWarmer().total(), greaterThan(0l));
+        assertThat(stats.getTotal().getWarmer().typesTimeInMillis(), notNullValue());
+        assertThat(stats.getTotal().getWarmer().typesTimeInMillis().containsKey("field_data"), equalTo(true));
+        assertThat(stats.getTotal().getWarmer().typesTimeInMillis().containsKey("search"), equalTo(true));
+    }
+
     @Test
     public void deleteNonExistentIndexWarmerTest() {
         client().admin().indices().prepareDelete().execute().actionGet();
@@ -0,0 +1,143 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.integration.search.fetch;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Priority;
+import org.elasticsearch.common.network.NetworkUtils;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.highlight.HighlightField;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Runs the same searches against a node fetching hits sequentially and a node fetching them in parallel, each in
+ * its own cluster and holding the same documents.
+ */
+public class ParallelFetchTests extends AbstractNodesTests {
+
+    private Client sequential;
+
+    private Client parallel;
+
+    @BeforeClass
+    public void createNodes() throws Exception {
+        String clusterName = "test-cluster-" + NetworkUtils.getLocalAddress().getHostName();
+        startNode("sequential", settingsBuilder().put("cluster.name", clusterName + "-sequential"));
+        startNode("parallel", settingsBuilder().put("cluster.name", clusterName + "-parallel")
+                .put("search.fetch.parallel", true)
+                .put("search.fetch.parallel_chunk_size", 7));
+        sequential = client("sequential");
+        parallel = client("parallel");
+
+        for (Client client : new Client[]{sequential, parallel}) {
+            client.admin().indices().prepareCreate("test")
+                    .setSettings(settingsBuilder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                    .execute().actionGet();
+            client.admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForGreenStatus().execute().actionGet();
+            for (int i = 0; i < 200; i++) {
+                client.prepareIndex("test", "type1", Integer.toString(i)).setSource(jsonBuilder().startObject()
+                        .field("text", "the quick brown fox number " + i + " jumps over the lazy dog")
+                        .field("num", i)
+                        .endObject()).execute().actionGet();
+                if (i % 50 == 49) {
+                    // a few segments, so chunks span more than one reader
+                    client.admin().indices().prepareFlush("test").execute().actionGet();
+                }
+            }
+            client.admin().indices().prepareRefresh("test").execute().actionGet();
+        }
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        closeAllNodes();
+    }
+
+    @Test
+    public void testParallelFetchMatchesSequential() throws Exception {
+        SearchResponse expected = search(sequential);
+        SearchResponse actual = search(parallel);
+        assertThat(Arrays.toString(expected.getShardFailures()), expected.getFailedShards(), equalTo(0));
+        assertThat(Arrays.toString(actual.getShardFailures()), actual.getFailedShards(), equalTo(0));
+
+        SearchHit[] expectedHits = expected.getHits().hits();
+        SearchHit[] actualHits = actual.getHits().hits();
+        assertThat(expectedHits.length, equalTo(150));
+        assertThat(actualHits.length, equalTo(expectedHits.length));
+        for (int i = 0; i < expectedHits.length; i++) {
+            // sorted on num descending, which is the reverse of the doc id order the chunks are fetched in
+            assertThat(actualHits[i].id(), equalTo(Integer.toString(199 - i)));
+            assertThat(actualHits[i].id(), equalTo(expectedHits[i].id()));
+            assertThat(actualHits[i].type(), equalTo(expectedHits[i].type()));
+            assertThat(actualHits[i].version(), equalTo(expectedHits[i].version()));
+            assertThat(actualHits[i].sourceAsString(), equalTo(expectedHits[i].sourceAsString()));
+            assertThat(actualHits[i].field("partial").getValue(), equalTo(expectedHits[i].field("partial").getValue()));
+
+            HighlightField expectedHighlight = expectedHits[i].highlightFields().get("text");
+            HighlightField actualHighlight = actualHits[i].highlightFields().get("text");
+            assertThat(actualHighlight, notNullValue());
+            assertThat(actualHighlight.fragments()[0].string(), containsString("<em>fox</em> number " + actualHits[i].id() + " "));
+            assertThat(Arrays.toString(actualHighlight.fragments()), equalTo(Arrays.toString(expectedHighlight.fragments())));
+        }
+    }
+
+    @Test
+    public void testParallelFetchFailure() throws Exception {
+        // text isn't indexed with term vectors, so the fast vector highlighter fails on every hit
+        SearchResponse response = parallel.prepareSearch("test")
+                .setQuery(matchQuery("text", "fox"))
+                .setSize(150)
+                .addHighlightedField("text").setHighlighterType("fvh")
+                .execute().actionGet();
+        assertThat(response.getFailedShards(), equalTo(1));
+        assertThat(response.getShardFailures()[0].reason(), containsString("term vector"));
+
+        // failed chunks don't leave anything behind, the node keeps fetching in parallel
+        response = search(parallel);
+        assertThat(Arrays.toString(response.getShardFailures()), response.getFailedShards(), equalTo(0));
+        assertThat(response.getHits().hits().length, equalTo(150));
+    }
+
+    private SearchResponse search(Client client) {
+        return client.prepareSearch("test")
+                .setQuery(matchQuery("text", "fox"))
+                .addSort("num", SortOrder.DESC)
+                .setSize(150)
+                .setVersion(true)
+                .addField("_source")
+                .addPartialField("partial", "num", null)
+                .addHighlightedField("text")
+                .execute().actionGet();
+    }
+}
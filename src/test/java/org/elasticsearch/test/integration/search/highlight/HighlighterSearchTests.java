@@ -416,6 +416,70 @@ public class HighlighterSearchTests extends AbstractSharedClusterTest {
         }
     }
 
+    @Test
+    public void testSourceLookupHighlightingUsingPostingsHighlighter() throws Exception {
+        client().admin().indices().prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 2))
+                .addMapping("type1", jsonBuilder().startObject().startObject("type1").startObject("properties")
+                        // we don't store title, now lets see if it works...
+                        .startObject("title").field("type", "string").field("store", "no").field("index_options", "offsets").endObject()
+                        .startObject("attachments").startObject("properties").startObject("body").field("type", "string").field("store", "no").field("index_options", "offsets").endObject().endObject().endObject()
+                        .endObject().endObject().endObject())
+                .execute().actionGet();
+        client().admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForYellowStatus().execute().actionGet();
+
+        for (int i = 0; i < 5; i++) {
+            client().prepareIndex("test", "type1", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject()
+                            .field("title", "This is a test on the highlighting bug present in elasticsearch. Hopefully it works.")
+                            .startArray("attachments").startObject().field("body", "attachment 1").endObject().startObject().field("body", "attachment 2").endObject().endArray()
+                            .endObject())
+                    .setRefresh(true).execute().actionGet();
+        }
+
+        SearchResponse search = client().prepareSearch()
+                .setQuery(fieldQuery("title", "bug"))
+                .addHighlightedField("title")
+                .setHighlighterType("postings")
+                .execute().actionGet();
+
+        assertThat(Arrays.toString(search.getShardFailures()), search.getFailedShards(), equalTo(0));
+
+        assertThat(search.getHits().totalHits(), equalTo(5l));
+        assertThat(search.getHits().hits().length, equalTo(5));
+
+        for (SearchHit hit : search.getHits()) {
+            // only the matching sentence is returned
+            assertThat(hit.highlightFields().get("title").fragments().length, equalTo(1));
+            assertThat(hit.highlightFields().get("title").fragments()[0].string(), equalTo("This is a test on the highlighting <em>bug</em> present in elasticsearch."));
+        }
+
+        search = client().prepareSearch()
+                .setQuery(fieldQuery("title", "bug"))
+                .addHighlightedField("title", -1, 0)
+                .setHighlighterType("postings")
+                .execute().actionGet();
+
+        assertThat(Arrays.toString(search.getShardFailures()), search.getFailedShards(), equalTo(0));
+        for (SearchHit hit : search.getHits()) {
+            assertThat(hit.highlightFields().get("title").fragments()[0].string(), equalTo("This is a test on the highlighting <em>bug</em> present in elasticsearch. Hopefully it works."));
+        }
+
+        search = client().prepareSearch()
+                .setQuery(fieldQuery("attachments.body", "attachment"))
+                .addHighlightedField(new HighlightBuilder.Field("attachments.body").numOfFragments(2).highlighterType("postings"))
+                .execute().actionGet();
+
+        assertThat(Arrays.toString(search.getShardFailures()), search.getFailedShards(), equalTo(0));
+
+        assertThat(search.getHits().totalHits(), equalTo(5l));
+        assertThat(search.getHits().hits().length, equalTo(5));
+
+        for (SearchHit hit : search.getHits()) {
+            assertThat(hit.highlightFields().get("attachments.body").fragments()[0].string(), equalTo("<em>attachment</em> 1"));
+            assertThat(hit.highlightFields().get("attachments.body").fragments()[1].string(), equalTo("<em>attachment</em> 2"));
+        }
+    }
+
     @Test
     public void testHighlightIssue1994() throws Exception {
         client().admin().indices().prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 2))
@@ -100,4 +100,55 @@ public class SearchScanTests extends AbstractSharedClusterTest {
 
         assertThat(expectedIds, equalTo(ids));
     }
+
+    @Test
+    public void testSlicedScan() throws Exception {
+        try {
+            client().admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client().admin().indices().prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 3)).execute().actionGet();
+        client().admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForGreenStatus().execute().actionGet();
+
+        Set<String> expectedIds = Sets.newHashSet();
+        for (int i = 0; i < 200; i++) {
+            expectedIds.add(Integer.toString(i));
+            client().prepareIndex("test", "tweet", Integer.toString(i)).setSource(
+                    jsonBuilder().startObject().field("user", "kimchy").field("message", "test").endObject()).execute().actionGet();
+            // make some segments
+            if (i % 20 == 0) {
+                client().admin().indices().prepareFlush().execute().actionGet();
+            }
+        }
+        client().admin().indices().prepareRefresh().execute().actionGet();
+
+        int max = 4;
+        Set<String> ids = Sets.newHashSet();
+        long totalHits = 0;
+        for (int slice = 0; slice < max; slice++) {
+            SearchResponse searchResponse = client().prepareSearch()
+                    .setSearchType(SearchType.SCAN)
+                    .setSlice(slice, max)
+                    .setSize(15)
+                    .setScroll(TimeValue.timeValueMinutes(2))
+                    .execute().actionGet();
+            totalHits += searchResponse.getHits().totalHits();
+
+            while (true) {
+                searchResponse = client().prepareSearchScroll(searchResponse.getScrollId()).setScroll(TimeValue.timeValueMinutes(2)).execute().actionGet();
+                assertThat(searchResponse.getFailedShards(), equalTo(0));
+                for (SearchHit hit : searchResponse.getHits()) {
+                    assertThat(hit.id() + " should only be part of a single slice", ids.contains(hit.id()), equalTo(false));
+                    ids.add(hit.id());
+                }
+                if (searchResponse.getHits().hits().length == 0) {
+                    break;
+                }
+            }
+        }
+
+        assertThat(totalHits, equalTo(200l));
+        assertThat(expectedIds, equalTo(ids));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.integration.search.scroll;
+
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Priority;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.test.integration.AbstractNodesTests;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class SearchScrollLimitTests extends AbstractNodesTests {
+
+    private Client client;
+
+    @BeforeClass
+    public void createNodes() throws Exception {
+        startNode("server1", settingsBuilder().put("search.max_open_scroll_contexts", 2));
+        client = client("server1");
+
+        client.admin().indices().prepareCreate("test")
+                .setSettings(settingsBuilder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .execute().actionGet();
+        client.admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForGreenStatus().execute().actionGet();
+        for (int i = 0; i < 10; i++) {
+            client.prepareIndex("test", "type1", Integer.toString(i)).setSource("field", "value").execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+    }
+
+    @AfterClass
+    public void closeNodes() {
+        client.close();
+        closeAllNodes();
+    }
+
+    @Test
+    public void testMaxOpenScrollContexts() throws Exception {
+        // a single shard, so each scroll opens a single context
+        SearchResponse first = scan();
+        SearchResponse second = scan();
+        assertThat(openScrollContexts(), equalTo(2l));
+
+        try {
+            scan();
+            assert false;
+        } catch (SearchPhaseExecutionException e) {
+            assertThat(e.getMessage(), containsString("too many open scroll contexts"));
+        }
+        // a rejected scroll doesn't hold on to a slot
+        assertThat(openScrollContexts(), equalTo(2l));
+
+        // scroll, but with no timeout, releases the context and its slot
+        client.prepareSearchScroll(first.getScrollId()).execute().actionGet();
+        assertThat(openScrollContexts(), equalTo(1l));
+
+        SearchResponse third = scan();
+        assertThat(openScrollContexts(), equalTo(2l));
+
+        // searches without a scroll are not limited
+        assertThat(client.prepareSearch("test").setQuery(matchAllQuery()).execute().actionGet().getHits().totalHits(), equalTo(10l));
+
+        client.prepareSearchScroll(second.getScrollId()).execute().actionGet();
+        client.prepareSearchScroll(third.getScrollId()).execute().actionGet();
+        assertThat(openScrollContexts(), equalTo(0l));
+    }
+
+    private SearchResponse scan() {
+        return client.prepareSearch("test")
+                .setSearchType(SearchType.SCAN)
+                .setQuery(matchAllQuery())
+                .setSize(5)
+                .setScroll(TimeValue.timeValueMinutes(2))
+                .execute().actionGet();
+    }
+
+    private long openScrollContexts() {
+        IndicesStatsResponse indicesStats = client.admin().indices().prepareStats("test").execute().actionGet();
+        return indicesStats.getTotal().getSearch().getOpenScrollContexts();
+    }
+}
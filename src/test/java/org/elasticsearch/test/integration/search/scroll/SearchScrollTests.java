@@ -171,6 +171,50 @@ public class SearchScrollTests extends AbstractSharedClusterTest {
         }
     }
 
+    @Test
+    public void testScrollKeepsPreviousPagesAfterCompaction() throws Exception {
+        try {
+            client().admin().indices().prepareDelete("test").execute().actionGet();
+        } catch (Exception e) {
+            // ignore
+        }
+        client().admin().indices().prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1)).execute().actionGet();
+        client().admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForGreenStatus().execute().actionGet();
+
+        for (int i = 0; i < 30; i++) {
+            client().prepareIndex("test", "type1", Integer.toString(i)).setSource(jsonBuilder().startObject().field("field", i).endObject()).execute().actionGet();
+        }
+
+        client().admin().indices().prepareRefresh().execute().actionGet();
+
+        // the context drops the fetched hits after each request, the hits already handed over must not be affected
+        SearchResponse firstPage = client().prepareSearch()
+                .setQuery(matchAllQuery())
+                .setSize(10)
+                .setScroll(TimeValue.timeValueMinutes(2))
+                .addSort("field", SortOrder.ASC)
+                .execute().actionGet();
+        assertThat(firstPage.getHits().hits().length, equalTo(10));
+
+        SearchResponse secondPage = client().prepareSearchScroll(firstPage.getScrollId())
+                .setScroll(TimeValue.timeValueMinutes(2))
+                .execute().actionGet();
+        assertThat(secondPage.getHits().hits().length, equalTo(10));
+
+        SearchResponse thirdPage = client().prepareSearchScroll(secondPage.getScrollId())
+                .setScroll(TimeValue.timeValueMinutes(2))
+                .execute().actionGet();
+        assertThat(thirdPage.getHits().hits().length, equalTo(10));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(firstPage.getHits().getAt(i).id(), equalTo(Integer.toString(i)));
+            assertThat(((Number) firstPage.getHits().getAt(i).sourceAsMap().get("field")).intValue(), equalTo(i));
+            assertThat(secondPage.getHits().getAt(i).id(), equalTo(Integer.toString(i + 10)));
+            assertThat(((Number) secondPage.getHits().getAt(i).sourceAsMap().get("field")).intValue(), equalTo(i + 10));
+            assertThat(thirdPage.getHits().getAt(i).id(), equalTo(Integer.toString(i + 20)));
+        }
+    }
+
     @Test
     public void testScrollAndUpdateIndex() throws Exception {
         try {
@@ -38,12 +38,15 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import org.elasticsearch.ElasticSearchException;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.ShardSearchFailure;
 import org.elasticsearch.common.Priority;
@@ -115,6 +118,93 @@ public class SimpleSortTests extends AbstractSharedClusterTest {
     }
     
 
+    @Test
+    public void testSearchAfter() throws Exception {
+        createIndex("test");
+        ensureGreen();
+
+        for (int i = 0; i < 100; i++) {
+            client().prepareIndex("test", "type", Integer.toString(i)).setSource(jsonBuilder().startObject()
+                    .field("svalue", "value" + (i % 10))
+                    .field("ivalue", i)
+                    .endObject()).execute().actionGet();
+        }
+        refresh();
+
+        List<Integer> values = new ArrayList<Integer>();
+        Object[] searchAfter = null;
+        while (true) {
+            SearchRequestBuilder request = client().prepareSearch("test")
+                    .setQuery(matchAllQuery())
+                    .addSort("svalue", SortOrder.ASC)
+                    .addSort("ivalue", SortOrder.ASC)
+                    .addSort("_uid", SortOrder.ASC)
+                    .setSize(7);
+            if (searchAfter != null) {
+                request.setSearchAfter(searchAfter);
+            }
+            SearchResponse searchResponse = request.execute().actionGet();
+            assertNoFailures(searchResponse);
+            assertThat(searchResponse.getHits().getTotalHits(), equalTo(100l));
+            if (searchResponse.getHits().hits().length == 0) {
+                break;
+            }
+            for (SearchHit hit : searchResponse.getHits()) {
+                values.add(((Number) hit.sortValues()[1]).intValue());
+            }
+            searchAfter = searchResponse.getHits().getAt(searchResponse.getHits().hits().length - 1).sortValues();
+        }
+
+        assertThat(values.size(), equalTo(100));
+        for (int i = 0; i < values.size(); i++) {
+            // sorted on the svalue first (i % 10), then on the ivalue
+            assertThat(values.get(i), equalTo((i % 10) * 10 + i / 10));
+        }
+    }
+
+    @Test
+    public void testSearchAfterMatchAll() throws Exception {
+        createIndex("test");
+        ensureGreen();
+
+        for (int i = 0; i < 50; i++) {
+            client().prepareIndex("test", "type", Integer.toString(i)).setSource("field", "value").execute().actionGet();
+        }
+        refresh();
+
+        // all the hits have the same score, the _uid breaks the ties across pages
+        Set<String> ids = new HashSet<String>();
+        Object[] searchAfter = null;
+        while (true) {
+            SearchRequestBuilder request = client().prepareSearch("test")
+                    .setQuery(matchAllQuery())
+                    .addSort("_score", SortOrder.DESC)
+                    .addSort("_uid", SortOrder.ASC)
+                    .setSize(7);
+            if (searchAfter != null) {
+                request.setSearchAfter(searchAfter);
+            }
+            SearchResponse searchResponse = request.execute().actionGet();
+            assertNoFailures(searchResponse);
+            if (searchResponse.getHits().hits().length == 0) {
+                break;
+            }
+            for (SearchHit hit : searchResponse.getHits()) {
+                assertThat(ids.add(hit.id()), equalTo(true));
+            }
+            searchAfter = searchResponse.getHits().getAt(searchResponse.getHits().hits().length - 1).sortValues();
+        }
+        assertThat(ids.size(), equalTo(50));
+
+        // without a tiebreaker, hits with the same score would be dropped
+        try {
+            client().prepareSearch("test").setQuery(matchAllQuery()).setSearchAfter(1.0f).execute().actionGet();
+            assert false;
+        } catch (SearchPhaseExecutionException e) {
+            assertThat(e.getMessage(), containsString("tiebreaker"));
+        }
+    }
+
     @Test
     public void test3078() {
         createIndex("test");
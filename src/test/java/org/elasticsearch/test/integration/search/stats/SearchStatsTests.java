@@ -111,8 +111,10 @@ public class SearchStatsTests extends AbstractSharedClusterTest {
         for (int i = 0; i < 50; i++) {
             client().prepareIndex("test1", "type", Integer.toString(i)).setSource("field", "value").execute().actionGet();
         }
+        refresh();
         IndicesStatsResponse indicesStats = client().admin().indices().prepareStats().execute().actionGet();
         assertThat(indicesStats.getTotal().getSearch().getOpenContexts(), equalTo(0l));
+        assertThat(indicesStats.getTotal().getSearch().getOpenScrollContexts(), equalTo(0l));
 
         SearchResponse searchResponse = client().prepareSearch()
                 .setSearchType(SearchType.SCAN)
@@ -123,11 +125,25 @@ public class SearchStatsTests extends AbstractSharedClusterTest {
 
         indicesStats = client().admin().indices().prepareStats().execute().actionGet();
         assertThat(indicesStats.getTotal().getSearch().getOpenContexts(), equalTo((long)numAssignedShards("test1")));
+        assertThat(indicesStats.getTotal().getSearch().getOpenScrollContexts(), equalTo((long)numAssignedShards("test1")));
+        long scrollSegmentsSize = indicesStats.getTotal().getSearch().getScrollSegmentsSize().bytes();
+        assertThat(scrollSegmentsSize, greaterThan(0l));
+
+        // merge away the segments held by the scroll, they are still accounted for
+        for (int i = 50; i < 100; i++) {
+            client().prepareIndex("test1", "type", Integer.toString(i)).setSource("field", "value").execute().actionGet();
+        }
+        client().admin().indices().prepareOptimize("test1").setMaxNumSegments(1).execute().actionGet();
+        indicesStats = client().admin().indices().prepareStats().execute().actionGet();
+        assertThat(indicesStats.getTotal().getSearch().getOpenScrollContexts(), equalTo((long)numAssignedShards("test1")));
+        assertThat(indicesStats.getTotal().getSearch().getScrollSegmentsSize().bytes(), equalTo(scrollSegmentsSize));
 
         // scroll, but with no timeout (so no context)
         searchResponse = client().prepareSearchScroll(searchResponse.getScrollId()).execute().actionGet();
 
         indicesStats = client().admin().indices().prepareStats().execute().actionGet();
         assertThat(indicesStats.getTotal().getSearch().getOpenContexts(), equalTo(0l));
+        assertThat(indicesStats.getTotal().getSearch().getOpenScrollContexts(), equalTo(0l));
+        assertThat(indicesStats.getTotal().getSearch().getScrollSegmentsSize().bytes(), equalTo(0l));
     }
 }
@@ -19,11 +19,19 @@
 
 package org.elasticsearch.test.integration.ttl;
 
+import org.apache.lucene.index.Term;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.Priority;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.Uid;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.index.shard.service.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.ttl.IndicesTTLService;
+import org.elasticsearch.node.internal.InternalNode;
 import org.elasticsearch.test.integration.AbstractNodesTests;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -152,4 +160,70 @@ public class SimpleTTLTests extends AbstractNodesTests {
         getResponse = client.prepareGet("test", "type1", "with_routing").setRouting("routing").setFields("_ttl").setRealtime(false).execute().actionGet();
         assertThat(getResponse.isExists(), equalTo(false));
     }
+
+    @Test
+    public void testSegmentsTTLExpiry() throws Exception {
+        client.admin().indices().prepareDelete().execute().actionGet();
+
+        for (String index : new String[]{"test", "late"}) {
+            client.admin().indices().prepareCreate(index)
+                    .setSettings(settingsBuilder().put(IndicesTTLService.INDEX_TTL_EXPIRE_SEGMENTS, true).put("index.refresh_interval", -1))
+                    .addMapping("type1", XContentFactory.jsonBuilder()
+                            .startObject()
+                            .startObject("type1")
+                            .startObject("_timestamp").field("enabled", true).field("store", "yes").endObject()
+                            .startObject("_ttl").field("enabled", true).field("store", "yes").endObject()
+                            .endObject()
+                            .endObject())
+                    .execute().actionGet();
+        }
+        client.admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).setWaitForGreenStatus().execute().actionGet();
+        long providedTTLValue = 3000;
+        client.prepareIndex("test", "type1", "1").setSource("field1", "value1").setTTL(providedTTLValue).setRefresh(true).execute().actionGet();
+        client.prepareIndex("test", "type1", "with_routing").setSource("field1", "value1").setTTL(providedTTLValue).setRouting("routing").setRefresh(true).execute().actionGet();
+        client.prepareIndex("test", "type1", "no_ttl").setSource("field1", "value1").setRefresh(true).execute().actionGet();
+        // alone in its index and not refreshed until it is expired, so the copies run their expiry passes past its expiration without seeing it
+        client.prepareIndex("late", "type1", "late").setSource("field1", "value1").setTTL(providedTTLValue).execute().actionGet();
+        long now = System.currentTimeMillis();
+
+        assertThat(copiesHolding("test", "1"), equalTo(2));
+        assertThat(copiesHolding("test", "with_routing"), equalTo(2));
+        assertThat(copiesHolding("test", "no_ttl"), equalTo(2));
+
+        logger.info("--> checking segments expiry");
+        long shouldBeExpiredDate = now + providedTTLValue + purgeInterval + 2000;
+        long now1 = System.currentTimeMillis();
+        if (shouldBeExpiredDate - now1 > 0) {
+            Thread.sleep(shouldBeExpiredDate - now1);
+        }
+        client.admin().indices().prepareRefresh().execute().actionGet();
+        // the docs are expired on each copy, check them on the shards of both nodes
+        assertThat(copiesHolding("test", "1"), equalTo(0));
+        assertThat(copiesHolding("test", "with_routing"), equalTo(0));
+        assertThat(copiesHolding("test", "no_ttl"), equalTo(2));
+
+        // the late doc now shows up in a new segment, which is checked from the start
+        assertThat(copiesHolding("late", "late"), equalTo(2));
+        Thread.sleep(purgeInterval * 5);
+        client.admin().indices().prepareRefresh("late").execute().actionGet();
+        assertThat(copiesHolding("late", "late"), equalTo(0));
+    }
+
+    /**
+     * The number of shard copies, on all the nodes, holding the doc (looked up on the shards, not through get).
+     */
+    private int copiesHolding(String index, String id) {
+        int copies = 0;
+        for (String node : new String[]{"node1", "node2"}) {
+            IndicesService indicesService = ((InternalNode) node(node)).injector().getInstance(IndicesService.class);
+            for (IndexShard indexShard : indicesService.indexServiceSafe(index)) {
+                Engine.GetResult result = indexShard.get(new Engine.Get(false, new Term(UidFieldMapper.NAME, Uid.createUid("type1", id))));
+                if (result.exists()) {
+                    copies++;
+                }
+                result.release();
+            }
+        }
+        return copies;
+    }
 }
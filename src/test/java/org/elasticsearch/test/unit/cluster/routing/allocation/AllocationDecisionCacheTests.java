@@ -0,0 +1,149 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.cluster.routing.allocation;
+
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.routing.MutableShardRouting;
+import org.elasticsearch.cluster.routing.RoutingNode;
+import org.elasticsearch.cluster.routing.RoutingNodes;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.allocation.AllocationService;
+import org.elasticsearch.cluster.routing.allocation.decider.ClusterRebalanceAllocationDecider;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+
+import static org.elasticsearch.cluster.ClusterState.newClusterStateBuilder;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.newIndexMetaDataBuilder;
+import static org.elasticsearch.cluster.metadata.MetaData.newMetaDataBuilder;
+import static org.elasticsearch.cluster.node.DiscoveryNodes.newNodesBuilder;
+import static org.elasticsearch.cluster.routing.RoutingBuilders.routingTable;
+import static org.elasticsearch.cluster.routing.ShardRoutingState.INITIALIZING;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.test.unit.cluster.routing.allocation.RoutingAllocationTests.newNode;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ */
+public class AllocationDecisionCacheTests {
+
+    private final ESLogger logger = Loggers.getLogger(AllocationDecisionCacheTests.class);
+
+    @Test
+    public void testCachedAndUncachedDecisionsGiveSameRouting() {
+        ImmutableSettings.Builder settings = settingsBuilder()
+                .put("cluster.routing.allocation.allow_rebalance", ClusterRebalanceAllocationDecider.ClusterRebalanceType.ALWAYS.toString())
+                .put("cluster.routing.allocation.node_concurrent_recoveries", 2)
+                .put("cluster.routing.allocation.cluster_concurrent_rebalance", 3);
+        AllocationService cachedService = new AllocationService(settings.put(AllocationService.CLUSTER_ROUTING_ALLOCATION_CACHE_DECISIONS, true).build());
+        AllocationService uncachedService = new AllocationService(settings.put(AllocationService.CLUSTER_ROUTING_ALLOCATION_CACHE_DECISIONS, false).build());
+
+        MetaData metaData = newMetaDataBuilder()
+                .put(newIndexMetaDataBuilder("test1").numberOfShards(5).numberOfReplicas(1))
+                .put(newIndexMetaDataBuilder("test2").numberOfShards(3).numberOfReplicas(2))
+                .put(newIndexMetaDataBuilder("test3").settings(settingsBuilder().put("index.routing.allocation.total_shards_per_node", 2)).numberOfShards(4).numberOfReplicas(1))
+                .build();
+        RoutingTable routingTable = routingTable()
+                .addAsNew(metaData.index("test1"))
+                .addAsNew(metaData.index("test2"))
+                .addAsNew(metaData.index("test3"))
+                .build();
+        ClusterState clusterState = newClusterStateBuilder().metaData(metaData).routingTable(routingTable).nodes(newNodesBuilder()
+                .put(newNode("node1")).put(newNode("node2")).put(newNode("node3"))).build();
+
+        logger.info("--> allocating on three nodes");
+        ClusterState cached = reroute(cachedService, clusterState);
+        ClusterState uncached = reroute(uncachedService, clusterState);
+        assertSameRouting(cached, uncached);
+        ClusterState[] states = startAll(cachedService, cached, uncachedService, uncached);
+        cached = states[0];
+        uncached = states[1];
+
+        logger.info("--> rerouting again, nothing changed");
+        cached = reroute(cachedService, cached);
+        uncached = reroute(uncachedService, uncached);
+        assertSameRouting(cached, uncached);
+
+        logger.info("--> adding two nodes, rebalancing");
+        DiscoveryNodes nodes = newNodesBuilder().putAll(cached.nodes()).put(newNode("node4")).put(newNode("node5")).build();
+        cached = reroute(cachedService, newClusterStateBuilder().state(cached).nodes(nodes).build());
+        uncached = reroute(uncachedService, newClusterStateBuilder().state(uncached).nodes(nodes).build());
+        assertSameRouting(cached, uncached);
+        states = startAll(cachedService, cached, uncachedService, uncached);
+        cached = states[0];
+        uncached = states[1];
+
+        logger.info("--> excluding node1 from test1, moving its shards away");
+        metaData = newMetaDataBuilder().metaData(cached.metaData())
+                .put(newIndexMetaDataBuilder(cached.metaData().index("test1"))
+                        .settings(settingsBuilder().put(cached.metaData().index("test1").settings()).put("index.routing.allocation.exclude._id", "node1")))
+                .build();
+        cached = reroute(cachedService, newClusterStateBuilder().state(cached).metaData(metaData).build());
+        uncached = reroute(uncachedService, newClusterStateBuilder().state(uncached).metaData(metaData).build());
+        assertSameRouting(cached, uncached);
+        states = startAll(cachedService, cached, uncachedService, uncached);
+        cached = states[0];
+        uncached = states[1];
+
+        logger.info("--> removing node2");
+        nodes = newNodesBuilder().putAll(cached.nodes()).remove("node2").build();
+        cached = reroute(cachedService, newClusterStateBuilder().state(cached).nodes(nodes).build());
+        uncached = reroute(uncachedService, newClusterStateBuilder().state(uncached).nodes(nodes).build());
+        assertSameRouting(cached, uncached);
+        states = startAll(cachedService, cached, uncachedService, uncached);
+        assertSameRouting(states[0], states[1]);
+        assertThat(states[0].routingNodes().unassigned().size(), equalTo(0));
+    }
+
+    private ClusterState reroute(AllocationService service, ClusterState clusterState) {
+        RoutingTable routingTable = service.reroute(clusterState).routingTable();
+        return newClusterStateBuilder().state(clusterState).routingTable(routingTable).build();
+    }
+
+    /**
+     * Starts the initializing shards on both states, rerouting after each round, until no shard is initializing.
+     */
+    private ClusterState[] startAll(AllocationService cachedService, ClusterState cached, AllocationService uncachedService, ClusterState uncached) {
+        while (!cached.routingNodes().shardsWithState(INITIALIZING).isEmpty()) {
+            RoutingTable routingTable = cachedService.applyStartedShards(cached, cached.routingNodes().shardsWithState(INITIALIZING)).routingTable();
+            cached = newClusterStateBuilder().state(cached).routingTable(routingTable).build();
+            routingTable = uncachedService.applyStartedShards(uncached, uncached.routingNodes().shardsWithState(INITIALIZING)).routingTable();
+            uncached = newClusterStateBuilder().state(uncached).routingTable(routingTable).build();
+            assertSameRouting(cached, uncached);
+        }
+        return new ClusterState[]{cached, uncached};
+    }
+
+    private void assertSameRouting(ClusterState cached, ClusterState uncached) {
+        RoutingNodes cachedNodes = cached.routingNodes();
+        RoutingNodes uncachedNodes = uncached.routingNodes();
+        for (RoutingNode node : uncachedNodes) {
+            assertThat(new HashSet<MutableShardRouting>(cachedNodes.node(node.nodeId()).shards()), equalTo(new HashSet<MutableShardRouting>(node.shards())));
+        }
+        assertThat(cachedNodes.unassigned().size(), equalTo(uncachedNodes.unassigned().size()));
+    }
+}
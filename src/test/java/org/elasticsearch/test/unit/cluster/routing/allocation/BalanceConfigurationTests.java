@@ -25,14 +25,22 @@ import static org.elasticsearch.cluster.metadata.MetaData.newMetaDataBuilder;
 import static org.elasticsearch.cluster.node.DiscoveryNodes.newNodesBuilder;
 import static org.elasticsearch.cluster.routing.RoutingBuilders.routingTable;
 import static org.elasticsearch.cluster.routing.ShardRoutingState.INITIALIZING;
+import static org.elasticsearch.cluster.routing.ShardRoutingState.RELOCATING;
 import static org.elasticsearch.cluster.routing.ShardRoutingState.STARTED;
 import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
 import static org.elasticsearch.test.unit.cluster.routing.allocation.RoutingAllocationTests.newNode;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.cluster.ClusterInfo;
+import org.elasticsearch.cluster.ClusterInfoService;
 import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.DiskUsage;
+import org.elasticsearch.cluster.EmptyClusterInfoService;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
 import org.elasticsearch.cluster.node.DiscoveryNode;
@@ -55,6 +63,7 @@ import org.elasticsearch.cluster.routing.allocation.decider.ClusterRebalanceAllo
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.gateway.none.NoneGatewayAllocator;
 import org.elasticsearch.node.settings.NodeSettingsService;
 import org.hamcrest.Matchers;
@@ -362,6 +371,112 @@ public class BalanceConfigurationTests {
         assertThat(allocator.getShardBalance(), Matchers.equalTo(0.1f));
         assertThat(allocator.getPrimaryBalance(), Matchers.equalTo(0.4f));
         assertThat(allocator.getThreshold(), Matchers.equalTo(3.0f));
+
+        settings = settingsBuilder();
+        settings.put(BalancedShardsAllocator.SETTING_DISK_BALANCE_FACTOR, 0.2);
+        settings.put(BalancedShardsAllocator.SETTING_LOAD_BALANCE_FACTOR, 0.3);
+        listeners[0].onRefreshSettings(settings.build());
+        assertThat(allocator.getIndexBalance(), Matchers.equalTo(0.5f));
+        assertThat(allocator.getDiskBalance(), Matchers.equalTo(0.2f));
+        assertThat(allocator.getLoadBalance(), Matchers.equalTo(0.3f));
+    }
+
+    @Test
+    public void testShardLoad() {
+        Settings settings = settingsBuilder().build();
+        AllocationService strategy = new AllocationService(settings);
+        MetaData metaData = newMetaDataBuilder()
+                .put(newIndexMetaDataBuilder("test").numberOfShards(1).numberOfReplicas(1))
+                .build();
+        RoutingTable routingTable = routingTable().addAsNew(metaData.index("test")).build();
+        ClusterState clusterState = newClusterStateBuilder().metaData(metaData).routingTable(routingTable)
+                .nodes(newNodesBuilder().put(newNode("node1")).put(newNode("node2"))).build();
+        clusterState = startInitializingShards(strategy, newClusterStateBuilder().state(clusterState).routingTable(strategy.reroute(clusterState).routingTable()).build());
+        clusterState = startInitializingShards(strategy, clusterState);
+        ShardRouting primary = clusterState.routingTable().index("test").shard(0).primaryShard();
+        ShardRouting replica = clusterState.routingTable().index("test").shard(0).replicaShards().get(0);
+        assertThat(primary.started(), Matchers.equalTo(true));
+        assertThat(replica.started(), Matchers.equalTo(true));
+
+        // the primary copy serves all the queries, both copies index the same documents
+        ClusterInfo clusterInfo = new ClusterInfo(ImmutableMap.<String, DiskUsage>of(), ImmutableMap.<String, Long>of(),
+                ImmutableMap.of(ClusterInfo.shardIdentifierFromRouting(primary), 100.0, ClusterInfo.shardIdentifierFromRouting(replica), 0.0),
+                ImmutableMap.of(ClusterInfo.shardIdentifierFromRouting(primary), 10.0, ClusterInfo.shardIdentifierFromRouting(replica), 10.0));
+        RoutingAllocation allocation = new RoutingAllocation(new AllocationDeciders(settings, new NodeSettingsService(settings)),
+                clusterState.routingNodes(), clusterState.nodes(), clusterInfo);
+        BalancedShardsAllocator.Balancer balancer = new BalancedShardsAllocator.Balancer(logger, allocation,
+                new BalancedShardsAllocator.WeightFunction(0.45f, 0.5f, 0.05f, 0.0f, 1.0f), 1.0f);
+
+        assertThat(balancer.hasLoad(), Matchers.equalTo(true));
+        assertThat(balancer.avgLoadPerNode(), Matchers.equalTo(1.0f));
+        assertThat(balancer.shardLoad(primary), Matchers.equalTo(1.5f));
+        assertThat(balancer.shardLoad(replica), Matchers.equalTo(0.5f));
+    }
+
+    @Test
+    public void testHotShardsAreSeparated() {
+        Settings settings = settingsBuilder()
+                .put(BalancedShardsAllocator.SETTING_LOAD_BALANCE_FACTOR, 1.0f)
+                .put(BalancedShardsAllocator.SETTING_THRESHOLD, 1.0f)
+                .build();
+        final ClusterInfo[] clusterInfo = new ClusterInfo[] { ClusterInfo.EMPTY };
+        AllocationService strategy = new AllocationService(settings, new AllocationDeciders(settings,
+                new NodeSettingsService(settings)), new ShardsAllocators(settings), new ClusterInfoService() {
+            @Override
+            public ClusterInfo getClusterInfo() {
+                return clusterInfo[0];
+            }
+
+            @Override
+            public void addListener(Listener listener) {
+            }
+        });
+        MetaData metaData = newMetaDataBuilder()
+                .put(newIndexMetaDataBuilder("test").numberOfShards(4).numberOfReplicas(0))
+                .build();
+        RoutingTable routingTable = routingTable().addAsNew(metaData.index("test")).build();
+        ClusterState clusterState = newClusterStateBuilder().metaData(metaData).routingTable(routingTable)
+                .nodes(newNodesBuilder().put(newNode("node1")).put(newNode("node2"))).build();
+        clusterState = startInitializingShards(strategy, newClusterStateBuilder().state(clusterState).routingTable(strategy.reroute(clusterState).routingTable()).build());
+        assertThat(clusterState.routingNodes().node("node1").numberOfShardsWithState(STARTED), Matchers.equalTo(2));
+        assertThat(clusterState.routingNodes().node("node2").numberOfShardsWithState(STARTED), Matchers.equalTo(2));
+
+        logger.info("both shards on node1 become hot");
+        ImmutableMap.Builder<String, Double> searchRates = ImmutableMap.builder();
+        ImmutableMap.Builder<String, Double> indexingRates = ImmutableMap.builder();
+        Set<Integer> hotShards = new HashSet<Integer>();
+        for (MutableShardRouting shard : clusterState.routingNodes().shardsWithState(STARTED)) {
+            boolean hot = shard.currentNodeId().equals("node1");
+            if (hot) {
+                hotShards.add(shard.id());
+            }
+            searchRates.put(ClusterInfo.shardIdentifierFromRouting(shard), hot ? 100.0 : 0.0);
+            indexingRates.put(ClusterInfo.shardIdentifierFromRouting(shard), 0.0);
+        }
+        clusterInfo[0] = new ClusterInfo(ImmutableMap.<String, DiskUsage>of(), ImmutableMap.<String, Long>of(),
+                searchRates.build(), indexingRates.build());
+
+        routingTable = strategy.reroute(clusterState).routingTable();
+        clusterState = newClusterStateBuilder().state(clusterState).routingTable(routingTable).build();
+        assertThat(clusterState.routingNodes().node("node1").numberOfShardsWithState(RELOCATING), Matchers.equalTo(1));
+        clusterState = startInitializingShards(strategy, clusterState);
+
+        logger.info("each node holds one hot shard and the cluster stays put");
+        for (String node : new String[] { "node1", "node2" }) {
+            int hot = 0;
+            for (MutableShardRouting shard : clusterState.routingNodes().node(node)) {
+                if (hotShards.contains(shard.id())) {
+                    hot++;
+                }
+            }
+            assertThat(hot, Matchers.equalTo(1));
+        }
+        assertThat(strategy.reroute(clusterState).changed(), Matchers.equalTo(false));
+    }
+
+    private static ClusterState startInitializingShards(AllocationService strategy, ClusterState clusterState) {
+        RoutingTable routingTable = strategy.applyStartedShards(clusterState, clusterState.routingNodes().shardsWithState(INITIALIZING)).routingTable();
+        return newClusterStateBuilder().state(clusterState).routingTable(routingTable).build();
     }
     
     @Test
@@ -460,7 +575,7 @@ public class BalanceConfigurationTests {
                         unassigned.clear();
                         return changed;
                     }
-                }));
+                }), EmptyClusterInfoService.INSTANCE);
         MetaData.Builder metaDataBuilder = newMetaDataBuilder();
         RoutingTable.Builder routingTableBuilder = routingTable();
         IndexMetaData.Builder indexMeta = newIndexMetaDataBuilder("test").numberOfShards(5).numberOfReplicas(1);
@@ -0,0 +1,210 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.cluster.routing.allocation;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.cluster.ClusterInfo;
+import org.elasticsearch.cluster.ClusterInfoService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.DiskUsage;
+import org.elasticsearch.cluster.InternalClusterInfoService;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.routing.MutableShardRouting;
+import org.elasticsearch.cluster.routing.RoutingTable;
+import org.elasticsearch.cluster.routing.allocation.AllocationService;
+import org.elasticsearch.cluster.routing.allocation.allocator.ShardsAllocators;
+import org.elasticsearch.cluster.routing.allocation.decider.AllocationDeciders;
+import org.elasticsearch.cluster.routing.allocation.decider.DiskThresholdDecider;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.node.settings.NodeSettingsService;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.cluster.ClusterState.newClusterStateBuilder;
+import static org.elasticsearch.cluster.metadata.IndexMetaData.newIndexMetaDataBuilder;
+import static org.elasticsearch.cluster.metadata.MetaData.newMetaDataBuilder;
+import static org.elasticsearch.cluster.node.DiscoveryNodes.newNodesBuilder;
+import static org.elasticsearch.cluster.routing.RoutingBuilders.routingTable;
+import static org.elasticsearch.cluster.routing.ShardRoutingState.*;
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.test.unit.cluster.routing.allocation.RoutingAllocationTests.newNode;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ */
+@Test
+public class DiskThresholdDeciderTests {
+
+    private final ESLogger logger = Loggers.getLogger(DiskThresholdDeciderTests.class);
+
+    static class StaticClusterInfoService implements ClusterInfoService {
+
+        volatile ClusterInfo clusterInfo = ClusterInfo.EMPTY;
+
+        @Override
+        public ClusterInfo getClusterInfo() {
+            return clusterInfo;
+        }
+
+        @Override
+        public void addListener(Listener listener) {
+        }
+    }
+
+    private static AllocationService newStrategy(Settings settings, ClusterInfoService clusterInfoService) {
+        return new AllocationService(settings, new AllocationDeciders(settings, new NodeSettingsService(settings)),
+                new ShardsAllocators(settings), clusterInfoService);
+    }
+
+    @Test
+    public void diskThresholdAllocate() {
+        Settings settings = settingsBuilder()
+                .put("cluster.routing.allocation.concurrent_recoveries", 10)
+                .put(DiskThresholdDecider.CLUSTER_ROUTING_ALLOCATION_DISK_THRESHOLD_ENABLED, true)
+                .put(DiskThresholdDecider.CLUSTER_ROUTING_ALLOCATION_LOW_DISK_WATERMARK, "70%")
+                .put(DiskThresholdDecider.CLUSTER_ROUTING_ALLOCATION_HIGH_DISK_WATERMARK, 0.85)
+                .build();
+        StaticClusterInfoService clusterInfoService = new StaticClusterInfoService();
+        clusterInfoService.clusterInfo = new ClusterInfo(ImmutableMap.of(
+                "node1", new DiskUsage("node1", 100, 20), // 80% used, over the low watermark
+                "node2", new DiskUsage("node2", 100, 80)),
+                ImmutableMap.<String, Long>of());
+        AllocationService strategy = newStrategy(settings, clusterInfoService);
+
+        MetaData metaData = newMetaDataBuilder()
+                .put(newIndexMetaDataBuilder("test").settings(ImmutableSettings.settingsBuilder()
+                        .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 4)
+                        .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)))
+                .build();
+        RoutingTable routingTable = routingTable().addAsNew(metaData.index("test")).build();
+        ClusterState clusterState = newClusterStateBuilder().metaData(metaData).routingTable(routingTable).build();
+
+        logger.info("Adding two nodes and performing rerouting");
+        clusterState = newClusterStateBuilder().state(clusterState).nodes(newNodesBuilder().put(newNode("node1")).put(newNode("node2"))).build();
+        routingTable = strategy.reroute(clusterState).routingTable();
+        clusterState = newClusterStateBuilder().state(clusterState).routingTable(routingTable).build();
+
+        assertThat(clusterState.readOnlyRoutingNodes().node("node1").numberOfShardsWithState(INITIALIZING), equalTo(0));
+        assertThat(clusterState.readOnlyRoutingNodes().node("node2").numberOfShardsWithState(INITIALIZING), equalTo(4));
+    }
+
+    @Test
+    public void diskThresholdRemain() {
+        Settings settings = settingsBuilder()
+                .put("cluster.routing.allocation.concurrent_recoveries", 10)
+                .put(DiskThresholdDecider.CLUSTER_ROUTING_ALLOCATION_DISK_THRESHOLD_ENABLED, true)
+                .build();
+        StaticClusterInfoService clusterInfoService = new StaticClusterInfoService();
+        clusterInfoService.clusterInfo = new ClusterInfo(ImmutableMap.of(
+                "node1", new DiskUsage("node1", 100, 80),
+                "node2", new DiskUsage("node2", 100, 80)),
+                ImmutableMap.<String, Long>of());
+        AllocationService strategy = newStrategy(settings, clusterInfoService);
+
+        MetaData metaData = newMetaDataBuilder()
+                .put(newIndexMetaDataBuilder("test").settings(ImmutableSettings.settingsBuilder()
+                        .put(IndexMetaData.SETTING_NUMBER_OF_SHARDS, 2)
+                        .put(IndexMetaData.SETTING_NUMBER_OF_REPLICAS, 0)))
+                .build();
+        RoutingTable routingTable = routingTable().addAsNew(metaData.index("test")).build();
+        ClusterState clusterState = newClusterStateBuilder().metaData(metaData).routingTable(routingTable).build();
+
+        logger.info("Adding two nodes, allocating and starting the shards");
+        clusterState = newClusterStateBuilder().state(clusterState).nodes(newNodesBuilder().put(newNode("node1")).put(newNode("node2"))).build();
+        routingTable = strategy.reroute(clusterState).routingTable();
+        clusterState = newClusterStateBuilder().state(clusterState).routingTable(routingTable).build();
+        routingTable = strategy.applyStartedShards(clusterState, clusterState.routingNodes().shardsWithState(INITIALIZING)).routingTable();
+        clusterState = newClusterStateBuilder().state(clusterState).routingTable(routingTable).build();
+
+        assertThat(clusterState.readOnlyRoutingNodes().node("node1").numberOfShardsWithState(STARTED), equalTo(1));
+        assertThat(clusterState.readOnlyRoutingNodes().node("node2").numberOfShardsWithState(STARTED), equalTo(1));
+
+        logger.info("node1 goes over the high watermark, its shard should move away");
+        ImmutableMap.Builder<String, Long> shardSizes = ImmutableMap.builder();
+        for (MutableShardRouting shard : clusterState.routingNodes().shardsWithState(STARTED)) {
+            shardSizes.put(ClusterInfo.shardIdentifierFromRouting(shard), 5l);
+        }
+        clusterInfoService.clusterInfo = new ClusterInfo(ImmutableMap.of(
+                "node1", new DiskUsage("node1", 100, 10), // 90% used
+                "node2", new DiskUsage("node2", 100, 80)),
+                shardSizes.build());
+        routingTable = strategy.reroute(clusterState).routingTable();
+        clusterState = newClusterStateBuilder().state(clusterState).routingTable(routingTable).build();
+
+        assertThat(clusterState.readOnlyRoutingNodes().node("node1").numberOfShardsWithState(RELOCATING), equalTo(1));
+        assertThat(clusterState.readOnlyRoutingNodes().node("node2").numberOfShardsWithState(STARTED), equalTo(1));
+        assertThat(clusterState.readOnlyRoutingNodes().node("node2").numberOfShardsWithState(INITIALIZING), equalTo(1));
+
+        logger.info("Start the relocated shard, node1 should stay empty");
+        routingTable = strategy.applyStartedShards(clusterState, clusterState.routingNodes().shardsWithState(INITIALIZING)).routingTable();
+        clusterState = newClusterStateBuilder().state(clusterState).routingTable(routingTable).build();
+
+        assertThat(clusterState.readOnlyRoutingNodes().node("node1").shards().size(), equalTo(0));
+        assertThat(clusterState.readOnlyRoutingNodes().node("node2").numberOfShardsWithState(STARTED), equalTo(2));
+    }
+
+    @Test
+    public void testWatermarkCrossed() {
+        ClusterInfo under = new ClusterInfo(ImmutableMap.of("node1", new DiskUsage("node1", 100, 50)), ImmutableMap.<String, Long>of());
+        ClusterInfo stillUnder = new ClusterInfo(ImmutableMap.of("node1", new DiskUsage("node1", 100, 40)), ImmutableMap.<String, Long>of());
+        ClusterInfo overLow = new ClusterInfo(ImmutableMap.of("node1", new DiskUsage("node1", 100, 25)), ImmutableMap.<String, Long>of());
+        ClusterInfo overHigh = new ClusterInfo(ImmutableMap.of("node1", new DiskUsage("node1", 100, 10)), ImmutableMap.<String, Long>of());
+
+        // usage changes within the same band don't require a reroute
+        assertThat(InternalClusterInfoService.watermarkCrossed(under, stillUnder, 0.7, 0.85), equalTo(false));
+        assertThat(InternalClusterInfoService.watermarkCrossed(under, overLow, 0.7, 0.85), equalTo(true));
+        assertThat(InternalClusterInfoService.watermarkCrossed(overLow, overHigh, 0.7, 0.85), equalTo(true));
+        assertThat(InternalClusterInfoService.watermarkCrossed(overHigh, overLow, 0.7, 0.85), equalTo(true));
+        assertThat(InternalClusterInfoService.watermarkCrossed(overHigh, overHigh, 0.7, 0.85), equalTo(false));
+        // a node seen for the first time over a watermark
+        assertThat(InternalClusterInfoService.watermarkCrossed(ClusterInfo.EMPTY, overLow, 0.7, 0.85), equalTo(true));
+        assertThat(InternalClusterInfoService.watermarkCrossed(ClusterInfo.EMPTY, under, 0.7, 0.85), equalTo(false));
+    }
+
+    @Test
+    public void testSameInfo() {
+        ClusterInfo info = new ClusterInfo(ImmutableMap.of("node1", new DiskUsage("node1", 100, 50)), ImmutableMap.of("[test][0][node1]", 10l));
+        ClusterInfo sameInfo = new ClusterInfo(ImmutableMap.of("node1", new DiskUsage("node1", 100, 50)), ImmutableMap.of("[test][0][node1]", 10l));
+        ClusterInfo otherUsage = new ClusterInfo(ImmutableMap.of("node1", new DiskUsage("node1", 100, 40)), ImmutableMap.of("[test][0][node1]", 10l));
+        ClusterInfo otherSize = new ClusterInfo(ImmutableMap.of("node1", new DiskUsage("node1", 100, 50)), ImmutableMap.of("[test][0][node1]", 20l));
+
+        // an unchanged info is kept as is, so the allocation decision cache stays valid
+        assertThat(InternalClusterInfoService.sameInfo(info, sameInfo), equalTo(true));
+        assertThat(InternalClusterInfoService.sameInfo(info, otherUsage), equalTo(false));
+        assertThat(InternalClusterInfoService.sameInfo(info, otherSize), equalTo(false));
+        assertThat(InternalClusterInfoService.sameInfo(ClusterInfo.EMPTY, new ClusterInfo(ImmutableMap.<String, DiskUsage>of(), ImmutableMap.<String, Long>of())), equalTo(true));
+    }
+
+    @Test
+    public void testWatermarkValidator() {
+        String setting = DiskThresholdDecider.CLUSTER_ROUTING_ALLOCATION_LOW_DISK_WATERMARK;
+        assertThat(DiskThresholdDecider.WATERMARK_VALIDATOR.validate(setting, "0.7"), nullValue());
+        assertThat(DiskThresholdDecider.WATERMARK_VALIDATOR.validate(setting, "70%"), nullValue());
+        assertThat(DiskThresholdDecider.WATERMARK_VALIDATOR.validate(setting, "1.5"), notNullValue());
+        assertThat(DiskThresholdDecider.WATERMARK_VALIDATOR.validate(setting, "120%"), notNullValue());
+        assertThat(DiskThresholdDecider.WATERMARK_VALIDATOR.validate(setting, "lots"), notNullValue());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.common.compress;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.compress.Compressor;
+import org.elasticsearch.common.compress.CompressorFactory;
+import org.elasticsearch.common.compress.lz4.LZ4;
+import org.elasticsearch.common.compress.lz4.LZ4Compressor;
+import org.elasticsearch.common.compress.lzf.LZFCompressor;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ */
+public class LZ4CompressorTests {
+
+    @Test
+    public void testCompressUncompress() throws Exception {
+        Compressor compressor = CompressorFactory.compressor(LZ4Compressor.TYPE);
+        assertThat(compressor, instanceOf(LZ4Compressor.class));
+
+        Random random = newRandom("testCompressUncompress");
+        for (int length : new int[]{0, 1, 12, 13, 100, 65535, 65536, 65537, 300000}) {
+            byte[] data = randomData(random, length);
+            byte[] compressed = compressor.compress(data, 0, data.length);
+            assertThat(compressor.isCompressed(compressed, 0, compressed.length), equalTo(true));
+            assertThat(CompressorFactory.compressor(compressed), sameInstance(compressor));
+            assertThat(compressor.uncompress(compressed, 0, compressed.length), equalTo(data));
+        }
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        Compressor compressor = CompressorFactory.compressor(LZ4Compressor.TYPE);
+        byte[] data = randomData(newRandom("testStreams"), 200000);
+
+        BytesStreamOutput bytes = new BytesStreamOutput();
+        StreamOutput out = compressor.streamOutput(bytes);
+        out.writeVInt(data.length);
+        // mix of small and large writes, crossing the chunks
+        out.writeBytes(data, 0, 10);
+        for (int i = 10; i < 1000; i++) {
+            out.writeByte(data[i]);
+        }
+        out.writeBytes(data, 1000, data.length - 1000);
+        out.close();
+
+        BytesReference compressed = bytes.bytes();
+        assertThat(compressed.length(), lessThan(data.length));
+        assertThat(CompressorFactory.compressor(compressed), sameInstance(compressor));
+
+        StreamInput in = compressor.streamInput(compressed.streamInput());
+        byte[] read = new byte[in.readVInt()];
+        in.readBytes(read, 0, read.length);
+        assertThat(in.read(), equalTo(-1));
+        in.close();
+        assertThat(read, equalTo(data));
+    }
+
+    @Test
+    public void testDetection() throws Exception {
+        byte[] data = randomData(newRandom("testDetection"), 1000);
+        byte[] lzf = CompressorFactory.compressor(LZFCompressor.TYPE).compress(data, 0, data.length);
+        assertThat(CompressorFactory.compressor(lzf), instanceOf(LZFCompressor.class));
+        assertThat(CompressorFactory.uncompressIfNeeded(new BytesArray(lzf)).toBytes(), equalTo(data));
+        assertThat(CompressorFactory.isCompressed("{\"field\":\"value\"}".getBytes("UTF-8")), equalTo(false));
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        Random random = newRandom("testTruncated");
+        Compressor compressor = CompressorFactory.compressor(LZ4Compressor.TYPE);
+        byte[] data = randomData(random, 100000);
+        byte[] compressed = compressor.compress(data, 0, data.length);
+        for (int i = 0; i < 100; i++) {
+            // keep the header, so the data is still detected as lz4
+            int length = 4 + random.nextInt(compressed.length - 4);
+            try {
+                // a stream truncated right after a chunk reads as a shorter stream
+                assertThat(compressor.uncompress(compressed, 0, length).length, lessThan(data.length));
+            } catch (IOException e) {
+                // all is well
+            }
+        }
+
+        byte[] block = new byte[LZ4.maxCompressedLength(data.length)];
+        int blockLength = LZ4.compress(data, 0, data.length, block, 0, LZ4.newHashTable());
+        for (int i = 0; i < 100; i++) {
+            int length = random.nextInt(blockLength);
+            try {
+                LZ4.decompress(block, 0, length, new byte[data.length], 0, data.length);
+                assert false : "truncated to [" + length + "] out of [" + blockLength + "] bytes";
+            } catch (IOException e) {
+                // all is well
+            }
+        }
+    }
+
+    @Test
+    public void testCorrupted() throws Exception {
+        Random random = newRandom("testCorrupted");
+        Compressor compressor = CompressorFactory.compressor(LZ4Compressor.TYPE);
+        byte[] data = randomData(random, 100000);
+        byte[] compressed = compressor.compress(data, 0, data.length);
+        byte[] block = new byte[LZ4.maxCompressedLength(data.length)];
+        int blockLength = LZ4.compress(data, 0, data.length, block, 0, LZ4.newHashTable());
+        for (int i = 0; i < 1000; i++) {
+            // corrupted data either fails with an IOException or decompresses into other data, but never reads or
+            // writes out of bounds
+            byte[] corrupted = corrupt(random, compressed, 4, compressed.length);
+            try {
+                compressor.uncompress(corrupted, 0, corrupted.length);
+            } catch (IOException e) {
+                // all is well
+            }
+
+            corrupted = corrupt(random, block, 0, blockLength);
+            try {
+                LZ4.decompress(corrupted, 0, blockLength, new byte[data.length], 0, data.length);
+            } catch (IOException e) {
+                // all is well
+            }
+        }
+    }
+
+    // flips a few bytes between from (inclusive) and to (exclusive) of a copy of the data
+    private static byte[] corrupt(Random random, byte[] data, int from, int to) {
+        byte[] corrupted = Arrays.copyOf(data, data.length);
+        int count = 1 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            int position = from + random.nextInt(to - from);
+            corrupted[position] = (byte) (corrupted[position] ^ (1 + random.nextInt(255)));
+        }
+        return corrupted;
+    }
+
+    private static Random newRandom(String test) {
+        long seed = System.currentTimeMillis();
+        System.out.println("SEED[" + test + "]: " + seed);
+        return new Random(seed);
+    }
+
+    // repetitive, json like, data
+    private static byte[] randomData(Random random, int length) {
+        byte[] data = new byte[length];
+        String[] words = {"{\"field\":", "\"value\"", ",", "}", "\"user\":", "kimchy", "elasticsearch"};
+        int i = 0;
+        while (i < length) {
+            if (random.nextInt(10) == 0) {
+                data[i++] = (byte) random.nextInt();
+            } else {
+                byte[] word = words[random.nextInt(words.length)].getBytes();
+                for (int j = 0; j < word.length && i < length; j++) {
+                    data[i++] = word[j];
+                }
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.test.unit.common.io.streams;
+
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.netty.PooledChannelBufferStreamOutput;
+import org.elasticsearch.common.network.NetworkBufferPool;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.testng.annotations.Test;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+@Test
+public class PooledChannelBufferStreamsTests {
+
+    @Test
+    public void testWriteAcrossPages() throws Exception {
+        NetworkBufferPool pool = new NetworkBufferPool(settingsBuilder().put("network.buffer_pool.page_size", "32b").build());
+        PooledChannelBufferStreamOutput out = new PooledChannelBufferStreamOutput(pool);
+        out.skip(4);
+        for (int i = 0; i < 100; i++) {
+            out.writeVInt(i);
+        }
+        out.writeString("hello across pages");
+        assertThat(pool.acquiredPages() > 1, equalTo(true));
+
+        ChannelBuffer buffer = out.toChannelBuffer();
+        assertThat(buffer.readableBytes(), equalTo(out.size()));
+        buffer.setInt(0, 42);
+
+        byte[] bytes = new byte[buffer.readableBytes()];
+        buffer.getBytes(0, bytes);
+        BytesStreamInput in = new BytesStreamInput(bytes, false);
+        assertThat(in.readInt(), equalTo(42));
+        for (int i = 0; i < 100; i++) {
+            assertThat(in.readVInt(), equalTo(i));
+        }
+        assertThat(in.readString(), equalTo("hello across pages"));
+    }
+
+    @Test
+    public void testPagesReleasedOnLastReference() throws Exception {
+        NetworkBufferPool pool = new NetworkBufferPool(settingsBuilder().put("network.buffer_pool.page_size", "16b").build());
+        PooledChannelBufferStreamOutput out = new PooledChannelBufferStreamOutput(pool);
+        out.writeBytes(new byte[40]);
+        assertThat(pool.pooledPages(), equalTo(0));
+
+        out.incRef();
+        out.decRef();
+        assertThat(pool.pooledPages(), equalTo(0));
+        out.decRef();
+        assertThat(pool.pooledPages(), equalTo(3));
+
+        // pooled pages get reused
+        PooledChannelBufferStreamOutput other = new PooledChannelBufferStreamOutput(pool);
+        other.writeBytes(new byte[20]);
+        assertThat(pool.pooledPages(), equalTo(1));
+        assertThat(pool.allocatedPages(), equalTo(3l));
+    }
+}
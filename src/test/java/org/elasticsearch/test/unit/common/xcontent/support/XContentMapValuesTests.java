@@ -211,4 +211,38 @@ public class XContentMapValuesTests {
 
         assertThat(mapTuple.v2(), equalTo(filteredSource));
     }
+
+    @Test
+    public void testFilterFromParserMatchesFilterFromMap() throws Exception {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject()
+                .startObject("path1")
+                .startArray("path2")
+                .startObject().field("test", "value1").field("other", "value3").endObject()
+                .startObject().field("test", "value2").endObject()
+                .endArray()
+                .field("path3", 1)
+                .endObject()
+                .field("test1", "value1")
+                .array("test2", "value2", "value3")
+                .startObject("empty").endObject()
+                .endObject();
+
+        Map<String, Object> source = XContentFactory.xContent(XContentType.JSON).createParser(builder.string()).mapAndClose();
+        String[][][] filters = new String[][][]{
+                {Strings.EMPTY_ARRAY, Strings.EMPTY_ARRAY},
+                {new String[]{"test1"}, Strings.EMPTY_ARRAY},
+                {new String[]{"test*"}, Strings.EMPTY_ARRAY},
+                {new String[]{"path1"}, Strings.EMPTY_ARRAY},
+                {new String[]{"path1", "path1.*"}, Strings.EMPTY_ARRAY},
+                {new String[]{"path1.path2.*"}, Strings.EMPTY_ARRAY},
+                {new String[]{"path1.*"}, new String[]{"path1.path2.other"}},
+                {Strings.EMPTY_ARRAY, new String[]{"path1"}},
+        };
+        for (String[][] filter : filters) {
+            Map<String, Object> expected = XContentMapValues.filter(source, filter[0], filter[1]);
+            Map<String, Object> filtered = XContentMapValues.filter(XContentFactory.xContent(XContentType.JSON).createParser(builder.string()), filter[0], filter[1]);
+            assertThat(filtered, equalTo(expected));
+            assertThat(XContentHelper.convertToFilteredMap(builder.bytes(), filter[0], filter[1]), equalTo(expected));
+        }
+    }
 }
@@ -0,0 +1,179 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.http.netty;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.http.netty.pipelining.HttpPipeliningHandler;
+import org.elasticsearch.http.netty.pipelining.OrderedDownstreamMessage;
+import org.elasticsearch.http.netty.pipelining.OrderedUpstreamMessageEvent;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class HttpPipeliningHandlerTests {
+
+    private HashedWheelTimer timer;
+    private ServerBootstrap serverBootstrap;
+    private ClientBootstrap clientBootstrap;
+    private Channel serverChannel;
+    private Channel clientChannel;
+
+    private final BlockingQueue<OrderedUpstreamMessageEvent> requests = new LinkedBlockingQueue<OrderedUpstreamMessageEvent>();
+    private final List<Object> responses = new CopyOnWriteArrayList<Object>();
+
+    private void start(final TimeValue timeout) {
+        timer = new HashedWheelTimer();
+        serverBootstrap = new ServerBootstrap(new DefaultLocalServerChannelFactory());
+        serverBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() throws Exception {
+                return Channels.pipeline(new HttpPipeliningHandler(10000, timer, timeout), new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+                        requests.add((OrderedUpstreamMessageEvent) e);
+                    }
+                });
+            }
+        });
+        LocalAddress address = new LocalAddress(LocalAddress.EPHEMERAL);
+        serverChannel = serverBootstrap.bind(address);
+
+        clientBootstrap = new ClientBootstrap(new DefaultLocalClientChannelFactory());
+        clientBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+            @Override
+            public ChannelPipeline getPipeline() throws Exception {
+                return Channels.pipeline(new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+                        responses.add(e.getMessage());
+                    }
+                });
+            }
+        });
+        clientChannel = clientBootstrap.connect(address).awaitUninterruptibly().getChannel();
+    }
+
+    @BeforeMethod
+    public void clear() {
+        requests.clear();
+        responses.clear();
+    }
+
+    @AfterMethod
+    public void stop() {
+        if (clientChannel != null) {
+            clientChannel.close().awaitUninterruptibly();
+        }
+        if (serverChannel != null) {
+            serverChannel.close().awaitUninterruptibly();
+        }
+        clientBootstrap.releaseExternalResources();
+        serverBootstrap.releaseExternalResources();
+        timer.stop();
+    }
+
+    private OrderedUpstreamMessageEvent[] sendRequests(int count) throws Exception {
+        OrderedUpstreamMessageEvent[] events = new OrderedUpstreamMessageEvent[count];
+        for (int i = 0; i < count; i++) {
+            clientChannel.write(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/" + i));
+            events[i] = requests.poll(10, TimeUnit.SECONDS);
+            assertThat(events[i], notNullValue());
+            assertThat(events[i].getSequence(), equalTo(i));
+        }
+        return events;
+    }
+
+    private ChannelFuture respond(OrderedUpstreamMessageEvent event, String response) {
+        return event.getChannel().write(new OrderedDownstreamMessage(event, response));
+    }
+
+    @Test
+    public void testResponsesAreWrittenInRequestOrder() throws Exception {
+        start(TimeValue.timeValueSeconds(60));
+        OrderedUpstreamMessageEvent[] events = sendRequests(3);
+
+        ChannelFuture future2 = respond(events[2], "2");
+        ChannelFuture future1 = respond(events[1], "1");
+        assertThat(future1.isDone(), equalTo(false));
+        assertThat(future2.isDone(), equalTo(false));
+        respond(events[0], "0").awaitUninterruptibly();
+
+        assertThat(future1.awaitUninterruptibly(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(future2.awaitUninterruptibly(10, TimeUnit.SECONDS), equalTo(true));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (responses.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(responses, contains((Object) "0", "1", "2"));
+    }
+
+    @Test
+    public void testHeldAndLateResponsesFailOnClose() throws Exception {
+        start(TimeValue.timeValueSeconds(60));
+        OrderedUpstreamMessageEvent[] events = sendRequests(2);
+
+        ChannelFuture held = respond(events[1], "1");
+        events[0].getChannel().close().awaitUninterruptibly();
+
+        assertThat(held.awaitUninterruptibly(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(held.isSuccess(), equalTo(false));
+
+        ChannelFuture late = respond(events[0], "0");
+        assertThat(late.awaitUninterruptibly(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(late.isSuccess(), equalTo(false));
+    }
+
+    @Test
+    public void testResponseAtHeadTimesOut() throws Exception {
+        start(TimeValue.timeValueMillis(200));
+        OrderedUpstreamMessageEvent[] events = sendRequests(2);
+
+        // the first request never gets a response
+        ChannelFuture held = respond(events[1], "1");
+
+        assertThat(held.awaitUninterruptibly(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(held.isSuccess(), equalTo(false));
+        assertThat(events[0].getChannel().getCloseFuture().awaitUninterruptibly(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(responses.isEmpty(), equalTo(true));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.http.netty;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.http.netty.NettyChunkedResponseStream;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class NettyChunkedResponseStreamTests {
+
+    @Test
+    public void testChunking() throws Exception {
+        RecordingStream stream = new RecordingStream(8, TimeValue.timeValueSeconds(10), true);
+        stream.start("headers");
+        stream.write(new byte[20], 0, 20);
+        stream.close();
+
+        assertThat(stream.messages.size(), equalTo(5));
+        assertThat(stream.messages.get(0), equalTo((Object) "headers"));
+        assertThat(chunkSize(stream.messages.get(1)), equalTo(8));
+        assertThat(chunkSize(stream.messages.get(2)), equalTo(8));
+        assertThat(chunkSize(stream.messages.get(3)), equalTo(4));
+        assertThat(stream.messages.get(4), sameInstance((Object) HttpChunk.LAST_CHUNK));
+    }
+
+    @Test
+    public void testWaitsForPreviousChunkToBeWritten() throws Exception {
+        final RecordingStream stream = new RecordingStream(8, TimeValue.timeValueSeconds(10), false);
+        stream.start("headers");
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    stream.write(new byte[20], 0, 20);
+                } catch (Throwable t) {
+                    failure.set(t);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        writer.start();
+
+        // the first chunk waits for the headers to be written
+        assertThat(done.await(200, TimeUnit.MILLISECONDS), equalTo(false));
+        assertThat(stream.messages.size(), equalTo(1));
+
+        stream.futures.get(0).setSuccess();
+        // and the second one for the first one
+        assertThat(done.await(200, TimeUnit.MILLISECONDS), equalTo(false));
+        assertThat(stream.messages.size(), equalTo(2));
+
+        stream.futures.get(1).setSuccess();
+        assertThat(done.await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(failure.get(), nullValue());
+        assertThat(stream.messages.size(), equalTo(3));
+    }
+
+    @Test
+    public void testWriteTimeout() throws Exception {
+        RecordingStream stream = new RecordingStream(8, TimeValue.timeValueMillis(100), false);
+        stream.start("headers");
+        try {
+            stream.write(new byte[9], 0, 9);
+            assert false : "expected a timeout";
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("timed out"));
+        }
+        stream.abort();
+        assertThat(stream.channelClosed, equalTo(true));
+    }
+
+    @Test
+    public void testFailedWrite() throws Exception {
+        RecordingStream stream = new RecordingStream(8, TimeValue.timeValueSeconds(10), false);
+        stream.start("headers");
+        stream.futures.get(0).setFailure(new IOException("connection reset"));
+        try {
+            stream.write(new byte[9], 0, 9);
+            assert false : "expected a failure";
+        } catch (IOException e) {
+            assertThat(e.getCause().getMessage(), equalTo("connection reset"));
+        }
+    }
+
+    private static int chunkSize(Object message) {
+        return ((HttpChunk) message).getContent().readableBytes();
+    }
+
+    static class RecordingStream extends NettyChunkedResponseStream {
+
+        final List<Object> messages = new CopyOnWriteArrayList<Object>();
+        final List<DefaultChannelFuture> futures = new CopyOnWriteArrayList<DefaultChannelFuture>();
+        final boolean autoComplete;
+        volatile boolean channelClosed;
+
+        RecordingStream(int chunkSize, TimeValue writeTimeout, boolean autoComplete) {
+            super(null, null, chunkSize, false, writeTimeout);
+            this.autoComplete = autoComplete;
+        }
+
+        @Override
+        protected ChannelFuture write(Object message) {
+            DefaultChannelFuture future = new DefaultChannelFuture(null, false);
+            if (autoComplete) {
+                future.setSuccess();
+            }
+            messages.add(message);
+            futures.add(future);
+            return future;
+        }
+
+        @Override
+        protected void closeChannel() {
+            channelClosed = true;
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.elasticsearch.test.unit.index.codec;
 
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.compressing.CompressingStoredFieldsFormat;
 import org.apache.lucene.codecs.bloom.BloomFilteringPostingsFormat;
 import org.apache.lucene.codecs.lucene40.Lucene40Codec;
 import org.apache.lucene.codecs.lucene41.Lucene41Codec;
@@ -29,7 +30,15 @@ import org.apache.lucene.codecs.memory.MemoryPostingsFormat;
 import org.apache.lucene.codecs.perfield.PerFieldPostingsFormat;
 import org.apache.lucene.codecs.pulsing.Pulsing41PostingsFormat;
 import org.apache.lucene.codecs.simpletext.SimpleTextCodec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.store.RAMDirectory;
 import org.elasticsearch.common.inject.Injector;
+import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.inject.ModulesBuilder;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
@@ -40,6 +49,8 @@ import org.elasticsearch.index.IndexNameModule;
 import org.elasticsearch.index.analysis.AnalysisModule;
 import org.elasticsearch.index.codec.CodecModule;
 import org.elasticsearch.index.codec.CodecService;
+import org.elasticsearch.index.codec.CompressedStoredFieldsCodec;
+import org.elasticsearch.index.codec.HighCompressionCodec;
 import org.elasticsearch.index.codec.PerFieldMappingPostingFormatCodec;
 import org.elasticsearch.index.codec.postingsformat.*;
 import org.elasticsearch.index.mapper.DocumentMapper;
@@ -65,6 +76,48 @@ public class CodecTests {
         assertThat(codecService.codec("SimpleText"), instanceOf(SimpleTextCodec.class));
     }
 
+    @Test
+    public void testResolveStoredFieldsCompression() throws Exception {
+        CodecService codecService = createCodecService(ImmutableSettings.settingsBuilder()
+                .put(CompressedStoredFieldsCodec.CHUNK_SIZE, "64kb")
+                .build());
+        assertThat(codecService.codec("default"), instanceOf(CompressedStoredFieldsCodec.class));
+        // same formats as the default codec, with bigger chunks
+        assertThat(codecService.codec("default").getName(), equalTo(Codec.getDefault().getName()));
+        assertThat(codecService.codec("default").storedFieldsFormat(), instanceOf(CompressingStoredFieldsFormat.class));
+
+        codecService = createCodecService(ImmutableSettings.settingsBuilder()
+                .put(CompressedStoredFieldsCodec.COMPRESSION, "high")
+                .build());
+        assertThat(codecService.codec("default"), instanceOf(HighCompressionCodec.class));
+        assertThat(codecService.codec("default").getName(), equalTo(HighCompressionCodec.CODEC_NAME));
+        assertThat(codecService.codec(HighCompressionCodec.CODEC_NAME), instanceOf(HighCompressionCodec.class));
+    }
+
+    @Test
+    public void testHighCompressionRoundTrip() throws Exception {
+        CodecService codecService = createCodecService(ImmutableSettings.settingsBuilder()
+                .put(CompressedStoredFieldsCodec.COMPRESSION, "high")
+                .put(CompressedStoredFieldsCodec.CHUNK_SIZE, "1kb")
+                .build());
+        RAMDirectory dir = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(Lucene.VERSION, Lucene.STANDARD_ANALYZER).setCodec(codecService.codec("default")));
+        for (int i = 0; i < 100; i++) {
+            Document doc = new Document();
+            doc.add(new StoredField("_source", "{\"field\":\"value" + i + "\"}"));
+            writer.addDocument(doc);
+        }
+        writer.close();
+
+        // the codec is resolved by name when reading the segments back
+        DirectoryReader reader = DirectoryReader.open(dir);
+        assertThat(((SegmentReader) reader.leaves().get(0).reader()).getSegmentInfo().info.getCodec(), instanceOf(HighCompressionCodec.class));
+        for (int i = 0; i < 100; i++) {
+            assertThat(reader.document(i).get("_source"), equalTo("{\"field\":\"value" + i + "\"}"));
+        }
+        reader.close();
+    }
+
     @Test
     public void testResolveDefaultPostingFormats() throws Exception {
         PostingsFormatService postingsFormatService = createCodecService().postingsFormatService();
@@ -20,6 +20,7 @@
 package org.elasticsearch.test.unit.index.engine;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.NumericDocValuesField;
@@ -27,6 +28,7 @@ import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexDeletionPolicy;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.TermQuery;
+import org.elasticsearch.ElasticSearchIllegalArgumentException;
 import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.lucene.Lucene;
@@ -637,6 +639,64 @@ public abstract class AbstractSimpleEngineTests {
         assertThat(index.version(), equalTo(1l));
     }
 
+    @Test
+    public void testSeqNoAndLocalCheckpoint() {
+        ParsedDocument doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocument(), Lucene.STANDARD_ANALYZER, B_1, false);
+        Engine.Index index1 = new Engine.Index(null, newUid("1"), doc);
+        engine.index(index1);
+        assertThat(index1.seqNo(), equalTo(0l));
+        Engine.Index index2 = new Engine.Index(null, newUid("1"), doc);
+        engine.index(index2);
+        assertThat(index2.seqNo(), equalTo(1l));
+
+        // a version conflict does not consume a seq no
+        try {
+            engine.index(new Engine.Index(null, newUid("1"), doc).version(1l));
+            assert false;
+        } catch (VersionConflictEngineException e) {
+            // all is well
+        }
+        // neither does a document failing in lucene, it is never replicated, so it would leave a gap on replicas
+        Document failingDocument = new Document();
+        failingDocument.add(new TextField("value", new TokenStream() {
+            @Override
+            public boolean incrementToken() throws IOException {
+                throw new ElasticSearchIllegalArgumentException("failing analysis");
+            }
+        }));
+        ParsedDocument failingDoc = testParsedDocument("2", "2", "test", null, -1, -1, failingDocument, Lucene.STANDARD_ANALYZER, B_1, false);
+        try {
+            engine.index(new Engine.Index(null, newUid("2"), failingDoc));
+            assert false;
+        } catch (ElasticSearchIllegalArgumentException e) {
+            // all is well
+        }
+        assertThat(engine.localCheckpoint(), equalTo(1l));
+        Engine.Delete delete = new Engine.Delete("test", "1", newUid("1"));
+        engine.delete(delete);
+        assertThat(delete.seqNo(), equalTo(2l));
+        assertThat(engine.localCheckpoint(), equalTo(2l));
+
+        // a delete by query is positioned at the local checkpoint, without consuming a seq no
+        Engine.DeleteByQuery deleteByQuery = new Engine.DeleteByQuery(new TermQuery(new Term("value", "test")), new BytesArray(""), null, null, null, "test");
+        engine.delete(deleteByQuery);
+        assertThat(deleteByQuery.seqNo(), equalTo(2l));
+        assertThat(engine.localCheckpoint(), equalTo(2l));
+
+        // operations can reach the replica out of order
+        replicaEngine.index(new Engine.Index(null, newUid("1"), doc).version(index2.version()).seqNo(index2.seqNo()).origin(REPLICA));
+        assertThat(replicaEngine.localCheckpoint(), equalTo(-1l));
+        try {
+            replicaEngine.index(new Engine.Index(null, newUid("1"), doc).version(index1.version()).seqNo(index1.seqNo()).origin(REPLICA));
+            assert false;
+        } catch (VersionConflictEngineException e) {
+            // the newer version was applied already, still completes the seq no
+        }
+        assertThat(replicaEngine.localCheckpoint(), equalTo(1l));
+        replicaEngine.delete(new Engine.Delete("test", "1", newUid("1")).version(delete.version()).seqNo(delete.seqNo()).origin(REPLICA));
+        assertThat(replicaEngine.localCheckpoint(), equalTo(2l));
+    }
+
     @Test
     public void testExternalVersioningNewIndex() {
         ParsedDocument doc = testParsedDocument("1", "1", "test", null, -1, -1, testDocument(), Lucene.STANDARD_ANALYZER, B_1, false);
@@ -0,0 +1,71 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.index.engine;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.index.engine.LocalCheckpoint;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ *
+ */
+public class LocalCheckpointTests {
+
+    @Test
+    public void testInOrder() {
+        LocalCheckpoint localCheckpoint = new LocalCheckpoint(-1, -1);
+        assertThat(localCheckpoint.checkpoint(), equalTo(-1l));
+        for (int i = 0; i < 10; i++) {
+            long seqNo = localCheckpoint.generateSeqNo();
+            assertThat(seqNo, equalTo((long) i));
+            localCheckpoint.markCompleted(seqNo);
+            assertThat(localCheckpoint.checkpoint(), equalTo(seqNo));
+        }
+        assertThat(localCheckpoint.maxSeqNo(), equalTo(9l));
+    }
+
+    @Test
+    public void testOutOfOrder() {
+        LocalCheckpoint localCheckpoint = new LocalCheckpoint(4, 4);
+        localCheckpoint.markCompleted(7);
+        localCheckpoint.markCompleted(6);
+        assertThat(localCheckpoint.checkpoint(), equalTo(4l));
+        assertThat(localCheckpoint.maxSeqNo(), equalTo(7l));
+        // already part of the checkpoint
+        localCheckpoint.markCompleted(3);
+        assertThat(localCheckpoint.checkpoint(), equalTo(4l));
+        localCheckpoint.markCompleted(5);
+        assertThat(localCheckpoint.checkpoint(), equalTo(7l));
+        assertThat(localCheckpoint.generateSeqNo(), equalTo(8l));
+    }
+
+    @Test
+    public void testCommitUserData() {
+        assertThat(LocalCheckpoint.checkpoint(ImmutableMap.<String, String>of()), equalTo(-1l));
+        assertThat(LocalCheckpoint.maxSeqNo(ImmutableMap.<String, String>of()), equalTo(-1l));
+        ImmutableMap<String, String> commitUserData = ImmutableMap.of(LocalCheckpoint.LOCAL_CHECKPOINT_KEY, "12", LocalCheckpoint.MAX_SEQ_NO_KEY, "15");
+        assertThat(LocalCheckpoint.checkpoint(commitUserData), equalTo(12l));
+        assertThat(LocalCheckpoint.maxSeqNo(commitUserData), equalTo(15l));
+    }
+}
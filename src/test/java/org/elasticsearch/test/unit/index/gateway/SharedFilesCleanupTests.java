@@ -0,0 +1,91 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.index.gateway;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.elasticsearch.index.gateway.blobstore.BlobStoreIndexGateway;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class SharedFilesCleanupTests {
+
+    private static final long GRACE = 1000;
+
+    @Test
+    public void testUnreferencedFileDeletedOnlyAfterGracePeriod() {
+        Map<String, Long> since = Maps.newHashMap();
+        Set<String> blobs = ImmutableSet.of("_0.cfs.a.b", "_1.cfs.c.d");
+        Set<String> referenced = ImmutableSet.of("_0.cfs.a.b");
+
+        assertThat(BlobStoreIndexGateway.deletableSharedFiles(blobs, referenced, since, 0, GRACE).isEmpty(), equalTo(true));
+        assertThat(since.get("_1.cfs.c.d"), equalTo(0l));
+        assertThat(since.containsKey("_0.cfs.a.b"), equalTo(false));
+
+        // any number of clean ups within the grace period don't delete it
+        for (int i = 0; i < 10; i++) {
+            assertThat(BlobStoreIndexGateway.deletableSharedFiles(blobs, referenced, since, GRACE - 1, GRACE).isEmpty(), equalTo(true));
+        }
+        assertThat(since.get("_1.cfs.c.d"), equalTo(0l));
+
+        assertThat(BlobStoreIndexGateway.deletableSharedFiles(blobs, referenced, since, GRACE, GRACE), contains("_1.cfs.c.d"));
+        assertThat(since.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testReferencedAgainResetsGracePeriod() {
+        Map<String, Long> since = Maps.newHashMap();
+        Set<String> blobs = ImmutableSet.of("_1.cfs.c.d");
+        Set<String> none = ImmutableSet.of();
+
+        BlobStoreIndexGateway.deletableSharedFiles(blobs, none, since, 0, GRACE);
+        // another shard reused it
+        BlobStoreIndexGateway.deletableSharedFiles(blobs, ImmutableSet.of("_1.cfs.c.d"), since, GRACE / 2, GRACE);
+        assertThat(since.isEmpty(), equalTo(true));
+
+        // and dropped it again, the grace period starts over
+        assertThat(BlobStoreIndexGateway.deletableSharedFiles(blobs, none, since, GRACE, GRACE).isEmpty(), equalTo(true));
+        assertThat(BlobStoreIndexGateway.deletableSharedFiles(blobs, none, since, GRACE * 2 - 1, GRACE).isEmpty(), equalTo(true));
+        assertThat(BlobStoreIndexGateway.deletableSharedFiles(blobs, none, since, GRACE * 2, GRACE), contains("_1.cfs.c.d"));
+    }
+
+    @Test
+    public void testPartsAndRemovedFiles() {
+        Map<String, Long> since = Maps.newHashMap();
+        since.put("_2.cfs.e.f", 0l); // deleted since the last clean up
+        Set<String> blobs = ImmutableSet.of("_1.cfs.c.d.part0", "_1.cfs.c.d.part1");
+        Set<String> none = ImmutableSet.of();
+
+        assertThat(BlobStoreIndexGateway.deletableSharedFiles(blobs, none, since, GRACE, GRACE).isEmpty(), equalTo(true));
+        assertThat(since.size(), equalTo(1));
+        assertThat(since.get("_1.cfs.c.d"), equalTo(GRACE));
+
+        assertThat(BlobStoreIndexGateway.deletableSharedFiles(blobs, none, since, GRACE * 2, GRACE), contains("_1.cfs.c.d"));
+    }
+}
@@ -21,6 +21,7 @@ package org.elasticsearch.test.unit.index.mapper.source;
 
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.compress.CompressorFactory;
+import org.elasticsearch.common.compress.lz4.LZ4Compressor;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.mapper.ParsedDocument;
@@ -29,6 +30,7 @@ import org.testng.annotations.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 
 /**
  *
@@ -68,6 +70,23 @@ public class CompressSourceMappingTests {
         assertThat(CompressorFactory.isCompressed(bytes.bytes, bytes.offset, bytes.length), equalTo(true));
     }
 
+    @Test
+    public void testCompressType() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("_source").field("compress_type", "lz4").endObject()
+                .endObject().endObject().string();
+
+        DocumentMapper documentMapper = MapperTests.newParser().parse(mapping);
+
+        ParsedDocument doc = documentMapper.parse("type", "1", XContentFactory.jsonBuilder().startObject()
+                .field("field1", "value1")
+                .field("field2", "value2")
+                .endObject().bytes());
+
+        BytesRef bytes = doc.rootDoc().getBinaryValue("_source");
+        assertThat(CompressorFactory.compressor(bytes.bytes, bytes.offset, bytes.length), instanceOf(LZ4Compressor.class));
+    }
+
     @Test
     public void testCompressThreshold() throws Exception {
         String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
@@ -0,0 +1,127 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.index.merge;
+
+import org.apache.lucene.store.MergeRateLimiter;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.index.merge.MergeStats;
+import org.elasticsearch.index.merge.scheduler.ConcurrentMergeSchedulerProvider;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.index.merge.scheduler.ConcurrentMergeSchedulerProvider.CustomConcurrentMergeScheduler.nextTargetRate;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ */
+public class ConcurrentMergeSchedulerAutoThrottleTests {
+
+    private static final double MIN = 5;
+    private static final double MAX = 200;
+
+    @Test
+    public void testLongMergeWithoutBacklogKeepsRate() {
+        // the periodic update while a single large merge runs, with nothing waiting, must not decay the rate
+        double rate = 20;
+        for (int i = 0; i < 100; i++) {
+            rate = nextTargetRate(rate, false, false, MIN, MAX);
+        }
+        assertThat(rate, equalTo(20d));
+    }
+
+    @Test
+    public void testBacklogRaisesRateUpToMax() {
+        double rate = nextTargetRate(20, true, false, MIN, MAX);
+        assertThat(rate, closeTo(24, 0.0001));
+        // a merge finishing while others are waiting raises it as well
+        rate = nextTargetRate(rate, true, true, MIN, MAX);
+        assertThat(rate, closeTo(28.8, 0.0001));
+        for (int i = 0; i < 100; i++) {
+            rate = nextTargetRate(rate, true, false, MIN, MAX);
+        }
+        assertThat(rate, equalTo(MAX));
+    }
+
+    @Test
+    public void testFinishedMergeWithoutBacklogLowersRateDownToMin() {
+        double rate = nextTargetRate(22, false, true, MIN, MAX);
+        assertThat(rate, closeTo(20, 0.0001));
+        for (int i = 0; i < 100; i++) {
+            rate = nextTargetRate(rate, false, true, MIN, MAX);
+        }
+        assertThat(rate, equalTo(MIN));
+    }
+
+    @Test
+    public void testMergeRateLimiterTracksPausedTime() {
+        AtomicLong pausedNanos = new AtomicLong();
+        MergeRateLimiter rateLimiter = new MergeRateLimiter(10, pausedNanos);
+        rateLimiter.pause(256 * 1024);
+        rateLimiter.pause(256 * 1024);
+        assertThat(pausedNanos.get(), greaterThan(0l));
+
+        rateLimiter.setMbPerSec(50);
+        assertThat(rateLimiter.getMbPerSec(), equalTo(50d));
+    }
+
+    @Test
+    public void testStatsReportAutoThrottleRate() {
+        ThreadPool threadPool = new ThreadPool();
+        try {
+            ConcurrentMergeSchedulerProvider provider = new ConcurrentMergeSchedulerProvider(new ShardId("test", 0),
+                    settingsBuilder().put("index.merge.scheduler.auto_throttle", true).build(), threadPool);
+            provider.newMergeScheduler();
+            MergeStats stats = provider.stats();
+            assertThat(stats.getAutoThrottleRateInBytes(), equalTo(20l * 1024 * 1024));
+            assertThat(stats.getTotalThrottledTimeInMillis(), equalTo(0l));
+
+            provider = new ConcurrentMergeSchedulerProvider(new ShardId("test", 1), settingsBuilder().build(), threadPool);
+            provider.newMergeScheduler();
+            assertThat(provider.stats().getAutoThrottleRateInBytes(), equalTo(0l));
+        } finally {
+            threadPool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMergeStatsThrottleFields() throws Exception {
+        MergeStats stats = new MergeStats();
+        stats.add(1, 10, 100, 1000, 0, 0, 0, 30, 20 * 1024 * 1024);
+        MergeStats other = new MergeStats();
+        other.add(2, 20, 200, 2000, 1, 10, 100, 15, 10 * 1024 * 1024);
+        stats.add(other);
+        assertThat(stats.getTotalThrottledTimeInMillis(), equalTo(45l));
+        assertThat(stats.getAutoThrottleRateInBytes(), equalTo(30l * 1024 * 1024));
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        stats.writeTo(out);
+        MergeStats read = MergeStats.readMergeStats(new BytesStreamInput(out.bytes()));
+        assertThat(read.getTotal(), equalTo(3l));
+        assertThat(read.getTotalThrottledTimeInMillis(), equalTo(45l));
+        assertThat(read.getAutoThrottleRateInBytes(), equalTo(30l * 1024 * 1024));
+    }
+}
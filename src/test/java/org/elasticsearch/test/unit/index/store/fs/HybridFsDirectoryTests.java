@@ -0,0 +1,143 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.index.store.fs;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.lucene.store.*;
+import org.apache.lucene.store.bytebuffer.PlainByteBufferAllocator;
+import org.elasticsearch.common.io.FileSystemUtils;
+import org.elasticsearch.index.store.fs.HybridFsDirectory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ */
+public class HybridFsDirectoryTests {
+
+    private final File location = new File("work/test/hybrid_fs");
+
+    private AtomicLong memoryUsed;
+
+    private HybridFsDirectory directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        FileSystemUtils.deleteRecursively(location);
+        FileSystemUtils.mkdirs(location);
+        memoryUsed = new AtomicLong();
+        directory = new HybridFsDirectory(location, NoLockFactory.getNoLockFactory(), new NIOFSDirectory(location, NoLockFactory.getNoLockFactory()),
+                new PlainByteBufferAllocator(false, 1024, 1024), ImmutableSet.of("segments", "tip"), 100, memoryUsed, 120);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        directory.close();
+        FileSystemUtils.deleteRecursively(location);
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        write("segments_1", 10);
+        write("_0.tip", 50);
+        write("_0.tim", 50);
+        write("_1.tip", 200);
+
+        assertRead("segments_1", 10, IOContext.READ);
+        assertRead("_0.tip", 50, IOContext.READ);
+        assertThat(directory.memoryOpens(), equalTo(2l));
+        assertThat(directory.diskOpens(), equalTo(0l));
+        assertThat(directory.memorySizeInBytes(), greaterThan(0l));
+
+        // other extensions, files too large, and merges are read from disk
+        assertRead("_0.tim", 50, IOContext.READ);
+        assertRead("_1.tip", 200, IOContext.READ);
+        assertRead("_0.tip", 50, new IOContext(new MergeInfo(1, 1, false, 1)));
+        assertThat(directory.memoryOpens(), equalTo(2l));
+        assertThat(directory.diskOpens(), equalTo(3l));
+    }
+
+    @Test
+    public void testEvictOnDeleteAndOverwrite() throws Exception {
+        write("_0.tip", 50);
+        assertRead("_0.tip", 50, IOContext.READ);
+        long memorySize = directory.memorySizeInBytes();
+        assertThat(memorySize, greaterThan(0l));
+
+        // overwriting the file drops the stale content from memory
+        write("_0.tip", 20);
+        assertThat(directory.memorySizeInBytes(), equalTo(0l));
+        assertRead("_0.tip", 20, IOContext.READ);
+
+        directory.deleteFile("_0.tip");
+        assertThat(directory.memorySizeInBytes(), equalTo(0l));
+        assertThat(directory.fileExists("_0.tip"), equalTo(false));
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        write("_0.tip", 80);
+        write("_1.tip", 80);
+
+        assertRead("_0.tip", 80, IOContext.READ);
+        assertThat(memoryUsed.get(), equalTo(80l));
+
+        // over the budget, read from disk
+        assertRead("_1.tip", 80, IOContext.READ);
+        assertThat(directory.memoryOpens(), equalTo(1l));
+        assertThat(directory.diskOpens(), equalTo(1l));
+        assertThat(memoryUsed.get(), equalTo(80l));
+
+        // deleting the cached file frees its part of the budget
+        directory.deleteFile("_0.tip");
+        assertThat(memoryUsed.get(), equalTo(0l));
+        assertRead("_1.tip", 80, IOContext.READ);
+        assertThat(directory.memoryOpens(), equalTo(2l));
+        assertThat(memoryUsed.get(), equalTo(80l));
+
+        directory.close();
+        assertThat(memoryUsed.get(), equalTo(0l));
+    }
+
+    private void write(String name, int length) throws IOException {
+        IndexOutput output = directory.createOutput(name, IOContext.DEFAULT);
+        for (int i = 0; i < length; i++) {
+            output.writeByte((byte) i);
+        }
+        output.close();
+    }
+
+    private void assertRead(String name, int length, IOContext context) throws IOException {
+        IndexInput input = directory.openInput(name, context);
+        assertThat(input.length(), equalTo((long) length));
+        for (int i = 0; i < length; i++) {
+            assertThat(input.readByte(), equalTo((byte) i));
+        }
+        input.close();
+    }
+}
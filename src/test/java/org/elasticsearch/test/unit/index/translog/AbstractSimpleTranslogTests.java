@@ -32,6 +32,7 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
@@ -237,6 +238,35 @@ public abstract class AbstractSimpleTranslogTests {
         snapshot.release();
     }
 
+    @Test
+    public void testRetainedSnapshots() {
+        assertThat(translog.retainedSnapshots().size(), equalTo(0));
+
+        translog.add(new Translog.Create("test", "1", new byte[]{1}));
+        translog.add(new Translog.Index("test", "2", new byte[]{2}));
+        translog.newTranslog(2);
+        translog.add(new Translog.Index("test", "3", new byte[]{3}));
+        translog.newTransientTranslog(3);
+        translog.makeTransientCurrent();
+
+        List<Translog.Snapshot> snapshots = translog.retainedSnapshots();
+        assertThat(snapshots.size(), equalTo(2));
+        assertThat(snapshots.get(0).translogId(), equalTo(1l));
+        MatcherAssert.assertThat(snapshots.get(0), TranslogSizeMatcher.translogSize(2));
+        assertThat(snapshots.get(1).translogId(), equalTo(2l));
+        MatcherAssert.assertThat(snapshots.get(1), TranslogSizeMatcher.translogSize(1));
+        for (Translog.Snapshot snapshot : snapshots) {
+            snapshot.release();
+        }
+
+        // still there after being released
+        snapshots = translog.retainedSnapshots();
+        assertThat(snapshots.size(), equalTo(2));
+        for (Translog.Snapshot snapshot : snapshots) {
+            snapshot.release();
+        }
+    }
+
     @Test
     public void testSnapshotWithSeekForward() {
         Translog.Snapshot snapshot = translog.snapshot();
@@ -37,7 +37,8 @@ public class FsBufferedTranslogTests extends AbstractSimpleTranslogTests {
     @Override
     protected Translog create() {
         return new FsTranslog(shardId,
-                ImmutableSettings.settingsBuilder().put("index.translog.fs.type", FsTranslogFile.Type.BUFFERED.name()).build(),
+                ImmutableSettings.settingsBuilder().put("index.translog.fs.type", FsTranslogFile.Type.BUFFERED.name())
+                        .put(FsTranslog.INDEX_TRANSLOG_RETENTION_AGE, "5m").build(),
                 new File("data/fs-translog"));
     }
 
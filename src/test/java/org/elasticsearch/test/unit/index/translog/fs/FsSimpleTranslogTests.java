@@ -26,8 +26,13 @@ import org.elasticsearch.index.translog.fs.FsTranslog;
 import org.elasticsearch.index.translog.fs.FsTranslogFile;
 import org.elasticsearch.test.unit.index.translog.AbstractSimpleTranslogTests;
 import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
 
 import java.io.File;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
 
 /**
  *
@@ -37,12 +42,39 @@ public class FsSimpleTranslogTests extends AbstractSimpleTranslogTests {
     @Override
     protected Translog create() {
         return new FsTranslog(shardId,
-                ImmutableSettings.settingsBuilder().put("index.translog.fs.type", FsTranslogFile.Type.SIMPLE.name()).build(),
+                ImmutableSettings.settingsBuilder().put("index.translog.fs.type", FsTranslogFile.Type.SIMPLE.name())
+                        .put(FsTranslog.INDEX_TRANSLOG_RETENTION_AGE, "5m").build(),
                 new File("data/fs-translog"));
     }
 
+    @Test
+    public void testTrimRetainedByAge() throws Exception {
+        FsTranslog translog = new FsTranslog(shardId,
+                ImmutableSettings.settingsBuilder().put("index.translog.fs.type", FsTranslogFile.Type.SIMPLE.name())
+                        .put(FsTranslog.INDEX_TRANSLOG_RETENTION_AGE, "100ms").build(),
+                new File("data/fs-translog-trim"));
+        try {
+            translog.newTranslog(1);
+            translog.add(new Translog.Index("test", "1", new byte[]{1}));
+            translog.newTranslog(2);
+            List<Translog.Snapshot> snapshots = translog.retainedSnapshots();
+            assertThat(snapshots.size(), equalTo(1));
+            for (Translog.Snapshot snapshot : snapshots) {
+                snapshot.release();
+            }
+
+            // no flush happens, the periodic trim releases it once past the retention age
+            Thread.sleep(200);
+            translog.trimRetained();
+            assertThat(translog.retainedSnapshots().size(), equalTo(0));
+        } finally {
+            translog.closeWithDelete();
+        }
+    }
+
     @AfterClass
     public void cleanup() {
         FileSystemUtils.deleteRecursively(new File("data/fs-translog"), true);
+        FileSystemUtils.deleteRecursively(new File("data/fs-translog-trim"), true);
     }
 }
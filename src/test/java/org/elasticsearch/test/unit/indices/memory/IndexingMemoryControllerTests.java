@@ -0,0 +1,90 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.indices.memory;
+
+import com.google.common.collect.Lists;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.indices.memory.IndexingMemoryController;
+import org.elasticsearch.indices.memory.IndexingMemoryController.ShardMemoryUsage;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ */
+public class IndexingMemoryControllerTests {
+
+    private static final ByteSizeValue MIN = new ByteSizeValue(4, ByteSizeUnit.MB);
+    private static final ByteSizeValue MAX = new ByteSizeValue(512, ByteSizeUnit.MB);
+
+    @Test
+    public void testBudgetIsDividedAcrossActiveShards() {
+        ByteSizeValue budget = new ByteSizeValue(100, ByteSizeUnit.MB);
+        assertThat(IndexingMemoryController.shardIndexingBufferSize(budget, 1, MIN, MAX), equalTo(budget));
+        assertThat(IndexingMemoryController.shardIndexingBufferSize(budget, 4, MIN, MAX).bytes(), equalTo(budget.bytes() / 4));
+        // but never below the min, or above the max
+        assertThat(IndexingMemoryController.shardIndexingBufferSize(budget, 100, MIN, MAX), equalTo(MIN));
+        assertThat(IndexingMemoryController.shardIndexingBufferSize(new ByteSizeValue(1, ByteSizeUnit.GB), 1, MIN, MAX), equalTo(MAX));
+    }
+
+    @Test
+    public void testUnderBudgetFreesNothing() {
+        List<ShardMemoryUsage> usages = Lists.newArrayList(usage(30, 0), usage(20, 10));
+        assertThat(IndexingMemoryController.shardsToFree(usages, mb(60), mb(60), mb(4)).size(), equalTo(0));
+    }
+
+    @Test
+    public void testLargestShardsAreFreedFirst() {
+        ShardMemoryUsage small = usage(10, 0);
+        ShardMemoryUsage large = usage(40, 0);
+        ShardMemoryUsage medium = usage(10, 15);
+        List<ShardMemoryUsage> usages = Lists.newArrayList(small, large, medium);
+
+        // 75mb used, freeing the largest is enough
+        List<ShardMemoryUsage> toFree = IndexingMemoryController.shardsToFree(usages, mb(75), mb(60), mb(4));
+        assertThat(toFree.size(), equalTo(1));
+        assertThat(toFree.get(0), equalTo(large));
+
+        // with a smaller budget, the next largest (counting the version map) goes as well
+        toFree = IndexingMemoryController.shardsToFree(usages, mb(75), mb(20), mb(4));
+        assertThat(toFree.size(), equalTo(2));
+        assertThat(toFree.get(0), equalTo(large));
+        assertThat(toFree.get(1), equalTo(medium));
+    }
+
+    @Test
+    public void testSmallShardsAreNotFreed() {
+        List<ShardMemoryUsage> usages = Lists.newArrayList(usage(3, 0), usage(2, 1), usage(1, 0));
+        assertThat(IndexingMemoryController.shardsToFree(usages, mb(7), mb(1), mb(4)).size(), equalTo(0));
+    }
+
+    private static ShardMemoryUsage usage(long indexWriterMb, long versionMapMb) {
+        return new ShardMemoryUsage(null, null, mb(indexWriterMb), mb(versionMapMb));
+    }
+
+    private static long mb(long mb) {
+        return new ByteSizeValue(mb, ByteSizeUnit.MB).bytes();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.indices.recovery;
+
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.indices.recovery.RecoveryPartialFile;
+import org.elasticsearch.indices.recovery.RecoveryStatus;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Copies a file in chunks the way a recovery target does, interrupts the copy halfway, and resumes it the way the
+ * next recovery does.
+ */
+public class RecoveryResumeTests {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    @Test
+    public void testResumeAfterInterrupt() throws IOException {
+        RAMDirectory source = new RAMDirectory();
+        RAMDirectory target = new RAMDirectory();
+        byte[] data = randomBytes(100 * CHUNK_SIZE + 17);
+        writeFile(source, "_0.fdt", data);
+        String sourceChecksum = checksum(source, "_0.fdt");
+
+        // the first recovery copies part of the file, and gets interrupted
+        RecoveryStatus.PartialFile first = new RecoveryStatus.PartialFile("_0.fdt", "_0.fdt", data.length, sourceChecksum);
+        IndexOutput output = target.createOutput("_0.fdt", IOContext.DEFAULT);
+        copyChunks(data, 0, 42 * CHUNK_SIZE + 100, output, first);
+        output.close();
+
+        // the next recovery reports it, the source verifies it holds the same bytes
+        RecoveryPartialFile reported = first.toRecoveryPartialFile();
+        assertThat(reported.offset(), equalTo(42L * CHUNK_SIZE + 100));
+        assertThat(reported.checksum(), equalTo(sourceChecksum));
+        assertThat(reported.offsetChecksum(), equalTo(checksum(source, "_0.fdt", reported.offset())));
+        assertThat(reported.offsetChecksum(), equalTo(checksum(target, "_0.fdt", reported.offset())));
+
+        // and only sends the rest, the target copies over the part it holds first
+        RecoveryStatus.PartialFile second = new RecoveryStatus.PartialFile("_0.fdt", "recovery.1._0.fdt", data.length, sourceChecksum);
+        output = target.createOutput("recovery.1._0.fdt", IOContext.DEFAULT);
+        IndexInput input = target.openInput(first.storeName(), IOContext.READONCE);
+        second.copy(input, output, reported.offset());
+        input.close();
+        copyChunks(data, (int) reported.offset(), data.length, output, second);
+        output.close();
+
+        assertThat(target.fileLength("recovery.1._0.fdt"), equalTo((long) data.length));
+        assertThat(checksum(target, "recovery.1._0.fdt"), equalTo(sourceChecksum));
+        assertThat(second.offset(), equalTo((long) data.length));
+        assertThat(second.toRecoveryPartialFile().offsetChecksum(), equalTo(sourceChecksum));
+    }
+
+    @Test
+    public void testChangedBytesAreNotResumed() throws IOException {
+        RAMDirectory source = new RAMDirectory();
+        RAMDirectory target = new RAMDirectory();
+        byte[] data = randomBytes(10 * CHUNK_SIZE);
+        writeFile(source, "_0.fdt", data);
+
+        RecoveryStatus.PartialFile partial = new RecoveryStatus.PartialFile("_0.fdt", "_0.fdt", data.length, checksum(source, "_0.fdt"));
+        IndexOutput output = target.createOutput("_0.fdt", IOContext.DEFAULT);
+        copyChunks(data, 0, 5 * CHUNK_SIZE, output, partial);
+        output.close();
+
+        // the source file got rewritten with different content (same name and length)
+        data[CHUNK_SIZE]++;
+        source.deleteFile("_0.fdt");
+        writeFile(source, "_0.fdt", data);
+
+        RecoveryPartialFile reported = partial.toRecoveryPartialFile();
+        assertThat(reported.offsetChecksum(), not(equalTo(checksum(source, "_0.fdt", reported.offset()))));
+    }
+
+    private static void copyChunks(byte[] data, int from, int to, IndexOutput output, RecoveryStatus.PartialFile file) throws IOException {
+        for (int position = from; position < to; position += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, to - position);
+            output.writeBytes(data, position, length);
+            file.written(data, position, length);
+        }
+    }
+
+    private static void writeFile(RAMDirectory directory, String name, byte[] data) throws IOException {
+        IndexOutput output = directory.createOutput(name, IOContext.DEFAULT);
+        output.writeBytes(data, data.length);
+        output.close();
+    }
+
+    private static String checksum(RAMDirectory directory, String name) throws IOException {
+        return checksum(directory, name, directory.fileLength(name));
+    }
+
+    private static String checksum(RAMDirectory directory, String name, long length) throws IOException {
+        IndexInput input = directory.openInput(name, IOContext.READONCE);
+        try {
+            return RecoveryPartialFile.checksum(input, length);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+}
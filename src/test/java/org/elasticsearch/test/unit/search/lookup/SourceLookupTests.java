@@ -0,0 +1,112 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.search.lookup;
+
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.search.lookup.SourceLookup;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ *
+ */
+public class SourceLookupTests {
+
+    private static XContentBuilder source() throws Exception {
+        return XContentFactory.jsonBuilder().startObject()
+                .startObject("empty").endObject()
+                .startArray("empty_array").endArray()
+                .startArray("objects")
+                .startObject().endObject()
+                .startObject().field("field", "value").endObject()
+                .endArray()
+                .startObject("obj1").startObject("obj2").endObject().field("field", 1).endObject()
+                .endObject();
+    }
+
+    private static SourceLookup lookup() throws Exception {
+        SourceLookup lookup = new SourceLookup();
+        lookup.setNextSource(source().bytes());
+        return lookup;
+    }
+
+    @Test
+    public void testEmptyObjectsAndArraysAreKept() throws Exception {
+        SourceLookup lookup = lookup();
+        assertThat(lookup.containsKey("empty"), equalTo(true));
+        assertThat(lookup.get("empty"), instanceOf(Map.class));
+        assertThat(((Map) lookup.get("empty")).isEmpty(), equalTo(true));
+
+        lookup = lookup();
+        assertThat(lookup.containsKey("empty_array"), equalTo(true));
+        assertThat(((List) lookup.get("empty_array")).isEmpty(), equalTo(true));
+
+        lookup = lookup();
+        Object objects = lookup.extractValue("objects");
+        assertThat(objects, instanceOf(List.class));
+        assertThat(((List) objects).size(), equalTo(2));
+        assertThat(((Map) ((List) objects).get(0)).isEmpty(), equalTo(true));
+
+        lookup = lookup();
+        assertThat(lookup.extractValue("obj1.obj2"), instanceOf(Map.class));
+        assertThat(lookup.extractRawValues("objects.field").size(), equalTo(1));
+        assertThat(lookup.extractRawValues("obj1.field"), contains((Object) 1));
+    }
+
+    @Test
+    public void testLookupsMatchSourceMap() throws Exception {
+        Map<String, Object> map = SourceLookup.sourceAsMap(source().bytes());
+        for (String key : map.keySet()) {
+            assertThat(lookup().get(key), equalTo(map.get(key)));
+            assertThat(lookup().extractValue(key), equalTo(XContentMapValues.extractValue(key, map)));
+        }
+    }
+
+    @Test
+    public void testRepeatedFiltersOnSameDoc() throws Exception {
+        Map<String, Object> map = XContentFactory.xContent(XContentType.JSON).createParser(source().string()).mapAndClose();
+        String[][][] filters = new String[][][]{
+                {new String[]{"obj1.*"}, Strings.EMPTY_ARRAY},
+                {new String[]{"objects.*"}, Strings.EMPTY_ARRAY},
+                {Strings.EMPTY_ARRAY, new String[]{"obj1"}},
+        };
+        SourceLookup lookup = lookup();
+        for (int i = 0; i < 2; i++) {
+            for (String[][] filter : filters) {
+                assertThat(lookup.filter(filter[0], filter[1]), equalTo((Object) XContentMapValues.filter(map, filter[0], filter[1])));
+            }
+        }
+
+        // the next doc is filtered again from its own source
+        lookup.setNextSource(new BytesArray("{\"obj1\":{\"field\":2}}"));
+        assertThat(lookup.filter(new String[]{"obj1.*"}, Strings.EMPTY_ARRAY).toString(), equalTo("{obj1={field=2}}"));
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to ElasticSearch and Shay Banon under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. ElasticSearch licenses this
+ * file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.test.unit.transport.netty;
+
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportRequestHandler;
+import org.elasticsearch.transport.TransportResponseHandler;
+import org.elasticsearch.transport.TransportServiceAdapter;
+import org.elasticsearch.transport.netty.WriteCoalescingHandler;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests {@link WriteCoalescingHandler} against a local channel, with a handler below it that records the writes
+ * reaching the sink and leaves completing them to the test.
+ */
+@Test
+public class WriteCoalescingHandlerTests {
+
+    private ThreadPool threadPool;
+    private DefaultLocalClientChannelFactory channelFactory;
+
+    @BeforeClass
+    public void setUp() {
+        threadPool = new ThreadPool();
+        channelFactory = new DefaultLocalClientChannelFactory();
+    }
+
+    @AfterClass
+    public void tearDown() {
+        channelFactory.releaseExternalResources();
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void testFlushOnThreshold() throws Exception {
+        RecordingHandler recorder = new RecordingHandler();
+        RecordingAdapter adapter = new RecordingAdapter();
+        Channel channel = newChannel(recorder, adapter, TimeValue.timeValueHours(1), 10);
+
+        ChannelFuture first = Channels.write(channel, buffer(4));
+        ChannelFuture second = Channels.write(channel, buffer(4));
+        assertThat(recorder.writes.size(), equalTo(0));
+
+        ChannelFuture third = Channels.write(channel, buffer(4));
+        assertThat(recorder.writes.size(), equalTo(1));
+        assertThat(((ChannelBuffer) recorder.writes.get(0).getMessage()).readableBytes(), equalTo(12));
+        assertThat(adapter.messages.get(), equalTo(3));
+        assertThat(adapter.size.get(), equalTo(12l));
+        assertThat(first.isDone() || second.isDone() || third.isDone(), equalTo(false));
+
+        recorder.writes.get(0).getFuture().setSuccess();
+        assertThat(first.isSuccess(), equalTo(true));
+        assertThat(second.isSuccess(), equalTo(true));
+        assertThat(third.isSuccess(), equalTo(true));
+        channel.close().awaitUninterruptibly();
+    }
+
+    @Test
+    public void testFlushOnTimeout() throws Exception {
+        RecordingHandler recorder = new RecordingHandler();
+        RecordingAdapter adapter = new RecordingAdapter();
+        Channel channel = newChannel(recorder, adapter, TimeValue.timeValueMillis(100), Long.MAX_VALUE);
+
+        ChannelFuture first = Channels.write(channel, buffer(4));
+        ChannelFuture second = Channels.write(channel, buffer(6));
+        assertThat(recorder.writes.size(), equalTo(0));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (recorder.writes.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(recorder.writes.size(), equalTo(1));
+        assertThat(((ChannelBuffer) recorder.writes.get(0).getMessage()).readableBytes(), equalTo(10));
+        assertThat(adapter.messages.get(), equalTo(2));
+
+        recorder.writes.get(0).getFuture().setSuccess();
+        assertThat(first.isSuccess(), equalTo(true));
+        assertThat(second.isSuccess(), equalTo(true));
+        channel.close().awaitUninterruptibly();
+    }
+
+    @Test
+    public void testFlushOnWriteComplete() throws Exception {
+        RecordingHandler recorder = new RecordingHandler();
+        RecordingAdapter adapter = new RecordingAdapter();
+        Channel channel = newChannel(recorder, adapter, TimeValue.timeValueMillis(0), Long.MAX_VALUE);
+
+        // nothing in flight, goes down as is
+        ChannelFuture first = Channels.write(channel, buffer(4));
+        assertThat(recorder.writes.size(), equalTo(1));
+        assertThat(adapter.messages.get(), equalTo(0));
+
+        // queued behind the in flight write
+        ChannelFuture second = Channels.write(channel, buffer(4));
+        ChannelFuture third = Channels.write(channel, buffer(4));
+        assertThat(recorder.writes.size(), equalTo(1));
+
+        recorder.writes.get(0).getFuture().setSuccess();
+        assertThat(first.isSuccess(), equalTo(true));
+        assertThat(recorder.writes.size(), equalTo(2));
+        assertThat(((ChannelBuffer) recorder.writes.get(1).getMessage()).readableBytes(), equalTo(8));
+        assertThat(adapter.messages.get(), equalTo(2));
+
+        recorder.writes.get(1).getFuture().setFailure(new ClosedChannelException());
+        assertThat(second.getCause(), instanceOf(ClosedChannelException.class));
+        assertThat(third.getCause(), instanceOf(ClosedChannelException.class));
+        channel.close().awaitUninterruptibly();
+    }
+
+    @Test
+    public void testFlushOnClose() throws Exception {
+        RecordingHandler recorder = new RecordingHandler();
+        RecordingAdapter adapter = new RecordingAdapter();
+        Channel channel = newChannel(recorder, adapter, TimeValue.timeValueHours(1), Long.MAX_VALUE);
+
+        ChannelFuture first = Channels.write(channel, buffer(4));
+        ChannelFuture second = Channels.write(channel, buffer(4));
+        assertThat(recorder.writes.size(), equalTo(0));
+
+        channel.close().awaitUninterruptibly();
+        assertThat(channel.isOpen(), equalTo(false));
+        assertThat(recorder.writes.size(), equalTo(1));
+        assertThat(((ChannelBuffer) recorder.writes.get(0).getMessage()).readableBytes(), equalTo(8));
+
+        recorder.writes.get(0).getFuture().setSuccess();
+        assertThat(first.isSuccess(), equalTo(true));
+        assertThat(second.isSuccess(), equalTo(true));
+
+        // once closed, writes are no longer queued
+        Channels.write(channel, buffer(4));
+        assertThat(recorder.writes.size(), equalTo(2));
+    }
+
+    @Test
+    public void testPendingWritesFailOnChannelClosed() throws Exception {
+        RecordingHandler recorder = new RecordingHandler();
+        RecordingAdapter adapter = new RecordingAdapter();
+        Channel channel = newChannel(recorder, adapter, TimeValue.timeValueHours(1), Long.MAX_VALUE);
+
+        ChannelFuture first = Channels.write(channel, buffer(4));
+        ChannelFuture second = Channels.write(channel, buffer(4));
+
+        // the channel went away without a close request, e.g. the other side closed it
+        Channels.fireChannelClosed(channel);
+        assertThat(recorder.writes.size(), equalTo(0));
+        assertThat(first.getCause(), instanceOf(ClosedChannelException.class));
+        assertThat(second.getCause(), instanceOf(ClosedChannelException.class));
+        channel.close().awaitUninterruptibly();
+    }
+
+    private Channel newChannel(RecordingHandler recorder, TransportServiceAdapter adapter, TimeValue window, long maxSize) throws Exception {
+        ChannelPipeline pipeline = Channels.pipeline();
+        // downstream events go from the last handler to the first one, so the recorder sits between the handler and the sink
+        pipeline.addLast("recorder", recorder);
+        pipeline.addLast("coalescing", new WriteCoalescingHandler(threadPool, adapter, window, maxSize));
+        return channelFactory.newChannel(pipeline);
+    }
+
+    private static ChannelBuffer buffer(int size) {
+        return ChannelBuffers.wrappedBuffer(new byte[size]);
+    }
+
+    /**
+     * Records the writes that reach it instead of passing them to the sink, their futures are completed by the test.
+     */
+    private static class RecordingHandler extends SimpleChannelHandler {
+
+        final List<MessageEvent> writes = new CopyOnWriteArrayList<MessageEvent>();
+
+        @Override
+        public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+            writes.add(e);
+        }
+    }
+
+    private static class RecordingAdapter implements TransportServiceAdapter {
+
+        final AtomicInteger messages = new AtomicInteger();
+        final AtomicLong size = new AtomicLong();
+
+        @Override
+        public void received(long size) {
+        }
+
+        @Override
+        public void sent(long size) {
+        }
+
+        @Override
+        public void coalescedWrite(int messages, long size) {
+            this.messages.addAndGet(messages);
+            this.size.addAndGet(size);
+        }
+
+        @Override
+        public TransportRequestHandler handler(String action) {
+            return null;
+        }
+
+        @Override
+        public TransportResponseHandler remove(long requestId) {
+            return null;
+        }
+
+        @Override
+        public void raiseNodeConnected(DiscoveryNode node) {
+        }
+
+        @Override
+        public void raiseNodeDisconnected(DiscoveryNode node) {
+        }
+    }
+}